@@ -1,13 +1,15 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
 import java.io.File;
+import java.io.Serializable;
 
 import lombok.Data;
 
 import org.joda.time.DateTime;
 
 @Data
-public class AnnotationOutput {
+public class AnnotationOutput implements Serializable {
+	private static final long serialVersionUID = 1L;
 	private final File localAnnotationFile;
 	private final String runKey;
 	private final DateTime runDate;
@@ -1,10 +1,13 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
+import java.io.Serializable;
+
 import lombok.Data;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase;
 
 @Data
-public class AnnotationPipeline {
+public class AnnotationPipeline implements Serializable {
+	private static final long serialVersionUID = 1L;
 	private final String name;
 	private final String description;
 	private final Class<? extends PipelineBase> pipelineCls;
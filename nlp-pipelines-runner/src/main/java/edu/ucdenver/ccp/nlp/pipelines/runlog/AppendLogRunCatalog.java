@@ -0,0 +1,1524 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.string.StringUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase;
+
+/**
+ * A lightweight alternative to the {@link Neo4jRunCatalog}. The catalog is
+ * held in memory, keyed by PMCID (with a PMID index), along with the set of
+ * documents having each run status for each run-key registered with a
+ * document collection. Every change to the catalog is appended to a log file
+ * before it is applied; the log is replayed when the catalog is opened.
+ * <p>
+ * Each write, e.g. a batch of documents or a call to
+ * {@link #applyUpdates(List)}, is appended as a single checksummed frame and
+ * forced to disk, so a write is either replayed completely or not at all. A
+ * partially written frame at the end of the log, e.g. due to a crash, is
+ * discarded when the catalog is next opened. The log is periodically
+ * compacted into a snapshot of the catalog; see {@link #compact()}.
+ * <p>
+ * Like the Neo4j catalog, the catalog directory can be opened by only one
+ * process at a time.
+ */
+public class AppendLogRunCatalog implements RunCatalog {
+
+	private static final Logger logger = Logger.getLogger(AppendLogRunCatalog.class);
+
+	private static final String LOCK_FILE_NAME = "catalog.lock";
+	private static final String SNAPSHOT_FILE_NAME = "catalog.snapshot";
+	private static final String LOG_FILE_PREFIX = "catalog.";
+	private static final String LOG_FILE_SUFFIX = ".log";
+
+	/**
+	 * The catalog is compacted when it is closed if the log has grown larger
+	 * than this number of bytes
+	 */
+	private static final long COMPACTION_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * The number of documents retrieved per page when the catalog is queried
+	 * for files to process
+	 */
+	private static final int FILES_TO_PROCESS_PAGE_SIZE = 10000;
+
+	/**
+	 * Identifies the snapshot file format. Increment the version when the
+	 * snapshot encoding changes.
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x52434C53;
+	private static final int SNAPSHOT_FORMAT_VERSION = 1;
+
+	/**
+	 * The maximum number of records written to each snapshot frame
+	 */
+	private static final int SNAPSHOT_RECORDS_PER_FRAME = 1000;
+
+	/**
+	 * New record types must be added at the end as the ordinal is persisted.
+	 * DOCUMENT_STATE, RUN_STATUS and SNAPSHOT_END appear only in snapshots.
+	 * REMOVE_RUN_KEY_COMPLETE is written once the annotation files of a
+	 * removed run-key have been deleted.
+	 */
+	private static enum RecordType {
+		DOCUMENT_COLLECTION, DOCUMENT, RUN_KEY, REMOVE_RUN_KEY, ANNOTATION_PIPELINE, UPDATE, REMOVE_DOCUMENT_COLLECTION,
+		REMOVE_DOCUMENTS, DOCUMENT_STATE, RUN_STATUS, SNAPSHOT_END, REMOVE_RUN_KEY_COMPLETE
+	}
+
+	private final File catalogDirectory;
+	/* holds the annotation files that are deleted when a run-key is removed */
+	private final DocumentStorage storage;
+	private final FileChannel lockChannel;
+	private final FileLock lock;
+
+	private CatalogState state;
+	private long generation;
+	private File logFile;
+	private FileChannel logChannel;
+	private boolean replaying = false;
+	/*
+	 * the annotation files of each removed run-key, keyed by collection
+	 * shortname and run-key, that have not yet been deleted
+	 */
+	private final Map<List<String>, List<File>> annotationFilesToDelete = new LinkedHashMap<List<String>, List<File>>();
+
+	/**
+	 * Opens the catalog in the specified directory, creating it if it does not
+	 * exist
+	 *
+	 * @param catalogDirectory
+	 */
+	public AppendLogRunCatalog(File catalogDirectory) {
+		this(catalogDirectory, StorageType.FILE_SYSTEM.getStorage());
+	}
+
+	/**
+	 * Opens the catalog in the specified directory, creating it if it does not
+	 * exist
+	 *
+	 * @param catalogDirectory
+	 * @param storage
+	 *            the storage that holds the annotation files, which are deleted
+	 *            when a run-key is removed
+	 */
+	public AppendLogRunCatalog(File catalogDirectory, DocumentStorage storage) {
+		logger.info("Initializing append-log run catalog: " + catalogDirectory.getAbsolutePath());
+		this.catalogDirectory = catalogDirectory;
+		this.storage = storage;
+		try {
+			Files.createDirectories(catalogDirectory.toPath());
+			lockChannel = FileChannel.open(new File(catalogDirectory, LOCK_FILE_NAME).toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			lock = tryLock(lockChannel);
+			if (lock == null) {
+				lockChannel.close();
+				throw new IllegalStateException(
+						"Run catalog is in use by another process: " + catalogDirectory.getAbsolutePath());
+			}
+			long startTime = System.currentTimeMillis();
+			loadSnapshot();
+			replayLog();
+			deleteStaleLogFiles();
+			resumeRunKeyRemovals();
+			logger.info("Run catalog loaded " + state.documents.size() + " documents in "
+					+ (System.currentTimeMillis() - startTime) + " ms.");
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open run catalog: " + catalogDirectory.getAbsolutePath(), e);
+		}
+	}
+
+	private static FileLock tryLock(FileChannel channel) throws IOException {
+		try {
+			return channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			/* the catalog is already open in this JVM */
+			return null;
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (logChannel == null) {
+			return;
+		}
+		logger.info("Shutting down append-log run catalog...");
+		try {
+			if (logChannel.size() > COMPACTION_THRESHOLD_BYTES) {
+				compact();
+			}
+			logChannel.close();
+			logChannel = null;
+			lock.release();
+			lockChannel.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Error while closing run catalog.", e);
+		}
+	}
+
+	/* ------------------------------------------------------------------ */
+	/* In-memory catalog state */
+	/* ------------------------------------------------------------------ */
+
+	/**
+	 * The complete contents of the catalog. This is what is written to the
+	 * snapshot file when the log is compacted.
+	 */
+	private static class CatalogState {
+		/* shortname to document collection, including its run-keys */
+		private final Map<String, DocumentCollection> collections = new LinkedHashMap<String, DocumentCollection>();
+		/* shortname to the PMCIDs of member documents */
+		private final Map<String, Set<String>> members = new HashMap<String, Set<String>>();
+		/* shortname to run-key to run status to PMCIDs */
+		private final Map<String, Map<String, Map<RunStatus, Set<String>>>> runStatus = new HashMap<String, Map<String, Map<RunStatus, Set<String>>>>();
+		/* PMCID to document entry */
+		private final Map<String, DocumentEntry> documents = new HashMap<String, DocumentEntry>();
+		private final Map<String, String> pmidToPmcid = new HashMap<String, String>();
+		private final Set<AnnotationPipeline> pipelines = new LinkedHashSet<AnnotationPipeline>();
+	}
+
+	/**
+	 * A document along with its annotation outputs and the most recently
+	 * logged error
+	 */
+	private static class DocumentEntry {
+		private final Document document;
+		private final Set<String> collections = new HashSet<String>(2);
+		private final List<AnnotationOutput> annotationOutputs = new ArrayList<AnnotationOutput>(1);
+		private String errorPipelineKey;
+		private String errorComponentAtFault;
+		private String errorMessage;
+		private String errorStackTrace;
+
+		public DocumentEntry(Document document) {
+			this.document = document;
+		}
+	}
+
+	/* ------------------------------------------------------------------ */
+	/* Log and snapshot files */
+	/* ------------------------------------------------------------------ */
+
+	private File getLogFile(long gen) {
+		return new File(catalogDirectory, LOG_FILE_PREFIX + gen + LOG_FILE_SUFFIX);
+	}
+
+	/**
+	 * Restores the catalog from the snapshot file, if there is one. The
+	 * snapshot is a header followed by frames of records, encoded as in the
+	 * log, and ends with a frame containing a single SNAPSHOT_END record.
+	 */
+	private void loadSnapshot() throws IOException {
+		File snapshotFile = new File(catalogDirectory, SNAPSHOT_FILE_NAME);
+		state = new CatalogState();
+		if (!snapshotFile.exists()) {
+			generation = 0;
+			return;
+		}
+		replaying = true;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a run catalog snapshot: " + snapshotFile.getAbsolutePath());
+			}
+			int version = in.readInt();
+			if (version > SNAPSHOT_FORMAT_VERSION) {
+				throw new IOException("Unsupported run catalog snapshot version (" + version + "): "
+						+ snapshotFile.getAbsolutePath());
+			}
+			generation = in.readLong();
+			long unreadLength = snapshotFile.length() - (Integer.BYTES + Integer.BYTES + Long.BYTES);
+			while (true) {
+				byte[] frame = readFrame(in, unreadLength);
+				if (frame == null) {
+					throw new IOException(
+							"Incomplete or corrupt run catalog snapshot: " + snapshotFile.getAbsolutePath());
+				}
+				if (frame.length == 1 && frame[0] == RecordType.SNAPSHOT_END.ordinal()) {
+					break;
+				}
+				applyFrame(frame);
+				unreadLength -= Integer.BYTES + Long.BYTES + frame.length;
+			}
+		} finally {
+			replaying = false;
+		}
+	}
+
+	/**
+	 * Applies each complete frame in the current log file. The log is
+	 * truncated following the last complete frame.
+	 */
+	private void replayLog() throws IOException {
+		logFile = getLogFile(generation);
+		logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long validLength = 0;
+		int frameCount = 0;
+		long logLength = logChannel.size();
+		replaying = true;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+			while (true) {
+				byte[] frame = readFrame(in, logLength - validLength);
+				if (frame == null) {
+					break;
+				}
+				applyFrame(frame);
+				validLength += Integer.BYTES + Long.BYTES + frame.length;
+				frameCount++;
+			}
+		} finally {
+			replaying = false;
+		}
+		if (validLength < logChannel.size()) {
+			logger.warn("Discarding incomplete write at the end of the run catalog log: " + logFile.getAbsolutePath()
+					+ " (" + (logChannel.size() - validLength) + " bytes)");
+			logChannel.truncate(validLength);
+			logChannel.force(true);
+		}
+		logChannel.position(validLength);
+		logger.info("Replayed " + frameCount + " writes from run catalog log: " + logFile.getAbsolutePath());
+	}
+
+	/**
+	 * @param in
+	 * @param unreadLength
+	 *            the number of bytes from the start of the next frame to the
+	 *            end of the file
+	 * @return the payload of the next frame, or null if the end of the log has
+	 *         been reached or the next frame is incomplete or corrupt
+	 * @throws IOException
+	 */
+	private static byte[] readFrame(DataInputStream in, long unreadLength) throws IOException {
+		try {
+			int length = in.readInt();
+			long checksum = in.readLong();
+			/* a torn length must not be used to allocate the frame */
+			if (length < 0 || length > unreadLength - (Integer.BYTES + Long.BYTES)) {
+				return null;
+			}
+			byte[] frame = new byte[length];
+			in.readFully(frame);
+			CRC32 crc = new CRC32();
+			crc.update(frame);
+			return (crc.getValue() == checksum) ? frame : null;
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	private void deleteStaleLogFiles() {
+		File[] files = catalogDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.startsWith(LOG_FILE_PREFIX) && name.endsWith(LOG_FILE_SUFFIX) && !file.equals(logFile)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends the frame to the log, forces it to disk, and then applies it to
+	 * the in-memory catalog
+	 *
+	 * @param frame
+	 */
+	private void write(byte[] frame) {
+		if (logChannel == null) {
+			throw new IllegalStateException("The run catalog has been closed.");
+		}
+		ByteBuffer buffer = toFramedBytes(frame);
+		try {
+			while (buffer.hasRemaining()) {
+				logChannel.write(buffer);
+			}
+			logChannel.force(false);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to write to run catalog log: " + logFile.getAbsolutePath(), e);
+		}
+		try {
+			applyFrame(frame);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to apply run catalog write.", e);
+		}
+	}
+
+	/**
+	 * @param frame
+	 * @return the frame preceded by its length and checksum
+	 */
+	private static ByteBuffer toFramedBytes(byte[] frame) {
+		CRC32 crc = new CRC32();
+		crc.update(frame);
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + frame.length);
+		buffer.putInt(frame.length).putLong(crc.getValue()).put(frame);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Writes a snapshot of the catalog and starts a new, empty log. The
+	 * snapshot records the generation of the new log, so a crash at any point
+	 * leaves either the previous snapshot and log or the new snapshot and log
+	 * in place.
+	 */
+	public synchronized void compact() {
+		long newGeneration = generation + 1;
+		File snapshotFile = new File(catalogDirectory, SNAPSHOT_FILE_NAME);
+		File tmpSnapshotFile = new File(catalogDirectory, SNAPSHOT_FILE_NAME + ".tmp");
+		long startTime = System.currentTimeMillis();
+		try {
+			try (FileOutputStream fos = new FileOutputStream(tmpSnapshotFile);
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeInt(SNAPSHOT_FORMAT_VERSION);
+				out.writeLong(newGeneration);
+				writeSnapshot(out);
+				out.flush();
+				fos.getFD().sync();
+			}
+			File newLogFile = getLogFile(newGeneration);
+			FileChannel newLogChannel = FileChannel.open(newLogFile.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			Files.move(tmpSnapshotFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			logChannel.close();
+			logFile.delete();
+			generation = newGeneration;
+			logFile = newLogFile;
+			logChannel = newLogChannel;
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to compact run catalog: " + catalogDirectory.getAbsolutePath(), e);
+		}
+		logger.info("Run catalog compacted in " + (System.currentTimeMillis() - startTime) + " ms.");
+	}
+
+	/**
+	 * Writes the catalog state as records that recreate it when applied in
+	 * order: collections and their run-keys, pipelines, documents and their
+	 * collection memberships, the annotation outputs and errors of each
+	 * document, and finally the documents that are complete or in error for
+	 * each run-key. All other members are outstanding.
+	 */
+	private void writeSnapshot(DataOutputStream out) throws IOException {
+		SnapshotWriter snapshot = new SnapshotWriter(out);
+		for (DocumentCollection dc : state.collections.values()) {
+			writeDocumentCollection(snapshot.nextRecord(), dc);
+		}
+		for (AnnotationPipeline ap : state.pipelines) {
+			writeAnnotationPipeline(snapshot.nextRecord(), ap);
+		}
+		for (Entry<String, Set<String>> e : state.members.entrySet()) {
+			for (String pmcid : e.getValue()) {
+				writeDocument(snapshot.nextRecord(), e.getKey(), state.documents.get(pmcid).document);
+			}
+		}
+		for (DocumentEntry entry : state.documents.values()) {
+			if (entry.collections.isEmpty()) {
+				/* documents that were removed from every collection */
+				writeDocument(snapshot.nextRecord(), null, entry.document);
+			}
+			if (!entry.annotationOutputs.isEmpty() || entry.errorPipelineKey != null) {
+				writeDocumentState(snapshot.nextRecord(), entry);
+			}
+		}
+		for (Entry<String, Map<String, Map<RunStatus, Set<String>>>> e : state.runStatus.entrySet()) {
+			for (Entry<String, Map<RunStatus, Set<String>>> runKeyEntry : e.getValue().entrySet()) {
+				for (RunStatus status : EnumSet.of(RunStatus.COMPLETE, RunStatus.ERROR)) {
+					List<String> pmcids = new ArrayList<String>(runKeyEntry.getValue().get(status));
+					for (int i = 0; i < pmcids.size(); i += SNAPSHOT_RECORDS_PER_FRAME) {
+						writeRunStatus(snapshot.nextRecord(), e.getKey(), runKeyEntry.getKey(), status,
+								pmcids.subList(i, Math.min(i + SNAPSHOT_RECORDS_PER_FRAME, pmcids.size())));
+					}
+				}
+			}
+		}
+		snapshot.close();
+	}
+
+	/**
+	 * Groups snapshot records into frames of at most
+	 * {@link #SNAPSHOT_RECORDS_PER_FRAME} records
+	 */
+	private static class SnapshotWriter {
+		private final DataOutputStream out;
+		private FrameBuilder frame = new FrameBuilder();
+		private int recordCount = 0;
+
+		public SnapshotWriter(DataOutputStream out) {
+			this.out = out;
+		}
+
+		/**
+		 * @return the frame to which the next record is to be written
+		 */
+		public FrameBuilder nextRecord() throws IOException {
+			if (recordCount == SNAPSHOT_RECORDS_PER_FRAME) {
+				writeFrame();
+			}
+			recordCount++;
+			return frame;
+		}
+
+		private void writeFrame() throws IOException {
+			out.write(toFramedBytes(frame.toByteArray()).array());
+			frame = new FrameBuilder();
+			recordCount = 0;
+		}
+
+		public void close() throws IOException {
+			if (recordCount > 0) {
+				writeFrame();
+			}
+			frame.startRecord(RecordType.SNAPSHOT_END);
+			writeFrame();
+		}
+	}
+
+	/* ------------------------------------------------------------------ */
+	/* Record encoding */
+	/* ------------------------------------------------------------------ */
+
+	/**
+	 * Accumulates the records of a single frame
+	 */
+	private static class FrameBuilder {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		public DataOutputStream startRecord(RecordType type) throws IOException {
+			out.writeByte(type.ordinal());
+			return out;
+		}
+
+		public byte[] toByteArray() throws IOException {
+			out.flush();
+			return bytes.toByteArray();
+		}
+	}
+
+	private static void writeDocumentCollection(FrameBuilder frame, DocumentCollection dc) throws IOException {
+		DataOutputStream out = frame.startRecord(RecordType.DOCUMENT_COLLECTION);
+		CatalogUpdate.writeString(out, dc.getShortname());
+		CatalogUpdate.writeString(out, dc.getLongname());
+		CatalogUpdate.writeString(out, dc.getDescription());
+		Set<String> runKeys = (dc.getRunKeys() == null) ? Collections.<String> emptySet() : dc.getRunKeys();
+		out.writeInt(runKeys.size());
+		for (String runKey : runKeys) {
+			CatalogUpdate.writeString(out, runKey);
+		}
+	}
+
+	private static void writeDocument(FrameBuilder frame, String docCollectionShortName, Document d)
+			throws IOException {
+		DataOutputStream out = frame.startRecord(RecordType.DOCUMENT);
+		CatalogUpdate.writeString(out, docCollectionShortName);
+		CatalogUpdate.writeString(out, d.getPmid());
+		CatalogUpdate.writeString(out, d.getPmcid());
+		CatalogUpdate.writeString(out, d.getLocalSourceFile().getAbsolutePath());
+		out.writeByte(d.getSourceFileType().ordinal() | CatalogUpdate.HAS_EXTENSION_FLAG);
+		CatalogUpdate.writeString(out, d.getJournal());
+		CatalogUpdate.writeString(out, d.getCitation());
+		CatalogUpdate.writeString(out,
+				(d.getLocalTextFile() == null) ? null : d.getLocalTextFile().getAbsolutePath());
+		CatalogUpdate.writeString(out, (d.getRemoteSourceFile() == null) ? null : d.getRemoteSourceFile().toString());
+		CatalogUpdate.writeString(out, d.getSourceFileLicense());
+		out.writeLong(d.getLocalSourceFileSize());
+		out.writeLong(d.getLocalTextFileSize());
+	}
+
+	private static void writeRunKey(FrameBuilder frame, RecordType type, String docCollectionShortName,
+			String runKey) throws IOException {
+		DataOutputStream out = frame.startRecord(type);
+		CatalogUpdate.writeString(out, docCollectionShortName);
+		CatalogUpdate.writeString(out, runKey);
+	}
+
+	private static void writeAnnotationPipeline(FrameBuilder frame, AnnotationPipeline ap) throws IOException {
+		DataOutputStream out = frame.startRecord(RecordType.ANNOTATION_PIPELINE);
+		CatalogUpdate.writeString(out, ap.getName());
+		CatalogUpdate.writeString(out, ap.getDescription());
+		CatalogUpdate.writeString(out, (ap.getPipelineCls() == null) ? null : ap.getPipelineCls().getName());
+		CatalogUpdate.writeString(out, ap.getVersion());
+	}
+
+	private static void writeDocumentState(FrameBuilder frame, DocumentEntry entry) throws IOException {
+		DataOutputStream out = frame.startRecord(RecordType.DOCUMENT_STATE);
+		CatalogUpdate.writeString(out, entry.document.getPmcid());
+		out.writeInt(entry.annotationOutputs.size());
+		for (AnnotationOutput ao : entry.annotationOutputs) {
+			CatalogUpdate.writeString(out, ao.getLocalAnnotationFile().getAbsolutePath());
+			CatalogUpdate.writeString(out, ao.getRunKey());
+			CatalogUpdate.writeString(out, DATE_FORMATTER.print(ao.getRunDate()));
+			out.writeInt(ao.getAnnotationCount());
+		}
+		CatalogUpdate.writeString(out, entry.errorPipelineKey);
+		CatalogUpdate.writeString(out, entry.errorComponentAtFault);
+		CatalogUpdate.writeString(out, entry.errorMessage);
+		CatalogUpdate.writeString(out, entry.errorStackTrace);
+	}
+
+	private static void writeRunStatus(FrameBuilder frame, String docCollectionShortName, String runKey,
+			RunStatus status, List<String> pmcids) throws IOException {
+		DataOutputStream out = frame.startRecord(RecordType.RUN_STATUS);
+		CatalogUpdate.writeString(out, docCollectionShortName);
+		CatalogUpdate.writeString(out, runKey);
+		out.writeByte(status.ordinal());
+		out.writeInt(pmcids.size());
+		for (String pmcid : pmcids) {
+			CatalogUpdate.writeString(out, pmcid);
+		}
+	}
+
+	/**
+	 * Applies each record in the frame to the in-memory catalog
+	 *
+	 * @param frame
+	 * @throws IOException
+	 */
+	private void applyFrame(byte[] frame) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+		while (in.available() > 0) {
+			RecordType type = RecordType.values()[in.readByte()];
+			switch (type) {
+			case DOCUMENT_COLLECTION:
+				applyDocumentCollection(in);
+				break;
+			case DOCUMENT:
+				applyDocument(in);
+				break;
+			case RUN_KEY:
+				getOrCreateRunStatusMap(CatalogUpdate.readString(in), CatalogUpdate.readString(in));
+				break;
+			case REMOVE_RUN_KEY:
+				applyRemoveRunKey(CatalogUpdate.readString(in), CatalogUpdate.readString(in));
+				break;
+			case REMOVE_RUN_KEY_COMPLETE:
+				annotationFilesToDelete
+						.remove(Arrays.asList(CatalogUpdate.readString(in), CatalogUpdate.readString(in)));
+				break;
+			case ANNOTATION_PIPELINE:
+				applyAnnotationPipeline(in);
+				break;
+			case UPDATE:
+				applyUpdate(CatalogUpdate.read(in));
+				break;
+			case REMOVE_DOCUMENT_COLLECTION:
+				applyRemoveDocumentCollection(CatalogUpdate.readString(in));
+				break;
+			case REMOVE_DOCUMENTS:
+				applyRemoveDocuments(in);
+				break;
+			case DOCUMENT_STATE:
+				applyDocumentState(in);
+				break;
+			case RUN_STATUS:
+				applyRunStatus(in);
+				break;
+			default:
+				throw new IllegalArgumentException("Unhandled record type: " + type.name() + ". Code changes required.");
+			}
+		}
+	}
+
+	/* ------------------------------------------------------------------ */
+	/* Record application */
+	/* ------------------------------------------------------------------ */
+
+	private void applyDocumentCollection(DataInputStream in) throws IOException {
+		DocumentCollection dc = new DocumentCollection(CatalogUpdate.readString(in), CatalogUpdate.readString(in),
+				CatalogUpdate.readString(in));
+		int runKeyCount = in.readInt();
+		for (int i = 0; i < runKeyCount; i++) {
+			dc.addRunKey(CatalogUpdate.readString(in));
+		}
+		if (!state.collections.containsKey(dc.getShortname())) {
+			state.collections.put(dc.getShortname(), dc);
+			state.members.put(dc.getShortname(), new LinkedHashSet<String>());
+			state.runStatus.put(dc.getShortname(), new HashMap<String, Map<RunStatus, Set<String>>>());
+			if (dc.getRunKeys() != null) {
+				for (String runKey : dc.getRunKeys()) {
+					getOrCreateRunStatusMap(dc.getShortname(), runKey);
+				}
+			}
+		}
+	}
+
+	private void applyDocument(DataInputStream in) throws IOException {
+		String shortname = CatalogUpdate.readString(in);
+		String pmid = CatalogUpdate.readString(in);
+		String pmcid = CatalogUpdate.readString(in);
+		File localSourceFile = new File(CatalogUpdate.readString(in));
+		int sourceFileTypeByte = in.readUnsignedByte();
+		FileType sourceFileType = FileType.values()[sourceFileTypeByte & ~CatalogUpdate.HAS_EXTENSION_FLAG];
+		String journal = CatalogUpdate.readString(in);
+		String citation = CatalogUpdate.readString(in);
+		String localTextFile = CatalogUpdate.readString(in);
+		String remoteSourceFile = CatalogUpdate.readString(in);
+		String sourceFileLicense = CatalogUpdate.readString(in);
+		/* file sizes are absent from records written before they were cataloged */
+		boolean hasFileSizes = (sourceFileTypeByte & CatalogUpdate.HAS_EXTENSION_FLAG) != 0;
+		long localSourceFileSize = hasFileSizes ? in.readLong() : -1;
+		long localTextFileSize = hasFileSizes ? in.readLong() : -1;
+
+		DocumentEntry entry = state.documents.get(pmcid);
+		if (entry == null) {
+			Document d = new Document(pmid, pmcid, localSourceFile, sourceFileType, journal, citation);
+			if (localTextFile != null) {
+				d.setLocalTextFile(new File(localTextFile));
+			}
+			if (remoteSourceFile != null) {
+				try {
+					d.setRemoteSourceFile(new URL(remoteSourceFile));
+				} catch (MalformedURLException e) {
+					logger.warn("Ignoring remote URL for document: PMID=" + pmid
+							+ ". Unable to retrieve invalid remote source URL from catalog: " + remoteSourceFile);
+				}
+			}
+			d.setSourceFileLicense(sourceFileLicense);
+			d.setLocalSourceFileSize(localSourceFileSize);
+			d.setLocalTextFileSize(localTextFileSize);
+			entry = new DocumentEntry(d);
+			state.documents.put(pmcid, entry);
+			if (pmid != null) {
+				state.pmidToPmcid.put(pmid, pmcid);
+			}
+		}
+		if (shortname != null && entry.collections.add(shortname)) {
+			state.members.get(shortname).add(pmcid);
+			/*
+			 * a new document is outstanding for any run-key already
+			 * registered. A document that was removed from the collection
+			 * and is added again keeps the status of its earlier outputs.
+			 */
+			for (Entry<String, Map<RunStatus, Set<String>>> e : state.runStatus.get(shortname).entrySet()) {
+				e.getValue().get(deriveRunStatus(entry, e.getKey())).add(pmcid);
+			}
+		}
+	}
+
+	private void applyDocumentState(DataInputStream in) throws IOException {
+		DocumentEntry entry = state.documents.get(CatalogUpdate.readString(in));
+		int aoCount = in.readInt();
+		for (int i = 0; i < aoCount; i++) {
+			File localAnnotationFile = new File(CatalogUpdate.readString(in));
+			String runKey = CatalogUpdate.readString(in);
+			String runDate = CatalogUpdate.readString(in);
+			entry.annotationOutputs.add(new AnnotationOutput(localAnnotationFile, runKey,
+					DATE_FORMATTER.parseDateTime(runDate), in.readInt()));
+		}
+		entry.errorPipelineKey = CatalogUpdate.readString(in);
+		entry.errorComponentAtFault = CatalogUpdate.readString(in);
+		entry.errorMessage = CatalogUpdate.readString(in);
+		entry.errorStackTrace = CatalogUpdate.readString(in);
+	}
+
+	/**
+	 * Moves the listed documents to the specified run status
+	 */
+	private void applyRunStatus(DataInputStream in) throws IOException {
+		Map<RunStatus, Set<String>> statusMap = getOrCreateRunStatusMap(CatalogUpdate.readString(in),
+				CatalogUpdate.readString(in));
+		RunStatus status = RunStatus.values()[in.readByte()];
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			String pmcid = CatalogUpdate.readString(in);
+			for (Entry<RunStatus, Set<String>> e : statusMap.entrySet()) {
+				if (e.getKey() == status) {
+					e.getValue().add(pmcid);
+				} else {
+					e.getValue().remove(pmcid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param shortname
+	 * @param runKey
+	 * @return the run status map for the specified run-key. If the run-key is
+	 *         not yet registered with the document collection, it is
+	 *         registered and the run status of each member document is
+	 *         derived from its annotation outputs and logged error.
+	 */
+	private Map<RunStatus, Set<String>> getOrCreateRunStatusMap(String shortname, String runKey) {
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(shortname);
+		Map<RunStatus, Set<String>> statusMap = runKeyMap.get(runKey);
+		if (statusMap == null) {
+			statusMap = new EnumMap<RunStatus, Set<String>>(RunStatus.class);
+			for (RunStatus status : RunStatus.values()) {
+				statusMap.put(status, new LinkedHashSet<String>());
+			}
+			for (String pmcid : state.members.get(shortname)) {
+				statusMap.get(deriveRunStatus(state.documents.get(pmcid), runKey)).add(pmcid);
+			}
+			runKeyMap.put(runKey, statusMap);
+			state.collections.get(shortname).addRunKey(runKey);
+		}
+		return statusMap;
+	}
+
+	private static RunStatus deriveRunStatus(DocumentEntry entry, String runKey) {
+		for (AnnotationOutput ao : entry.annotationOutputs) {
+			if (runKey.equals(ao.getRunKey())) {
+				return RunStatus.COMPLETE;
+			}
+		}
+		if (runKey.equals(entry.errorPipelineKey)) {
+			return RunStatus.ERROR;
+		}
+		return RunStatus.OUTSTANDING;
+	}
+
+	private void setRunStatus(DocumentEntry entry, String runKey, RunStatus status) {
+		String pmcid = entry.document.getPmcid();
+		for (String shortname : entry.collections) {
+			for (Entry<RunStatus, Set<String>> e : getOrCreateRunStatusMap(shortname, runKey).entrySet()) {
+				if (e.getKey() == status) {
+					e.getValue().add(pmcid);
+				} else {
+					e.getValue().remove(pmcid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Only documents that are complete, or in error, for the run-key can have
+	 * annotation outputs for the run-key, so other members are not visited.
+	 * The annotation files to delete are added to
+	 * {@link #annotationFilesToDelete}, including when the log is replayed, so
+	 * that a removal interrupted before its files were deleted is resumed.
+	 */
+	private void applyRemoveRunKey(String shortname, String runKey) {
+		DocumentCollection dc = state.collections.get(shortname);
+		if (dc == null) {
+			return;
+		}
+		List<File> filesToDelete = annotationFilesToDelete.computeIfAbsent(Arrays.asList(shortname, runKey),
+				k -> new ArrayList<File>());
+		if (dc.getRunKeys() != null) {
+			dc.getRunKeys().remove(runKey);
+		}
+		Map<RunStatus, Set<String>> statusMap = state.runStatus.get(shortname).remove(runKey);
+		if (statusMap == null) {
+			return;
+		}
+		for (RunStatus status : EnumSet.of(RunStatus.COMPLETE, RunStatus.ERROR)) {
+			for (String pmcid : statusMap.get(status)) {
+				for (Iterator<AnnotationOutput> aoIter = state.documents.get(pmcid).annotationOutputs
+						.iterator(); aoIter.hasNext();) {
+					AnnotationOutput ao = aoIter.next();
+					if (runKey.equals(ao.getRunKey())) {
+						aoIter.remove();
+						filesToDelete.add(ao.getLocalAnnotationFile());
+					}
+				}
+			}
+		}
+	}
+
+	private void applyAnnotationPipeline(DataInputStream in) throws IOException {
+		String name = CatalogUpdate.readString(in);
+		String description = CatalogUpdate.readString(in);
+		String className = CatalogUpdate.readString(in);
+		String version = CatalogUpdate.readString(in);
+		Class<? extends PipelineBase> pipelineCls = null;
+		if (className != null) {
+			try {
+				pipelineCls = Class.forName(className).asSubclass(PipelineBase.class);
+			} catch (ClassNotFoundException e) {
+				logger.warn("Class Not Found for pipeline: " + className + ". Pipeline class set to null.");
+			}
+		}
+		state.pipelines.add(new AnnotationPipeline(name, description, pipelineCls, version));
+	}
+
+	private void applyUpdate(CatalogUpdate update) {
+		DocumentEntry entry = getDocumentEntry(update.getIdType(), update.getDocumentId());
+		if (entry == null) {
+			if (!replaying) {
+				logger.warn("Skipping catalog update (" + update.getType().name() + ") for document: "
+						+ update.getDocumentId() + " as it is not in the catalog.");
+			}
+			return;
+		}
+		Document d = entry.document;
+		switch (update.getType()) {
+		case ADD_FILE_VERSION:
+			applyFileVersion(d, update);
+			break;
+		case ADD_ANNOTATION_OUTPUT:
+			AnnotationOutput ao = update.getAnnotationOutput();
+			/*
+			 * an annotation output is identified by its run-key and file, so
+			 * re-applying an update, e.g. when a write-behind journal is
+			 * replayed, replaces the existing output rather than duplicating it
+			 */
+			entry.annotationOutputs.removeIf(existing -> existing.getRunKey().equals(ao.getRunKey())
+					&& existing.getLocalAnnotationFile().equals(ao.getLocalAnnotationFile()));
+			entry.annotationOutputs.add(ao);
+			setRunStatus(entry, ao.getRunKey(), RunStatus.COMPLETE);
+			break;
+		case LOG_ERROR:
+			entry.errorPipelineKey = update.getPipelineKey();
+			entry.errorComponentAtFault = update.getComponentAtFault();
+			entry.errorMessage = update.getErrorMessage();
+			if (update.getStackTrace() != null) {
+				entry.errorStackTrace = update.getStackTrace();
+			}
+			setRunStatus(entry, update.getPipelineKey(), RunStatus.ERROR);
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Unhandled update type: " + update.getType().name() + ". Code changes required.");
+		}
+	}
+
+	private void applyFileVersion(Document d, CatalogUpdate update) {
+		switch (update.getFileVersion()) {
+		case SOURCE:
+			/* the local source file is cataloged when the document is added */
+			if (!replaying && !update.getFile().equals(d.getLocalSourceFile())) {
+				logger.error("Document (" + d.getPmcid() + ") already has a local source file ("
+						+ d.getLocalSourceFile().getAbsolutePath() + "). Cannot assign another: "
+						+ update.getFile().getAbsolutePath());
+			}
+			break;
+		case LOCAL_TEXT:
+			if (d.getLocalTextFile() == null) {
+				d.setLocalTextFile(update.getFile());
+				d.setLocalTextFileSize(update.getFileSize());
+			} else if (d.getLocalTextFile().equals(update.getFile())) {
+				/*
+				 * re-cataloging the same file, e.g. when a document is
+				 * reprocessed, is a no-op
+				 */
+			} else if (!replaying) {
+				logger.error("Document (" + d.getPmcid() + ") already has a local text file ("
+						+ d.getLocalTextFile().getAbsolutePath() + "). Cannot assign another: "
+						+ update.getFile().getAbsolutePath());
+			}
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Unhandled FileVersion: " + update.getFileVersion().name() + ". Code changes required.");
+		}
+	}
+
+	private void applyRemoveDocumentCollection(String shortname) {
+		state.collections.remove(shortname);
+		state.runStatus.remove(shortname);
+		Set<String> memberPmcids = state.members.remove(shortname);
+		if (memberPmcids != null) {
+			for (String pmcid : memberPmcids) {
+				state.documents.get(pmcid).collections.remove(shortname);
+			}
+		}
+	}
+
+	private void applyRemoveDocuments(DataInputStream in) throws IOException {
+		String shortname = CatalogUpdate.readString(in);
+		int count = in.readInt();
+		Set<String> memberPmcids = state.members.get(shortname);
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(shortname);
+		for (int i = 0; i < count; i++) {
+			String pmcid = CatalogUpdate.readString(in);
+			if (memberPmcids != null && memberPmcids.remove(pmcid)) {
+				state.documents.get(pmcid).collections.remove(shortname);
+				for (Map<RunStatus, Set<String>> statusMap : runKeyMap.values()) {
+					for (Set<String> pmcids : statusMap.values()) {
+						pmcids.remove(pmcid);
+					}
+				}
+			}
+		}
+	}
+
+	private DocumentEntry getDocumentEntry(ExternalIdentifierType idType, String documentId) {
+		if (documentId.endsWith(".nxml.gz")) {
+			documentId = StringUtil.removeSuffix(documentId, ".nxml.gz");
+		} else if (documentId.endsWith(".nxml.gz.txt.gz")) {
+			documentId = StringUtil.removeSuffix(documentId, ".nxml.gz.txt.gz");
+		}
+		switch (idType) {
+		case PMC:
+			return state.documents.get(documentId);
+		case PUBMED:
+			String pmcid = state.pmidToPmcid.get(documentId);
+			return (pmcid == null) ? null : state.documents.get(pmcid);
+		default:
+			throw new UnsupportedOperationException("Document retrieval using identifiers of type " + idType.name()
+					+ " is not yet supported. Code revision is necessary.");
+		}
+	}
+
+	/**
+	 * @param d
+	 * @return a copy of the document so that callers cannot modify the catalog
+	 */
+	private static Document copy(Document d) {
+		Document copy = new Document(d.getPmid(), d.getPmcid(), d.getLocalSourceFile(), d.getSourceFileType(),
+				d.getJournal(), d.getCitation());
+		copy.setLocalTextFile(d.getLocalTextFile());
+		copy.setRemoteSourceFile(d.getRemoteSourceFile());
+		copy.setSourceFileLicense(d.getSourceFileLicense());
+		copy.setLocalTextFileSize(d.getLocalTextFileSize());
+		copy.setLocalSourceFileSize(d.getLocalSourceFileSize());
+		return copy;
+	}
+
+	private static DocumentCollection copy(DocumentCollection dc) {
+		DocumentCollection copy = new DocumentCollection(dc.getShortname(), dc.getLongname(), dc.getDescription());
+		if (dc.getRunKeys() != null) {
+			dc.getRunKeys().forEach(copy::addRunKey);
+		}
+		return copy;
+	}
+
+	/* ------------------------------------------------------------------ */
+	/* RunCatalog */
+	/* ------------------------------------------------------------------ */
+
+	@Override
+	public synchronized void addDocumentCollection(DocumentCollection dc) {
+		if (state.collections.containsKey(dc.getShortname())) {
+			return;
+		}
+		try {
+			FrameBuilder frame = new FrameBuilder();
+			writeDocumentCollection(frame, dc);
+			write(frame.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+	}
+
+	@Override
+	public synchronized void addDocument(Document d, DocumentCollection dc) {
+		addDocuments(CollectionsUtil.createList(d).iterator(), dc, 1);
+	}
+
+	/**
+	 * Each batch of documents is appended to the log as a single write
+	 */
+	@Override
+	public synchronized int addDocuments(Iterator<Document> documents, DocumentCollection dc, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be > 0. Value provided: " + batchSize);
+		}
+		addDocumentCollection(dc);
+		int count = 0;
+		long startTime = System.currentTimeMillis();
+		try {
+			while (documents.hasNext()) {
+				FrameBuilder frame = new FrameBuilder();
+				for (int i = 0; i < batchSize && documents.hasNext(); i++) {
+					writeDocument(frame, dc.getShortname(), documents.next());
+					count++;
+				}
+				write(frame.toByteArray());
+				if (batchSize > 1) {
+					long elapsedTime = System.currentTimeMillis() - startTime;
+					logger.info("Documents added to catalog: " + count + " ("
+							+ RunCatalogUtil.docsPerSecond(count, elapsedTime) + " docs/sec)");
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+		return count;
+	}
+
+	@Override
+	public void addFileVersionToDocument(Document d, File newFile, FileVersion fileVersion) {
+		applyUpdates(CollectionsUtil.createList(CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC,
+				d.getPmcid(), newFile, fileVersion, RunCatalogUtil.getFileSize(newFile))));
+	}
+
+	@Override
+	public synchronized void addAnnotationPipeline(AnnotationPipeline ap) {
+		try {
+			FrameBuilder frame = new FrameBuilder();
+			writeAnnotationPipeline(frame, ap);
+			write(frame.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+	}
+
+	@Override
+	public void addAnnotationOutput(Document d, AnnotationOutput ao) {
+		applyUpdates(
+				CollectionsUtil.createList(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, d.getPmcid(), ao)));
+	}
+
+	/**
+	 * Appends all updates to the log as a single write. Updates that reference
+	 * a document that is not in the catalog are logged and skipped.
+	 */
+	@Override
+	public synchronized void applyUpdates(List<CatalogUpdate> updates) {
+		if (updates.isEmpty()) {
+			return;
+		}
+		try {
+			FrameBuilder frame = new FrameBuilder();
+			for (CatalogUpdate update : updates) {
+				update.write(frame.startRecord(RecordType.UPDATE));
+			}
+			write(frame.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+	}
+
+	@Override
+	public void logError(String pipelineKey, ExternalIdentifierType idType, String documentId, String componentAtFault,
+			String errorMessage, String stackTrace) {
+		applyUpdates(CollectionsUtil.createList(
+				CatalogUpdate.logError(pipelineKey, idType, documentId, componentAtFault, errorMessage, stackTrace)));
+	}
+
+	@Override
+	public List<File> getFilesToProcess(DocumentCollection collection, String runKey) {
+		List<File> filesToProcess = new ArrayList<File>();
+		try (DocumentCursor docCursor = getDocuments(collection.getShortname(), runKey, RunStatus.OUTSTANDING,
+				FILES_TO_PROCESS_PAGE_SIZE)) {
+			while (docCursor.hasNext()) {
+				filesToProcess.add(docCursor.next().getLocalSourceFile());
+			}
+		}
+		return filesToProcess;
+	}
+
+	@Override
+	public Map<String, Map<RunStatus, Set<Document>>> getRunsMap(DocumentCollection dc) {
+		return getRunsMap(dc.getShortname());
+	}
+
+	@Override
+	public synchronized Map<String, Map<RunStatus, Set<Document>>> getRunsMap(String docCollectionShortName) {
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(docCollectionShortName);
+		if (runKeyMap == null) {
+			logger.warn("Cannot return runs map for collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			return null;
+		}
+		Map<String, Map<RunStatus, Set<Document>>> map = new HashMap<String, Map<RunStatus, Set<Document>>>();
+		for (Entry<String, Map<RunStatus, Set<String>>> runKeyEntry : runKeyMap.entrySet()) {
+			Map<RunStatus, Set<Document>> statusMap = new HashMap<RunStatus, Set<Document>>();
+			for (Entry<RunStatus, Set<String>> statusEntry : runKeyEntry.getValue().entrySet()) {
+				for (String pmcid : statusEntry.getValue()) {
+					CollectionsUtil.addToOne2ManyUniqueMap(statusEntry.getKey(),
+							copy(state.documents.get(pmcid).document), statusMap);
+				}
+			}
+			map.put(runKeyEntry.getKey(), statusMap);
+		}
+		return map;
+	}
+
+	/**
+	 * The PMCIDs of the matching documents are captured when the cursor is
+	 * created; documents are copied from the catalog one page at a time.
+	 */
+	@Override
+	public synchronized DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status,
+			int pageSize) {
+		return getDocuments(docCollectionShortName, runKey, status, Shard.ALL, pageSize);
+	}
+
+	@Override
+	public synchronized DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status,
+			Shard shard, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be > 0. Value provided: " + pageSize);
+		}
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(docCollectionShortName);
+		List<String> pmcids;
+		if (runKeyMap == null) {
+			logger.warn("Cannot return documents for collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			pmcids = Collections.emptyList();
+		} else if (!runKeyMap.containsKey(runKey)) {
+			logger.warn("Cannot return documents for run-key: " + runKey
+					+ " as it has not been registered with collection: " + docCollectionShortName);
+			pmcids = Collections.emptyList();
+		} else if (shard.isAll()) {
+			pmcids = new ArrayList<String>(runKeyMap.get(runKey).get(status));
+		} else {
+			pmcids = new ArrayList<String>();
+			for (String pmcid : runKeyMap.get(runKey).get(status)) {
+				if (shard.contains(pmcid)) {
+					pmcids.add(pmcid);
+				}
+			}
+		}
+		return new AppendLogDocumentCursor(pmcids, pageSize);
+	}
+
+	/**
+	 * The PMCIDs of the matching documents are captured when the cursor is
+	 * created. A document outstanding for several of the run-keys is captured
+	 * for the first of them only.
+	 */
+	@Override
+	public synchronized DocumentCursor getDocumentsOutstandingForAny(String docCollectionShortName,
+			List<String> runKeys, Shard shard, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be > 0. Value provided: " + pageSize);
+		}
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(docCollectionShortName);
+		List<String> pmcids = new ArrayList<String>();
+		if (runKeyMap == null) {
+			logger.warn("Cannot return documents for collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			return new AppendLogDocumentCursor(pmcids, pageSize);
+		}
+		List<Set<String>> previousOutstanding = new ArrayList<Set<String>>();
+		for (String runKey : runKeys) {
+			if (!runKeyMap.containsKey(runKey)) {
+				logger.warn("Cannot return documents for run-key: " + runKey
+						+ " as it has not been registered with collection: " + docCollectionShortName);
+				continue;
+			}
+			Set<String> outstanding = runKeyMap.get(runKey).get(RunStatus.OUTSTANDING);
+			for (String pmcid : outstanding) {
+				if (shard.contains(pmcid) && !isContainedInAny(pmcid, previousOutstanding)) {
+					pmcids.add(pmcid);
+				}
+			}
+			previousOutstanding.add(outstanding);
+		}
+		return new AppendLogDocumentCursor(pmcids, pageSize);
+	}
+
+	private static boolean isContainedInAny(String pmcid, List<Set<String>> pmcidSets) {
+		for (Set<String> pmcidSet : pmcidSets) {
+			if (pmcidSet.contains(pmcid)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public synchronized DocumentCursor getDocuments(String docCollectionShortName, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be > 0. Value provided: " + pageSize);
+		}
+		Set<String> memberPmcids = state.members.get(docCollectionShortName);
+		List<String> pmcids;
+		if (memberPmcids == null) {
+			logger.warn("Cannot return documents for collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			pmcids = Collections.emptyList();
+		} else {
+			pmcids = new ArrayList<String>(memberPmcids);
+		}
+		return new AppendLogDocumentCursor(pmcids, pageSize);
+	}
+
+	private class AppendLogDocumentCursor implements DocumentCursor {
+
+		private final List<String> pmcids;
+		private final int pageSize;
+		private final List<Document> page;
+		private int pmcidIndex = 0;
+		private int pageIndex = 0;
+
+		public AppendLogDocumentCursor(List<String> pmcids, int pageSize) {
+			this.pmcids = pmcids;
+			this.pageSize = pageSize;
+			this.page = new ArrayList<Document>(Math.min(pageSize, pmcids.size()));
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (pageIndex == page.size() && pmcidIndex < pmcids.size()) {
+				fillPage();
+			}
+			return pageIndex < page.size();
+		}
+
+		@Override
+		public Document next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.get(pageIndex++);
+		}
+
+		private void fillPage() {
+			page.clear();
+			pageIndex = 0;
+			synchronized (AppendLogRunCatalog.this) {
+				while (page.size() < pageSize && pmcidIndex < pmcids.size()) {
+					DocumentEntry entry = state.documents.get(pmcids.get(pmcidIndex++));
+					if (entry != null) {
+						page.add(copy(entry.document));
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			pmcidIndex = pmcids.size();
+			page.clear();
+			pageIndex = 0;
+		}
+	}
+
+	@Override
+	public synchronized Map<String, Map<RunStatus, Integer>> getRunStatusCounts(String docCollectionShortName) {
+		Map<String, Map<RunStatus, Integer>> map = new HashMap<String, Map<RunStatus, Integer>>();
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(docCollectionShortName);
+		if (runKeyMap != null) {
+			for (Entry<String, Map<RunStatus, Set<String>>> runKeyEntry : runKeyMap.entrySet()) {
+				Map<RunStatus, Integer> countMap = new HashMap<RunStatus, Integer>();
+				for (Entry<RunStatus, Set<String>> statusEntry : runKeyEntry.getValue().entrySet()) {
+					countMap.put(statusEntry.getKey(), statusEntry.getValue().size());
+				}
+				map.put(runKeyEntry.getKey(), countMap);
+			}
+		}
+		return map;
+	}
+
+	@Override
+	public synchronized Map<Integer, Map<RunStatus, Integer>> getShardRunStatusCounts(String docCollectionShortName,
+			String runKey, int shardCount) {
+		Map<Integer, Map<RunStatus, Integer>> map = RunCatalogUtil.initShardRunStatusCounts(shardCount);
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(docCollectionShortName);
+		if (runKeyMap == null || !runKeyMap.containsKey(runKey)) {
+			logger.warn("Cannot return shard run status counts for run-key: " + runKey
+					+ " as it has not been registered with collection: " + docCollectionShortName);
+			return map;
+		}
+		for (Entry<RunStatus, Set<String>> statusEntry : runKeyMap.get(runKey).entrySet()) {
+			for (String pmcid : statusEntry.getValue()) {
+				map.get(Shard.getShardId(pmcid, shardCount)).merge(statusEntry.getKey(), 1, Integer::sum);
+			}
+		}
+		return map;
+	}
+
+	@Override
+	public synchronized Set<File> getAnnotationFilesForDocumentId(ExternalIdentifierType idType, String documentId,
+			String runKey) {
+		Set<File> annotFiles = new HashSet<File>();
+		DocumentEntry entry = getDocumentEntry(idType, documentId);
+		if (entry != null) {
+			for (AnnotationOutput ao : entry.annotationOutputs) {
+				annotFiles.add(ao.getLocalAnnotationFile());
+			}
+		}
+		return annotFiles;
+	}
+
+	@Override
+	public synchronized Document getDocumentById(ExternalIdentifierType idType, String documentId) {
+		DocumentEntry entry = getDocumentEntry(idType, documentId);
+		return (entry == null) ? null : copy(entry.document);
+	}
+
+	@Override
+	public synchronized Set<DocumentCollection> getDocumentCollections() {
+		Set<DocumentCollection> dcSet = new HashSet<DocumentCollection>();
+		for (DocumentCollection dc : state.collections.values()) {
+			dcSet.add(copy(dc));
+		}
+		return dcSet;
+	}
+
+	@Override
+	public synchronized Set<AnnotationPipeline> getAnnotationPipelines() {
+		return new HashSet<AnnotationPipeline>(state.pipelines);
+	}
+
+	@Override
+	public synchronized DocumentCollection getDocumentCollectionByShortName(String shortname) {
+		DocumentCollection dc = state.collections.get(shortname);
+		return (dc == null) ? null : copy(dc);
+	}
+
+	@Override
+	public synchronized List<String> getDocumentCollectionRunKeys(String docCollectionShortName) {
+		DocumentCollection dc = state.collections.get(docCollectionShortName);
+		if (dc != null && dc.getRunKeys() != null) {
+			return new ArrayList<String>(dc.getRunKeys());
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Registers the run-key with the document collection and derives the run
+	 * status of each member document for the run-key. This method is
+	 * idempotent, so it can be called at the start of each run.
+	 */
+	@Override
+	public synchronized void addRunKeyToDocumentCollection(String docCollectionShortName, String runKey) {
+		Map<String, Map<RunStatus, Set<String>>> runKeyMap = state.runStatus.get(docCollectionShortName);
+		if (runKeyMap == null) {
+			throw new IllegalArgumentException("Cannot register run-key: " + runKey
+					+ " as there is no document collection named: " + docCollectionShortName);
+		}
+		if (runKeyMap.containsKey(runKey)) {
+			return;
+		}
+		writeRunKeyRecord(RecordType.RUN_KEY, docCollectionShortName, runKey);
+	}
+
+	/**
+	 * Unregisters the run-key and removes the annotation outputs for the
+	 * run-key from each member document. The annotation files are then deleted
+	 * in parallel, after which the removal is logged as complete. If the
+	 * process stops before then, the deletion is resumed when the catalog is
+	 * next opened.
+	 */
+	@Override
+	public synchronized void removeRunKeyFromDocumentCollection(String docCollectionShortName, String runKey) {
+		writeRunKeyRecord(RecordType.REMOVE_RUN_KEY, docCollectionShortName, runKey);
+		deleteAnnotationFiles(docCollectionShortName, runKey);
+	}
+
+	/**
+	 * Deletes the annotation files of run-keys whose removal was logged but
+	 * not completed
+	 */
+	private void resumeRunKeyRemovals() {
+		for (List<String> key : new ArrayList<List<String>>(annotationFilesToDelete.keySet())) {
+			logger.info("Resuming removal of run-key: " + key.get(1));
+			deleteAnnotationFiles(key.get(0), key.get(1));
+		}
+	}
+
+	private void deleteAnnotationFiles(String docCollectionShortName, String runKey) {
+		List<File> files = annotationFilesToDelete.get(Arrays.asList(docCollectionShortName, runKey));
+		try (ParallelFileDeleter deleter = new ParallelFileDeleter(storage)) {
+			deleter.delete(files).join();
+			logger.info("Removed run-key: " + runKey + ". Deleted " + deleter.getDeletedCount() + " annotation files.");
+		}
+		writeRunKeyRecord(RecordType.REMOVE_RUN_KEY_COMPLETE, docCollectionShortName, runKey);
+	}
+
+	private void writeRunKeyRecord(RecordType type, String docCollectionShortName, String runKey) {
+		try {
+			FrameBuilder frame = new FrameBuilder();
+			writeRunKey(frame, type, docCollectionShortName, runKey);
+			write(frame.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+	}
+
+	@Override
+	public synchronized int getDocumentCount(DocumentCollection dc) {
+		Set<String> memberPmcids = state.members.get(dc.getShortname());
+		return (memberPmcids == null) ? 0 : memberPmcids.size();
+	}
+
+	/**
+	 * Removes the documents from the collection and from its run status sets
+	 * using a single log write
+	 */
+	@Override
+	public synchronized int removeDocumentsFromCollection(String docCollectionShortName, List<String> pmcids) {
+		Set<String> memberPmcids = state.members.get(docCollectionShortName);
+		if (memberPmcids == null) {
+			logger.warn("Cannot remove documents from collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			return 0;
+		}
+		List<String> toRemove = new ArrayList<String>(pmcids.size());
+		for (String pmcid : pmcids) {
+			if (memberPmcids.contains(pmcid)) {
+				toRemove.add(pmcid);
+			}
+		}
+		if (toRemove.isEmpty()) {
+			return 0;
+		}
+		try {
+			FrameBuilder frame = new FrameBuilder();
+			DataOutputStream out = frame.startRecord(RecordType.REMOVE_DOCUMENTS);
+			CatalogUpdate.writeString(out, docCollectionShortName);
+			out.writeInt(toRemove.size());
+			for (String pmcid : toRemove) {
+				CatalogUpdate.writeString(out, pmcid);
+			}
+			write(frame.toByteArray());
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+		logger.info("Removed " + toRemove.size() + " documents from collection: " + docCollectionShortName);
+		return toRemove.size();
+	}
+
+	@Override
+	public synchronized void removeEmptyDocumentCollections() {
+		try {
+			FrameBuilder frame = new FrameBuilder();
+			for (Entry<String, Set<String>> entry : state.members.entrySet()) {
+				if (entry.getValue().isEmpty()) {
+					logger.warn("Deleting empty document collection: " + entry.getKey());
+					CatalogUpdate.writeString(frame.startRecord(RecordType.REMOVE_DOCUMENT_COLLECTION),
+							entry.getKey());
+				}
+			}
+			byte[] bytes = frame.toByteArray();
+			if (bytes.length > 0) {
+				write(bytes);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode run catalog write.", e);
+		}
+	}
+
+}
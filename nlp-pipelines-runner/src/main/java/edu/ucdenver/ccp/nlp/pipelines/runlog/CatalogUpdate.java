@@ -0,0 +1,176 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+import lombok.Data;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+
+/**
+ * A single write to the {@link RunCatalog}. Updates are applied in batches
+ * using {@link RunCatalog#applyUpdates(java.util.List)} and can be written to,
+ * and read from, a binary stream, e.g. a journal file.
+ */
+@Data
+public class CatalogUpdate implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public enum UpdateType {
+		ADD_FILE_VERSION, ADD_ANNOTATION_OUTPUT, LOG_ERROR
+	}
+
+	private final UpdateType type;
+	private final ExternalIdentifierType idType;
+	private final String documentId;
+
+	/* ADD_FILE_VERSION */
+	private File file;
+	private FileVersion fileVersion;
+	private long fileSize = -1;
+
+	/* ADD_ANNOTATION_OUTPUT */
+	private AnnotationOutput annotationOutput;
+
+	/* LOG_ERROR */
+	private String pipelineKey;
+	private String componentAtFault;
+	private String errorMessage;
+	private String stackTrace;
+
+	public static CatalogUpdate addFileVersion(ExternalIdentifierType idType, String documentId, File file,
+			FileVersion fileVersion) {
+		return addFileVersion(idType, documentId, file, fileVersion, -1);
+	}
+
+	/**
+	 * @param fileSize
+	 *            the size of the file in bytes, or -1 if unknown
+	 */
+	public static CatalogUpdate addFileVersion(ExternalIdentifierType idType, String documentId, File file,
+			FileVersion fileVersion, long fileSize) {
+		CatalogUpdate update = new CatalogUpdate(UpdateType.ADD_FILE_VERSION, idType, documentId);
+		update.setFile(file);
+		update.setFileVersion(fileVersion);
+		update.setFileSize(fileSize);
+		return update;
+	}
+
+	public static CatalogUpdate addAnnotationOutput(ExternalIdentifierType idType, String documentId,
+			AnnotationOutput ao) {
+		CatalogUpdate update = new CatalogUpdate(UpdateType.ADD_ANNOTATION_OUTPUT, idType, documentId);
+		update.setAnnotationOutput(ao);
+		return update;
+	}
+
+	public static CatalogUpdate logError(String pipelineKey, ExternalIdentifierType idType, String documentId,
+			String componentAtFault, String errorMessage, String stackTrace) {
+		CatalogUpdate update = new CatalogUpdate(UpdateType.LOG_ERROR, idType, documentId);
+		update.setPipelineKey(pipelineKey);
+		update.setComponentAtFault(componentAtFault);
+		update.setErrorMessage(errorMessage);
+		update.setStackTrace(stackTrace);
+		return update;
+	}
+
+	/**
+	 * Set on a byte-encoded enum ordinal to indicate that additional fields
+	 * follow. Streams written before those fields were added remain readable.
+	 */
+	static final int HAS_EXTENSION_FLAG = 0x80;
+
+	/**
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeByte(type.ordinal());
+		out.writeByte(idType.ordinal());
+		writeString(out, documentId);
+		switch (type) {
+		case ADD_FILE_VERSION:
+			writeString(out, file.getAbsolutePath());
+			if (fileSize < 0) {
+				out.writeByte(fileVersion.ordinal());
+			} else {
+				out.writeByte(fileVersion.ordinal() | HAS_EXTENSION_FLAG);
+				out.writeLong(fileSize);
+			}
+			break;
+		case ADD_ANNOTATION_OUTPUT:
+			writeString(out, annotationOutput.getLocalAnnotationFile().getAbsolutePath());
+			writeString(out, annotationOutput.getRunKey());
+			writeString(out, RunCatalog.DATE_FORMATTER.print(annotationOutput.getRunDate()));
+			out.writeInt(annotationOutput.getAnnotationCount());
+			break;
+		case LOG_ERROR:
+			writeString(out, pipelineKey);
+			writeString(out, componentAtFault);
+			writeString(out, errorMessage);
+			writeString(out, stackTrace);
+			break;
+		default:
+			throw new IllegalArgumentException("Unhandled update type: " + type.name() + ". Code changes required.");
+		}
+	}
+
+	/**
+	 * @param in
+	 * @return the next update read from the input stream
+	 * @throws IOException
+	 */
+	public static CatalogUpdate read(DataInputStream in) throws IOException {
+		UpdateType type = UpdateType.values()[in.readByte()];
+		ExternalIdentifierType idType = ExternalIdentifierType.values()[in.readByte()];
+		String documentId = readString(in);
+		switch (type) {
+		case ADD_FILE_VERSION:
+			File file = new File(readString(in));
+			int fileVersionByte = in.readUnsignedByte();
+			FileVersion fileVersion = FileVersion.values()[fileVersionByte & ~HAS_EXTENSION_FLAG];
+			long fileSize = ((fileVersionByte & HAS_EXTENSION_FLAG) == 0) ? -1 : in.readLong();
+			return addFileVersion(idType, documentId, file, fileVersion, fileSize);
+		case ADD_ANNOTATION_OUTPUT:
+			File localAnnotationFile = new File(readString(in));
+			String runKey = readString(in);
+			String runDate = readString(in);
+			int annotationCount = in.readInt();
+			return addAnnotationOutput(idType, documentId, new AnnotationOutput(localAnnotationFile, runKey,
+					RunCatalog.DATE_FORMATTER.parseDateTime(runDate), annotationCount));
+		case LOG_ERROR:
+			return logError(readString(in), idType, documentId, readString(in), readString(in), readString(in));
+		default:
+			throw new IllegalArgumentException("Unhandled update type: " + type.name() + ". Code changes required.");
+		}
+	}
+
+	/**
+	 * Writes a nullable string as a length-prefixed UTF-8 byte array. A length
+	 * of -1 indicates null.
+	 */
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
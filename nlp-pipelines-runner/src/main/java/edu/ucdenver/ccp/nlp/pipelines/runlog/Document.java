@@ -1,13 +1,15 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
 import java.io.File;
+import java.io.Serializable;
 import java.net.URL;
 import java.util.Set;
 
 import lombok.Data;
 
 @Data
-public class Document {
+public class Document implements Serializable {
+	private static final long serialVersionUID = 1L;
 //	private final Set<ExternalIdentifier> ids;
 	private final String pmid;
 	private final String pmcid;
@@ -18,6 +20,9 @@ public class Document {
 	private String sourceFileLicense;
 	private final String journal;
 	private final String citation;
+	/* file sizes in bytes, or -1 if not cataloged */
+	private long localTextFileSize = -1;
+	private long localSourceFileSize = -1;
 	
 	public enum FileVersion {
 		SOURCE, LOCAL_TEXT
@@ -1,12 +1,14 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
+import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
 
 import lombok.Data;
 
 @Data
-public class DocumentCollection {
+public class DocumentCollection implements Serializable {
+	private static final long serialVersionUID = 1L;
 	private final String shortname;
 	private final String longname;
 	private final String description;
@@ -0,0 +1,16 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.util.Iterator;
+
+/**
+ * An {@link Iterator} over {@link Document} instances that are retrieved
+ * lazily from a {@link RunCatalog}. The cursor may hold catalog resources
+ * (e.g. an open transaction) so it must be closed when no longer needed. It is
+ * closed automatically once it has been exhausted.
+ */
+public interface DocumentCursor extends Iterator<Document>, AutoCloseable {
+
+	@Override
+	public void close();
+
+}
@@ -0,0 +1,39 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentScheduler.DocumentOrder;
+
+/**
+ * Estimates, from the cataloged file sizes, the makespan of processing the
+ * outstanding documents for a run key in each {@link DocumentOrder} using a
+ * given number of pipeline instances
+ */
+public class Main_DocumentOrderReport_neo4j {
+
+	/**
+	 * @param args
+	 *            args[0] = neo4j catalog base directory <br>
+	 *            args[1] = document collection short name <br>
+	 *            args[2] = run key <br>
+	 *            args[3] = document file version, e.g. SOURCE, LOCAL_TEXT <br>
+	 *            args[4] = the number of pipeline instances (scaleup)
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		File catalogDirectory = new File(args[0]);
+		String docCollectionShortName = args[1];
+		String runKey = args[2];
+		FileVersion fileVersion = FileVersion.valueOf(args[3]);
+		int instanceCount = Integer.parseInt(args[4]);
+
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			RunCatalogUtil.getDocumentOrderReport(catalog, docCollectionShortName, runKey, fileVersion,
+					instanceCount);
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ * Migrates an existing catalog by indexing the run status of each document for
+ * every run-key registered with a document collection. Catalogs created prior
+ * to the introduction of the run status index must be migrated before use.
+ */
+public class Main_IndexRunStatus_neo4j {
+
+	/**
+	 * @param args
+	 *            args[0] = neo4j catalog base directory
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		File catalogDirectory = new File(args[0]);
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			catalog.indexRunStatus();
+			RunCatalogUtil.getCatalogRunSummary(catalog);
+		}
+	}
+
+}
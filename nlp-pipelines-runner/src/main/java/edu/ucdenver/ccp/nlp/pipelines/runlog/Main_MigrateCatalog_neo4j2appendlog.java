@@ -0,0 +1,87 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+
+/**
+ * Copies an existing Neo4j catalog to a new {@link AppendLogRunCatalog}. The
+ * run status counts of the two catalogs are compared once the copy is
+ * complete. The Neo4j catalog is not modified.
+ */
+public class Main_MigrateCatalog_neo4j2appendlog {
+
+	private static final Logger logger = Logger.getLogger(Main_MigrateCatalog_neo4j2appendlog.class);
+
+	private static final int BATCH_SIZE = 10000;
+
+	/**
+	 * @param args
+	 *            args[0] = neo4j catalog base directory<br>
+	 *            args[1] = append-log catalog directory (must not already
+	 *            contain a catalog)
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		File neo4jCatalogDirectory = new File(args[0]);
+		File appendLogCatalogDirectory = new File(args[1]);
+		if (new File(appendLogCatalogDirectory, "catalog.snapshot").exists()) {
+			throw new IllegalArgumentException(
+					"Target directory already contains a catalog: " + appendLogCatalogDirectory.getAbsolutePath());
+		}
+		try (Neo4jRunCatalog source = new Neo4jRunCatalog(neo4jCatalogDirectory);
+				AppendLogRunCatalog target = new AppendLogRunCatalog(appendLogCatalogDirectory)) {
+			migrate(source, target);
+			RunCatalogUtil.getCatalogRunSummary(target);
+		}
+	}
+
+	/**
+	 * @param source
+	 * @param target
+	 * @return true if the run status counts of the target match those of the
+	 *         source once the migration is complete
+	 */
+	public static boolean migrate(Neo4jRunCatalog source, AppendLogRunCatalog target) {
+		source.getAnnotationPipelines().forEach(target::addAnnotationPipeline);
+		boolean countsMatch = true;
+		for (DocumentCollection dc : source.getDocumentCollections()) {
+			logger.info("Migrating document collection: " + dc.getShortname());
+			/* run-keys are registered once all documents and their outputs have been copied */
+			DocumentCollection emptyDc = new DocumentCollection(dc.getShortname(), dc.getLongname(),
+					dc.getDescription());
+			target.addDocumentCollection(emptyDc);
+			int count = source.exportDocuments(dc.getShortname(), BATCH_SIZE, (documents, updates) -> {
+				target.addDocuments(documents.iterator(), emptyDc, documents.size());
+				target.applyUpdates(updates);
+			});
+			for (String runKey : source.getDocumentCollectionRunKeys(dc.getShortname())) {
+				target.addRunKeyToDocumentCollection(dc.getShortname(), runKey);
+			}
+			logger.info("Migrated " + count + " documents from collection: " + dc.getShortname());
+
+			Map<String, Map<RunStatus, Integer>> sourceCounts = source.getRunStatusCounts(dc.getShortname());
+			Map<String, Map<RunStatus, Integer>> targetCounts = target.getRunStatusCounts(dc.getShortname());
+			for (Entry<String, Map<RunStatus, Integer>> entry : sourceCounts.entrySet()) {
+				for (RunStatus status : RunStatus.values()) {
+					int sourceCount = entry.getValue().getOrDefault(status, 0);
+					int targetCount = targetCounts.get(entry.getKey()).getOrDefault(status, 0);
+					if (sourceCount != targetCount) {
+						logger.warn("Run status count mismatch for collection: " + dc.getShortname() + " run-key: "
+								+ entry.getKey() + " status: " + status.name() + ". Neo4j: " + sourceCount
+								+ " Append-log: " + targetCount);
+						countsMatch = false;
+					}
+				}
+			}
+		}
+		target.compact();
+		return countsMatch;
+	}
+
+}
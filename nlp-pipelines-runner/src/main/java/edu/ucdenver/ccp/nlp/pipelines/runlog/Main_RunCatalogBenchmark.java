@@ -0,0 +1,157 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.joda.time.DateTime;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil.CatalogType;
+
+/**
+ * Runs the same synthetic workload against each {@link RunCatalog}
+ * implementation and prints the elapsed time of each step side-by-side. The
+ * workload mirrors a pipeline run: open the catalog, load a document
+ * collection, register a run-key, retrieve the outstanding documents, log one
+ * annotation output per document (one update per call, as done by the
+ * RunCatalogAE), summarize the run status counts, and re-open the catalog.
+ */
+public class Main_RunCatalogBenchmark {
+
+	private static final String RUN_KEY = "BENCHMARK";
+	private static final int LOAD_BATCH_SIZE = 10000;
+	private static final int PAGE_SIZE = 10000;
+
+	/**
+	 * @param args
+	 *            args[0] = working directory in which catalogs are created
+	 *            (must not already exist)<br>
+	 *            args[1] = number of documents
+	 */
+	public static void main(String[] args) throws IOException {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+		File workDirectory = new File(args[0]);
+		int docCount = Integer.parseInt(args[1]);
+		if (workDirectory.exists()) {
+			throw new IllegalArgumentException("Working directory already exists: " + workDirectory.getAbsolutePath());
+		}
+		Files.createDirectories(workDirectory.toPath());
+
+		Map<CatalogType, Map<String, Long>> results = new LinkedHashMap<CatalogType, Map<String, Long>>();
+		for (CatalogType catalogType : CatalogType.values()) {
+			File catalogDirectory = new File(workDirectory, catalogType.name().toLowerCase());
+			results.put(catalogType, runBenchmark(catalogType, catalogDirectory, docCount));
+		}
+
+		System.out.println("-----------------  Run Catalog Benchmark (" + docCount + " documents)  -----------------");
+		StringBuilder header = new StringBuilder(String.format("%-24s", "step (ms)"));
+		for (CatalogType catalogType : results.keySet()) {
+			header.append(String.format("%14s", catalogType.name()));
+		}
+		System.out.println(header);
+		for (String step : results.values().iterator().next().keySet()) {
+			StringBuilder row = new StringBuilder(String.format("%-24s", step));
+			for (Map<String, Long> timings : results.values()) {
+				row.append(String.format("%14d", timings.get(step)));
+			}
+			System.out.println(row);
+		}
+	}
+
+	/**
+	 * @param catalogType
+	 * @param catalogDirectory
+	 * @param docCount
+	 * @return a mapping from workload step to the elapsed time of the step in
+	 *         milliseconds
+	 */
+	private static Map<String, Long> runBenchmark(CatalogType catalogType, File catalogDirectory, int docCount) {
+		Map<String, Long> timings = new LinkedHashMap<String, Long>();
+		DocumentCollection dc = new DocumentCollection("BENCHMARK", "Benchmark collection", "Synthetic documents");
+
+		long time = System.currentTimeMillis();
+		RunCatalog catalog = RunCatalogUtil.openRunCatalog(catalogType, catalogDirectory);
+		time = record(timings, "open (empty)", time);
+
+		catalog.addDocuments(new SyntheticDocumentIterator(docCount), dc, LOAD_BATCH_SIZE);
+		time = record(timings, "load documents", time);
+
+		catalog.addRunKeyToDocumentCollection(dc.getShortname(), RUN_KEY);
+		time = record(timings, "register run-key", time);
+
+		List<String> pmcids = new ArrayList<String>(docCount);
+		try (DocumentCursor docCursor = catalog.getDocuments(dc.getShortname(), RUN_KEY, RunStatus.OUTSTANDING,
+				PAGE_SIZE)) {
+			docCursor.forEachRemaining(d -> pmcids.add(d.getPmcid()));
+		}
+		time = record(timings, "get outstanding", time);
+
+		DateTime runDate = new DateTime();
+		for (String pmcid : pmcids) {
+			AnnotationOutput ao = new AnnotationOutput(new File("/benchmark/" + pmcid + ".ann"), RUN_KEY, runDate, 1);
+			List<CatalogUpdate> updates = new ArrayList<CatalogUpdate>(1);
+			updates.add(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, pmcid, ao));
+			catalog.applyUpdates(updates);
+		}
+		time = record(timings, "log outputs", time);
+
+		catalog.getRunStatusCounts(dc.getShortname());
+		time = record(timings, "status counts", time);
+
+		catalog.close();
+		time = record(timings, "close", time);
+
+		catalog = RunCatalogUtil.openRunCatalog(catalogType, catalogDirectory);
+		time = record(timings, "re-open", time);
+
+		for (Entry<String, Map<RunStatus, Integer>> entry : catalog.getRunStatusCounts(dc.getShortname()).entrySet()) {
+			if (entry.getValue().getOrDefault(RunStatus.COMPLETE, 0) != docCount) {
+				throw new IllegalStateException("Unexpected run status counts for " + catalogType.name() + ": "
+						+ entry.getValue());
+			}
+		}
+		catalog.close();
+		return timings;
+	}
+
+	private static long record(Map<String, Long> timings, String step, long startTime) {
+		long now = System.currentTimeMillis();
+		timings.put(step, now - startTime);
+		return now;
+	}
+
+	private static class SyntheticDocumentIterator implements Iterator<Document> {
+		private final int docCount;
+		private int index = 0;
+
+		public SyntheticDocumentIterator(int docCount) {
+			this.docCount = docCount;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < docCount;
+		}
+
+		@Override
+		public Document next() {
+			int id = index++;
+			return new Document(Integer.toString(id), "PMC" + id, new File("/benchmark/PMC" + id + ".nxml.gz"),
+					FileType.XML, "Journal", "Journal v1 1-10. 2017.");
+		}
+	}
+
+}
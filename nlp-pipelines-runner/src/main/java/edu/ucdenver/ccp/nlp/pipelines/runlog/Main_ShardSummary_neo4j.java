@@ -0,0 +1,31 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ * Prints per-shard progress for a run key that is being processed by multiple
+ * sharded pipeline deployments
+ */
+public class Main_ShardSummary_neo4j {
+
+	/**
+	 * @param args
+	 *            args[0] = neo4j catalog base directory <br>
+	 *            args[1] = document collection short name <br>
+	 *            args[2] = run key <br>
+	 *            args[3] = shard count
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		File catalogDirectory = new File(args[0]);
+		String docCollectionShortName = args[1];
+		String runKey = args[2];
+		int shardCount = Integer.parseInt(args[3]);
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			RunCatalogUtil.getShardRunSummary(catalog, docCollectionShortName, runKey, shardCount);
+		}
+	}
+
+}
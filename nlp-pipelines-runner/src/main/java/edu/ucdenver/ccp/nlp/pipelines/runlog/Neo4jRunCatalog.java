@@ -4,19 +4,29 @@ import java.io.Closeable;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.ResourceIterator;
@@ -30,6 +40,8 @@ import edu.ucdenver.ccp.common.string.StringUtil;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase;
 
 public class Neo4jRunCatalog implements RunCatalog, Closeable {
@@ -43,12 +55,17 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 
 	private final File catalogDirectory;
 
+	/**
+	 * holds the annotation files that are deleted when a run-key is removed
+	 */
+	private final DocumentStorage storage;
+
 	private static enum Relation implements RelationshipType {
-		HAS_MEMBER, HAS_ANNOTATIONS, CREATED_BY, HAS_DOCUMENT_IDENTIFIER
+		HAS_MEMBER, HAS_ANNOTATIONS, CREATED_BY, HAS_DOCUMENT_IDENTIFIER, HAS_RUN, HAS_STATUS_BUCKET, RUN_COMPLETE, RUN_OUTSTANDING, RUN_ERROR
 	}
 
 	private static enum NodeType {
-		DOCUMENT_COLLECTION, DOCUMENT, ANNOTATION_PIPELINE, ANNOTATION_OUTPUT, EXTERNAL_IDENTIFIER
+		DOCUMENT_COLLECTION, DOCUMENT, ANNOTATION_PIPELINE, ANNOTATION_OUTPUT, EXTERNAL_IDENTIFIER, RUN, RUN_STATUS_BUCKET
 	}
 
 	private static enum DocCollectionNodeProperty {
@@ -56,7 +73,7 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 	}
 
 	private static enum DocNodeProperty {
-		PMID, PMCID, LOCAL_TEXT_FILE, LOCAL_SOURCE_FILE, REMOTE_SOURCE_FILE, SOURCE_FILE_TYPE, SOURCE_FILE_LICENSE, JOURNAL, CITATION, ERROR_MESSAGE, ERROR_STACKTRACE, ERROR_COMPONENT_AT_FAULT, ERROR_PIPELINE_KEY
+		PMID, PMCID, LOCAL_TEXT_FILE, LOCAL_SOURCE_FILE, REMOTE_SOURCE_FILE, SOURCE_FILE_TYPE, SOURCE_FILE_LICENSE, JOURNAL, CITATION, ERROR_MESSAGE, ERROR_STACKTRACE, ERROR_COMPONENT_AT_FAULT, ERROR_PIPELINE_KEY, LOCAL_TEXT_FILE_SIZE, LOCAL_SOURCE_FILE_SIZE
 	}
 
 	private static enum AnnotPipelineNodeProperty {
@@ -71,13 +88,69 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 		SOURCE, ID
 	}
 
+	/**
+	 * A RUN node exists for each run-key registered with a document
+	 * collection. It has {@link #RUN_STATUS_BUCKET_COUNT} RUN_STATUS_BUCKET
+	 * nodes, whose ids are stored in STATUS_BUCKET_NODE_IDS, and each member
+	 * document is linked from the bucket selected by a hash of its PMCID via a
+	 * RUN_COMPLETE, RUN_OUTSTANDING, or RUN_ERROR relation. Documents with a
+	 * given status can therefore be retrieved without inspecting every member
+	 * of the collection, and because creating or deleting a relation locks
+	 * both of its nodes, concurrent status updates contend for a bucket node
+	 * rather than for the run node. STATUS_INDEXED is false until the status
+	 * of every member document has been linked. REMOVAL_PENDING is set once
+	 * removal of the run-key has started and remains set until the run node
+	 * has been deleted.
+	 */
+	private static enum RunNodeProperty {
+		RUN_KEY, STATUS_INDEXED, REMOVAL_PENDING, STATUS_BUCKET_NODE_IDS
+	}
+
 	boolean catalogIsUp = false;
 
+	private static final long INDEX_ONLINE_TIMEOUT_MINUTES = 10;
+
+	/**
+	 * The number of documents retrieved per page when the catalog is queried
+	 * for files to process
+	 */
+	private static final int FILES_TO_PROCESS_PAGE_SIZE = 10000;
+
+	/**
+	 * The number of documents per transaction when indexing the run status of
+	 * the members of a document collection
+	 */
+	private static final int RUN_STATUS_INDEX_BATCH_SIZE = 10000;
+
+	/**
+	 * The number of documents per transaction when removing a run-key from a
+	 * document collection
+	 */
+	private static final int RUN_KEY_REMOVAL_BATCH_SIZE = 10000;
+
+	/**
+	 * The number of status bucket nodes per run node. A power of two, so the
+	 * buckets of a shard can be selected directly for any shard count that is
+	 * also a power of two (see {@link Shard#getShardId(String, int)}).
+	 */
+	private static final int RUN_STATUS_BUCKET_COUNT = 256;
+
 	public Neo4jRunCatalog(File catalogDirectory) {
+		this(catalogDirectory, StorageType.FILE_SYSTEM.getStorage());
+	}
+
+	/**
+	 * @param catalogDirectory
+	 * @param storage
+	 *            the storage that holds the annotation files, which are deleted
+	 *            when a run-key is removed
+	 */
+	public Neo4jRunCatalog(File catalogDirectory, DocumentStorage storage) {
 		logger.info("==============================================================================================");
 		logger.info("================================== Initializing Run Catalog ==================================");
 		logger.info("==============================================================================================");
 		this.catalogDirectory = catalogDirectory;
+		this.storage = storage;
 		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(catalogDirectory);
 		catalogIsUp = true;
 		resetNeo4jConnection();
@@ -121,17 +194,42 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 		catalogIsUp = false;
 	}
 
+	/**
+	 * Creates the document and document collection indexes if they do not
+	 * already exist. This method is idempotent and waits for any newly
+	 * created indexes to come online before returning.
+	 */
 	public void initializeIndexes() {
 		resetNeo4jConnection();
 		try (Transaction tx = graphDb.beginTx()) {
 			Schema schema = graphDb.schema();
-			documentIndexByPmid = schema.indexFor(Label.label(NodeType.DOCUMENT.name())).on(DocNodeProperty.PMID.name())
-					.create();
-			documentIndexByPmcid = schema.indexFor(Label.label(NodeType.DOCUMENT.name()))
-					.on(DocNodeProperty.PMCID.name()).create();
+			documentIndexByPmid = getOrCreateIndex(schema, NodeType.DOCUMENT, DocNodeProperty.PMID.name());
+			documentIndexByPmcid = getOrCreateIndex(schema, NodeType.DOCUMENT, DocNodeProperty.PMCID.name());
+			getOrCreateIndex(schema, NodeType.DOCUMENT_COLLECTION, DocCollectionNodeProperty.SHORTNAME.name());
 			tx.success();
 		}
+		try (Transaction tx = graphDb.beginTx()) {
+			graphDb.schema().awaitIndexesOnline(INDEX_ONLINE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+			tx.success();
+		}
+	}
 
+	/**
+	 * @param schema
+	 * @param nodeType
+	 * @param propertyKey
+	 * @return the existing index for the specified node type and property, or
+	 *         a newly created index if one did not already exist
+	 */
+	private static IndexDefinition getOrCreateIndex(Schema schema, NodeType nodeType, String propertyKey) {
+		Label label = Label.label(nodeType.name());
+		for (IndexDefinition index : schema.getIndexes(label)) {
+			Iterator<String> keyIter = index.getPropertyKeys().iterator();
+			if (keyIter.hasNext() && keyIter.next().equals(propertyKey) && !keyIter.hasNext()) {
+				return index;
+			}
+		}
+		return schema.indexFor(label).on(propertyKey).create();
 	}
 
 	@Override
@@ -178,59 +276,539 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 		return dc;
 	}
 
+	/**
+	 * Registers the run-key with the document collection and indexes the run
+	 * status of each member document for the run-key. This method is
+	 * idempotent, so it can be called at the start of each run.
+	 */
 	@Override
 	public void addRunKeyToDocumentCollection(String shortname, String newKey) {
 		resetNeo4jConnection();
+		Node dcNode = getDocumentCollectionNodeByShortName(shortname);
+		/* an interrupted removal of the run-key must complete before it can be re-registered */
+		Node pendingRunNode;
 		try (Transaction tx = graphDb.beginTx()) {
-			Node dcNode = getDocumentCollectionNodeByShortName(shortname);
-			updateRunKeysForDocCollectionNode(newKey, dcNode);
+			pendingRunNode = getRunNode(dcNode, newKey, true);
+			tx.success();
+		}
+		if (pendingRunNode != null) {
+			removeRunNode(dcNode, pendingRunNode, newKey);
+		}
+		getOrCreateRunNode(dcNode, newKey);
+	}
+
+	/**
+	 * Creates the run status index for any run-key registered with a document
+	 * collection that has not yet been indexed, e.g. run-keys in catalogs
+	 * created prior to the introduction of the index. This method is
+	 * idempotent and resumes any indexing that was previously interrupted.
+	 */
+	public void indexRunStatus() {
+		for (DocumentCollection dc : getDocumentCollections()) {
+			if (dc.getRunKeys() != null) {
+				Node dcNode = getDocumentCollectionNodeByShortName(dc.getShortname());
+				for (String runKey : dc.getRunKeys()) {
+					getOrCreateRunNode(dcNode, runKey);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param dcNode
+	 * @param runKey
+	 * @return the run node for the specified run-key and document collection.
+	 *         If the run node does not exist, it is created, the run-key is
+	 *         added to the collection, and the run status of each member
+	 *         document is indexed.
+	 * @throws IllegalStateException
+	 *             if removal of the run-key has started but is not complete
+	 */
+	private Node getOrCreateRunNode(Node dcNode, String runKey) {
+		Node runNode;
+		try (Transaction tx = graphDb.beginTx()) {
+			runNode = getOrCreateRunNode(tx, dcNode, runKey);
+			tx.success();
+		}
+		indexRunStatus(dcNode, runNode, runKey);
+		return runNode;
+	}
+
+	/**
+	 * Must be called within a transaction. The run status of a run node
+	 * created by this method is not indexed; see
+	 * {@link #indexRunStatus(List)}. Run nodes are created while holding a
+	 * write lock on the document collection node, which is released when the
+	 * transaction completes, so concurrent callers cannot create more than one
+	 * run node for a run-key.
+	 * 
+	 * @param tx
+	 *            the current transaction
+	 * @param dcNode
+	 * @param runKey
+	 * @return the run node for the specified run-key and document collection
+	 * @throws IllegalStateException
+	 *             if removal of the run-key has started but is not complete
+	 */
+	private Node getOrCreateRunNode(Transaction tx, Node dcNode, String runKey) {
+		Node runNode = getRunNode(dcNode, runKey);
+		if (runNode == null) {
+			tx.acquireWriteLock(dcNode);
+			/* the run node may have been created while waiting for the lock */
+			runNode = getRunNode(dcNode, runKey);
+			if (runNode == null) {
+				if (getRunNode(dcNode, runKey, true) != null) {
+					throw new IllegalStateException("Removal of run-key: " + runKey
+							+ " is incomplete. It must be completed by calling removeRunKeyFromDocumentCollection() "
+							+ "before the run-key can be used again.");
+				}
+				runNode = graphDb.createNode(Label.label(NodeType.RUN.name()));
+				runNode.setProperty(RunNodeProperty.RUN_KEY.name(), runKey);
+				runNode.setProperty(RunNodeProperty.STATUS_INDEXED.name(), false);
+				long[] bucketNodeIds = new long[RUN_STATUS_BUCKET_COUNT];
+				for (int i = 0; i < RUN_STATUS_BUCKET_COUNT; i++) {
+					Node bucketNode = graphDb.createNode(Label.label(NodeType.RUN_STATUS_BUCKET.name()));
+					runNode.createRelationshipTo(bucketNode, Relation.HAS_STATUS_BUCKET);
+					bucketNodeIds[i] = bucketNode.getId();
+				}
+				runNode.setProperty(RunNodeProperty.STATUS_BUCKET_NODE_IDS.name(), bucketNodeIds);
+				dcNode.createRelationshipTo(runNode, Relation.HAS_RUN);
+				updateRunKeysForDocCollectionNode(runKey, dcNode);
+			}
+		}
+		return runNode;
+	}
+
+	/**
+	 * Must be called within a transaction. Used by per-document updates; the
+	 * run status of any run node that is created is indexed by
+	 * {@link #indexRunStatus(List)} once the update has been committed.
+	 * 
+	 * @param tx
+	 *            the transaction of the update
+	 * @param dcNode
+	 * @param runKey
+	 * @param createdRunNodes
+	 *            run nodes that are not indexed are added to this list
+	 * @return the run node for the specified run-key and document collection
+	 */
+	private Node getOrCreateRunNode(Transaction tx, Node dcNode, String runKey, List<Node> createdRunNodes) {
+		Node runNode = getOrCreateRunNode(tx, dcNode, runKey);
+		if (!isStatusIndexed(runNode) && !createdRunNodes.contains(runNode)) {
+			createdRunNodes.add(runNode);
+		}
+		return runNode;
+	}
+
+	private static boolean isStatusIndexed(Node runNode) {
+		return (Boolean) runNode.getProperty(RunNodeProperty.STATUS_INDEXED.name());
+	}
+
+	/**
+	 * Indexes the run status of run nodes created by a per-document update.
+	 * Must be called after the update has been committed, outside of any
+	 * transaction.
+	 * 
+	 * @param runNodes
+	 */
+	private void indexRunStatus(List<Node> runNodes) {
+		for (Node runNode : runNodes) {
+			Node dcNode;
+			String runKey;
+			try (Transaction tx = graphDb.beginTx()) {
+				dcNode = runNode.getSingleRelationship(Relation.HAS_RUN, Direction.INCOMING).getStartNode();
+				runKey = runNode.getProperty(RunNodeProperty.RUN_KEY.name()).toString();
+				tx.success();
+			}
+			indexRunStatus(dcNode, runNode, runKey);
+		}
+	}
+
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param dcNode
+	 * @param runKey
+	 * @return the run node for the specified run-key and document collection,
+	 *         or null if the run-key has not been registered or is being
+	 *         removed
+	 */
+	private Node getRunNode(Node dcNode, String runKey) {
+		return getRunNode(dcNode, runKey, false);
+	}
+
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param dcNode
+	 * @param runKey
+	 * @param removalPending
+	 * @return the run node for the specified run-key and document collection
+	 *         whose removal is (or is not) pending, or null if there is no
+	 *         such run node
+	 */
+	private Node getRunNode(Node dcNode, String runKey, boolean removalPending) {
+		for (Relationship r : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+			Node runNode = r.getEndNode();
+			if (runKey.equals(runNode.getProperty(RunNodeProperty.RUN_KEY.name()))
+					&& isRemovalPending(runNode) == removalPending) {
+				return runNode;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isRemovalPending(Node runNode) {
+		return (Boolean) runNode.getProperty(RunNodeProperty.REMOVAL_PENDING.name(), false);
+	}
+
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param runNode
+	 * @return the ids of the status bucket nodes of the run node, indexed by
+	 *         bucket
+	 */
+	private static long[] getStatusBucketNodeIds(Node runNode) {
+		return (long[]) runNode.getProperty(RunNodeProperty.STATUS_BUCKET_NODE_IDS.name());
+	}
+
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param runNode
+	 * @param pmcid
+	 * @return the status bucket node of the run node from which the document
+	 *         with the specified PMCID is linked
+	 */
+	private Node getStatusBucketNode(Node runNode, String pmcid) {
+		return graphDb.getNodeById(getStatusBucketNodeIds(runNode)[Shard.getShardId(pmcid, RUN_STATUS_BUCKET_COUNT)]);
+	}
+
+	private Node getStatusBucketNode(Node runNode, Node docNode) {
+		return getStatusBucketNode(runNode, docNode.getProperty(DocNodeProperty.PMCID.name()).toString());
+	}
+
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param runNode
+	 * @param status
+	 * @return the status relations of the run node, one status bucket at a
+	 *         time
+	 */
+	private Iterable<Relationship> getStatusRelationships(Node runNode, RunStatus status) {
+		long[] bucketNodeIds = getStatusBucketNodeIds(runNode);
+		return () -> new Iterator<Relationship>() {
+			private int bucket = 0;
+			private Iterator<Relationship> bucketIter = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!bucketIter.hasNext() && bucket < bucketNodeIds.length) {
+					bucketIter = graphDb.getNodeById(bucketNodeIds[bucket++])
+							.getRelationships(Direction.OUTGOING, toStatusRelation(status)).iterator();
+				}
+				return bucketIter.hasNext();
+			}
+
+			@Override
+			public Relationship next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return bucketIter.next();
+			}
+		};
+	}
+
+	/**
+	 * Deletes the run node and its status bucket nodes. Must be called within
+	 * a transaction once the status relations of the run node have been
+	 * deleted.
+	 * 
+	 * @param runNode
+	 */
+	private void deleteRunNode(Node runNode) {
+		for (Relationship hasBucket : runNode.getRelationships(Direction.OUTGOING, Relation.HAS_STATUS_BUCKET)) {
+			Node bucketNode = hasBucket.getEndNode();
+			hasBucket.delete();
+			bucketNode.delete();
+		}
+		for (Relationship r : runNode.getRelationships()) {
+			r.delete();
+		}
+		runNode.delete();
+	}
+
+	/**
+	 * Links the run node to each member document of the collection that is not
+	 * already linked using a relation corresponding to the run status of the
+	 * document, as derived from its annotation outputs and logged errors.
+	 * Documents are processed in batches, one transaction per batch.
+	 * 
+	 * @param dcNode
+	 * @param runNode
+	 * @param runKey
+	 */
+	private void indexRunStatus(Node dcNode, Node runNode, String runKey) {
+		List<Long> docNodeIds = new ArrayList<Long>();
+		try (Transaction tx = graphDb.beginTx()) {
+			if (isStatusIndexed(runNode)) {
+				tx.success();
+				return;
+			}
+			logger.info("Indexing run status for run-key: " + runKey);
+			for (Relationship r : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_MEMBER)) {
+				docNodeIds.add(r.getEndNodeId());
+			}
+			tx.success();
+		}
+		for (int i = 0; i < docNodeIds.size(); i += RUN_STATUS_INDEX_BATCH_SIZE) {
+			try (Transaction tx = graphDb.beginTx()) {
+				for (long docNodeId : docNodeIds.subList(i,
+						Math.min(i + RUN_STATUS_INDEX_BATCH_SIZE, docNodeIds.size()))) {
+					Node docNode = graphDb.getNodeById(docNodeId);
+					/* serializes with per-document updates linking the same document */
+					tx.acquireWriteLock(docNode);
+					if (getRunStatusRelationship(runNode, docNode) == null) {
+						getStatusBucketNode(runNode, docNode).createRelationshipTo(docNode,
+								toStatusRelation(deriveRunStatus(docNode, runKey)));
+					}
+				}
+				tx.success();
+			}
+		}
+		try (Transaction tx = graphDb.beginTx()) {
+			runNode.setProperty(RunNodeProperty.STATUS_INDEXED.name(), true);
 			tx.success();
 		}
+		logger.info("Run status indexed for " + docNodeIds.size() + " documents for run-key: " + runKey);
 	}
 
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param runNode
+	 * @param docNode
+	 * @return the relationship linking the status bucket of the run node to
+	 *         the document node, or null if the document has not been linked
+	 *         to the run node
+	 */
+	private Relationship getRunStatusRelationship(Node runNode, Node docNode) {
+		long bucketNodeId = getStatusBucketNode(runNode, docNode).getId();
+		for (Relationship r : docNode.getRelationships(Direction.INCOMING, Relation.RUN_COMPLETE,
+				Relation.RUN_OUTSTANDING, Relation.RUN_ERROR)) {
+			if (r.getStartNodeId() == bucketNodeId) {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces any existing status link between the run node and the document
+	 * node. Must be called within a transaction. Only the document node and
+	 * the status bucket node of the document are locked, so concurrent updates
+	 * for documents in different buckets do not block one another.
+	 * 
+	 * @param tx
+	 *            the current transaction
+	 * @param runNode
+	 * @param docNode
+	 * @param status
+	 */
+	private void setRunStatus(Transaction tx, Node runNode, Node docNode, RunStatus status) {
+		Relation statusRelation = toStatusRelation(status);
+		/* serializes with the indexing of the run status of the document */
+		tx.acquireWriteLock(docNode);
+		Relationship r = getRunStatusRelationship(runNode, docNode);
+		if (r != null) {
+			if (r.isType(statusRelation)) {
+				return;
+			}
+			r.delete();
+		}
+		getStatusBucketNode(runNode, docNode).createRelationshipTo(docNode, statusRelation);
+	}
+
+	private static Relation toStatusRelation(RunStatus status) {
+		switch (status) {
+		case COMPLETE:
+			return Relation.RUN_COMPLETE;
+		case OUTSTANDING:
+			return Relation.RUN_OUTSTANDING;
+		case ERROR:
+			return Relation.RUN_ERROR;
+		default:
+			throw new IllegalArgumentException("Unhandled run status: " + status.name() + ". Code changes required.");
+		}
+	}
+
+	/**
+	 * Unregisters the run-key, then deletes the annotation outputs for the
+	 * run-key, along with their annotation files, from the member documents
+	 * linked to the run node. Documents are processed in batches, one
+	 * transaction per batch, and annotation files are deleted by a pool of
+	 * background threads. The annotation outputs of a batch are deleted from
+	 * the catalog only once their files have been deleted, so if the removal
+	 * is interrupted, calling this method again resumes the removal without
+	 * leaving any orphaned annotation files.
+	 */
 	@Override
 	public void removeRunKeyFromDocumentCollection(String docCollectionShortName, String keyToRemove) {
 		resetNeo4jConnection();
+		Node dcNode = getDocumentCollectionNodeByShortName(docCollectionShortName);
+		Node runNode;
+		try (Transaction tx = graphDb.beginTx()) {
+			runNode = getRunNode(dcNode, keyToRemove, true);
+			tx.success();
+		}
+		if (runNode == null) {
+			boolean registered;
+			try (Transaction tx = graphDb.beginTx()) {
+				Set<String> runKeys = toDocumentCollection(dcNode).getRunKeys();
+				registered = (runKeys != null && runKeys.contains(keyToRemove))
+						|| getRunNode(dcNode, keyToRemove) != null;
+				tx.success();
+			}
+			if (!registered) {
+				logger.warn("Cannot remove run-key: " + keyToRemove + " as it has not been registered with collection: "
+						+ docCollectionShortName);
+				return;
+			}
+			/*
+			 * completes the run status index for the run-key if necessary so
+			 * that all of its annotation outputs can be found
+			 */
+			runNode = getOrCreateRunNode(dcNode, keyToRemove);
+			try (Transaction tx = graphDb.beginTx()) {
+				runNode.setProperty(RunNodeProperty.REMOVAL_PENDING.name(), true);
+				Set<String> runKeys = toDocumentCollection(dcNode).getRunKeys();
+				if (runKeys != null) {
+					runKeys.remove(keyToRemove);
+					dcNode.setProperty(DocCollectionNodeProperty.RUN_KEYS.name(),
+							runKeys.toArray(new String[runKeys.size()]));
+				}
+				tx.success();
+			}
+		} else {
+			logger.info("Resuming removal of run-key: " + keyToRemove);
+		}
+		removeRunNode(dcNode, runNode, keyToRemove);
+	}
+
+	/**
+	 * The annotation outputs and status relations for a batch of documents
+	 * linked to a run node that is being removed
+	 */
+	private static class RunRemovalBatch {
+		private final List<Long> annotationOutputNodeIds = new ArrayList<Long>();
+		private final List<Long> statusRelationshipIds = new ArrayList<Long>();
+		private final List<File> annotationFiles = new ArrayList<File>();
+		private CompletableFuture<Void> filesDeleted;
+	}
+
+	/**
+	 * Removes the run node and the annotation outputs of the documents linked
+	 * to it. The files of each batch are deleted in the background while the
+	 * catalog entries of the previous batch are deleted.
+	 * 
+	 * @param dcNode
+	 * @param runNode
+	 * @param runKey
+	 */
+	private void removeRunNode(Node dcNode, Node runNode, String runKey) {
+		logger.info("Removing run-key: " + runKey);
+		int docCount = 0;
+		try (ParallelFileDeleter deleter = new ParallelFileDeleter(storage)) {
+			List<Long> docNodeIds = getLinkedDocumentNodeIds(runNode);
+			RunRemovalBatch previousBatch = null;
+			for (int i = 0; i < docNodeIds.size(); i += RUN_KEY_REMOVAL_BATCH_SIZE) {
+				List<Long> batchDocNodeIds = docNodeIds.subList(i,
+						Math.min(i + RUN_KEY_REMOVAL_BATCH_SIZE, docNodeIds.size()));
+				RunRemovalBatch batch = getRunRemovalBatch(runNode, runKey, batchDocNodeIds);
+				batch.filesDeleted = deleter.delete(batch.annotationFiles);
+				if (previousBatch != null) {
+					deleteRunRemovalBatch(previousBatch);
+				}
+				previousBatch = batch;
+				docCount += batchDocNodeIds.size();
+				logger.info("Run-key removal progress: " + docCount + " of " + docNodeIds.size() + " documents; "
+						+ deleter.getDeletedCount() + " annotation files deleted.");
+			}
+			if (previousBatch != null) {
+				deleteRunRemovalBatch(previousBatch);
+			}
+		}
 		try (Transaction tx = graphDb.beginTx()) {
-			Node dcNode = getDocumentCollectionNodeByShortName(docCollectionShortName);
-			DocumentCollection dc = toDocumentCollection(dcNode);
-			Set<String> runKeys = dc.getRunKeys();
-			if (runKeys != null && runKeys.contains(keyToRemove)) {
-				runKeys.remove(keyToRemove);
-				dcNode.removeProperty(DocCollectionNodeProperty.RUN_KEYS.name());
-				dcNode.setProperty(DocCollectionNodeProperty.RUN_KEYS.name(),
-						runKeys.toArray(new String[runKeys.size()]));
-			}
-
-			List<Relationship> relationsToRemove = new ArrayList<Relationship>();
-			List<Node> annotationOutputNodesToRemove = new ArrayList<Node>();
-			for (Relationship r : dcNode.getRelationships(Relation.HAS_MEMBER)) {
-				Node docNode = r.getOtherNode(dcNode);
-				for (Relationship hasAnnot : docNode.getRelationships(Relation.HAS_ANNOTATIONS)) {
-					Node aoNode = hasAnnot.getOtherNode(docNode);
-					String runkey = toAnnotationOutput(aoNode).getRunKey();
-					if (runkey.equals(keyToRemove)) {
-						relationsToRemove.add(hasAnnot);
-						annotationOutputNodesToRemove.add(aoNode);
+			deleteRunNode(runNode);
+			tx.success();
+		}
+		logger.info("Run-key removed: " + runKey);
+	}
+
+	private List<Long> getLinkedDocumentNodeIds(Node runNode) {
+		List<Long> docNodeIds = new ArrayList<Long>();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (RunStatus status : RunStatus.values()) {
+				for (Relationship r : getStatusRelationships(runNode, status)) {
+					docNodeIds.add(r.getEndNodeId());
+				}
+			}
+			tx.success();
+		}
+		return docNodeIds;
+	}
+
+	private RunRemovalBatch getRunRemovalBatch(Node runNode, String runKey, List<Long> docNodeIds) {
+		RunRemovalBatch batch = new RunRemovalBatch();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (long docNodeId : docNodeIds) {
+				Node docNode = graphDb.getNodeById(docNodeId);
+				for (Relationship hasAnnot : docNode.getRelationships(Direction.OUTGOING, Relation.HAS_ANNOTATIONS)) {
+					Node aoNode = hasAnnot.getEndNode();
+					if (runKey.equals(aoNode.getProperty(AnnotOutputNodeProperty.RUN_KEY.name()))) {
+						batch.annotationOutputNodeIds.add(aoNode.getId());
+						batch.annotationFiles.add(new File(
+								aoNode.getProperty(AnnotOutputNodeProperty.LOCAL_ANNOTATION_FILE.name()).toString()));
 					}
 				}
+				Relationship statusRelationship = getRunStatusRelationship(runNode, docNode);
+				if (statusRelationship != null) {
+					batch.statusRelationshipIds.add(statusRelationship.getId());
+				}
 			}
+			tx.success();
+		}
+		return batch;
+	}
 
-			relationsToRemove.forEach(r -> r.delete());
-			annotationOutputNodesToRemove.forEach(n -> {
-				String filePath = n.getProperty(AnnotOutputNodeProperty.LOCAL_ANNOTATION_FILE.name()).toString();
-				File annotFile = new File(filePath);
-				if (annotFile.exists()) {
-					annotFile.delete();
+	/**
+	 * Waits for the annotation files of the batch to be deleted, then deletes
+	 * the annotation output nodes and status relations of the batch
+	 */
+	private void deleteRunRemovalBatch(RunRemovalBatch batch) {
+		batch.filesDeleted.join();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (long aoNodeId : batch.annotationOutputNodeIds) {
+				Node aoNode = graphDb.getNodeById(aoNodeId);
+				for (Relationship r : aoNode.getRelationships()) {
+					r.delete();
 				}
-				n.delete();
-			});
+				aoNode.delete();
+			}
+			for (long relationshipId : batch.statusRelationshipIds) {
+				graphDb.getRelationshipById(relationshipId).delete();
+			}
 			tx.success();
 		}
 	}
 
 	/**
-	 * Adds the new run key to the specified DocumentCollection node
+	 * Adds the new run key to the specified DocumentCollection node. Called
+	 * only when the run node for the run-key is created, so that per-document
+	 * writes never rewrite the collection node.
 	 * 
 	 * @param newKey
 	 * @param dcNode
@@ -310,44 +888,137 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 	public void addDocument(Document d, DocumentCollection dc) {
 		resetNeo4jConnection();
 		try (Transaction tx = graphDb.beginTx()) {
-
 			Node dcNode = getDocumentCollectionNode(dc);
+			createDocumentNode(d, dcNode);
+			tx.success();
+		}
+	}
 
-			Label label = Label.label(NodeType.DOCUMENT.name());
-			Node dNode = graphDb.createNode(label);
+	/**
+	 * Adds the documents in batches, committing a transaction every batchSize
+	 * documents. The document collection node is resolved once and the
+	 * PMID/PMCID indexes are created (if needed) before any documents are
+	 * added.
+	 */
+	@Override
+	public int addDocuments(Iterator<Document> documents, DocumentCollection dc, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be > 0. Value provided: " + batchSize);
+		}
+		initializeIndexes();
+		long dcNodeId;
+		try (Transaction tx = graphDb.beginTx()) {
+			dcNodeId = getDocumentCollectionNode(dc).getId();
+			tx.success();
+		}
 
-			// connect the document to the collection
-			dcNode.createRelationshipTo(dNode, Relation.HAS_MEMBER);
+		int count = 0;
+		long startTime = System.currentTimeMillis();
+		while (documents.hasNext()) {
+			try (Transaction tx = graphDb.beginTx()) {
+				Node dcNode = graphDb.getNodeById(dcNodeId);
+				for (int i = 0; i < batchSize && documents.hasNext(); i++) {
+					createDocumentNode(documents.next(), dcNode);
+					count++;
+				}
+				tx.success();
+			}
+			long elapsedTime = System.currentTimeMillis() - startTime;
+			logger.info("Documents added to catalog: " + count + " (" + RunCatalogUtil.docsPerSecond(count, elapsedTime)
+					+ " docs/sec)");
+		}
+		return count;
+	}
 
-			// for (ExternalIdentifier id : d.getIds()) {
-			// Node idNode =
-			// graphDb.createNode(Label.label(NodeType.EXTERNAL_IDENTIFIER.name()));
-			// idNode.setProperty(ExternalIdentifierNodeProperty.SOURCE.name(),
-			// id.getType().name());
-			// idNode.setProperty(ExternalIdentifierNodeProperty.ID.name(),
-			// id.getId());
-			// dNode.createRelationshipTo(idNode,
-			// Relationship.HAS_DOCUMENT_IDENTIFIER);
-			// }
+	/**
+	 * Creates a new document node and connects it to the specified document
+	 * collection node. If the catalog already has a node for the document,
+	 * e.g. because it was removed from the collection and has since been
+	 * listed again, the existing node is connected to the collection instead.
+	 * Must be called within a transaction.
+	 * 
+	 * @param d
+	 * @param dcNode
+	 */
+	private void createDocumentNode(Document d, Node dcNode) {
+		Node existingNode = getDocumentNodeById(ExternalIdentifierType.PMC, d.getPmcid());
+		if (existingNode != null) {
+			restoreDocumentNode(existingNode, dcNode);
+			return;
+		}
+		Label label = Label.label(NodeType.DOCUMENT.name());
+		Node dNode = graphDb.createNode(label);
 
-			if (d.getPmid() != null) {
-				dNode.setProperty(DocNodeProperty.PMID.name(), d.getPmid());
-			}
-			dNode.setProperty(DocNodeProperty.PMCID.name(), d.getPmcid());
-			dNode.setProperty(DocNodeProperty.CITATION.name(), d.getCitation());
-			dNode.setProperty(DocNodeProperty.JOURNAL.name(), d.getJournal());
-			dNode.setProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name(), d.getLocalSourceFile().getAbsolutePath());
-			dNode.setProperty(DocNodeProperty.SOURCE_FILE_TYPE.name(), d.getSourceFileType().name());
-			if (d.getSourceFileLicense() != null) {
-				dNode.setProperty(DocNodeProperty.SOURCE_FILE_LICENSE.name(), d.getSourceFileLicense());
+		// connect the document to the collection
+		dcNode.createRelationshipTo(dNode, Relation.HAS_MEMBER);
+
+		// the new document is outstanding for any run-key already registered
+		for (Relationship r : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+			if (!isRemovalPending(r.getEndNode())) {
+				getStatusBucketNode(r.getEndNode(), d.getPmcid()).createRelationshipTo(dNode,
+						Relation.RUN_OUTSTANDING);
 			}
-			if (d.getLocalTextFile() != null) {
-				dNode.setProperty(DocNodeProperty.LOCAL_TEXT_FILE.name(), d.getLocalTextFile().getAbsolutePath());
+		}
+
+		// for (ExternalIdentifier id : d.getIds()) {
+		// Node idNode =
+		// graphDb.createNode(Label.label(NodeType.EXTERNAL_IDENTIFIER.name()));
+		// idNode.setProperty(ExternalIdentifierNodeProperty.SOURCE.name(),
+		// id.getType().name());
+		// idNode.setProperty(ExternalIdentifierNodeProperty.ID.name(),
+		// id.getId());
+		// dNode.createRelationshipTo(idNode,
+		// Relationship.HAS_DOCUMENT_IDENTIFIER);
+		// }
+
+		if (d.getPmid() != null) {
+			dNode.setProperty(DocNodeProperty.PMID.name(), d.getPmid());
+		}
+		dNode.setProperty(DocNodeProperty.PMCID.name(), d.getPmcid());
+		dNode.setProperty(DocNodeProperty.CITATION.name(), d.getCitation());
+		dNode.setProperty(DocNodeProperty.JOURNAL.name(), d.getJournal());
+		dNode.setProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name(), d.getLocalSourceFile().getAbsolutePath());
+		dNode.setProperty(DocNodeProperty.SOURCE_FILE_TYPE.name(), d.getSourceFileType().name());
+		if (d.getSourceFileLicense() != null) {
+			dNode.setProperty(DocNodeProperty.SOURCE_FILE_LICENSE.name(), d.getSourceFileLicense());
+		}
+		if (d.getLocalTextFile() != null) {
+			dNode.setProperty(DocNodeProperty.LOCAL_TEXT_FILE.name(), d.getLocalTextFile().getAbsolutePath());
+		}
+		if (d.getRemoteSourceFile() != null) {
+			dNode.setProperty(DocNodeProperty.REMOTE_SOURCE_FILE.name(), d.getRemoteSourceFile().toString());
+		}
+		if (d.getLocalSourceFileSize() >= 0) {
+			dNode.setProperty(DocNodeProperty.LOCAL_SOURCE_FILE_SIZE.name(), d.getLocalSourceFileSize());
+		}
+		if (d.getLocalTextFileSize() >= 0) {
+			dNode.setProperty(DocNodeProperty.LOCAL_TEXT_FILE_SIZE.name(), d.getLocalTextFileSize());
+		}
+	}
+
+	/**
+	 * Connects an existing document node to the collection, unless it is
+	 * already a member. The run status of the document for each run-key
+	 * registered with the collection is derived from its annotation outputs
+	 * and logged error. Must be called within a transaction.
+	 * 
+	 * @param docNode
+	 * @param dcNode
+	 */
+	private void restoreDocumentNode(Node docNode, Node dcNode) {
+		for (Relationship r : docNode.getRelationships(Direction.INCOMING, Relation.HAS_MEMBER)) {
+			if (r.getStartNodeId() == dcNode.getId()) {
+				return;
 			}
-			if (d.getRemoteSourceFile() != null) {
-				dNode.setProperty(DocNodeProperty.REMOTE_SOURCE_FILE.name(), d.getRemoteSourceFile().toString());
+		}
+		dcNode.createRelationshipTo(docNode, Relation.HAS_MEMBER);
+		for (Relationship r : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+			Node runNode = r.getEndNode();
+			if (!isRemovalPending(runNode)) {
+				String runKey = runNode.getProperty(RunNodeProperty.RUN_KEY.name()).toString();
+				getStatusBucketNode(runNode, docNode).createRelationshipTo(docNode,
+						toStatusRelation(deriveRunStatus(docNode, runKey)));
 			}
-			tx.success();
 		}
 	}
 
@@ -407,31 +1078,62 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 	@Override
 	public void addAnnotationOutput(Document doc, AnnotationOutput ao) {
 		resetNeo4jConnection();
+		List<Node> createdRunNodes = new ArrayList<Node>();
 		try (Transaction tx = graphDb.beginTx()) {
-			Label label = Label.label(NodeType.ANNOTATION_OUTPUT.name());
-			Node aoNode = graphDb.createNode(label);
-
-			aoNode.setProperty(AnnotOutputNodeProperty.RUN_KEY.name(), ao.getRunKey());
-			aoNode.setProperty(AnnotOutputNodeProperty.RUN_DATE.name(), DATE_FORMATTER.print(ao.getRunDate()));
-			aoNode.setProperty(AnnotOutputNodeProperty.LOCAL_ANNOTATION_FILE.name(),
-					ao.getLocalAnnotationFile().getAbsolutePath());
-			aoNode.setProperty(AnnotOutputNodeProperty.ANNOTATION_COUNT.name(),
-					Integer.toString(ao.getAnnotationCount()));
-
 			Node docNode = getDocumentNodeById(ExternalIdentifierType.PMC, doc.getPmcid());
+			addAnnotationOutput(tx, docNode, ao, createdRunNodes);
+			tx.success();
+		}
+		indexRunStatus(createdRunNodes);
+	}
 
-			docNode.createRelationshipTo(aoNode, Relation.HAS_ANNOTATIONS);
-
-			/*
-			 * update any document_collection that this doc is a member of with
-			 * the appropriate run-key
-			 */
-			for (Relationship r : docNode.getRelationships(Relation.HAS_MEMBER)) {
-				Node dcNode = r.getOtherNode(docNode);
-				updateRunKeysForDocCollectionNode(ao.getRunKey(), dcNode);
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param tx
+	 *            the current transaction
+	 * @param docNode
+	 * @param ao
+	 * @param createdRunNodes
+	 *            run nodes created by this update are added to this list
+	 */
+	private void addAnnotationOutput(Transaction tx, Node docNode, AnnotationOutput ao, List<Node> createdRunNodes) {
+		String localAnnotationFile = ao.getLocalAnnotationFile().getAbsolutePath();
+		/*
+		 * an annotation output is identified by its run-key and file, so
+		 * re-applying an update, e.g. when a write-behind journal is replayed,
+		 * replaces the existing output rather than duplicating it
+		 */
+		Node aoNode = null;
+		for (Relationship hasAnnot : docNode.getRelationships(Direction.OUTGOING, Relation.HAS_ANNOTATIONS)) {
+			Node node = hasAnnot.getEndNode();
+			if (ao.getRunKey().equals(node.getProperty(AnnotOutputNodeProperty.RUN_KEY.name()))
+					&& localAnnotationFile
+							.equals(node.getProperty(AnnotOutputNodeProperty.LOCAL_ANNOTATION_FILE.name()))) {
+				aoNode = node;
+				break;
 			}
-
-			tx.success();
+		}
+		if (aoNode == null) {
+			aoNode = graphDb.createNode(Label.label(NodeType.ANNOTATION_OUTPUT.name()));
+			aoNode.setProperty(AnnotOutputNodeProperty.RUN_KEY.name(), ao.getRunKey());
+			aoNode.setProperty(AnnotOutputNodeProperty.LOCAL_ANNOTATION_FILE.name(), localAnnotationFile);
+			docNode.createRelationshipTo(aoNode, Relation.HAS_ANNOTATIONS);
+		}
+		aoNode.setProperty(AnnotOutputNodeProperty.RUN_DATE.name(), DATE_FORMATTER.print(ao.getRunDate()));
+		aoNode.setProperty(AnnotOutputNodeProperty.ANNOTATION_COUNT.name(), Integer.toString(ao.getAnnotationCount()));
+
+		/*
+		 * mark the doc complete for the run-key in any document_collection
+		 * that it is a member of. The run-key is registered with the
+		 * collection when its run node is created, normally by
+		 * addRunKeyToDocumentCollection() at the start of the run, so the
+		 * collection node itself is only read here.
+		 */
+		for (Relationship r : docNode.getRelationships(Relation.HAS_MEMBER)) {
+			Node dcNode = r.getOtherNode(docNode);
+			setRunStatus(tx, getOrCreateRunNode(tx, dcNode, ao.getRunKey(), createdRunNodes), docNode,
+					RunStatus.COMPLETE);
 		}
 	}
 
@@ -453,12 +1155,267 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 	@Override
 	public List<File> getFilesToProcess(DocumentCollection collection, String runKey) {
 		List<File> filesToProcess = new ArrayList<File>();
+		try (DocumentCursor docCursor = getDocuments(collection.getShortname(), runKey, RunStatus.OUTSTANDING,
+				FILES_TO_PROCESS_PAGE_SIZE)) {
+			while (docCursor.hasNext()) {
+				filesToProcess.add(docCursor.next().getLocalSourceFile());
+			}
+		}
+		return filesToProcess;
+	}
+
+	@Override
+	public DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status,
+			int pageSize) {
+		return getDocuments(docCollectionShortName, runKey, status, Shard.ALL, pageSize);
+	}
+
+	/**
+	 * Only the status buckets of the run node that can contain documents in
+	 * the shard are read, i.e. every status bucket if the shard count does not
+	 * divide {@link #RUN_STATUS_BUCKET_COUNT}.
+	 */
+	@Override
+	public DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status, Shard shard,
+			int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be > 0. Value provided: " + pageSize);
+		}
+		return new Neo4jDocumentCursor(shard, pageSize, toStatusRelation(status),
+				getStatusBucketNodeIds(docCollectionShortName, Collections.singletonList(runKey), shard));
+	}
+
+	/**
+	 * The status buckets of each run-key are read in turn. A document that is
+	 * also outstanding for a run-key whose status buckets have already been
+	 * read was returned for that run-key, so it is skipped.
+	 */
+	@Override
+	public DocumentCursor getDocumentsOutstandingForAny(String docCollectionShortName, List<String> runKeys,
+			Shard shard, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be > 0. Value provided: " + pageSize);
+		}
+		return new Neo4jDocumentCursor(shard, pageSize, Relation.RUN_OUTSTANDING,
+				getStatusBucketNodeIds(docCollectionShortName, runKeys, shard));
+	}
+
+	/**
+	 * @param docCollectionShortName
+	 * @param runKeys
+	 * @param shard
+	 * @return the ids of the status bucket nodes of the run nodes of the
+	 *         specified run-keys, in run-key order, that can contain documents
+	 *         in the shard, i.e. every status bucket if the shard count does
+	 *         not divide {@link #RUN_STATUS_BUCKET_COUNT}
+	 */
+	private List<Long> getStatusBucketNodeIds(String docCollectionShortName, List<String> runKeys, Shard shard) {
+		resetNeo4jConnection();
+		List<Long> bucketNodeIds = new ArrayList<Long>();
+		try (Transaction tx = graphDb.beginTx()) {
+			Node dcNode = getDocumentCollectionNode(docCollectionShortName);
+			if (dcNode == null) {
+				logger.warn("Cannot return documents for collection: " + docCollectionShortName
+						+ " as there is no collection by that name.");
+				return bucketNodeIds;
+			}
+			boolean bucketsWithinShard = RUN_STATUS_BUCKET_COUNT % shard.getShardCount() == 0;
+			for (String runKey : runKeys) {
+				Node runNode = getRunNode(dcNode, runKey);
+				if (runNode == null) {
+					logger.warn("Cannot return documents for run-key: " + runKey
+							+ " as it has not been registered with collection: " + docCollectionShortName);
+					continue;
+				}
+				long[] ids = getStatusBucketNodeIds(runNode);
+				for (int bucket = 0; bucket < ids.length; bucket++) {
+					if (!bucketsWithinShard || bucket % shard.getShardCount() == shard.getShardId()) {
+						bucketNodeIds.add(ids[bucket]);
+					}
+				}
+			}
+			tx.success();
+		}
+		return bucketNodeIds;
+	}
+
+	@Override
+	public DocumentCursor getDocuments(String docCollectionShortName, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be > 0. Value provided: " + pageSize);
+		}
 		resetNeo4jConnection();
+		List<Long> dcNodeIds = new ArrayList<Long>();
 		try (Transaction tx = graphDb.beginTx()) {
-			// Database operations go here
+			Node dcNode = getDocumentCollectionNode(docCollectionShortName);
+			if (dcNode == null) {
+				logger.warn("Cannot return documents for collection: " + docCollectionShortName
+						+ " as there is no collection by that name.");
+			} else {
+				dcNodeIds.add(dcNode.getId());
+			}
 			tx.success();
 		}
-		throw new UnsupportedOperationException("getFilesToProcess() has not yet been implemented");
+		return new Neo4jDocumentCursor(Shard.ALL, pageSize, Relation.HAS_MEMBER, dcNodeIds);
+	}
+
+	/**
+	 * Returns the documents linked by a relation from each of a list of start
+	 * nodes, i.e. the document collection node or the status bucket nodes of a
+	 * run node. No transaction is held between calls. The ids of the documents
+	 * linked from a start node are read in one short transaction when the
+	 * cursor reaches that node, and each page is then converted in its own
+	 * short transaction, skipping documents outside of the shard and documents
+	 * that are no longer linked, e.g. because their run status has changed
+	 * since the ids were read, or that are also linked from a start node that
+	 * has already been visited. Each document is therefore returned at most
+	 * once, while concurrent status updates proceed.
+	 */
+	private class Neo4jDocumentCursor implements DocumentCursor {
+
+		private final Shard shard;
+		private final int pageSize;
+		private final RelationshipType relation;
+		private final Deque<Long> startNodeIds;
+		private final Set<Long> visitedStartNodeIds = new HashSet<Long>();
+		private final Deque<Document> page;
+		private long startNodeId;
+		private long[] docNodeIds = new long[0];
+		private int docNodeIndex = 0;
+
+		/**
+		 * @param shard
+		 * @param pageSize
+		 * @param relation
+		 *            the relation from the start nodes to the documents to
+		 *            retrieve
+		 * @param startNodeIds
+		 */
+		public Neo4jDocumentCursor(Shard shard, int pageSize, RelationshipType relation, List<Long> startNodeIds) {
+			this.shard = shard;
+			this.pageSize = pageSize;
+			this.relation = relation;
+			this.startNodeIds = new ArrayDeque<Long>(startNodeIds);
+			this.page = new ArrayDeque<Document>(pageSize);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (page.isEmpty()) {
+				fillPage();
+			}
+			return !page.isEmpty();
+		}
+
+		@Override
+		public Document next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.poll();
+		}
+
+		private void fillPage() {
+			while (page.size() < pageSize) {
+				if (docNodeIndex == docNodeIds.length) {
+					if (startNodeIds.isEmpty()) {
+						return;
+					}
+					startNodeId = startNodeIds.poll();
+					visitedStartNodeIds.add(startNodeId);
+					readDocNodeIds();
+				} else {
+					try (Transaction tx = graphDb.beginTx()) {
+						while (page.size() < pageSize && docNodeIndex < docNodeIds.length) {
+							Document d = toLinkedDocument(docNodeIds[docNodeIndex++]);
+							if (d != null) {
+								page.add(d);
+							}
+						}
+						tx.success();
+					}
+				}
+			}
+		}
+
+		private void readDocNodeIds() {
+			List<Long> ids = new ArrayList<Long>();
+			try (Transaction tx = graphDb.beginTx()) {
+				for (Relationship r : graphDb.getNodeById(startNodeId).getRelationships(Direction.OUTGOING,
+						relation)) {
+					ids.add(r.getEndNodeId());
+				}
+				tx.success();
+			} catch (NotFoundException e) {
+				/* the run-key has been removed */
+				ids.clear();
+			}
+			docNodeIds = new long[ids.size()];
+			for (int i = 0; i < docNodeIds.length; i++) {
+				docNodeIds[i] = ids.get(i);
+			}
+			docNodeIndex = 0;
+		}
+
+		/**
+		 * Must be called within a transaction
+		 * 
+		 * @param docNodeId
+		 * @return the document, or null if it is outside of the shard, is no
+		 *         longer linked from the current start node, or is linked from
+		 *         a start node that was visited previously
+		 */
+		private Document toLinkedDocument(long docNodeId) {
+			Node docNode;
+			try {
+				docNode = graphDb.getNodeById(docNodeId);
+			} catch (NotFoundException e) {
+				return null;
+			}
+			if (!shard.isAll() && !shard.contains(docNode.getProperty(DocNodeProperty.PMCID.name()).toString())) {
+				return null;
+			}
+			boolean linked = false;
+			for (Relationship r : docNode.getRelationships(Direction.INCOMING, relation)) {
+				if (r.getStartNodeId() == startNodeId) {
+					linked = true;
+				} else if (visitedStartNodeIds.contains(r.getStartNodeId())) {
+					return null;
+				}
+			}
+			return linked ? toDocument(docNode) : null;
+		}
+
+		@Override
+		public void close() {
+			startNodeIds.clear();
+			visitedStartNodeIds.clear();
+			docNodeIds = new long[0];
+			docNodeIndex = 0;
+			page.clear();
+		}
+	}
+
+	/**
+	 * Derives the run status of a document from its annotation outputs and
+	 * logged error. Used only when indexing the run status for a run-key. Must
+	 * be called within a transaction.
+	 * 
+	 * @param docNode
+	 * @param runKey
+	 * @return the status of the specified document for the specified run-key
+	 */
+	private RunStatus deriveRunStatus(Node docNode, String runKey) {
+		for (Relationship hasAnnot : docNode.getRelationships(Direction.OUTGOING, Relation.HAS_ANNOTATIONS)) {
+			Node aoNode = hasAnnot.getOtherNode(docNode);
+			if (runKey.equals(aoNode.getProperty(AnnotOutputNodeProperty.RUN_KEY.name()))) {
+				return RunStatus.COMPLETE;
+			}
+		}
+		if (runKey.equals(docNode.getProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name(), null))) {
+			return RunStatus.ERROR;
+		}
+		return RunStatus.OUTSTANDING;
 	}
 
 	/*
@@ -487,38 +1444,131 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 		}
 
 		Map<String, Map<RunStatus, Set<Document>>> map = new HashMap<String, Map<RunStatus, Set<Document>>>();
-		Set<String> runKeys = new HashSet<String>(getDocumentCollectionRunKeys(docCollectionShortName));
-		for (String key : runKeys) {
+		for (String key : getDocumentCollectionRunKeys(docCollectionShortName)) {
 			map.put(key, new HashMap<RunStatus, Set<Document>>());
 		}
 		resetNeo4jConnection();
 		try (Transaction tx = graphDb.beginTx()) {
 			Node dcNode = getDocumentCollectionNode(docCollectionShortName);
-			for (Relationship r : dcNode.getRelationships(Relation.HAS_MEMBER)) {
-				Node docNode = r.getOtherNode(dcNode);
-				Document d = toDocument(docNode);
-				Set<String> docRunKeys = new HashSet<String>();
-				for (Relationship hasAnnot : docNode.getRelationships(Relation.HAS_ANNOTATIONS)) {
-					Node aoNode = hasAnnot.getOtherNode(docNode);
-					String runkey = toAnnotationOutput(aoNode).getRunKey();
-					docRunKeys.add(runkey);
+			/* documents linked to multiple run nodes are converted only once */
+			Map<Long, Document> docNodeIdToDocumentMap = new HashMap<Long, Document>();
+			Set<String> indexedRunKeys = new HashSet<String>();
+			for (Relationship hasRun : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+				Node runNode = hasRun.getEndNode();
+				if (isRemovalPending(runNode)) {
+					continue;
+				}
+				String runKey = runNode.getProperty(RunNodeProperty.RUN_KEY.name()).toString();
+				indexedRunKeys.add(runKey);
+				Map<RunStatus, Set<Document>> statusMap = map.computeIfAbsent(runKey,
+						k -> new HashMap<RunStatus, Set<Document>>());
+				for (RunStatus status : RunStatus.values()) {
+					for (Relationship r : getStatusRelationships(runNode, status)) {
+						Node docNode = r.getEndNode();
+						Document d = docNodeIdToDocumentMap.computeIfAbsent(docNode.getId(), id -> toDocument(docNode));
+						CollectionsUtil.addToOne2ManyUniqueMap(status, d, statusMap);
+					}
 				}
-				docRunKeys.forEach(key -> CollectionsUtil.addToOne2ManyUniqueMap(RunStatus.COMPLETE, d, map.get(key)));
-				Set<String> possibleRunKeys = new HashSet<String>(runKeys);
-				possibleRunKeys.removeAll(docRunKeys);
-				if (docNode.hasProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name())) {
-					String key = docNode.getProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name()).toString();
-					CollectionsUtil.addToOne2ManyUniqueMap(RunStatus.ERROR, d, map.get(key));
-					possibleRunKeys.remove(key);
+			}
+			for (String runKey : map.keySet()) {
+				if (!indexedRunKeys.contains(runKey)) {
+					logger.warn("The run status for run-key: " + runKey
+							+ " has not been indexed. Please run Main_IndexRunStatus_neo4j.");
 				}
-				possibleRunKeys
-						.forEach(key -> CollectionsUtil.addToOne2ManyUniqueMap(RunStatus.OUTSTANDING, d, map.get(key)));
+			}
+		}
+		return map;
+	}
 
+	/**
+	 * The counts are the sums of the degrees of the status relations of the
+	 * status bucket nodes of each run node. Neo4j maintains per-type
+	 * relationship counts for densely connected nodes, so no documents are
+	 * visited.
+	 */
+	@Override
+	public Map<String, Map<RunStatus, Integer>> getRunStatusCounts(String docCollectionShortName) {
+		Map<String, Map<RunStatus, Integer>> map = new HashMap<String, Map<RunStatus, Integer>>();
+		if (getDocumentCollectionNodeByShortName(docCollectionShortName) == null) {
+			logger.warn("Cannot return run status counts for collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			return map;
+		}
+		for (String key : getDocumentCollectionRunKeys(docCollectionShortName)) {
+			map.put(key, new HashMap<RunStatus, Integer>());
+		}
+		resetNeo4jConnection();
+		try (Transaction tx = graphDb.beginTx()) {
+			Node dcNode = getDocumentCollectionNode(docCollectionShortName);
+			for (Relationship hasRun : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+				Node runNode = hasRun.getEndNode();
+				if (isRemovalPending(runNode)) {
+					continue;
+				}
+				String runKey = runNode.getProperty(RunNodeProperty.RUN_KEY.name()).toString();
+				Map<RunStatus, Integer> countMap = map.computeIfAbsent(runKey,
+						k -> new HashMap<RunStatus, Integer>());
+				for (RunStatus status : RunStatus.values()) {
+					countMap.put(status, 0);
+				}
+				for (long bucketNodeId : getStatusBucketNodeIds(runNode)) {
+					Node bucketNode = graphDb.getNodeById(bucketNodeId);
+					for (RunStatus status : RunStatus.values()) {
+						countMap.merge(status, bucketNode.getDegree(toStatusRelation(status), Direction.OUTGOING),
+								Integer::sum);
+					}
+				}
+			}
+		}
+		for (Entry<String, Map<RunStatus, Integer>> entry : map.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				logger.warn("The run status for run-key: " + entry.getKey()
+						+ " has not been indexed. Please run Main_IndexRunStatus_neo4j.");
 			}
 		}
 		return map;
 	}
 
+	/**
+	 * If the shard count divides {@link #RUN_STATUS_BUCKET_COUNT}, each status
+	 * bucket lies within a single shard and the counts are the degrees of the
+	 * status bucket nodes; otherwise each linked document is visited.
+	 */
+	@Override
+	public Map<Integer, Map<RunStatus, Integer>> getShardRunStatusCounts(String docCollectionShortName, String runKey,
+			int shardCount) {
+		Map<Integer, Map<RunStatus, Integer>> map = RunCatalogUtil.initShardRunStatusCounts(shardCount);
+		resetNeo4jConnection();
+		try (Transaction tx = graphDb.beginTx()) {
+			Node dcNode = getDocumentCollectionNode(docCollectionShortName);
+			Node runNode = (dcNode == null) ? null : getRunNode(dcNode, runKey);
+			if (runNode == null) {
+				logger.warn("Cannot return shard run status counts for run-key: " + runKey
+						+ " as it has not been registered with collection: " + docCollectionShortName);
+				return map;
+			}
+			if (RUN_STATUS_BUCKET_COUNT % shardCount == 0) {
+				long[] bucketNodeIds = getStatusBucketNodeIds(runNode);
+				for (int bucket = 0; bucket < bucketNodeIds.length; bucket++) {
+					Node bucketNode = graphDb.getNodeById(bucketNodeIds[bucket]);
+					for (RunStatus status : RunStatus.values()) {
+						map.get(bucket % shardCount).merge(status,
+								bucketNode.getDegree(toStatusRelation(status), Direction.OUTGOING), Integer::sum);
+					}
+				}
+			} else {
+				for (RunStatus status : RunStatus.values()) {
+					for (Relationship r : getStatusRelationships(runNode, status)) {
+						String pmcid = r.getEndNode().getProperty(DocNodeProperty.PMCID.name()).toString();
+						map.get(Shard.getShardId(pmcid, shardCount)).merge(status, 1, Integer::sum);
+					}
+				}
+			}
+			tx.success();
+		}
+		return map;
+	}
+
 	@Override
 	public List<String> getDocumentCollectionRunKeys(String docCollectionShortName) {
 		DocumentCollection dc = getDocumentCollectionByShortName(docCollectionShortName);
@@ -597,6 +1647,9 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 			d.setSourceFileLicense(sourceFileLicense);
 		}
 
+		d.setLocalSourceFileSize((Long) docNode.getProperty(DocNodeProperty.LOCAL_SOURCE_FILE_SIZE.name(), -1L));
+		d.setLocalTextFileSize((Long) docNode.getProperty(DocNodeProperty.LOCAL_TEXT_FILE_SIZE.name(), -1L));
+
 		return d;
 	}
 
@@ -620,30 +1673,49 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 		resetNeo4jConnection();
 		try (Transaction tx = graphDb.beginTx()) {
 			Node docNode = getDocumentNodeById(ExternalIdentifierType.PMC, d.getPmcid());
-			switch (fileVersion) {
-			case SOURCE:
-				if (docNode.hasProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name())) {
-					logger.error("Document (" + d.getPmcid() + ") already has a local source file ("
-							+ d.getLocalSourceFile().getAbsolutePath() + "). Cannot assign another: "
-							+ newFile.getAbsolutePath());
-				} else {
-					docNode.setProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name(), newFile.getAbsolutePath());
+			addFileVersionToDocument(docNode, newFile, fileVersion, RunCatalogUtil.getFileSize(newFile));
+			tx.success();
+		}
+	}
+
+	/**
+	 * Must be called within a transaction
+	 * 
+	 * @param docNode
+	 * @param newFile
+	 * @param fileVersion
+	 * @param fileSize
+	 *            -1 if unknown
+	 */
+	private void addFileVersionToDocument(Node docNode, File newFile, FileVersion fileVersion, long fileSize) {
+		String pmcid = docNode.getProperty(DocNodeProperty.PMCID.name()).toString();
+		switch (fileVersion) {
+		case SOURCE:
+			if (docNode.hasProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name())) {
+				logger.error("Document (" + pmcid + ") already has a local source file ("
+						+ docNode.getProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name()) + "). Cannot assign another: "
+						+ newFile.getAbsolutePath());
+			} else {
+				docNode.setProperty(DocNodeProperty.LOCAL_SOURCE_FILE.name(), newFile.getAbsolutePath());
+				if (fileSize >= 0) {
+					docNode.setProperty(DocNodeProperty.LOCAL_SOURCE_FILE_SIZE.name(), fileSize);
 				}
-				break;
-			case LOCAL_TEXT:
-				if (docNode.hasProperty(DocNodeProperty.LOCAL_TEXT_FILE.name())) {
-					logger.error("Document (" + d.getPmcid() + ") already has a local text file ("
-							+ d.getLocalTextFile().getAbsolutePath() + "). Cannot assign another: "
-							+ newFile.getAbsolutePath());
-				} else {
-					docNode.setProperty(DocNodeProperty.LOCAL_TEXT_FILE.name(), newFile.getAbsolutePath());
+			}
+			break;
+		case LOCAL_TEXT:
+			if (docNode.hasProperty(DocNodeProperty.LOCAL_TEXT_FILE.name())) {
+				logger.error("Document (" + pmcid + ") already has a local text file ("
+						+ docNode.getProperty(DocNodeProperty.LOCAL_TEXT_FILE.name()) + "). Cannot assign another: "
+						+ newFile.getAbsolutePath());
+			} else {
+				docNode.setProperty(DocNodeProperty.LOCAL_TEXT_FILE.name(), newFile.getAbsolutePath());
+				if (fileSize >= 0) {
+					docNode.setProperty(DocNodeProperty.LOCAL_TEXT_FILE_SIZE.name(), fileSize);
 				}
-				break;
-			default:
-				throw new IllegalArgumentException(
-						"Unhandled FileVersion: " + fileVersion.name() + ". Code changes required.");
 			}
-			tx.success();
+			break;
+		default:
+			throw new IllegalArgumentException("Unhandled FileVersion: " + fileVersion.name() + ". Code changes required.");
 		}
 	}
 
@@ -652,14 +1724,13 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 		resetNeo4jConnection();
 		try (Transaction tx = graphDb.beginTx()) {
 			Node dcNode = getDocumentCollectionNodeByShortName(dc.getShortname());
-			Set<Document> uniqueDocs = new HashSet<Document>();
-			for (Relationship r : dcNode.getRelationships(Relation.HAS_MEMBER)) {
-				Node docNode = r.getOtherNode(dcNode);
-				uniqueDocs.add(toDocument(docNode));
+			if (dcNode == null) {
+				logger.warn("Cannot return document count for collection: " + dc.getShortname()
+						+ " as there is no collection by that name.");
+				return 0;
 			}
-			return uniqueDocs.size();
+			return dcNode.getDegree(Relation.HAS_MEMBER, Direction.OUTGOING);
 		}
-
 	}
 
 	@Override
@@ -677,6 +1748,9 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 
 			for (Node dcNode : emptyDocCollections) {
 				logger.warn("Deleting empty document collection: " + toDocumentCollection(dcNode).getShortname());
+				for (Relationship hasRun : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+					deleteRunNode(hasRun.getEndNode());
+				}
 				dcNode.delete();
 			}
 			tx.success();
@@ -687,17 +1761,171 @@ public class Neo4jRunCatalog implements RunCatalog, Closeable {
 	public void logError(String pipelineKey, ExternalIdentifierType idType, String documentId, String componentAtFault,
 			String errorMessage, String stackTrace) {
 		resetNeo4jConnection();
+		List<Node> createdRunNodes = new ArrayList<Node>();
 		try (Transaction tx = graphDb.beginTx()) {
 			Node docNode = getDocumentNodeById(idType, documentId);
-			docNode.setProperty(DocNodeProperty.ERROR_MESSAGE.name(), errorMessage);
-			docNode.setProperty(DocNodeProperty.ERROR_COMPONENT_AT_FAULT.name(), componentAtFault);
-			docNode.setProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name(), pipelineKey);
-			if (stackTrace != null) {
-				docNode.setProperty(DocNodeProperty.ERROR_STACKTRACE.name(), stackTrace);
+			logError(tx, docNode, pipelineKey, componentAtFault, errorMessage, stackTrace, createdRunNodes);
+			tx.success();
+		}
+		indexRunStatus(createdRunNodes);
+	}
+
+	/**
+	 * Must be called within a transaction
+	 */
+	private void logError(Transaction tx, Node docNode, String pipelineKey, String componentAtFault,
+			String errorMessage, String stackTrace, List<Node> createdRunNodes) {
+		docNode.setProperty(DocNodeProperty.ERROR_MESSAGE.name(), errorMessage);
+		docNode.setProperty(DocNodeProperty.ERROR_COMPONENT_AT_FAULT.name(), componentAtFault);
+		docNode.setProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name(), pipelineKey);
+		if (stackTrace != null) {
+			docNode.setProperty(DocNodeProperty.ERROR_STACKTRACE.name(), stackTrace);
+		}
+		for (Relationship r : docNode.getRelationships(Relation.HAS_MEMBER)) {
+			Node dcNode = r.getOtherNode(docNode);
+			setRunStatus(tx, getOrCreateRunNode(tx, dcNode, pipelineKey, createdRunNodes), docNode, RunStatus.ERROR);
+		}
+	}
+
+	/**
+	 * Removes the membership relation and any run status relations between
+	 * the collection and each document. Documents are processed in batches,
+	 * one transaction per batch.
+	 */
+	@Override
+	public int removeDocumentsFromCollection(String docCollectionShortName, List<String> pmcids) {
+		resetNeo4jConnection();
+		Node dcNode = getDocumentCollectionNodeByShortName(docCollectionShortName);
+		if (dcNode == null) {
+			logger.warn("Cannot remove documents from collection: " + docCollectionShortName
+					+ " as there is no collection by that name.");
+			return 0;
+		}
+		int count = 0;
+		for (int i = 0; i < pmcids.size(); i += RUN_KEY_REMOVAL_BATCH_SIZE) {
+			try (Transaction tx = graphDb.beginTx()) {
+				Set<Long> bucketNodeIds = new HashSet<Long>();
+				for (Relationship hasRun : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_RUN)) {
+					for (long bucketNodeId : getStatusBucketNodeIds(hasRun.getEndNode())) {
+						bucketNodeIds.add(bucketNodeId);
+					}
+				}
+				for (String pmcid : pmcids.subList(i, Math.min(i + RUN_KEY_REMOVAL_BATCH_SIZE, pmcids.size()))) {
+					Node docNode = getDocumentNodeById(ExternalIdentifierType.PMC, pmcid);
+					if (docNode == null) {
+						continue;
+					}
+					boolean removed = false;
+					for (Relationship r : docNode.getRelationships(Direction.INCOMING, Relation.HAS_MEMBER,
+							Relation.RUN_COMPLETE, Relation.RUN_OUTSTANDING, Relation.RUN_ERROR)) {
+						if (r.getStartNodeId() == dcNode.getId()) {
+							r.delete();
+							removed = true;
+						} else if (bucketNodeIds.contains(r.getStartNodeId())) {
+							r.delete();
+						}
+					}
+					if (removed) {
+						count++;
+					}
+				}
+				tx.success();
+			}
+		}
+		logger.info("Removed " + count + " documents from collection: " + docCollectionShortName);
+		return count;
+	}
+
+	/**
+	 * Exports the members of the specified document collection in batches. For
+	 * each batch, the handler is passed the documents along with the catalog
+	 * updates that reproduce their logged errors and annotation outputs (in
+	 * that order), e.g. for migration to another {@link RunCatalog}
+	 * implementation.
+	 * 
+	 * @param docCollectionShortName
+	 * @param batchSize
+	 *            the number of documents read per transaction
+	 * @param batchHandler
+	 * @return the number of documents exported
+	 */
+	public int exportDocuments(String docCollectionShortName, int batchSize,
+			BiConsumer<List<Document>, List<CatalogUpdate>> batchHandler) {
+		resetNeo4jConnection();
+		List<Long> docNodeIds = new ArrayList<Long>();
+		try (Transaction tx = graphDb.beginTx()) {
+			Node dcNode = getDocumentCollectionNode(docCollectionShortName);
+			for (Relationship r : dcNode.getRelationships(Direction.OUTGOING, Relation.HAS_MEMBER)) {
+				docNodeIds.add(r.getEndNodeId());
 			}
 			tx.success();
 		}
+		for (int i = 0; i < docNodeIds.size(); i += batchSize) {
+			List<Document> documents = new ArrayList<Document>();
+			List<CatalogUpdate> errorUpdates = new ArrayList<CatalogUpdate>();
+			List<CatalogUpdate> outputUpdates = new ArrayList<CatalogUpdate>();
+			try (Transaction tx = graphDb.beginTx()) {
+				for (long docNodeId : docNodeIds.subList(i, Math.min(i + batchSize, docNodeIds.size()))) {
+					Node docNode = graphDb.getNodeById(docNodeId);
+					Document d = toDocument(docNode);
+					documents.add(d);
+					if (docNode.hasProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name())) {
+						errorUpdates.add(CatalogUpdate.logError(
+								docNode.getProperty(DocNodeProperty.ERROR_PIPELINE_KEY.name()).toString(),
+								ExternalIdentifierType.PMC, d.getPmcid(),
+								(String) docNode.getProperty(DocNodeProperty.ERROR_COMPONENT_AT_FAULT.name(), null),
+								(String) docNode.getProperty(DocNodeProperty.ERROR_MESSAGE.name(), null),
+								(String) docNode.getProperty(DocNodeProperty.ERROR_STACKTRACE.name(), null)));
+					}
+					for (Relationship r : docNode.getRelationships(Direction.OUTGOING, Relation.HAS_ANNOTATIONS)) {
+						outputUpdates.add(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, d.getPmcid(),
+								toAnnotationOutput(r.getEndNode())));
+					}
+				}
+				tx.success();
+			}
+			errorUpdates.addAll(outputUpdates);
+			batchHandler.accept(documents, errorUpdates);
+		}
+		return docNodeIds.size();
+	}
 
+	/**
+	 * Applies all updates in a single transaction. Updates that reference a
+	 * document that is not in the catalog are logged and skipped.
+	 */
+	@Override
+	public void applyUpdates(List<CatalogUpdate> updates) {
+		resetNeo4jConnection();
+		List<Node> createdRunNodes = new ArrayList<Node>();
+		try (Transaction tx = graphDb.beginTx()) {
+			for (CatalogUpdate update : updates) {
+				Node docNode = getDocumentNodeById(update.getIdType(), update.getDocumentId());
+				if (docNode == null) {
+					logger.warn("Skipping catalog update (" + update.getType().name() + ") for document: "
+							+ update.getDocumentId() + " as it is not in the catalog.");
+					continue;
+				}
+				switch (update.getType()) {
+				case ADD_FILE_VERSION:
+					addFileVersionToDocument(docNode, update.getFile(), update.getFileVersion(),
+							update.getFileSize());
+					break;
+				case ADD_ANNOTATION_OUTPUT:
+					addAnnotationOutput(tx, docNode, update.getAnnotationOutput(), createdRunNodes);
+					break;
+				case LOG_ERROR:
+					logError(tx, docNode, update.getPipelineKey(), update.getComponentAtFault(),
+							update.getErrorMessage(), update.getStackTrace(), createdRunNodes);
+					break;
+				default:
+					throw new IllegalArgumentException(
+							"Unhandled update type: " + update.getType().name() + ". Code changes required.");
+				}
+			}
+			tx.success();
+		}
+		indexRunStatus(createdRunNodes);
 	}
 
 }
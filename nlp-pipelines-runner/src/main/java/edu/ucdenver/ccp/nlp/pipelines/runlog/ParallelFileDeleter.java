@@ -0,0 +1,106 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+
+/**
+ * Deletes files using a fixed pool of background threads, e.g. the annotation
+ * files of a run-key that is being removed from the catalog
+ */
+public class ParallelFileDeleter implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(ParallelFileDeleter.class);
+
+	/**
+	 * The number of threads used by default, e.g. to delete the annotation
+	 * files of a run-key that is being removed from the catalog
+	 */
+	public static final int DEFAULT_THREAD_COUNT = 8;
+
+	private final DocumentStorage storage;
+	private final ExecutorService executor;
+	private final AtomicInteger deletedCount = new AtomicInteger();
+
+	public ParallelFileDeleter() {
+		this(StorageType.FILE_SYSTEM.getStorage());
+	}
+
+	/**
+	 * @param storage
+	 *            the storage that holds the files to delete
+	 */
+	public ParallelFileDeleter(DocumentStorage storage) {
+		this(DEFAULT_THREAD_COUNT, storage);
+	}
+
+	/**
+	 * @param threadCount
+	 *            the number of files deleted concurrently
+	 * @param storage
+	 *            the storage that holds the files to delete
+	 */
+	public ParallelFileDeleter(int threadCount, DocumentStorage storage) {
+		this.storage = storage;
+		this.executor = Executors.newFixedThreadPool(threadCount, r -> {
+			Thread t = new Thread(r, "file-deleter");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Deletes the specified files in the background. Files that do not exist
+	 * are ignored.
+	 *
+	 * @param files
+	 * @return a future that completes once all of the specified files have
+	 *         been deleted
+	 */
+	public CompletableFuture<Void> delete(Collection<File> files) {
+		return CompletableFuture.allOf(files.stream()
+				.map(file -> CompletableFuture.runAsync(() -> deleteFile(file), executor))
+				.toArray(CompletableFuture[]::new));
+	}
+
+	private void deleteFile(File file) {
+		try {
+			if (storage.delete(file)) {
+				deletedCount.incrementAndGet();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to delete file: " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * @return the number of files deleted so far
+	 */
+	public int getDeletedCount() {
+		return deletedCount.get();
+	}
+
+	/**
+	 * Waits for any pending deletions to complete
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
 import java.io.File;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -23,12 +24,39 @@ public interface RunCatalog extends AutoCloseable {
 
 	public void addDocument(Document d, DocumentCollection dc);
 
+	/**
+	 * Adds all documents returned by the specified iterator to the catalog as
+	 * members of the specified document collection. Documents are committed
+	 * in batches of the specified size, so this method should be preferred to
+	 * repeated calls to {@link #addDocument(Document, DocumentCollection)}
+	 * when loading large collections.
+	 * 
+	 * @param documents
+	 * @param dc
+	 * @param batchSize
+	 *            the number of documents to add per transaction
+	 * @return the number of documents added to the catalog
+	 */
+	public int addDocuments(Iterator<Document> documents, DocumentCollection dc, int batchSize);
+
 	public void addFileVersionToDocument(Document d, File newFile, FileVersion fileVersion);
 
 	public void addAnnotationPipeline(AnnotationPipeline ap);
 
 	public void addAnnotationOutput(Document d, AnnotationOutput ao);
 
+	/**
+	 * Applies the specified updates to the catalog as a single batch. This
+	 * method should be preferred to individual calls to
+	 * {@link #addFileVersionToDocument(Document, File, FileVersion)},
+	 * {@link #addAnnotationOutput(Document, AnnotationOutput)}, and
+	 * {@link #logError(String, ExternalIdentifierType, String, String, String, String)}
+	 * when logging large numbers of updates.
+	 * 
+	 * @param updates
+	 */
+	public void applyUpdates(List<CatalogUpdate> updates);
+
 	public void close();
 
 	/**
@@ -53,6 +81,104 @@ public interface RunCatalog extends AutoCloseable {
 
 	public Map<String, Map<RunStatus, Set<Document>>> getRunsMap(String docCollectionShortName);
 
+	/**
+	 * Unlike {@link #getRunsMap(String)}, this method considers only a single
+	 * run-key and does not materialize the documents up front. Documents are
+	 * retrieved from the catalog in pages of the specified size as the
+	 * returned cursor is consumed.
+	 * 
+	 * @param docCollectionShortName
+	 * @param runKey
+	 * @param status
+	 * @param pageSize
+	 *            the number of documents to retrieve from the catalog at a
+	 *            time
+	 * @return a cursor over the documents in the specified collection that
+	 *         have the specified status for the specified run-key
+	 */
+	public DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status,
+			int pageSize);
+
+	/**
+	 * Like {@link #getDocuments(String, String, RunStatus, int)}, but only
+	 * documents belonging to the specified shard are returned. Documents
+	 * outside of the shard are filtered out by the catalog.
+	 * 
+	 * @param docCollectionShortName
+	 * @param runKey
+	 * @param status
+	 * @param shard
+	 * @param pageSize
+	 *            the number of documents to retrieve from the catalog at a
+	 *            time
+	 * @return a cursor over the documents in the specified shard of the
+	 *         specified collection that have the specified status for the
+	 *         specified run-key
+	 */
+	public DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status, Shard shard,
+			int pageSize);
+
+	/**
+	 * Like {@link #getDocuments(String, String, RunStatus, Shard, int)} for
+	 * the OUTSTANDING status, but for several run-keys, e.g. the run-keys of
+	 * the components of a pipeline. A document is returned for the first
+	 * run-key for which it is outstanding and is skipped for subsequent
+	 * run-keys, so the catalog does not need to track the documents that have
+	 * been returned.
+	 * 
+	 * @param docCollectionShortName
+	 * @param runKeys
+	 * @param shard
+	 * @param pageSize
+	 *            the number of documents to retrieve from the catalog at a
+	 *            time
+	 * @return a cursor over the documents in the specified shard of the
+	 *         specified collection that are outstanding for at least one of
+	 *         the specified run-keys
+	 */
+	public DocumentCursor getDocumentsOutstandingForAny(String docCollectionShortName, List<String> runKeys,
+			Shard shard, int pageSize);
+
+	/**
+	 * @param docCollectionShortName
+	 * @param pageSize
+	 *            the number of documents to retrieve from the catalog at a
+	 *            time
+	 * @return a cursor over all member documents of the specified collection
+	 */
+	public DocumentCursor getDocuments(String docCollectionShortName, int pageSize);
+
+	/**
+	 * Removes the specified documents from the collection, e.g. documents that
+	 * have been retired from the source corpus, so that they are no longer
+	 * included in the runs of the collection. The documents and their
+	 * annotation outputs remain in the catalog.
+	 * 
+	 * @param docCollectionShortName
+	 * @param pmcids
+	 * @return the number of documents removed from the collection
+	 */
+	public int removeDocumentsFromCollection(String docCollectionShortName, List<String> pmcids);
+
+	/**
+	 * @param docCollectionShortName
+	 * @return a mapping from run-key to run status to the number of documents
+	 *         in the specified collection with that status. Unlike
+	 *         {@link #getRunsMap(String)}, no documents are retrieved.
+	 */
+	public Map<String, Map<RunStatus, Integer>> getRunStatusCounts(String docCollectionShortName);
+
+	/**
+	 * @param docCollectionShortName
+	 * @param runKey
+	 * @param shardCount
+	 * @return a mapping from shard id to run status to the number of
+	 *         documents in that shard of the specified collection with that
+	 *         status for the specified run-key
+	 */
+	public Map<Integer, Map<RunStatus, Integer>> getShardRunStatusCounts(String docCollectionShortName, String runKey,
+			int shardCount);
+
 	public Set<File> getAnnotationFilesForDocumentId(ExternalIdentifierType idType, String documentId, String runKey);
 
 	public Document getDocumentById(ExternalIdentifierType idType, String documentId);
@@ -70,6 +196,13 @@ public interface RunCatalog extends AutoCloseable {
 	 */
 	List<String> getDocumentCollectionRunKeys(String docCollectionShortName);
 
+	/**
+	 * Registers the run-key with the specified document collection. This
+	 * method is idempotent.
+	 * 
+	 * @param docCollectionShortName
+	 * @param runKey
+	 */
 	public void addRunKeyToDocumentCollection(String docCollectionShortName, String runKey);
 
 	public void removeRunKeyFromDocumentCollection(String docCollectionShortName, String runKey);
@@ -1,23 +1,70 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.TreeMap;
 
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.collections.CollectionsUtil.SortOrder;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentScheduler;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentScheduler.DocumentOrder;
 
 public class RunCatalogUtil {
 
+	/**
+	 * The available {@link RunCatalog} implementations
+	 */
+	public enum CatalogType {
+		NEO4J, APPEND_LOG
+	}
+
+	/**
+	 * @param catalogType
+	 * @param catalogDirectory
+	 * @return the run catalog of the specified type stored in the specified
+	 *         directory
+	 */
+	public static RunCatalog openRunCatalog(CatalogType catalogType, File catalogDirectory) {
+		return openRunCatalog(catalogType, catalogDirectory, StorageType.FILE_SYSTEM.getStorage());
+	}
+
+	/**
+	 * @param catalogType
+	 * @param catalogDirectory
+	 * @param storage
+	 *            the storage that holds the annotation files, which are deleted
+	 *            when a run-key is removed
+	 * @return the run catalog of the specified type stored in the specified
+	 *         directory
+	 */
+	public static RunCatalog openRunCatalog(CatalogType catalogType, File catalogDirectory,
+			DocumentStorage storage) {
+		switch (catalogType) {
+		case NEO4J:
+			return new Neo4jRunCatalog(catalogDirectory, storage);
+		case APPEND_LOG:
+			return new AppendLogRunCatalog(catalogDirectory, storage);
+		default:
+			throw new IllegalArgumentException(
+					"Unhandled catalog type: " + catalogType.name() + ". Code changes required.");
+		}
+	}
+
 	public static void getCatalogRunSummary(RunCatalog catalog) {
 		/*
-		 * for each document collection get the missing runs map and output
-		 * counts; completed run count would be nice too
+		 * for each document collection output the complete, outstanding, and
+		 * error counts for each run-key
 		 */
 		List<DocumentCollection> documentCollections = getSortedDocumentCollections(catalog);
 		System.out.println("-----------------  Document Collections  -----------------\n");
@@ -27,25 +74,11 @@ public class RunCatalogUtil {
 		System.out.println("-----------------  Pipeline Run Summaries  -----------------\n");
 		for (DocumentCollection dc : documentCollections) {
 			System.out.println("  ========== " + dc.getLongname() + " ==========");
-			Map<String, Map<RunStatus, Set<Document>>> runsMap = catalog.getRunsMap(dc);
-			Map<String, Map<RunStatus, Set<Document>>> sortedRunsMap = CollectionsUtil.sortMapByKeys(runsMap,
+			Map<String, Map<RunStatus, Integer>> countsMap = catalog.getRunStatusCounts(dc.getShortname());
+			Map<String, Map<RunStatus, Integer>> sortedCountsMap = CollectionsUtil.sortMapByKeys(countsMap,
 					SortOrder.ASCENDING);
-			for (Entry<String, Map<RunStatus, Set<Document>>> entry : sortedRunsMap.entrySet()) {
-				int completeCount = 0;
-				if (entry.getValue().containsKey(RunStatus.COMPLETE)) {
-					completeCount = entry.getValue().get(RunStatus.COMPLETE).size();
-				}
-				int outstandingCount = 0;
-				if (entry.getValue().containsKey(RunStatus.OUTSTANDING)) {
-					outstandingCount = entry.getValue().get(RunStatus.OUTSTANDING).size();
-				}
-				int errorCount = 0;
-				if (entry.getValue().containsKey(RunStatus.ERROR)) {
-					errorCount = entry.getValue().get(RunStatus.ERROR).size();
-				}
-				int totalCount = completeCount + outstandingCount + errorCount;
-				System.out.println(entry.getKey() + "\tTotal: " + totalCount + "\tComplete: " + completeCount
-						+ "\tOutstanding: " + outstandingCount + "\tError: " + errorCount);
+			for (Entry<String, Map<RunStatus, Integer>> entry : sortedCountsMap.entrySet()) {
+				System.out.println(entry.getKey() + "\t" + toSummary(entry.getValue()));
 
 			}
 			System.out.println();
@@ -66,6 +99,146 @@ public class RunCatalogUtil {
 		return documentCollections;
 	}
 
+	/**
+	 * @param statusCounts
+	 * @return a one-line summary of the specified run status counts
+	 */
+	public static String toSummary(Map<RunStatus, Integer> statusCounts) {
+		int completeCount = statusCounts.getOrDefault(RunStatus.COMPLETE, 0);
+		int outstandingCount = statusCounts.getOrDefault(RunStatus.OUTSTANDING, 0);
+		int errorCount = statusCounts.getOrDefault(RunStatus.ERROR, 0);
+		int totalCount = completeCount + outstandingCount + errorCount;
+		return "Total: " + totalCount + "\tComplete: " + completeCount + "\tOutstanding: " + outstandingCount
+				+ "\tError: " + errorCount;
+	}
+
+	/**
+	 * @param file
+	 * @return the size of the file in bytes, or -1 if it is not a regular file
+	 */
+	public static long getFileSize(File file) {
+		return file.isFile() ? file.length() : -1;
+	}
+
+	/**
+	 * @param docCount
+	 * @param elapsedTimeInMs
+	 * @return the number of documents processed per second
+	 */
+	public static long docsPerSecond(long docCount, long elapsedTimeInMs) {
+		return (elapsedTimeInMs > 0) ? (docCount * 1000) / elapsedTimeInMs : docCount;
+	}
+
+	/**
+	 * @param shardCount
+	 * @return a mapping from each shard id to each run status to zero
+	 */
+	public static Map<Integer, Map<RunStatus, Integer>> initShardRunStatusCounts(int shardCount) {
+		Map<Integer, Map<RunStatus, Integer>> map = new TreeMap<Integer, Map<RunStatus, Integer>>();
+		for (int shardId = 0; shardId < shardCount; shardId++) {
+			Map<RunStatus, Integer> countMap = new EnumMap<RunStatus, Integer>(RunStatus.class);
+			for (RunStatus status : RunStatus.values()) {
+				countMap.put(status, 0);
+			}
+			map.put(shardId, countMap);
+		}
+		return map;
+	}
+
+	/**
+	 * Outputs the complete, outstanding, and error counts of each shard for
+	 * the specified run-key
+	 * 
+	 * @param catalog
+	 * @param docCollectionShortName
+	 * @param runKey
+	 * @param shardCount
+	 */
+	public static void getShardRunSummary(RunCatalog catalog, String docCollectionShortName, String runKey,
+			int shardCount) {
+		System.out.println("-----------------  Shard Run Summary: " + docCollectionShortName + " " + runKey
+				+ "  -----------------\n");
+		for (Entry<Integer, Map<RunStatus, Integer>> entry : catalog
+				.getShardRunStatusCounts(docCollectionShortName, runKey, shardCount).entrySet()) {
+			System.out.println(new Shard(entry.getKey(), shardCount) + "\t" + toSummary(entry.getValue()));
+		}
+		System.out.println("------------------------------------------------------------");
+	}
+
+	/**
+	 * @param d
+	 * @param fileVersion
+	 * @return the cataloged size of the specified version of the document
+	 *         file, or -1 if unknown. The size of a text file that has not been
+	 *         cataloged is estimated by the size of its source file.
+	 */
+	public static long getFileSizeEstimate(Document d, FileVersion fileVersion) {
+		if (fileVersion == FileVersion.LOCAL_TEXT && d.getLocalTextFileSize() >= 0) {
+			return d.getLocalTextFileSize();
+		}
+		return d.getLocalSourceFileSize();
+	}
+
+	/**
+	 * @param catalog
+	 * @param docCollectionShortName
+	 * @param runKey
+	 * @param fileVersion
+	 * @return the cataloged file sizes of the documents that are outstanding
+	 *         for the specified run-key, in catalog order
+	 */
+	public static long[] getOutstandingFileSizes(RunCatalog catalog, String docCollectionShortName, String runKey,
+			FileVersion fileVersion) {
+		long[] sizes = new long[10000];
+		int count = 0;
+		try (DocumentCursor docCursor = catalog.getDocuments(docCollectionShortName, runKey, RunStatus.OUTSTANDING,
+				10000)) {
+			while (docCursor.hasNext()) {
+				if (count == sizes.length) {
+					sizes = Arrays.copyOf(sizes, sizes.length * 2);
+				}
+				sizes[count++] = getFileSizeEstimate(docCursor.next(), fileVersion);
+			}
+		}
+		return Arrays.copyOf(sizes, count);
+	}
+
+	/**
+	 * Outputs, for each {@link DocumentOrder}, the makespan of processing the
+	 * outstanding documents for the specified run-key using the specified
+	 * number of pipeline instances, estimated from the cataloged file sizes
+	 * 
+	 * @param catalog
+	 * @param docCollectionShortName
+	 * @param runKey
+	 * @param fileVersion
+	 * @param instanceCount
+	 */
+	public static void getDocumentOrderReport(RunCatalog catalog, String docCollectionShortName, String runKey,
+			FileVersion fileVersion, int instanceCount) {
+		long[] sizes = getOutstandingFileSizes(catalog, docCollectionShortName, runKey, fileVersion);
+		int unknownSizeCount = 0;
+		for (long size : sizes) {
+			if (size < 0) {
+				unknownSizeCount++;
+			}
+		}
+		long lowerBound = DocumentScheduler.getMakespanLowerBound(sizes, instanceCount);
+		System.out.println("-----------------  Document Order Report: " + docCollectionShortName + " " + runKey
+				+ "  -----------------\n");
+		System.out.println(
+				"Outstanding documents: " + sizes.length + " (" + unknownSizeCount + " with no cataloged size)");
+		System.out.println("Pipeline instances: " + instanceCount);
+		System.out.println("Lower bound: " + lowerBound + " bytes");
+		for (DocumentOrder order : DocumentOrder.values()) {
+			long makespan = DocumentScheduler.getMakespan(sizes, DocumentScheduler.getProcessingOrder(sizes, order),
+					instanceCount);
+			System.out.println(String.format("%s\tmakespan: %d bytes\t(%.3f x lower bound)", order.name(), makespan,
+					(lowerBound == 0) ? 1.0 : (double) makespan / lowerBound));
+		}
+		System.out.println("------------------------------------------------------------");
+	}
+
 	public static void removeEmptyDocumentCollections(RunCatalog catalog) {
 		catalog.removeEmptyDocumentCollections();
 	}
@@ -0,0 +1,154 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A sidecar journal of the documents that have completed a pipeline run. The
+ * id of each document is appended to the checkpoint file as it completes, and
+ * the file is forced to disk every syncInterval documents, so at most
+ * syncInterval completed documents are lost if the run dies. When the run is
+ * restarted the completed documents are excluded from processing, including
+ * documents whose completion was never recorded in the {@link RunCatalog}.
+ * <p>
+ * The file contains one document id per line. A partially written last line,
+ * e.g. due to a crash, is ignored when the checkpoint is loaded.
+ */
+public class RunCheckpoint implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(RunCheckpoint.class);
+
+	private final File checkpointFile;
+	private final int syncInterval;
+	private final FileOutputStream fos;
+	private final BufferedWriter writer;
+	private int unsyncedCount = 0;
+	private long completedCount = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param checkpointFile
+	 *            created if it does not exist, otherwise appended to
+	 * @param syncInterval
+	 *            the number of completed documents between forcing the
+	 *            checkpoint file to disk
+	 * @throws IOException
+	 */
+	public RunCheckpoint(File checkpointFile, int syncInterval) throws IOException {
+		if (syncInterval < 1) {
+			throw new IllegalArgumentException("Checkpoint sync interval must be > 0. Value provided: " + syncInterval);
+		}
+		this.checkpointFile = checkpointFile;
+		this.syncInterval = syncInterval;
+		if (checkpointFile.getParentFile() != null) {
+			Files.createDirectories(checkpointFile.getParentFile().toPath());
+		}
+		boolean endsWithPartialEntry = endsWithPartialEntry(checkpointFile);
+		this.fos = new FileOutputStream(checkpointFile, true);
+		this.writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+		if (endsWithPartialEntry) {
+			/* terminate the partial entry so that it is not joined to the next id */
+			writer.write('\n');
+		}
+	}
+
+	private static boolean endsWithPartialEntry(File checkpointFile) throws IOException {
+		if (!checkpointFile.exists() || checkpointFile.length() == 0) {
+			return false;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(checkpointFile, "r")) {
+			raf.seek(raf.length() - 1);
+			return raf.read() != '\n';
+		}
+	}
+
+	/**
+	 * Records that the specified document has completed the run
+	 *
+	 * @param documentId
+	 * @throws IOException
+	 */
+	public synchronized void markComplete(String documentId) throws IOException {
+		writer.write(documentId);
+		writer.write('\n');
+		completedCount++;
+		if (++unsyncedCount >= syncInterval) {
+			sync();
+		}
+	}
+
+	/**
+	 * Forces the recorded document ids to disk
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException {
+		writer.flush();
+		fos.getFD().sync();
+		unsyncedCount = 0;
+	}
+
+	/**
+	 * @return the number of documents recorded as complete since the
+	 *         checkpoint was opened
+	 */
+	public synchronized long getCompletedCount() {
+		return completedCount;
+	}
+
+	/**
+	 * Forces the recorded document ids to disk and closes the checkpoint file.
+	 * Has no effect if the checkpoint is already closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			sync();
+		} finally {
+			writer.close();
+		}
+		logger.info("Checkpointed " + completedCount + " completed documents to: " + checkpointFile.getAbsolutePath());
+	}
+
+	/**
+	 * @param checkpointFile
+	 * @return the ids of the documents recorded as complete in the specified
+	 *         checkpoint file, or an empty set if the file does not exist
+	 * @throws IOException
+	 */
+	public static Set<String> load(File checkpointFile) throws IOException {
+		Set<String> completedDocumentIds = new HashSet<String>();
+		if (!checkpointFile.exists()) {
+			return completedDocumentIds;
+		}
+		String content = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8);
+		int start = 0;
+		int end;
+		while ((end = content.indexOf('\n', start)) >= 0) {
+			if (end > start) {
+				completedDocumentIds.add(content.substring(start, end));
+			}
+			start = end + 1;
+		}
+		if (start < content.length()) {
+			logger.warn("Ignoring partially written entry at the end of run checkpoint: "
+					+ checkpointFile.getAbsolutePath());
+		}
+		return completedDocumentIds;
+	}
+
+}
@@ -0,0 +1,82 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * One of shardCount disjoint slices of a document collection. Documents are
+ * assigned to shards by a hash of their PMCID, so the assignment is stable
+ * across processes and machines and does not depend on the order in which
+ * documents are retrieved from the catalog.
+ */
+@Data
+public class Shard implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The single shard that contains every document
+	 */
+	public static final Shard ALL = new Shard(0, 1);
+
+	private final int shardId;
+	private final int shardCount;
+
+	/**
+	 * @param shardId
+	 *            0-based
+	 * @param shardCount
+	 */
+	public Shard(int shardId, int shardCount) {
+		if (shardCount < 1 || shardId < 0 || shardId >= shardCount) {
+			throw new IllegalArgumentException(
+					"Invalid shard. Shard id must be in [0, shard count). Values provided: " + shardId + ", "
+							+ shardCount);
+		}
+		this.shardId = shardId;
+		this.shardCount = shardCount;
+	}
+
+	/**
+	 * @return true if this shard contains every document
+	 */
+	public boolean isAll() {
+		return shardCount == 1;
+	}
+
+	/**
+	 * @param pmcid
+	 * @return true if the document with the specified PMCID belongs to this
+	 *         shard
+	 */
+	public boolean contains(String pmcid) {
+		return isAll() || getShardId(pmcid, shardCount) == shardId;
+	}
+
+	/**
+	 * @param pmcid
+	 * @param shardCount
+	 * @return the id of the shard to which the document with the specified
+	 *         PMCID is assigned
+	 */
+	public static int getShardId(String pmcid, int shardCount) {
+		/*
+		 * String.hashCode() is fully specified, so it is identical in every
+		 * JVM; the bits are mixed (murmur3 finalizer) so that sequential
+		 * PMCIDs spread evenly across shards
+		 */
+		int h = pmcid.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return Math.floorMod(h, shardCount);
+	}
+
+	@Override
+	public String toString() {
+		return "shard " + shardId + " of " + shardCount;
+	}
+
+}
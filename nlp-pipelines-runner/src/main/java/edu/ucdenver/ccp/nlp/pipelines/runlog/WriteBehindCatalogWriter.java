@@ -0,0 +1,380 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.metrics.PipelineMetrics;
+
+/**
+ * Buffers {@link CatalogUpdate}s in a bounded queue. A background thread
+ * commits them to a {@link RunCatalog} in batches using
+ * {@link RunCatalog#applyUpdates(List)}. {@link #submit(CatalogUpdate)} blocks
+ * when the queue is full.
+ * <p>
+ * If a journal file is specified, each writer appends its updates to its own
+ * journal, named after the journal file with a unique suffix, and locks it for
+ * as long as the writer is open. The journal is synced to disk once per batch,
+ * before the batch is committed, so updates submitted since the last sync can
+ * be lost in a crash; the documents they refer to are then still outstanding
+ * and are processed again. Journals left behind by writers that are no longer
+ * running, e.g. because the process crashed, are replayed when the next writer
+ * is created using the same journal file. Catalog updates are idempotent, so
+ * replaying an update that was committed before the crash is harmless. The
+ * journal is deleted when the writer is closed.
+ */
+public class WriteBehindCatalogWriter implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(WriteBehindCatalogWriter.class);
+
+	private static final long POLL_TIMEOUT_MS = 100;
+	/* the pipeline metrics component recording the time to commit each batch */
+	private static final String COMMIT_METRICS_COMPONENT = PipelineMetrics.CATALOG + ".commit";
+
+	private final RunCatalog catalog;
+	private final BlockingQueue<CatalogUpdate> queue;
+	private final int batchSize;
+	private final UpdateJournal journal;
+	private final Thread writerThread;
+
+	/* guarded by this */
+	private long submittedCount = 0;
+	private long committedCount = 0;
+
+	private volatile boolean closed = false;
+	private volatile RuntimeException writerFailure = null;
+
+	/**
+	 * @param catalog
+	 * @param queueCapacity
+	 *            the maximum number of updates waiting to be committed
+	 * @param batchSize
+	 *            the maximum number of updates committed per batch
+	 * @param journalFile
+	 *            if not null, updates are journaled for crash safety to a file
+	 *            in the same directory whose name starts with the name of
+	 *            this file
+	 * @throws IOException
+	 */
+	public WriteBehindCatalogWriter(RunCatalog catalog, int queueCapacity, int batchSize, File journalFile)
+			throws IOException {
+		if (queueCapacity < 1 || batchSize < 1) {
+			throw new IllegalArgumentException("Queue capacity and batch size must be > 0. Values provided: "
+					+ queueCapacity + ", " + batchSize);
+		}
+		this.catalog = catalog;
+		this.queue = new ArrayBlockingQueue<CatalogUpdate>(queueCapacity);
+		this.batchSize = batchSize;
+		if (journalFile != null) {
+			replayJournals(catalog, journalFile, batchSize);
+			this.journal = new UpdateJournal(
+					new File(journalFile.getAbsoluteFile().getParentFile(), journalFile.getName() + "." + UUID.randomUUID()));
+		} else {
+			this.journal = null;
+		}
+		this.writerThread = new Thread(this::writeUpdates, "run-catalog-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Queues the update to be committed to the catalog, blocking if the queue
+	 * is full.
+	 *
+	 * @param update
+	 * @throws IOException
+	 *             if the update cannot be journaled
+	 */
+	public void submit(CatalogUpdate update) throws IOException {
+		checkWriterFailure();
+		if (closed) {
+			throw new IllegalStateException("Cannot submit update to a closed writer.");
+		}
+		if (journal != null) {
+			journal.append(update);
+		}
+		synchronized (this) {
+			submittedCount++;
+		}
+		try {
+			while (!queue.offer(update, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				checkWriterFailure();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while queuing catalog update.", e);
+		}
+	}
+
+	/**
+	 * Blocks until all submitted updates have been committed to the catalog
+	 */
+	public void flush() {
+		synchronized (this) {
+			while (committedCount < submittedCount && writerFailure == null) {
+				try {
+					wait(POLL_TIMEOUT_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while flushing catalog updates.", e);
+				}
+			}
+		}
+		checkWriterFailure();
+	}
+
+	/**
+	 * Flushes any outstanding updates, stops the background thread, and
+	 * deletes the journal. The catalog is not closed.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		try {
+			flush();
+		} finally {
+			closed = true;
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (journal != null) {
+				journal.close(writerFailure == null);
+			}
+		}
+	}
+
+	private void checkWriterFailure() {
+		if (writerFailure != null) {
+			throw new IllegalStateException("Background catalog writer failed.", writerFailure);
+		}
+	}
+
+	private void writeUpdates() {
+		List<CatalogUpdate> batch = new ArrayList<CatalogUpdate>(batchSize);
+		long startTime = System.currentTimeMillis();
+		long totalCommitted = 0;
+		try {
+			while (!closed || !queue.isEmpty()) {
+				CatalogUpdate update = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				if (update == null) {
+					continue;
+				}
+				batch.add(update);
+				queue.drainTo(batch, batchSize - 1);
+				if (journal != null) {
+					journal.sync();
+				}
+				long batchStart = System.nanoTime();
+				catalog.applyUpdates(batch);
+				PipelineMetrics.INSTANCE.recordLatency(COMMIT_METRICS_COMPONENT, System.nanoTime() - batchStart);
+				if (journal != null) {
+					journal.markCommitted(batch.size());
+				}
+				totalCommitted += batch.size();
+				synchronized (this) {
+					committedCount += batch.size();
+					notifyAll();
+				}
+				logger.debug("Catalog updates committed: " + totalCommitted + " ("
+						+ RunCatalogUtil.docsPerSecond(totalCommitted, System.currentTimeMillis() - startTime)
+						+ " updates/sec, queue depth: " + queue.size() + ")");
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writerFailure = new IllegalStateException("Background catalog writer interrupted.", e);
+		} catch (IOException e) {
+			writerFailure = new IllegalStateException("Unable to update catalog write-behind journal.", e);
+		} catch (RuntimeException e) {
+			logger.error("Failed to commit " + batch.size() + " catalog updates.", e);
+			writerFailure = e;
+		} finally {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @param journalFile
+	 * @return the journals of writers created using the specified journal
+	 *         file, including a journal written to the journal file itself
+	 */
+	static List<File> getJournalFiles(File journalFile) {
+		String name = journalFile.getName();
+		File[] files = journalFile.getAbsoluteFile().getParentFile()
+				.listFiles(f -> f.isFile() && (f.getName().equals(name) || f.getName().startsWith(name + ".")));
+		if (files == null) {
+			return Collections.emptyList();
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	/**
+	 * Commits any updates that follow the last commit marker in the journals
+	 * of writers that are no longer running. Journals locked by a running
+	 * writer are left alone.
+	 */
+	private static void replayJournals(RunCatalog catalog, File journalFile, int batchSize) throws IOException {
+		for (File file : getJournalFiles(journalFile)) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				FileLock lock;
+				try {
+					lock = channel.tryLock();
+				} catch (OverlappingFileLockException e) {
+					lock = null;
+				}
+				if (lock == null) {
+					continue;
+				}
+				List<CatalogUpdate> uncommitted = UpdateJournal.readUncommitted(channel, file);
+				if (!uncommitted.isEmpty()) {
+					logger.warn("Replaying " + uncommitted.size() + " uncommitted catalog updates from journal: "
+							+ file.getAbsolutePath());
+					for (int i = 0; i < uncommitted.size(); i += batchSize) {
+						catalog.applyUpdates(uncommitted.subList(i, Math.min(i + batchSize, uncommitted.size())));
+					}
+				}
+				/*
+				 * truncate before deleting so that a writer that opened the
+				 * journal before it was deleted finds nothing to replay
+				 */
+				channel.truncate(0);
+				if (!file.delete() && file.exists()) {
+					throw new IOException("Unable to delete replayed journal: " + file.getAbsolutePath());
+				}
+			} catch (NoSuchFileException e) {
+				// replayed and deleted by another writer
+			}
+		}
+	}
+
+	/**
+	 * An append-only file of updates interleaved with commit markers. Each
+	 * record is a single byte record type followed by either an update or the
+	 * number of updates committed. Commits occur in submission order, so the
+	 * updates that follow the cumulative committed count are those that still
+	 * need to be committed. The journal is truncated whenever every journaled
+	 * update has been committed.
+	 */
+	private static class UpdateJournal {
+
+		private static final byte UPDATE_RECORD = 0;
+		private static final byte COMMIT_RECORD = 1;
+
+		private final File journalFile;
+		private final FileChannel channel;
+		private final DataOutputStream out;
+		private long appendedCount = 0;
+		private long committedCount = 0;
+
+		public UpdateJournal(File journalFile) throws IOException {
+			this.journalFile = journalFile;
+			this.channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			/* marks the journal as belonging to a running writer */
+			channel.lock();
+			this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+		}
+
+		public synchronized void append(CatalogUpdate update) throws IOException {
+			out.writeByte(UPDATE_RECORD);
+			update.write(out);
+			appendedCount++;
+		}
+
+		public synchronized void markCommitted(int count) throws IOException {
+			committedCount += count;
+			if (committedCount == appendedCount) {
+				out.flush();
+				channel.truncate(0);
+				channel.position(0);
+				appendedCount = 0;
+				committedCount = 0;
+			} else {
+				out.writeByte(COMMIT_RECORD);
+				out.writeInt(count);
+			}
+		}
+
+		/**
+		 * Forces the journaled records to disk
+		 */
+		public synchronized void sync() throws IOException {
+			out.flush();
+			channel.force(false);
+		}
+
+		public synchronized void close(boolean delete) {
+			if (delete && !journalFile.delete()) {
+				logger.warn("Unable to delete journal: " + journalFile.getAbsolutePath());
+			}
+			/* closing the journal releases its lock, so it is deleted first */
+			try {
+				out.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close journal: " + journalFile.getAbsolutePath(), e);
+			}
+		}
+
+		/**
+		 * @param channel
+		 *            an open channel to the journal
+		 * @param journalFile
+		 * @return the updates in the journal that were never committed. A
+		 *         partially written record at the end of the journal is
+		 *         ignored.
+		 * @throws IOException
+		 */
+		public static List<CatalogUpdate> readUncommitted(FileChannel channel, File journalFile) throws IOException {
+			List<CatalogUpdate> updates = new ArrayList<CatalogUpdate>();
+			long committed = 0;
+			/* the stream is not closed as that would close the channel */
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			try {
+				while (true) {
+					byte recordType = in.readByte();
+					if (recordType == UPDATE_RECORD) {
+						updates.add(CatalogUpdate.read(in));
+					} else if (recordType == COMMIT_RECORD) {
+						committed += in.readInt();
+					} else {
+						throw new IOException("Invalid record type (" + recordType + ") in journal: "
+								+ journalFile.getAbsolutePath());
+					}
+				}
+			} catch (EOFException e) {
+				// end of journal
+			}
+			return new ArrayList<CatalogUpdate>(updates.subList((int) Math.min(committed, updates.size()),
+					updates.size()));
+		}
+	}
+
+}
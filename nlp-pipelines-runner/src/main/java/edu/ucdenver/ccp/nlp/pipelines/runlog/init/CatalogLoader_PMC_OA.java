@@ -4,25 +4,36 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
-import edu.ucdenver.ccp.common.file.CharacterEncoding;
-import edu.ucdenver.ccp.common.file.FileUtil;
-import edu.ucdenver.ccp.common.file.reader.Line;
-import edu.ucdenver.ccp.common.file.reader.StreamLineIterator;
 import edu.ucdenver.ccp.common.ftp.FTPUtil;
-import edu.ucdenver.ccp.common.string.StringUtil;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineKey;
 import lombok.Data;
 
@@ -36,6 +47,17 @@ public class CatalogLoader_PMC_OA {
 
 	private static final String PMC_LIBRARY_DIR = "pmc";
 
+	/**
+	 * The default number of documents to add to the catalog per transaction
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	/**
+	 * The default number of threads used to walk the bulk directory and move
+	 * files into the library
+	 */
+	public static final int DEFAULT_THREAD_COUNT = 8;
+
 	/**
 	 * The path to where the PMC .nxml and (when created) .txt files are to be
 	 * stored
@@ -44,18 +66,94 @@ public class CatalogLoader_PMC_OA {
 
 	private RunCatalog catalog;
 
+	private final DocumentStorage storage;
+
 	public CatalogLoader_PMC_OA(RunCatalog catalog, File libraryBaseDirectory) {
+		this(catalog, libraryBaseDirectory, StorageType.FILE_SYSTEM.getStorage());
+	}
+
+	/**
+	 * @param catalog
+	 * @param libraryBaseDirectory
+	 * @param storage
+	 *            the storage that bulk files are moved into
+	 */
+	public CatalogLoader_PMC_OA(RunCatalog catalog, File libraryBaseDirectory, DocumentStorage storage) {
 		this.catalog = catalog;
 		this.pmcLibraryBaseDirectory = new File(libraryBaseDirectory, PMC_LIBRARY_DIR);
+		this.storage = storage;
 	}
 
 	public void initCatalogWithBulkPmc(File bulkPmcBaseDirectory) throws IOException {
+		initCatalogWithBulkPmc(bulkPmcBaseDirectory, DEFAULT_BATCH_SIZE);
+	}
+
+	public void initCatalogWithBulkPmc(File bulkPmcBaseDirectory, int batchSize) throws IOException {
+		initCatalogWithBulkPmc(bulkPmcBaseDirectory, batchSize, DEFAULT_THREAD_COUNT);
+	}
+
+	public void initCatalogWithBulkPmc(File bulkPmcBaseDirectory, int batchSize, int threadCount)
+			throws IOException {
 		Map<String, DocumentMetadata> filename2MetadataMap = loadPmcOaMetadataMap(bulkPmcBaseDirectory, false);
-		initCatalog(bulkPmcBaseDirectory, pmcLibraryBaseDirectory, catalog, filename2MetadataMap);
+		initCatalog(bulkPmcBaseDirectory, pmcLibraryBaseDirectory, catalog, filename2MetadataMap, batchSize,
+				threadCount, storage);
+	}
+
+	/**
+	 * Downloads the current PMC OA file list and brings the catalog in line
+	 * with it, see
+	 * {@link #applyDelta(File, File, RunCatalog, Map, int, int)}
+	 * 
+	 * @param bulkPmcBaseDirectory
+	 *            contains the .nxml.gz files of documents that are new since
+	 *            the previous load
+	 * @param batchSize
+	 * @param threadCount
+	 * @return a summary of the changes made to the catalog
+	 * @throws IOException
+	 */
+	public DeltaResult updateCatalogWithBulkPmc(File bulkPmcBaseDirectory, int batchSize, int threadCount)
+			throws IOException {
+		Map<String, DocumentMetadata> filename2MetadataMap = loadPmcOaMetadataMap(bulkPmcBaseDirectory, true);
+		return applyDelta(bulkPmcBaseDirectory, pmcLibraryBaseDirectory, catalog, filename2MetadataMap, batchSize,
+				threadCount, storage);
 	}
 
 	public static void initCatalog(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
 			Map<String, DocumentMetadata> filename2MetadataMap) throws IOException {
+		initCatalog(bulkPmcBaseDirectory, libraryBaseDirectory, catalog, filename2MetadataMap, DEFAULT_BATCH_SIZE);
+	}
+
+	public static void initCatalog(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
+			Map<String, DocumentMetadata> filename2MetadataMap, int batchSize) throws IOException {
+		initCatalog(bulkPmcBaseDirectory, libraryBaseDirectory, catalog, filename2MetadataMap, batchSize,
+				DEFAULT_THREAD_COUNT);
+	}
+
+	public static void initCatalog(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
+			Map<String, DocumentMetadata> filename2MetadataMap, int batchSize, int threadCount) throws IOException {
+		initCatalog(bulkPmcBaseDirectory, libraryBaseDirectory, catalog, filename2MetadataMap, batchSize,
+				threadCount, StorageType.FILE_SYSTEM.getStorage());
+	}
+
+	/**
+	 * The bulk directory is walked, and its files moved into the library, by
+	 * a pool of threads while the catalog is populated in batches from the
+	 * calling thread
+	 * 
+	 * @param bulkPmcBaseDirectory
+	 * @param libraryBaseDirectory
+	 * @param catalog
+	 * @param filename2MetadataMap
+	 * @param batchSize
+	 * @param threadCount
+	 * @param storage
+	 *            the storage that bulk files are moved into
+	 * @throws IOException
+	 */
+	public static void initCatalog(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
+			Map<String, DocumentMetadata> filename2MetadataMap, int batchSize, int threadCount,
+			DocumentStorage storage) throws IOException {
 		DocumentCollection dc = new PMC_OA_DocumentCollection();
 		/*
 		 * We add the XML2TXT run key to the PMC OA document collection b/c
@@ -64,37 +162,284 @@ public class CatalogLoader_PMC_OA {
 		 */
 		catalog.addDocumentCollection(dc);
 		catalog.addRunKeyToDocumentCollection(dc.getShortname(), "sections");
-		int count = 0;
-		for (Iterator<File> fileIter = FileUtil.getFileIterator(bulkPmcBaseDirectory, true, ".nxml.gz"); fileIter
-				.hasNext();) {
-			File file = fileIter.next();
+		int count = addLibraryDocuments(bulkPmcBaseDirectory, libraryBaseDirectory, catalog, dc,
+				filename2MetadataMap, Collections.<String> emptySet(), batchSize, threadCount, storage);
+		logger.info("Initialized catalog with " + count + " PMC OA documents.");
+	}
+
+	public static DeltaResult applyDelta(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
+			Map<String, DocumentMetadata> filename2MetadataMap, int batchSize, int threadCount) throws IOException {
+		return applyDelta(bulkPmcBaseDirectory, libraryBaseDirectory, catalog, filename2MetadataMap, batchSize,
+				threadCount, StorageType.FILE_SYSTEM.getStorage());
+	}
 
-			if (count++ % 50000 == 0) {
-				logger.info("Initializing catalog with PMC OA documents: " + (count - 1));
+	/**
+	 * Brings the PMC OA document collection in line with a newer PMC OA file
+	 * list. Documents that are no longer listed are retired, i.e. removed from
+	 * the collection (they, and their annotation outputs, remain in the
+	 * catalog). Listed documents that are not yet in the collection are
+	 * ingested from the bulk directory. Files in the bulk directory for
+	 * documents already in the collection are left in place and not
+	 * re-ingested.
+	 * 
+	 * @param bulkPmcBaseDirectory
+	 * @param libraryBaseDirectory
+	 * @param catalog
+	 * @param filename2MetadataMap
+	 *            the metadata parsed from the newer PMC OA file list
+	 * @param batchSize
+	 * @param threadCount
+	 * @param storage
+	 *            the storage that bulk files are moved into
+	 * @return a summary of the changes made to the catalog
+	 * @throws IOException
+	 */
+	public static DeltaResult applyDelta(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
+			Map<String, DocumentMetadata> filename2MetadataMap, int batchSize, int threadCount,
+			DocumentStorage storage) throws IOException {
+		DocumentCollection dc = new PMC_OA_DocumentCollection();
+		catalog.addDocumentCollection(dc);
+
+		Set<String> catalogPmcids = new HashSet<String>();
+		try (DocumentCursor docCursor = catalog.getDocuments(dc.getShortname(), batchSize)) {
+			docCursor.forEachRemaining(d -> catalogPmcids.add(d.getPmcid()));
+		}
+		Set<String> listedPmcids = new HashSet<String>();
+		for (DocumentMetadata dm : filename2MetadataMap.values()) {
+			listedPmcids.add(dm.getPmcid());
+		}
+
+		List<String> retiredPmcids = new ArrayList<String>();
+		for (String pmcid : catalogPmcids) {
+			if (!listedPmcids.contains(pmcid)) {
+				retiredPmcids.add(pmcid);
+			}
+		}
+		int retiredCount = catalog.removeDocumentsFromCollection(dc.getShortname(), retiredPmcids);
+
+		int newCount = 0;
+		for (String pmcid : listedPmcids) {
+			if (!catalogPmcids.contains(pmcid)) {
+				newCount++;
+			}
+		}
+		int addedCount = addLibraryDocuments(bulkPmcBaseDirectory, libraryBaseDirectory, catalog, dc,
+				filename2MetadataMap, catalogPmcids, batchSize, threadCount, storage);
+		DeltaResult result = new DeltaResult(addedCount, retiredCount, newCount - addedCount);
+		logger.info("Updated PMC OA catalog. Added: " + result.getAddedCount() + " Retired: "
+				+ result.getRetiredCount() + " Listed, but missing from the bulk directory: "
+				+ result.getMissingFileCount());
+		return result;
+	}
+
+	private static int addLibraryDocuments(File bulkPmcBaseDirectory, File libraryBaseDirectory, RunCatalog catalog,
+			DocumentCollection dc, Map<String, DocumentMetadata> filename2MetadataMap, Set<String> excludedPmcids,
+			int batchSize, int threadCount, DocumentStorage storage) throws IOException {
+		try (ParallelLibraryDocumentIterator docIter = new ParallelLibraryDocumentIterator(bulkPmcBaseDirectory,
+				libraryBaseDirectory, filename2MetadataMap, excludedPmcids, batchSize, threadCount, storage)) {
+			return catalog.addDocuments(docIter, dc, batchSize);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * A summary of the changes made to the catalog by
+	 * {@link CatalogLoader_PMC_OA#applyDelta(File, File, RunCatalog, Map, int, int, DocumentStorage)}
+	 */
+	@Data
+	public static class DeltaResult {
+		private final int addedCount;
+		private final int retiredCount;
+		/* listed documents that are new to the catalog but have no file */
+		private final int missingFileCount;
+	}
+
+	/**
+	 * Converts the bulk PMC OA .nxml.gz files into catalog {@link Document}
+	 * instances. The bulk directory is walked by a pool of threads, one task
+	 * per directory, and each file is moved into the correct 2-level
+	 * randomized library directory as specified in the metadata. The
+	 * resulting documents are handed to the consuming thread through a
+	 * bounded queue so that the walk cannot run arbitrarily far ahead of the
+	 * catalog writes. Files without PMC OA metadata are logged and skipped;
+	 * files of excluded documents are skipped quietly and are not moved.
+	 */
+	private static class ParallelLibraryDocumentIterator implements Iterator<Document>, AutoCloseable {
+
+		/* marks the end of the walk */
+		private static final Document END_OF_WALK = new Document(null, null, null, null, null, null);
+
+		private final File libraryBaseDirectory;
+		private final Map<String, DocumentMetadata> filename2MetadataMap;
+		private final Set<String> excludedPmcids;
+		private final DocumentStorage storage;
+		private final BlockingQueue<Document> queue;
+		private final ForkJoinPool pool;
+		private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		private final AtomicInteger fileCount = new AtomicInteger();
+		private final long startTime = System.currentTimeMillis();
+		private volatile boolean closed = false;
+		private Document nextDocument = null;
+		private boolean walkComplete = false;
+
+		public ParallelLibraryDocumentIterator(File bulkPmcBaseDirectory, File libraryBaseDirectory,
+				Map<String, DocumentMetadata> filename2MetadataMap, Set<String> excludedPmcids, int queueCapacity,
+				int threadCount, DocumentStorage storage) {
+			this.libraryBaseDirectory = libraryBaseDirectory;
+			this.filename2MetadataMap = filename2MetadataMap;
+			this.excludedPmcids = excludedPmcids;
+			this.storage = storage;
+			this.queue = new ArrayBlockingQueue<Document>(queueCapacity);
+			this.pool = new ForkJoinPool(threadCount);
+			Thread walker = new Thread(() -> {
+				try {
+					pool.invoke(new DirectoryWalkAction(bulkPmcBaseDirectory));
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					put(END_OF_WALK, true);
+				}
+			}, "pmc-oa-walker");
+			walker.setDaemon(true);
+			walker.start();
+		}
+
+		private class DirectoryWalkAction extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+			private final File directory;
+
+			public DirectoryWalkAction(File directory) {
+				this.directory = directory;
+			}
+
+			@Override
+			protected void compute() {
+				File[] children = directory.listFiles();
+				if (children == null) {
+					return;
+				}
+				List<DirectoryWalkAction> subdirectoryActions = new ArrayList<DirectoryWalkAction>();
+				for (File child : children) {
+					if (child.isDirectory()) {
+						DirectoryWalkAction action = new DirectoryWalkAction(child);
+						action.fork();
+						subdirectoryActions.add(action);
+					}
+				}
+				for (File child : children) {
+					if (child.isFile() && child.getName().endsWith(".nxml.gz")) {
+						processFile(child);
+					}
+				}
+				for (DirectoryWalkAction action : subdirectoryActions) {
+					action.join();
+				}
+			}
+		}
+
+		private void processFile(File file) {
+			if (closed || failure.get() != null) {
+				return;
+			}
+			int count = fileCount.incrementAndGet();
+			if (count % 50000 == 0) {
+				logger.info("Initializing catalog with PMC OA documents: " + count + " ("
+						+ RunCatalogUtil.docsPerSecond(count, System.currentTimeMillis() - startTime)
+						+ " docs/sec)");
 			}
 			String nxmlFileName = StringUtils.removeEnd(file.getName(), ".nxml.gz");
-			if (filename2MetadataMap.containsKey(nxmlFileName)) {
-				DocumentMetadata dm = filename2MetadataMap.get(nxmlFileName);
-
-				/*
-				 * move the file into the correct 2-level randomized directory
-				 * as specified in the metadata
-				 */
-				String localPath = dm.getRemotePath().substring(0, dm.getRemotePath().lastIndexOf('/'));
-				File storagePath = new File(libraryBaseDirectory, localPath + File.separator + file.getName());
-				FileUtil.mkdir(storagePath.getParentFile());
-
-				Files.move(file.toPath(), storagePath.toPath());
-				/* add the document to the catalog */
-				Document d = new Document(dm.getPmid(), dm.getPmcid(), storagePath, FileType.XML, dm.getJournal(),
-						dm.getCitation());
-				d.setSourceFileLicense(dm.getLicense());
-
-				catalog.addDocument(d, dc);
-			} else {
+			DocumentMetadata dm = filename2MetadataMap.get(nxmlFileName);
+			if (dm == null) {
 				logger.warn("No PMC OA metadata available for file: " + file.getAbsolutePath());
+			} else if (!excludedPmcids.contains(dm.getPmcid())) {
+				try {
+					put(toLibraryDocument(file, dm, libraryBaseDirectory, storage), false);
+				} catch (IOException e) {
+					failure.compareAndSet(null, e);
+				}
 			}
 		}
+
+		/**
+		 * Blocks until there is space in the queue, or until the consumer is
+		 * closed. Unless this is the end of the walk, also gives up once the
+		 * walk has failed.
+		 */
+		private void put(Document d, boolean endOfWalk) {
+			try {
+				while (!closed && (endOfWalk || failure.get() == null)) {
+					if (queue.offer(d, 100, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (nextDocument == null && !walkComplete) {
+				try {
+					nextDocument = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for PMC OA documents.", e);
+				}
+				if (nextDocument == END_OF_WALK) {
+					nextDocument = null;
+					walkComplete = true;
+					Throwable t = failure.get();
+					if (t instanceof IOException) {
+						throw new UncheckedIOException((IOException) t);
+					} else if (t != null) {
+						throw (RuntimeException) t;
+					}
+				}
+			}
+			return nextDocument != null;
+		}
+
+		@Override
+		public Document next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Document d = nextDocument;
+			nextDocument = null;
+			return d;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			pool.shutdownNow();
+			queue.clear();
+		}
+	}
+
+	/**
+	 * Moves the file into the correct 2-level randomized directory as
+	 * specified in the metadata
+	 * 
+	 * @param file
+	 * @param dm
+	 * @param libraryBaseDirectory
+	 * @param storage
+	 * @return a {@link Document} referencing the relocated file
+	 * @throws IOException
+	 */
+	private static Document toLibraryDocument(File file, DocumentMetadata dm, File libraryBaseDirectory,
+			DocumentStorage storage) throws IOException {
+		String localPath = dm.getRemotePath().substring(0, dm.getRemotePath().lastIndexOf('/'));
+		File storagePath = new File(libraryBaseDirectory, localPath + File.separator + file.getName());
+		storage.moveIn(file, storagePath);
+		Document d = new Document(dm.getPmid(), dm.getPmcid(), storagePath, FileType.XML, dm.getJournal(),
+				dm.getCitation());
+		d.setSourceFileLicense(dm.getLicense());
+		d.setLocalSourceFileSize(storage.size(storagePath));
+		return d;
 	}
 
 	/**
@@ -120,42 +465,12 @@ public class CatalogLoader_PMC_OA {
 
 	/**
 	 * @param is
-	 * @return a mapping from PMC ID to metadata about the document parsed from
-	 *         the specified input stream
+	 * @return a mapping from tarball name to metadata about the document
+	 *         parsed from the specified input stream
 	 * @throws IOException
 	 */
-	public static Map<String, DocumentMetadata> parsePmcOaMetadata(InputStream is) throws IOException {
-		Map<String, DocumentMetadata> map = new HashMap<String, DocumentMetadata>();
-		int count = 0;
-		for (StreamLineIterator lineIter = new StreamLineIterator(is, CharacterEncoding.UTF_8, null); lineIter
-				.hasNext();) {
-			if (count++ % 10000 == 0) {
-				logger.info("PMC OA Metadata loading progress: " + (count - 1));
-			}
-			Line line = lineIter.next();
-			/* first line is a time stamp */
-			if (line.getLineNumber() == 0) {
-				continue;
-			}
-			String[] toks = line.getText().split("\\t");
-			String remotePath = toks[0];
-			String citation = toks[1];
-			String journal = citation.substring(0, citation.indexOf('.') + 1);
-			String pmcid = toks[2];
-			String pmid = null;
-			if (!toks[3].trim().isEmpty()) {
-				pmid = StringUtil.removePrefix(toks[3], "PMID:");
-			}
-			String license = toks[4];
-
-			DocumentMetadata dm = new DocumentMetadata(remotePath, citation, journal, pmcid, pmid, license);
-			// the .nxml file name should be the name of the tarball in the
-			// oa_file_list.txt file.
-			String tarballName = remotePath.substring(remotePath.lastIndexOf("/") + 1);
-			tarballName = StringUtils.removeEnd(tarballName, ".tar.gz");
-			map.put(tarballName, dm);
-		}
-		return map;
+	public static PmcOaMetadataIndex parsePmcOaMetadata(InputStream is) throws IOException {
+		return PmcOaMetadataIndex.parse(is);
 	}
 
 	@Data
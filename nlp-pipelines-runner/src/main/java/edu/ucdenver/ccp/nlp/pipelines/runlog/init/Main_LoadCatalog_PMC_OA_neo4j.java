@@ -7,6 +7,8 @@ import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
 
 public class Main_LoadCatalog_PMC_OA_neo4j {
 
@@ -19,7 +21,13 @@ public class Main_LoadCatalog_PMC_OA_neo4j {
 	 *            args[1] = catalogDirectory: the base directory containing the
 	 *            neo4j repository<br>
 	 *            args[2] = pmcBulkDirectory: the base directory housing the
-	 *            unpacked, but compressed, PMC OA .nxml files
+	 *            unpacked, but compressed, PMC OA .nxml files<br>
+	 *            args[3] = batchSize (optional): the number of documents to
+	 *            add to the catalog per transaction<br>
+	 *            args[4] = threadCount (optional): the number of threads used
+	 *            to walk the bulk directory and move files into the library<br>
+	 *            args[5] = storageType (optional): FILE_SYSTEM (default) or
+	 *            SHARD_ARCHIVE
 	 */
 	public static void main(String[] args) {
 		BasicConfigurator.configure();
@@ -27,12 +35,16 @@ public class Main_LoadCatalog_PMC_OA_neo4j {
 		File libraryBaseDirectory = new File(args[0]);
 		File catalogDirectory = new File(args[1]);
 		File pmcBulkDirectory = new File(args[2]);
+		int batchSize = (args.length > 3) ? Integer.parseInt(args[3]) : CatalogLoader_PMC_OA.DEFAULT_BATCH_SIZE;
+		int threadCount = (args.length > 4) ? Integer.parseInt(args[4]) : CatalogLoader_PMC_OA.DEFAULT_THREAD_COUNT;
+		StorageType storageType = (args.length > 5) ? StorageType.valueOf(args[5]) : StorageType.FILE_SYSTEM;
 
 		/* open a connection to the Neo4j Embedded DB */
-		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);
+				DocumentStorage storage = storageType.getStorage()) {
 
-			CatalogLoader_PMC_OA loader = new CatalogLoader_PMC_OA(catalog, libraryBaseDirectory);
-			loader.initCatalogWithBulkPmc(pmcBulkDirectory);
+			CatalogLoader_PMC_OA loader = new CatalogLoader_PMC_OA(catalog, libraryBaseDirectory, storage);
+			loader.initCatalogWithBulkPmc(pmcBulkDirectory, batchSize, threadCount);
 
 		} catch (IOException e) {
 			logger.error("Exception thrown (possibly during neo4j close() operation)...", e);
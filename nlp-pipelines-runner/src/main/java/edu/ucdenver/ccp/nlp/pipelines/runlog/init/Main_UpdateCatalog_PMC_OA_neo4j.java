@@ -0,0 +1,63 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.init;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.init.CatalogLoader_PMC_OA.DeltaResult;
+
+/**
+ * Brings a previously loaded PMC OA catalog up to date with the current PMC OA
+ * file list, e.g. after a monthly refresh. Only new documents are ingested and
+ * documents no longer in the file list are retired.
+ */
+public class Main_UpdateCatalog_PMC_OA_neo4j {
+
+	private static final Logger logger = Logger.getLogger(Main_UpdateCatalog_PMC_OA_neo4j.class);
+
+	/**
+	 * @param args
+	 *            args[0] = libraryBaseDirectory: the base file path where
+	 *            articles in the catalog are to be stored<br>
+	 *            args[1] = catalogDirectory: the base directory containing the
+	 *            neo4j repository<br>
+	 *            args[2] = pmcBulkDirectory: the base directory housing the
+	 *            unpacked, but compressed, PMC OA .nxml files of new documents.
+	 *            The current oa_file_list.txt is downloaded to this directory.<br>
+	 *            args[3] = batchSize (optional): the number of documents to
+	 *            add to the catalog per transaction<br>
+	 *            args[4] = threadCount (optional): the number of threads used
+	 *            to walk the bulk directory and move files into the library<br>
+	 *            args[5] = storageType (optional): FILE_SYSTEM (default) or
+	 *            SHARD_ARCHIVE
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+
+		File libraryBaseDirectory = new File(args[0]);
+		File catalogDirectory = new File(args[1]);
+		File pmcBulkDirectory = new File(args[2]);
+		int batchSize = (args.length > 3) ? Integer.parseInt(args[3]) : CatalogLoader_PMC_OA.DEFAULT_BATCH_SIZE;
+		int threadCount = (args.length > 4) ? Integer.parseInt(args[4]) : CatalogLoader_PMC_OA.DEFAULT_THREAD_COUNT;
+		StorageType storageType = (args.length > 5) ? StorageType.valueOf(args[5]) : StorageType.FILE_SYSTEM;
+
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);
+				DocumentStorage storage = storageType.getStorage()) {
+
+			CatalogLoader_PMC_OA loader = new CatalogLoader_PMC_OA(catalog, libraryBaseDirectory, storage);
+			DeltaResult result = loader.updateCatalogWithBulkPmc(pmcBulkDirectory, batchSize, threadCount);
+			logger.info("PMC OA catalog update complete: " + result);
+
+		} catch (IOException e) {
+			logger.error("Exception thrown (possibly during neo4j close() operation)...", e);
+			System.exit(-1);
+		}
+
+	}
+
+}
@@ -0,0 +1,398 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.init;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.init.CatalogLoader_PMC_OA.DocumentMetadata;
+
+/**
+ * A read-only, memory-compact mapping from tarball name to the metadata parsed
+ * from the PMC OA file list (oa_file_list.txt). The remote path, citation,
+ * PMC ID and PMID fields of each line are kept as UTF-8 bytes in a single
+ * array and the (highly repetitive) journal and license values are interned.
+ * Entries are sorted by tarball name and located by binary search;
+ * {@link DocumentMetadata} instances are created on demand.
+ */
+public class PmcOaMetadataIndex extends AbstractMap<String, DocumentMetadata> {
+
+	private static final Logger logger = Logger.getLogger(PmcOaMetadataIndex.class);
+
+	private static final byte TAB = '\t';
+	private static final byte NEWLINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+	private static final String PMID_PREFIX = "PMID:";
+	private static final byte[] TARBALL_SUFFIX = ".tar.gz".getBytes(StandardCharsets.UTF_8);
+
+	/*
+	 * the remote path, citation, PMC ID and PMID fields of each line, separated
+	 * by tabs
+	 */
+	private final byte[] data;
+	/* the offset of each record in data, in file order */
+	private final int[] recordOffsets;
+	private final int[] recordLengths;
+	/* the offset and length of the tarball name within each record */
+	private final int[] keyOffsets;
+	private final int[] keyLengths;
+	private final int[] journalIds;
+	private final int[] licenseIds;
+	private final String[] journals;
+	private final String[] licenses;
+	/* record indexes sorted by tarball name */
+	private final int[] sortedRecords;
+
+	private PmcOaMetadataIndex(Builder builder) {
+		/* trim the spare capacity left by the builder */
+		this.data = Arrays.copyOf(builder.data, builder.dataLength);
+		this.recordOffsets = Arrays.copyOf(builder.recordOffsets, builder.recordCount);
+		this.recordLengths = Arrays.copyOf(builder.recordLengths, builder.recordCount);
+		this.keyOffsets = Arrays.copyOf(builder.keyOffsets, builder.recordCount);
+		this.keyLengths = Arrays.copyOf(builder.keyLengths, builder.recordCount);
+		this.journalIds = Arrays.copyOf(builder.journalIds, builder.recordCount);
+		this.licenseIds = Arrays.copyOf(builder.licenseIds, builder.recordCount);
+		this.journals = builder.journals.toArray(new String[builder.journals.size()]);
+		this.licenses = builder.licenses.toArray(new String[builder.licenses.size()]);
+		this.sortedRecords = sortAndRemoveDuplicates(builder.recordCount);
+	}
+
+	/**
+	 * Parses the PMC OA file list. The first line is a time stamp; every other
+	 * line has 5 tab-separated columns: remote path, citation, PMC ID, PMID
+	 * (optional, prefixed by "PMID:") and license.
+	 *
+	 * @param is
+	 * @return an index over the metadata in the specified input stream
+	 * @throws IOException
+	 */
+	public static PmcOaMetadataIndex parse(InputStream is) throws IOException {
+		Builder builder = new Builder();
+		InputStream in = new BufferedInputStream(is, 1 << 16);
+		/* first line is a time stamp */
+		int b = in.read();
+		while (b != -1 && b != NEWLINE) {
+			b = in.read();
+		}
+		int lineNumber = 1;
+		byte[] line = new byte[1024];
+		while (b != -1) {
+			int length = 0;
+			while ((b = in.read()) != -1 && b != NEWLINE) {
+				if (length == line.length) {
+					line = Arrays.copyOf(line, length * 2);
+				}
+				line[length++] = (byte) b;
+			}
+			if (length > 0 && line[length - 1] == CARRIAGE_RETURN) {
+				length--;
+			}
+			if (length > 0) {
+				builder.addLine(line, length, lineNumber);
+			}
+			if (lineNumber++ % 10000 == 0) {
+				logger.info("PMC OA Metadata loading progress: " + (lineNumber - 1));
+			}
+		}
+		return new PmcOaMetadataIndex(builder);
+	}
+
+	/**
+	 * Accumulates the parsed lines in growable primitive arrays
+	 */
+	private static class Builder {
+		private byte[] data = new byte[1 << 20];
+		private int dataLength = 0;
+		private int recordCount = 0;
+		private int[] recordOffsets = new int[1024];
+		private int[] recordLengths = new int[1024];
+		private int[] keyOffsets = new int[1024];
+		private int[] keyLengths = new int[1024];
+		private int[] journalIds = new int[1024];
+		private int[] licenseIds = new int[1024];
+		private final List<String> journals = new ArrayList<String>();
+		private final Map<String, Integer> journalToId = new HashMap<String, Integer>();
+		private final List<String> licenses = new ArrayList<String>();
+		private final Map<String, Integer> licenseToId = new HashMap<String, Integer>();
+
+		/**
+		 * Splits the line on tabs without decoding it; only the journal and
+		 * license are decoded, and then interned
+		 */
+		private void addLine(byte[] line, int length, int lineNumber) throws IOException {
+			int[] tabs = new int[4];
+			int tabCount = 0;
+			for (int i = 0; i < length && tabCount < tabs.length; i++) {
+				if (line[i] == TAB) {
+					tabs[tabCount++] = i;
+				}
+			}
+			if (tabCount < tabs.length) {
+				throw new IOException("Malformed PMC OA file list. Expected 5 tab-separated columns on line "
+						+ lineNumber + ": " + new String(line, 0, length, StandardCharsets.UTF_8));
+			}
+			int licenseEnd = length;
+			for (int i = tabs[3] + 1; i < length; i++) {
+				if (line[i] == TAB) {
+					licenseEnd = i;
+					break;
+				}
+			}
+
+			ensureCapacity(tabs[3]);
+			int recordOffset = dataLength;
+			System.arraycopy(line, 0, data, dataLength, tabs[3]);
+			dataLength += tabs[3];
+
+			/* the tarball name is the last segment of the remote path */
+			int keyStart = 0;
+			int keyEnd = tabs[0];
+			for (int i = keyEnd - 1; i >= 0; i--) {
+				if (line[i] == '/') {
+					keyStart = i + 1;
+					break;
+				}
+			}
+			if (endsWith(line, keyStart, keyEnd, TARBALL_SUFFIX)) {
+				keyEnd -= TARBALL_SUFFIX.length;
+			}
+
+			/* the journal is the citation up to and including the first period */
+			int journalEnd = tabs[0] + 1;
+			for (int i = tabs[0] + 1; i < tabs[1]; i++) {
+				if (line[i] == '.') {
+					journalEnd = i + 1;
+					break;
+				}
+			}
+
+			recordOffsets[recordCount] = recordOffset;
+			recordLengths[recordCount] = tabs[3];
+			keyOffsets[recordCount] = recordOffset + keyStart;
+			keyLengths[recordCount] = keyEnd - keyStart;
+			journalIds[recordCount] = intern(new String(line, tabs[0] + 1, journalEnd - (tabs[0] + 1),
+					StandardCharsets.UTF_8), journals, journalToId);
+			licenseIds[recordCount] = intern(new String(line, tabs[3] + 1, licenseEnd - (tabs[3] + 1),
+					StandardCharsets.UTF_8), licenses, licenseToId);
+			recordCount++;
+		}
+
+		private void ensureCapacity(int byteCount) {
+			if (dataLength + byteCount > data.length) {
+				long newLength = Math.max((long) data.length * 2, (long) dataLength + byteCount);
+				if (newLength > Integer.MAX_VALUE - 8) {
+					newLength = Integer.MAX_VALUE - 8;
+					if (dataLength + byteCount > newLength) {
+						throw new IllegalStateException("PMC OA file list is too large to index.");
+					}
+				}
+				data = Arrays.copyOf(data, (int) newLength);
+			}
+			if (recordCount == recordOffsets.length) {
+				int newLength = recordCount * 2;
+				recordOffsets = Arrays.copyOf(recordOffsets, newLength);
+				recordLengths = Arrays.copyOf(recordLengths, newLength);
+				keyOffsets = Arrays.copyOf(keyOffsets, newLength);
+				keyLengths = Arrays.copyOf(keyLengths, newLength);
+				journalIds = Arrays.copyOf(journalIds, newLength);
+				licenseIds = Arrays.copyOf(licenseIds, newLength);
+			}
+		}
+
+		private static int intern(String s, List<String> values, Map<String, Integer> valueToId) {
+			Integer id = valueToId.get(s);
+			if (id == null) {
+				id = values.size();
+				values.add(s);
+				valueToId.put(s, id);
+			}
+			return id;
+		}
+
+		private static boolean endsWith(byte[] bytes, int start, int end, byte[] suffix) {
+			if (end - start < suffix.length) {
+				return false;
+			}
+			for (int i = 0; i < suffix.length; i++) {
+				if (bytes[end - suffix.length + i] != suffix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Sorts the record indexes by tarball name using a stable merge sort.
+	 * When a tarball name is listed more than once the last listing is kept.
+	 */
+	private int[] sortAndRemoveDuplicates(int recordCount) {
+		int[] sorted = new int[recordCount];
+		for (int i = 0; i < recordCount; i++) {
+			sorted[i] = i;
+		}
+		int[] buffer = new int[recordCount];
+		for (int width = 1; width < recordCount; width *= 2) {
+			for (int lo = 0; lo < recordCount - width; lo += 2 * width) {
+				int mid = lo + width;
+				int hi = Math.min(lo + 2 * width, recordCount);
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				while (i < mid && j < hi) {
+					buffer[k++] = (compareKeys(sorted[j], sorted[i]) < 0) ? sorted[j++] : sorted[i++];
+				}
+				while (i < mid) {
+					buffer[k++] = sorted[i++];
+				}
+				while (j < hi) {
+					buffer[k++] = sorted[j++];
+				}
+				System.arraycopy(buffer, lo, sorted, lo, hi - lo);
+			}
+		}
+		int uniqueCount = 0;
+		for (int i = 0; i < recordCount; i++) {
+			if (i + 1 < recordCount && compareKeys(sorted[i], sorted[i + 1]) == 0) {
+				continue;
+			}
+			sorted[uniqueCount++] = sorted[i];
+		}
+		return (uniqueCount == recordCount) ? sorted : Arrays.copyOf(sorted, uniqueCount);
+	}
+
+	private int compareKeys(int record1, int record2) {
+		return compare(data, keyOffsets[record1], keyLengths[record1], data, keyOffsets[record2],
+				keyLengths[record2]);
+	}
+
+	private static int compare(byte[] bytes1, int offset1, int length1, byte[] bytes2, int offset2, int length2) {
+		int length = Math.min(length1, length2);
+		for (int i = 0; i < length; i++) {
+			int c = (bytes1[offset1 + i] & 0xff) - (bytes2[offset2 + i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length1 - length2;
+	}
+
+	/**
+	 * @param tarballName
+	 * @return the position of the tarball name in the sorted record indexes,
+	 *         or -1 if it is not in the index
+	 */
+	private int find(String tarballName) {
+		byte[] key = tarballName.getBytes(StandardCharsets.UTF_8);
+		int lo = 0;
+		int hi = sortedRecords.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int record = sortedRecords[mid];
+			int c = compare(data, keyOffsets[record], keyLengths[record], key, 0, key.length);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private String getKey(int record) {
+		return new String(data, keyOffsets[record], keyLengths[record], StandardCharsets.UTF_8);
+	}
+
+	private DocumentMetadata toDocumentMetadata(int record) {
+		int offset = recordOffsets[record];
+		int end = offset + recordLengths[record];
+		/* each record holds exactly 3 tabs */
+		int[] tabs = new int[3];
+		int tabCount = 0;
+		for (int i = offset; i < end; i++) {
+			if (data[i] == TAB) {
+				tabs[tabCount++] = i;
+			}
+		}
+		String remotePath = new String(data, offset, tabs[0] - offset, StandardCharsets.UTF_8);
+		String citation = new String(data, tabs[0] + 1, tabs[1] - tabs[0] - 1, StandardCharsets.UTF_8);
+		String pmcid = new String(data, tabs[1] + 1, tabs[2] - tabs[1] - 1, StandardCharsets.UTF_8);
+		String pmid = new String(data, tabs[2] + 1, end - tabs[2] - 1, StandardCharsets.UTF_8).trim();
+		if (pmid.isEmpty()) {
+			pmid = null;
+		} else if (pmid.startsWith(PMID_PREFIX)) {
+			pmid = pmid.substring(PMID_PREFIX.length());
+		}
+		return new DocumentMetadata(remotePath, citation, journals[journalIds[record]], pmcid, pmid,
+				licenses[licenseIds[record]]);
+	}
+
+	@Override
+	public DocumentMetadata get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int index = find((String) key);
+		return (index < 0) ? null : toDocumentMetadata(sortedRecords[index]);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return (key instanceof String) && find((String) key) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return sortedRecords.length;
+	}
+
+	/**
+	 * Entries are created on demand, in tarball name order
+	 */
+	@Override
+	public Set<Entry<String, DocumentMetadata>> entrySet() {
+		return new AbstractSet<Entry<String, DocumentMetadata>>() {
+			@Override
+			public Iterator<Entry<String, DocumentMetadata>> iterator() {
+				return new Iterator<Entry<String, DocumentMetadata>>() {
+					private int index = 0;
+
+					@Override
+					public boolean hasNext() {
+						return index < sortedRecords.length;
+					}
+
+					@Override
+					public Entry<String, DocumentMetadata> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						int record = sortedRecords[index++];
+						return new SimpleImmutableEntry<String, DocumentMetadata>(getKey(record),
+								toDocumentMetadata(record));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return sortedRecords.length;
+			}
+		};
+	}
+
+}
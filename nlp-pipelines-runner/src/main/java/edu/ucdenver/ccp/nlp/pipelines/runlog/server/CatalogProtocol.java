@@ -0,0 +1,122 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import lombok.Data;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationOutput;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.CatalogUpdate;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Shard;
+
+/**
+ * The messages exchanged between a {@link RemoteRunCatalog} and a
+ * {@link RunCatalogServer}. Each request names one of the {@link Operation}s
+ * the server supports and is answered by exactly one response. Messages are
+ * exchanged using Java object serialization.
+ */
+class CatalogProtocol {
+
+	/**
+	 * The catalog operations available to clients. These are limited to the
+	 * calls made by the RunCatalogAE and the run catalog collection reader.
+	 */
+	enum Operation {
+		/** args: List&lt;CatalogUpdate&gt; */
+		APPLY_UPDATES,
+		/** args: collection short name, run-key */
+		ADD_RUN_KEY_TO_DOCUMENT_COLLECTION,
+		/** args: collection short name, run-key, RunStatus, page size */
+		GET_DOCUMENTS,
+		/** args: collection short name, run-key, RunStatus, Shard, page size */
+		GET_SHARD_DOCUMENTS,
+		/** args: collection short name, List&lt;String&gt; run-keys, Shard, page size */
+		GET_DOCUMENTS_OUTSTANDING_FOR_ANY,
+		/** args: collection short name */
+		GET_RUN_STATUS_COUNTS,
+		/** args: collection short name, run-key, shard count */
+		GET_SHARD_RUN_STATUS_COUNTS,
+		/** args: cursor id */
+		NEXT_PAGE,
+		/** args: cursor id */
+		CLOSE_CURSOR
+	}
+
+	@Data
+	static class Request implements Serializable {
+		private static final long serialVersionUID = 2L;
+		private final Operation operation;
+		private final Object[] args;
+	}
+
+	@Data
+	static class Response implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final Object result;
+		/**
+		 * if not null, the request failed and this is the description of the
+		 * error that was thrown on the server
+		 */
+		private final String error;
+	}
+
+	/**
+	 * Reads requests, refusing to deserialize any class other than the
+	 * request and the values it may carry. This serves as an object input
+	 * filter for Java 8, which lacks java.io.ObjectInputFilter.
+	 */
+	static class RequestInputStream extends ObjectInputStream {
+
+		private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+				Request.class.getName(), Operation.class.getName(), Object.class.getName(), String.class.getName(),
+				Number.class.getName(), Integer.class.getName(), Enum.class.getName(), ArrayList.class.getName(),
+				File.class.getName(), CatalogUpdate.class.getName(), CatalogUpdate.UpdateType.class.getName(),
+				AnnotationOutput.class.getName(), FileVersion.class.getName(), ExternalIdentifierType.class.getName(),
+				RunStatus.class.getName(), Shard.class.getName()));
+
+		/* the classes that make up a serialized org.joda.time.DateTime */
+		private static final String JODA_TIME_PACKAGE = "org.joda.time.";
+
+		public RequestInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			if (!isAllowed(desc.getName())) {
+				throw new InvalidClassException(desc.getName(), "Class not permitted in a run catalog request");
+			}
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+			throw new InvalidClassException("Proxy classes are not permitted in a run catalog request");
+		}
+
+		static boolean isAllowed(String className) {
+			if (className.startsWith("[")) {
+				String componentName = className.replaceFirst("^\\[+", "");
+				if (!componentName.startsWith("L")) {
+					/* an array of primitives */
+					return true;
+				}
+				return isAllowed(componentName.substring(1, componentName.length() - 1));
+			}
+			return ALLOWED_CLASSES.contains(className) || className.startsWith(JODA_TIME_PACKAGE);
+		}
+	}
+
+}
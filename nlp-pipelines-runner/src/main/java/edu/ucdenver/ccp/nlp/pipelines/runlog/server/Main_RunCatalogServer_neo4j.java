@@ -0,0 +1,49 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
+
+/**
+ * Serves a Neo4j run catalog to {@link RemoteRunCatalog} clients on the local
+ * machine until the process is terminated
+ */
+public class Main_RunCatalogServer_neo4j {
+
+	private static final Logger logger = Logger.getLogger(Main_RunCatalogServer_neo4j.class);
+
+	public static final int DEFAULT_MAX_REQUESTS_PER_COMMIT = 1000;
+
+	/**
+	 * @param args
+	 *            args[0] = neo4j catalog base directory <br>
+	 *            args[1] = port
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		File catalogDirectory = new File(args[0]);
+		int port = Integer.parseInt(args[1]);
+		Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);
+		try {
+			RunCatalogServer server = new RunCatalogServer(catalog, port, DEFAULT_MAX_REQUESTS_PER_COMMIT);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					server.close();
+					catalog.close();
+				}
+			});
+			server.start();
+			server.awaitTermination();
+		} catch (IOException | InterruptedException e) {
+			logger.error("Run catalog server terminated.", e);
+			catalog.close();
+			System.exit(-1);
+		}
+	}
+
+}
@@ -0,0 +1,297 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationOutput;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationPipeline;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.CatalogUpdate;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Shard;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Operation;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Request;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Response;
+
+/**
+ * A {@link RunCatalog} client that forwards each call to a
+ * {@link RunCatalogServer} running on the local machine. Each instance holds a
+ * single connection and should not be shared among threads. Closing this
+ * catalog closes the connection but not the catalog served by the server.
+ * <p>
+ * Only the operations needed to run pipelines are supported, see
+ * {@link CatalogProtocol.Operation}. The remaining methods throw
+ * {@link UnsupportedOperationException}.
+ */
+public class RemoteRunCatalog implements RunCatalog {
+
+	private static final Logger logger = Logger.getLogger(RemoteRunCatalog.class);
+
+	private final Socket socket;
+	private final ObjectOutputStream out;
+	private final ObjectInputStream in;
+
+	/**
+	 * @param port
+	 *            the port of a {@link RunCatalogServer} running on the local
+	 *            machine
+	 * @throws IOException
+	 */
+	public RemoteRunCatalog(int port) throws IOException {
+		this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		this.out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		this.out.flush();
+		this.in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+	}
+
+	private synchronized Object invoke(Operation operation, Object... args) {
+		try {
+			out.writeObject(new Request(operation, args));
+			/* prevent the stream from retaining references to every object written */
+			out.reset();
+			out.flush();
+			Response response = (Response) in.readObject();
+			if (response.getError() != null) {
+				throw new IllegalStateException("Remote run catalog error while invoking " + operation + ": "
+						+ response.getError());
+			}
+			return response.getResult();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Unable to communicate with run catalog server.", e);
+		}
+	}
+
+	private static UnsupportedOperationException unsupported(String method) {
+		return new UnsupportedOperationException(method + " is not supported by the run catalog server.");
+	}
+
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			logger.warn("Error while closing connection to run catalog server.", e);
+		}
+	}
+
+	@Override
+	public void addDocumentCollection(DocumentCollection dc) {
+		throw unsupported("addDocumentCollection");
+	}
+
+	@Override
+	public void addDocument(Document d, DocumentCollection dc) {
+		throw unsupported("addDocument");
+	}
+
+	@Override
+	public int addDocuments(Iterator<Document> documents, DocumentCollection dc, int batchSize) {
+		throw unsupported("addDocuments");
+	}
+
+	@Override
+	public void addFileVersionToDocument(Document d, File newFile, FileVersion fileVersion) {
+		applyUpdates(CollectionsUtil.createList(
+				CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC, d.getPmcid(), newFile, fileVersion,
+						RunCatalogUtil.getFileSize(newFile))));
+	}
+
+	@Override
+	public void addAnnotationPipeline(AnnotationPipeline ap) {
+		throw unsupported("addAnnotationPipeline");
+	}
+
+	@Override
+	public void addAnnotationOutput(Document d, AnnotationOutput ao) {
+		applyUpdates(CollectionsUtil
+				.createList(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, d.getPmcid(), ao)));
+	}
+
+	@Override
+	public void applyUpdates(List<CatalogUpdate> updates) {
+		invoke(Operation.APPLY_UPDATES, new ArrayList<CatalogUpdate>(updates));
+	}
+
+	@Override
+	public List<File> getFilesToProcess(DocumentCollection collection, String runKey) {
+		throw unsupported("getFilesToProcess");
+	}
+
+	@Override
+	public Map<String, Map<RunStatus, Set<Document>>> getRunsMap(DocumentCollection collection) {
+		throw unsupported("getRunsMap");
+	}
+
+	@Override
+	public Map<String, Map<RunStatus, Set<Document>>> getRunsMap(String docCollectionShortName) {
+		throw unsupported("getRunsMap");
+	}
+
+	@Override
+	public DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status,
+			int pageSize) {
+		int cursorId = (Integer) invoke(Operation.GET_DOCUMENTS, docCollectionShortName, runKey, status, pageSize);
+		return new RemoteDocumentCursor(cursorId);
+	}
+
+	@Override
+	public DocumentCursor getDocuments(String docCollectionShortName, String runKey, RunStatus status, Shard shard,
+			int pageSize) {
+		int cursorId = (Integer) invoke(Operation.GET_SHARD_DOCUMENTS, docCollectionShortName, runKey, status, shard,
+				pageSize);
+		return new RemoteDocumentCursor(cursorId);
+	}
+
+	@Override
+	public DocumentCursor getDocumentsOutstandingForAny(String docCollectionShortName, List<String> runKeys,
+			Shard shard, int pageSize) {
+		int cursorId = (Integer) invoke(Operation.GET_DOCUMENTS_OUTSTANDING_FOR_ANY, docCollectionShortName,
+				new ArrayList<String>(runKeys), shard, pageSize);
+		return new RemoteDocumentCursor(cursorId);
+	}
+
+	@Override
+	public DocumentCursor getDocuments(String docCollectionShortName, int pageSize) {
+		throw unsupported("getDocuments");
+	}
+
+	/**
+	 * Retrieves documents from a cursor held by the server one page at a time
+	 */
+	private class RemoteDocumentCursor implements DocumentCursor {
+
+		private final int cursorId;
+		private final Deque<Document> page = new ArrayDeque<Document>();
+		private boolean exhausted = false;
+
+		public RemoteDocumentCursor(int cursorId) {
+			this.cursorId = cursorId;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean hasNext() {
+			if (page.isEmpty() && !exhausted) {
+				page.addAll((List<Document>) invoke(Operation.NEXT_PAGE, cursorId));
+				exhausted = page.isEmpty();
+			}
+			return !page.isEmpty();
+		}
+
+		@Override
+		public Document next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.poll();
+		}
+
+		@Override
+		public void close() {
+			if (!exhausted) {
+				invoke(Operation.CLOSE_CURSOR, cursorId);
+				exhausted = true;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Map<String, Map<RunStatus, Integer>> getRunStatusCounts(String docCollectionShortName) {
+		return (Map<String, Map<RunStatus, Integer>>) invoke(Operation.GET_RUN_STATUS_COUNTS,
+				docCollectionShortName);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Map<Integer, Map<RunStatus, Integer>> getShardRunStatusCounts(String docCollectionShortName, String runKey,
+			int shardCount) {
+		return (Map<Integer, Map<RunStatus, Integer>>) invoke(Operation.GET_SHARD_RUN_STATUS_COUNTS,
+				docCollectionShortName, runKey, shardCount);
+	}
+
+	@Override
+	public Set<File> getAnnotationFilesForDocumentId(ExternalIdentifierType idType, String documentId, String runKey) {
+		throw unsupported("getAnnotationFilesForDocumentId");
+	}
+
+	@Override
+	public Document getDocumentById(ExternalIdentifierType idType, String documentId) {
+		throw unsupported("getDocumentById");
+	}
+
+	@Override
+	public Set<DocumentCollection> getDocumentCollections() {
+		throw unsupported("getDocumentCollections");
+	}
+
+	@Override
+	public Set<AnnotationPipeline> getAnnotationPipelines() {
+		throw unsupported("getAnnotationPipelines");
+	}
+
+	@Override
+	public DocumentCollection getDocumentCollectionByShortName(String shortname) {
+		throw unsupported("getDocumentCollectionByShortName");
+	}
+
+	@Override
+	public List<String> getDocumentCollectionRunKeys(String docCollectionShortName) {
+		throw unsupported("getDocumentCollectionRunKeys");
+	}
+
+	@Override
+	public void addRunKeyToDocumentCollection(String docCollectionShortName, String runKey) {
+		invoke(Operation.ADD_RUN_KEY_TO_DOCUMENT_COLLECTION, docCollectionShortName, runKey);
+	}
+
+	@Override
+	public void removeRunKeyFromDocumentCollection(String docCollectionShortName, String runKey) {
+		throw unsupported("removeRunKeyFromDocumentCollection");
+	}
+
+	@Override
+	public int removeDocumentsFromCollection(String docCollectionShortName, List<String> pmcids) {
+		throw unsupported("removeDocumentsFromCollection");
+	}
+
+	@Override
+	public int getDocumentCount(DocumentCollection dc) {
+		throw unsupported("getDocumentCount");
+	}
+
+	@Override
+	public void removeEmptyDocumentCollections() {
+		throw unsupported("removeEmptyDocumentCollections");
+	}
+
+	@Override
+	public void logError(String pipelineKey, ExternalIdentifierType idType, String documentId, String componentAtFault,
+			String errorMessage, String stackTrace) {
+		applyUpdates(CollectionsUtil.createList(CatalogUpdate.logError(pipelineKey, idType, documentId,
+				componentAtFault, errorMessage, stackTrace)));
+	}
+
+}
@@ -0,0 +1,325 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.runlog.CatalogUpdate;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Shard;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Request;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.RequestInputStream;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Response;
+
+/**
+ * Shares a single {@link RunCatalog}, e.g. an embedded Neo4j catalog that
+ * permits only one open connection, among many concurrent
+ * {@link RemoteRunCatalog} clients. The server listens on the loopback
+ * interface only. Each client connection is served by its own thread.
+ * <p>
+ * Clients are not authenticated, so the server exposes only the operations
+ * needed to run pipelines, i.e. reading outstanding documents and recording
+ * their completion, listed in {@link CatalogProtocol.Operation}. Requests that
+ * contain classes other than the request and its expected values are
+ * rejected before they are deserialized.
+ * <p>
+ * Catalog updates, i.e. calls to {@link RunCatalog#applyUpdates(List)}, are
+ * group committed: updates submitted concurrently by different clients are
+ * combined and applied by a single thread in one batch. Each client is
+ * answered once its updates have been committed.
+ */
+public class RunCatalogServer implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(RunCatalogServer.class);
+
+	private static final long POLL_TIMEOUT_MS = 100;
+
+	private final RunCatalog catalog;
+	private final ServerSocket serverSocket;
+	private final int maxRequestsPerCommit;
+	private final ExecutorService connectionPool;
+	private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+	private final BlockingQueue<PendingUpdates> pendingUpdates;
+	private final Thread acceptorThread;
+	private final Thread committerThread;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param catalog
+	 * @param port
+	 *            the port to listen on, on the loopback interface. If 0, a
+	 *            free port is chosen; see {@link #getPort()}.
+	 * @param maxRequestsPerCommit
+	 *            the maximum number of client update requests combined into a
+	 *            single commit
+	 * @throws IOException
+	 */
+	public RunCatalogServer(RunCatalog catalog, int port, int maxRequestsPerCommit) throws IOException {
+		this.catalog = catalog;
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.maxRequestsPerCommit = maxRequestsPerCommit;
+		this.connectionPool = Executors.newCachedThreadPool();
+		this.pendingUpdates = new LinkedBlockingQueue<PendingUpdates>();
+		this.acceptorThread = new Thread(this::acceptConnections, "run-catalog-server-acceptor");
+		this.committerThread = new Thread(this::commitUpdates, "run-catalog-server-committer");
+	}
+
+	public void start() {
+		committerThread.start();
+		acceptorThread.start();
+		logger.info("Run catalog server listening on port: " + getPort());
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Blocks until the server has been closed
+	 *
+	 * @throws InterruptedException
+	 */
+	public void awaitTermination() throws InterruptedException {
+		acceptorThread.join();
+	}
+
+	/**
+	 * Stops accepting connections, closes existing connections, and commits
+	 * any pending updates. The catalog is not closed.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			logger.warn("Error while closing server socket.", e);
+		}
+		for (Socket socket : openSockets) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				logger.warn("Error while closing client connection.", e);
+			}
+		}
+		connectionPool.shutdown();
+		try {
+			connectionPool.awaitTermination(1, TimeUnit.MINUTES);
+			committerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.info("Run catalog server closed.");
+	}
+
+	private void acceptConnections() {
+		while (!closed) {
+			try {
+				Socket socket = serverSocket.accept();
+				openSockets.add(socket);
+				connectionPool.execute(new ConnectionHandler(socket));
+			} catch (IOException e) {
+				if (!closed) {
+					logger.error("Error while accepting run catalog connection.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates submitted by a single client request, and the future used to
+	 * notify the client handler once they have been committed
+	 */
+	private static class PendingUpdates {
+		private final List<CatalogUpdate> updates;
+		private final CompletableFuture<Void> committed = new CompletableFuture<Void>();
+
+		public PendingUpdates(List<CatalogUpdate> updates) {
+			this.updates = updates;
+		}
+	}
+
+	private void commitUpdates() {
+		List<PendingUpdates> group = new ArrayList<PendingUpdates>(maxRequestsPerCommit);
+		while (!closed || !pendingUpdates.isEmpty()) {
+			try {
+				PendingUpdates first = pendingUpdates.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				group.add(first);
+				pendingUpdates.drainTo(group, maxRequestsPerCommit - 1);
+				List<CatalogUpdate> updates = new ArrayList<CatalogUpdate>();
+				group.forEach(p -> updates.addAll(p.updates));
+				try {
+					catalog.applyUpdates(updates);
+					group.forEach(p -> p.committed.complete(null));
+					logger.debug(
+							"Committed " + updates.size() + " catalog updates from " + group.size() + " requests.");
+				} catch (RuntimeException e) {
+					logger.error("Failed to commit " + updates.size() + " catalog updates.", e);
+					group.forEach(p -> p.committed.completeExceptionally(e));
+				}
+				group.clear();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Serves the requests of a single client. Cursors opened by the client are
+	 * held by this handler and are served from its thread, so any catalog
+	 * resources associated with them, e.g. a Neo4j transaction, remain on a
+	 * single thread.
+	 */
+	private class ConnectionHandler implements Runnable {
+
+		private final Socket socket;
+		private final Map<Integer, DocumentCursor> cursors = new HashMap<Integer, DocumentCursor>();
+		private final Map<Integer, Integer> cursorPageSizes = new HashMap<Integer, Integer>();
+		private int nextCursorId = 0;
+
+		public ConnectionHandler(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			try (Socket s = socket;
+					ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+				out.flush();
+				RequestInputStream in = new RequestInputStream(new BufferedInputStream(s.getInputStream()));
+				while (!closed) {
+					Request request = (Request) in.readObject();
+					Response response = handle(request);
+					out.writeObject(response);
+					/* prevent the stream from retaining references to every object written */
+					out.reset();
+					out.flush();
+				}
+			} catch (SocketException | EOFException e) {
+				/* the client has disconnected */
+			} catch (IOException | ClassNotFoundException e) {
+				if (!closed) {
+					logger.error("Error while serving run catalog connection.", e);
+				}
+			} finally {
+				cursors.values().forEach(DocumentCursor::close);
+				openSockets.remove(socket);
+			}
+		}
+
+		private Response handle(Request request) {
+			try {
+				return new Response(invoke(request), null);
+			} catch (ExecutionException e) {
+				return new Response(null, e.getCause().toString());
+			} catch (Exception e) {
+				return new Response(null, e.toString());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private Object invoke(Request request) throws Exception {
+			Object[] args = request.getArgs();
+			switch (request.getOperation()) {
+			case APPLY_UPDATES:
+				PendingUpdates pending = new PendingUpdates((List<CatalogUpdate>) args[0]);
+				pendingUpdates.put(pending);
+				pending.committed.get();
+				return null;
+			case ADD_RUN_KEY_TO_DOCUMENT_COLLECTION:
+				catalog.addRunKeyToDocumentCollection((String) args[0], (String) args[1]);
+				return null;
+			case GET_DOCUMENTS:
+				return openCursor(catalog.getDocuments((String) args[0], (String) args[1], (RunStatus) args[2],
+						(Integer) args[3]), (Integer) args[3]);
+			case GET_SHARD_DOCUMENTS:
+				return openCursor(catalog.getDocuments((String) args[0], (String) args[1], (RunStatus) args[2],
+						(Shard) args[3], (Integer) args[4]), (Integer) args[4]);
+			case GET_DOCUMENTS_OUTSTANDING_FOR_ANY:
+				return openCursor(catalog.getDocumentsOutstandingForAny((String) args[0], (List<String>) args[1],
+						(Shard) args[2], (Integer) args[3]), (Integer) args[3]);
+			case GET_RUN_STATUS_COUNTS:
+				return catalog.getRunStatusCounts((String) args[0]);
+			case GET_SHARD_RUN_STATUS_COUNTS:
+				return catalog.getShardRunStatusCounts((String) args[0], (String) args[1], (Integer) args[2]);
+			case NEXT_PAGE:
+				return nextPage((Integer) args[0]);
+			case CLOSE_CURSOR:
+				DocumentCursor cursor = cursors.remove(args[0]);
+				cursorPageSizes.remove(args[0]);
+				if (cursor != null) {
+					cursor.close();
+				}
+				return null;
+			default:
+				throw new UnsupportedOperationException("Unsupported run catalog operation: "
+						+ request.getOperation());
+			}
+		}
+
+		/**
+		 * @return the id used by the client to page through the cursor
+		 */
+		private int openCursor(DocumentCursor cursor, int pageSize) {
+			int cursorId = nextCursorId++;
+			cursors.put(cursorId, cursor);
+			cursorPageSizes.put(cursorId, pageSize);
+			return cursorId;
+		}
+
+		/**
+		 * @param cursorId
+		 * @return the next page of documents from the specified cursor. An
+		 *         empty page indicates the cursor has been exhausted, in which
+		 *         case it is closed.
+		 */
+		private ArrayList<Document> nextPage(int cursorId) {
+			DocumentCursor cursor = cursors.get(cursorId);
+			ArrayList<Document> page = new ArrayList<Document>();
+			if (cursor == null) {
+				return page;
+			}
+			int pageSize = cursorPageSizes.get(cursorId);
+			while (page.size() < pageSize && cursor.hasNext()) {
+				page.add(cursor.next());
+			}
+			if (page.isEmpty()) {
+				cursors.remove(cursorId).close();
+				cursorPageSizes.remove(cursorId);
+			}
+			return page;
+		}
+	}
+
+}
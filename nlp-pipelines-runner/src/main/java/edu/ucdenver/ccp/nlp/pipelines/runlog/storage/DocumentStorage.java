@@ -0,0 +1,106 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Reads and writes the files of the document library, e.g. source, text and
+ * annotation files. Files are addressed by their library path, which is the
+ * path recorded in the {@link edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog}
+ * regardless of how the file is actually stored.
+ */
+public interface DocumentStorage extends AutoCloseable {
+
+	public enum StorageType {
+		/**
+		 * each file is stored as a file on the file system at its library
+		 * path
+		 */
+		FILE_SYSTEM,
+		/**
+		 * the files of each library directory are packed into a single
+		 * append-only shard archive in that directory, see
+		 * {@link ShardArchive}
+		 */
+		SHARD_ARCHIVE;
+
+		/**
+		 * @return the storage instance shared by all components in this JVM.
+		 *         A shard archive must only be written through a single
+		 *         instance, so components must not create their own.
+		 */
+		public DocumentStorage getStorage() {
+			switch (this) {
+			case FILE_SYSTEM:
+				return FileSystemStorage.INSTANCE;
+			case SHARD_ARCHIVE:
+				return ShardArchiveStorage.INSTANCE;
+			default:
+				throw new IllegalArgumentException("Unhandled storage type: " + name() + ". Code changes required.");
+			}
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return a stream over the content of the specified file
+	 * @throws IOException
+	 *             if the file does not exist or cannot be read
+	 */
+	public InputStream openInputStream(File file) throws IOException;
+
+	/**
+	 * @param file
+	 * @return a stream that replaces the content of the specified file. The
+	 *         content is not guaranteed to be stored until the stream is
+	 *         closed.
+	 * @throws IOException
+	 */
+	public OutputStream openOutputStream(File file) throws IOException;
+
+	/**
+	 * Moves a file from outside of the library, e.g. a bulk download
+	 * directory, into storage at the specified library path
+	 *
+	 * @param sourceFile
+	 * @param file
+	 * @throws IOException
+	 */
+	public void moveIn(File sourceFile, File file) throws IOException;
+
+	/**
+	 * @param file
+	 * @return true if the specified file exists
+	 */
+	public boolean exists(File file);
+
+	/**
+	 * @param file
+	 * @return the size of the specified file in bytes, or -1 if it does not
+	 *         exist
+	 */
+	public long size(File file);
+
+	/**
+	 * Removes the specified file from storage
+	 *
+	 * @param file
+	 * @return true if the file existed
+	 * @throws IOException
+	 */
+	public boolean delete(File file) throws IOException;
+
+	/**
+	 * @param directory
+	 * @return the library paths of the files stored in the specified
+	 *         directory, or an empty list if there are none
+	 */
+	public List<File> listFiles(File directory);
+
+	@Override
+	public void close() throws IOException;
+
+}
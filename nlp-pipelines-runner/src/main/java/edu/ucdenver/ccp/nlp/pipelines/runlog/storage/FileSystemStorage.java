@@ -0,0 +1,79 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores each library file as a file on the file system at its library path
+ */
+public class FileSystemStorage implements DocumentStorage {
+
+	public static final FileSystemStorage INSTANCE = new FileSystemStorage();
+
+	@Override
+	public InputStream openInputStream(File file) throws IOException {
+		return new FileInputStream(file);
+	}
+
+	@Override
+	public OutputStream openOutputStream(File file) throws IOException {
+		Files.createDirectories(file.getParentFile().toPath());
+		return new FileOutputStream(file);
+	}
+
+	@Override
+	public void moveIn(File sourceFile, File file) throws IOException {
+		/* createDirectories tolerates the directory being created concurrently */
+		Files.createDirectories(file.getParentFile().toPath());
+		/*
+		 * a retired document that is listed again replaces its earlier file,
+		 * as a later append does in a shard archive
+		 */
+		Files.move(sourceFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Override
+	public boolean exists(File file) {
+		return file.exists();
+	}
+
+	@Override
+	public long size(File file) {
+		return file.isFile() ? file.length() : -1;
+	}
+
+	@Override
+	public boolean delete(File file) throws IOException {
+		return Files.deleteIfExists(file.toPath());
+	}
+
+	@Override
+	public List<File> listFiles(File directory) {
+		List<File> files = new ArrayList<File>();
+		File[] children = directory.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				if (child.isFile()) {
+					files.add(child);
+				}
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Has no effect; there is nothing to release
+	 */
+	@Override
+	public void close() {
+	}
+
+}
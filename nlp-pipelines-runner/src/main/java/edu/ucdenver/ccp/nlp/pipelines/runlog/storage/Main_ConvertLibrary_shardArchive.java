@@ -0,0 +1,103 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+/**
+ * Converts an existing file-system library, e.g. the pmc/ directory populated
+ * by the catalog loader, to
+ * {@link DocumentStorage.StorageType#SHARD_ARCHIVE} storage by packing the
+ * files of every directory into the shard archive of that directory. The
+ * catalog does not change as files keep their library paths. The conversion
+ * can be re-run, e.g. if it is interrupted, or to pack files written since by
+ * components that do not use a {@link DocumentStorage}, but must not be run
+ * while a pipeline is writing to the library.
+ */
+public class Main_ConvertLibrary_shardArchive {
+
+	private static final Logger logger = Logger.getLogger(Main_ConvertLibrary_shardArchive.class);
+
+	private static final int DEFAULT_THREAD_COUNT = 8;
+
+	/**
+	 * @param args
+	 *            args[0] = library directory to convert <br>
+	 *            args[1] = threadCount (optional): the number of directories
+	 *            packed concurrently
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		File libraryDirectory = new File(args[0]);
+		int threadCount = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_THREAD_COUNT;
+		try {
+			convert(libraryDirectory, threadCount);
+		} catch (IOException e) {
+			logger.error("Library conversion failed. It can be resumed by re-running the conversion.", e);
+			System.exit(-1);
+		}
+	}
+
+	/**
+	 * @param libraryDirectory
+	 * @param threadCount
+	 * @return the number of files packed
+	 * @throws IOException
+	 */
+	public static int convert(File libraryDirectory, int threadCount) throws IOException {
+		long startTime = System.currentTimeMillis();
+		AtomicInteger fileCount = new AtomicInteger();
+		AtomicInteger directoryCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(threadCount)) {
+			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+			Deque<File> directories = new ArrayDeque<File>();
+			directories.push(libraryDirectory);
+			while (!directories.isEmpty()) {
+				File directory = directories.pop();
+				File[] children = directory.listFiles(File::isDirectory);
+				if (children != null) {
+					for (File child : children) {
+						directories.push(child);
+					}
+				}
+				futures.add(CompletableFuture.runAsync(() -> {
+					try {
+						fileCount.addAndGet(storage.pack(directory));
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					if (directoryCount.incrementAndGet() % 1000 == 0) {
+						logger.info("Converted " + directoryCount.get() + " directories (" + fileCount.get()
+								+ " files).");
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			}
+			throw e;
+		} finally {
+			executor.shutdown();
+		}
+		logger.info("Converted library " + libraryDirectory.getAbsolutePath() + ": packed " + fileCount.get()
+				+ " files in " + directoryCount.get() + " directories in "
+				+ (System.currentTimeMillis() - startTime) / 1000 + "s.");
+		return fileCount.get();
+	}
+
+}
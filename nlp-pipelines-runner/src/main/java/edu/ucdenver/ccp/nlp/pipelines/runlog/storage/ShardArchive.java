@@ -0,0 +1,339 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import lombok.Data;
+
+/**
+ * Packs the files of a single library directory into one append-only
+ * container file, with an append-only index of the offset and length of each
+ * file in the container. Replacing a file appends its new content and a new
+ * index entry; the last index entry for a name wins. Deleting a file appends a
+ * tombstone entry; its content remains in the container.
+ * <p>
+ * The content of a file is forced to the container before its index entry is
+ * written to the index, so a crash can leave unreferenced bytes at the end of
+ * the container, which are harmless, or a partially written entry at the end
+ * of the index, which is ignored when the index is loaded and truncated before
+ * the next entry is appended.
+ * <p>
+ * Several processes may write to the same archive. Each append and delete
+ * holds an exclusive lock on the index file, and first reads the entries
+ * appended by other processes since the index was last read. Entries written
+ * by other processes are also read when a name is not found in the index.
+ * Within a process the methods of this class are synchronized, and there must
+ * be only one instance per archive as file locks are held per process.
+ */
+public class ShardArchive implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(ShardArchive.class);
+
+	public static final String CONTAINER_FILE_NAME = "library.shard";
+	public static final String INDEX_FILE_NAME = "library.shard.idx";
+
+	/* name length (2 bytes) + offset (8 bytes) + length (4 bytes) */
+	private static final int INDEX_ENTRY_OVERHEAD = 14;
+
+	/* the length recorded in the index entry of a deleted file */
+	private static final int TOMBSTONE_LENGTH = -1;
+
+	private final File containerFile;
+	private final File indexFile;
+	private Map<String, Entry> index = null;
+	private long validIndexLength = 0;
+	private FileChannel containerChannel = null;
+	private FileChannel indexChannel = null;
+	private boolean closed = false;
+
+	@Data
+	private static class Entry {
+		private final long offset;
+		private final int length;
+	}
+
+	/**
+	 * @param directory
+	 *            the library directory whose files are packed into this
+	 *            archive. Nothing is read or created until the archive is
+	 *            first used.
+	 */
+	public ShardArchive(File directory) {
+		this.containerFile = new File(directory, CONTAINER_FILE_NAME);
+		this.indexFile = new File(directory, INDEX_FILE_NAME);
+	}
+
+	/**
+	 * @param file
+	 * @return true if the specified file is the container or index file of a
+	 *         shard archive
+	 */
+	public static boolean isArchiveFile(File file) {
+		return file.getName().equals(CONTAINER_FILE_NAME) || file.getName().equals(INDEX_FILE_NAME);
+	}
+
+	/**
+	 * @param name
+	 * @return the content of the named file, or null if it is not in the
+	 *         archive
+	 * @throws IOException
+	 */
+	public synchronized byte[] read(String name) throws IOException {
+		Entry entry = getEntry(name);
+		if (entry == null) {
+			return null;
+		}
+		if (containerChannel == null) {
+			containerChannel = FileChannel.open(containerFile.toPath(), StandardOpenOption.READ);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(entry.getLength());
+		while (buffer.hasRemaining()) {
+			if (containerChannel.read(buffer, entry.getOffset() + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of shard archive " + containerFile.getAbsolutePath()
+						+ " while reading: " + name);
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Appends the content of the named file to the archive, replacing any
+	 * previous content for that name
+	 *
+	 * @param name
+	 * @param content
+	 * @throws IOException
+	 */
+	public synchronized void append(String name, byte[] content) throws IOException {
+		byte[] nameBytes = toNameBytes(name);
+		Map<String, Entry> index = getIndex();
+		openForAppend();
+		try (FileLock lock = indexChannel.lock()) {
+			readEntriesOfOtherWriters();
+			long offset = containerChannel.size();
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			while (buffer.hasRemaining()) {
+				containerChannel.write(buffer, offset + buffer.position());
+			}
+			/* the content must be stored before an index entry references it */
+			containerChannel.force(false);
+			writeIndexEntry(nameBytes, offset, content.length);
+			index.put(name, new Entry(offset, content.length));
+		}
+	}
+
+	/**
+	 * Removes the named file from the archive by appending a tombstone entry
+	 * to the index
+	 *
+	 * @param name
+	 * @return true if the named file was in the archive
+	 * @throws IOException
+	 */
+	public synchronized boolean delete(String name) throws IOException {
+		byte[] nameBytes = toNameBytes(name);
+		Map<String, Entry> index = getIndex();
+		if (!indexFile.exists()) {
+			return false;
+		}
+		openForAppend();
+		try (FileLock lock = indexChannel.lock()) {
+			readEntriesOfOtherWriters();
+			if (!index.containsKey(name)) {
+				return false;
+			}
+			writeIndexEntry(nameBytes, 0, TOMBSTONE_LENGTH);
+			index.remove(name);
+			return true;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return true if the named file is in the archive
+	 * @throws IOException
+	 */
+	public synchronized boolean contains(String name) throws IOException {
+		return getEntry(name) != null;
+	}
+
+	/**
+	 * @param name
+	 * @return the size in bytes of the named file, or -1 if it is not in the
+	 *         archive
+	 * @throws IOException
+	 */
+	public synchronized long size(String name) throws IOException {
+		Entry entry = getEntry(name);
+		return (entry == null) ? -1 : entry.getLength();
+	}
+
+	/**
+	 * @return the names of the files in the archive in the order they were
+	 *         first added
+	 * @throws IOException
+	 */
+	public synchronized List<String> getNames() throws IOException {
+		return new ArrayList<String>(getIndex().keySet());
+	}
+
+	/**
+	 * @return true once the archive has been closed, after which it can no
+	 *         longer be used
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		index = null;
+		try {
+			if (containerChannel != null) {
+				containerChannel.close();
+			}
+		} finally {
+			containerChannel = null;
+			if (indexChannel != null) {
+				indexChannel.close();
+				indexChannel = null;
+			}
+		}
+	}
+
+	private Map<String, Entry> getIndex() throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Shard archive is closed: " + containerFile.getAbsolutePath());
+		}
+		if (index == null) {
+			index = new LinkedHashMap<String, Entry>();
+			validIndexLength = 0;
+			if (readIndexEntries()) {
+				logger.warn("Ignoring partially written entries at the end of shard archive index: "
+						+ indexFile.getAbsolutePath());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return the index entry of the named file, reading any entries appended
+	 *         by other processes if the name is not yet in the index
+	 */
+	private Entry getEntry(String name) throws IOException {
+		Entry entry = getIndex().get(name);
+		if (entry == null) {
+			readIndexEntries();
+			entry = index.get(name);
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds the entries that follow the valid part of the index file to the
+	 * index, stopping at a partially written entry or an entry that
+	 * references content beyond the end of the container
+	 * 
+	 * @return true if the index file contains bytes beyond the last entry read
+	 */
+	private boolean readIndexEntries() throws IOException {
+		if (!indexFile.exists()) {
+			return false;
+		}
+		long containerLength = containerFile.length();
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+			long unreadLength = channel.size() - validIndexLength;
+			if (unreadLength <= 0) {
+				return false;
+			}
+			buffer = ByteBuffer.allocate((int) unreadLength);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, validIndexLength + buffer.position()) < 0) {
+					break;
+				}
+			}
+			buffer.flip();
+		}
+		long startOffset = validIndexLength;
+		while (buffer.remaining() >= 2) {
+			int nameLength = buffer.getShort(buffer.position());
+			if (buffer.remaining() < INDEX_ENTRY_OVERHEAD + nameLength) {
+				break;
+			}
+			byte[] nameBytes = new byte[nameLength];
+			buffer.position(buffer.position() + 2);
+			buffer.get(nameBytes);
+			long offset = buffer.getLong();
+			int length = buffer.getInt();
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			if (length == TOMBSTONE_LENGTH) {
+				index.remove(name);
+			} else if (offset + length > containerLength) {
+				break;
+			} else {
+				/* a replaced file keeps its position in the order of names */
+				index.put(name, new Entry(offset, length));
+			}
+			validIndexLength = startOffset + buffer.position();
+		}
+		return validIndexLength < startOffset + buffer.limit();
+	}
+
+	/**
+	 * Must be called while holding the index file lock
+	 */
+	private void readEntriesOfOtherWriters() throws IOException {
+		if (readIndexEntries()) {
+			/* drop the partially written entry so that it does not precede the next entry */
+			logger.warn("Truncating partially written entries at the end of shard archive index: "
+					+ indexFile.getAbsolutePath());
+			indexChannel.truncate(validIndexLength);
+		}
+	}
+
+	private void writeIndexEntry(byte[] nameBytes, long offset, int length) throws IOException {
+		ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_OVERHEAD + nameBytes.length);
+		indexEntry.putShort((short) nameBytes.length).put(nameBytes).putLong(offset).putInt(length);
+		indexEntry.flip();
+		while (indexEntry.hasRemaining()) {
+			indexChannel.write(indexEntry, validIndexLength + indexEntry.position());
+		}
+		validIndexLength += indexEntry.limit();
+	}
+
+	private static byte[] toNameBytes(String name) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("File name is too long to be stored in a shard archive: " + name);
+		}
+		return nameBytes;
+	}
+
+	private void openForAppend() throws IOException {
+		if (indexChannel != null) {
+			return;
+		}
+		Files.createDirectories(containerFile.getParentFile().toPath());
+		if (containerChannel != null) {
+			containerChannel.close();
+		}
+		containerChannel = FileChannel.open(containerFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+}
@@ -0,0 +1,226 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Stores the files of each library directory in a {@link ShardArchive} in
+ * that directory, replacing many small files with two large ones. Files that
+ * are not in the archive of their directory are read from the file system, so
+ * a library can be used while it is being converted, and files written by
+ * components that do not use a {@link DocumentStorage} remain readable until
+ * they are packed, see {@link #pack(File)}.
+ * <p>
+ * Open archives are cached, up to a maximum number, closing the least
+ * recently used archive when the maximum is exceeded.
+ */
+public class ShardArchiveStorage implements DocumentStorage {
+
+	private static final Logger logger = Logger.getLogger(ShardArchiveStorage.class);
+
+	/**
+	 * The default maximum number of archives held open at a time
+	 */
+	public static final int DEFAULT_MAX_OPEN_ARCHIVES = 1024;
+
+	static final ShardArchiveStorage INSTANCE = new ShardArchiveStorage(DEFAULT_MAX_OPEN_ARCHIVES);
+
+	private final Map<File, ShardArchive> archives;
+
+	public ShardArchiveStorage(int maxOpenArchives) {
+		this.archives = new LinkedHashMap<File, ShardArchive>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<File, ShardArchive> eldest) {
+				if (size() > maxOpenArchives) {
+					closeArchive(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	private interface ArchiveOperation<T> {
+		public T apply(ShardArchive archive) throws IOException;
+	}
+
+	/**
+	 * Applies the operation to the archive of the specified directory. If the
+	 * archive is closed, i.e. evicted from the cache, before the operation
+	 * acquires it, the operation is retried with a newly opened archive so that
+	 * only one open archive instance exists per directory.
+	 */
+	private <T> T withArchive(File directory, ArchiveOperation<T> operation) throws IOException {
+		File key = directory.getAbsoluteFile();
+		while (true) {
+			ShardArchive archive;
+			synchronized (archives) {
+				archive = archives.get(key);
+				if (archive == null) {
+					archive = new ShardArchive(key);
+					archives.put(key, archive);
+				}
+			}
+			synchronized (archive) {
+				if (!archive.isClosed()) {
+					return operation.apply(archive);
+				}
+			}
+		}
+	}
+
+	private static void closeArchive(ShardArchive archive) {
+		try {
+			archive.close();
+		} catch (IOException e) {
+			logger.warn("Error while closing shard archive.", e);
+		}
+	}
+
+	@Override
+	public InputStream openInputStream(File file) throws IOException {
+		byte[] content = withArchive(file.getParentFile(), archive -> archive.read(file.getName()));
+		if (content != null) {
+			return new ByteArrayInputStream(content);
+		}
+		if (file.isFile()) {
+			return new FileInputStream(file);
+		}
+		throw new FileNotFoundException("File not found in shard archive or on the file system: "
+				+ file.getAbsolutePath());
+	}
+
+	/**
+	 * The content is buffered in memory and appended to the archive when the
+	 * stream is closed
+	 */
+	@Override
+	public OutputStream openOutputStream(File file) throws IOException {
+		return new ByteArrayOutputStream() {
+			private boolean closed = false;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					byte[] content = toByteArray();
+					withArchive(file.getParentFile(), archive -> {
+						archive.append(file.getName(), content);
+						return null;
+					});
+				}
+			}
+		};
+	}
+
+	@Override
+	public void moveIn(File sourceFile, File file) throws IOException {
+		byte[] content = Files.readAllBytes(sourceFile.toPath());
+		withArchive(file.getParentFile(), archive -> {
+			archive.append(file.getName(), content);
+			return null;
+		});
+		Files.delete(sourceFile.toPath());
+	}
+
+	@Override
+	public boolean exists(File file) {
+		return size(file) >= 0;
+	}
+
+	@Override
+	public long size(File file) {
+		try {
+			long size = withArchive(file.getParentFile(), archive -> archive.size(file.getName()));
+			if (size >= 0) {
+				return size;
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to read shard archive index in directory: "
+					+ file.getParentFile().getAbsolutePath(), e);
+		}
+		return file.isFile() ? file.length() : -1;
+	}
+
+	/**
+	 * Appends a tombstone for the file to the archive of its directory, and
+	 * deletes the file from the file system if it has not been packed
+	 */
+	@Override
+	public boolean delete(File file) throws IOException {
+		boolean deleted = withArchive(file.getParentFile(), archive -> archive.delete(file.getName()));
+		return Files.deleteIfExists(file.toPath()) || deleted;
+	}
+
+	@Override
+	public List<File> listFiles(File directory) {
+		Set<File> files = new LinkedHashSet<File>();
+		try {
+			for (String name : withArchive(directory, archive -> archive.getNames())) {
+				files.add(new File(directory, name));
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to read shard archive index in directory: " + directory.getAbsolutePath(), e);
+		}
+		for (File file : FileSystemStorage.INSTANCE.listFiles(directory)) {
+			if (!ShardArchive.isArchiveFile(file)) {
+				files.add(file);
+			}
+		}
+		return new ArrayList<File>(files);
+	}
+
+	/**
+	 * Moves the files in the specified directory (not including
+	 * subdirectories) into the archive of that directory. A file is only
+	 * deleted once it has been appended to the archive, so packing an
+	 * interrupted directory again is safe.
+	 *
+	 * @param directory
+	 * @return the number of files packed
+	 * @throws IOException
+	 */
+	public int pack(File directory) throws IOException {
+		int count = 0;
+		for (File file : FileSystemStorage.INSTANCE.listFiles(directory)) {
+			if (!ShardArchive.isArchiveFile(file)) {
+				moveIn(file, file);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Closes all open archives. The storage can continue to be used; archives
+	 * are reopened as needed.
+	 */
+	@Override
+	public void close() {
+		synchronized (archives) {
+			for (ShardArchive archive : archives.values()) {
+				closeArchive(archive);
+			}
+			archives.clear();
+		}
+	}
+
+}
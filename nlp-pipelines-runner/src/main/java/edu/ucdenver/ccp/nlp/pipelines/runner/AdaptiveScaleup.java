@@ -0,0 +1,207 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.aae.monitor.statistics.AnalysisEnginePerformanceMetrics;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ServiceEngine;
+
+/**
+ * Chooses the number of instances of each service engine from the service
+ * time of the engines measured while the pipeline warms up. Given a fixed
+ * number of instances, the throughput of the pipeline is limited by the stage
+ * with the highest service time per instance, so instances are assigned one
+ * at a time to that stage. Engines configured with a scaleup of 1, e.g. the
+ * RunCatalogAE, are assumed to require a single instance and are not
+ * rebalanced; the instances of the other engines are redistributed among
+ * them.
+ * <p>
+ * A topology, i.e. the instance count of each service, is formatted as
+ * <code>serviceName=count,serviceName=count,...</code> and can be pinned for
+ * later runs using {@link PipelineParams#setScaleupTopology(String)}.
+ */
+public class AdaptiveScaleup {
+
+	private static final Logger logger = Logger.getLogger(AdaptiveScaleup.class);
+
+	private final int warmupDocumentCount;
+	/* service name to scaleup, in pipeline order */
+	private final Map<String, Integer> scaleups = new LinkedHashMap<String, Integer>();
+	private final Map<String, Long> serviceTimes = new LinkedHashMap<String, Long>();
+	private final Map<String, Long> processedCounts = new LinkedHashMap<String, Long>();
+	private final AtomicLong completedCount = new AtomicLong();
+
+	/**
+	 * @param serviceEngines
+	 * @param warmupDocumentCount
+	 *            the number of documents that complete the pipeline before a
+	 *            topology is chosen
+	 */
+	public AdaptiveScaleup(List<ServiceEngine> serviceEngines, int warmupDocumentCount) {
+		this.warmupDocumentCount = warmupDocumentCount;
+		for (ServiceEngine se : serviceEngines) {
+			String serviceName = se.getDeployParams().getServiceName();
+			scaleups.put(serviceName, se.getDeployParams().getScaleup());
+			serviceTimes.put(serviceName, 0l);
+			processedCounts.put(serviceName, 0l);
+		}
+	}
+
+	/**
+	 * @param serviceEngines
+	 * @return the component key of each service engine, i.e. the delegate key
+	 *         in the pipeline aggregate, mapped to its service name
+	 */
+	public static Map<String, String> getComponentKeys(List<ServiceEngine> serviceEngines) {
+		Map<String, String> componentKeyToServiceName = new LinkedHashMap<String, String>();
+		for (ServiceEngine se : serviceEngines) {
+			componentKeyToServiceName.put(se.getAeDescription().getAnnotatorImplementationName(),
+					se.getDeployParams().getServiceName());
+		}
+		return componentKeyToServiceName;
+	}
+
+	/**
+	 * Attributes the per-component analysis times reported by UIMA AS for a
+	 * CAS to services. Each metric is attributed to the service whose
+	 * component key appears in the unique name of the metric, i.e. the times
+	 * of the components nested in a service are summed.
+	 *
+	 * @param componentKeyToServiceName
+	 *            see {@link #getComponentKeys(List)}
+	 * @param metrics
+	 *            may be null
+	 * @return the analysis time of each service, in milliseconds
+	 */
+	public static Map<String, Long> getServiceAnalysisTimes(Map<String, String> componentKeyToServiceName,
+			List<AnalysisEnginePerformanceMetrics> metrics) {
+		Map<String, Long> casServiceTimes = new LinkedHashMap<String, Long>();
+		if (metrics != null) {
+			for (AnalysisEnginePerformanceMetrics metric : metrics) {
+				for (Entry<String, String> entry : componentKeyToServiceName.entrySet()) {
+					if (metric.getUniqueName().contains(entry.getKey())) {
+						casServiceTimes.merge(entry.getValue(), metric.getAnalysisTime(), Long::sum);
+						break;
+					}
+				}
+			}
+		}
+		return casServiceTimes;
+	}
+
+	/**
+	 * Records the service analysis times of a CAS
+	 *
+	 * @param casServiceTimes
+	 *            see {@link #getServiceAnalysisTimes(Map, List)}
+	 * @return true if this CAS completed the warm-up, i.e. a topology should
+	 *         now be chosen; this is returned exactly once
+	 */
+	public boolean recordServiceTimes(Map<String, Long> casServiceTimes) {
+		synchronized (this) {
+			for (Entry<String, Long> entry : casServiceTimes.entrySet()) {
+				serviceTimes.merge(entry.getKey(), entry.getValue(), Long::sum);
+				processedCounts.merge(entry.getKey(), 1l, Long::sum);
+			}
+		}
+		return completedCount.incrementAndGet() == warmupDocumentCount;
+	}
+
+	/**
+	 * @return the mean service time per document of each service measured so
+	 *         far, in the units reported by UIMA AS (milliseconds)
+	 */
+	public synchronized Map<String, Double> getServiceTimes() {
+		Map<String, Double> meanServiceTimes = new LinkedHashMap<String, Double>();
+		for (Entry<String, Long> entry : serviceTimes.entrySet()) {
+			meanServiceTimes.put(entry.getKey(),
+					entry.getValue() / (double) Math.max(1, processedCounts.get(entry.getKey())));
+		}
+		return meanServiceTimes;
+	}
+
+	/**
+	 * @return the topology chosen from the service times measured so far
+	 */
+	public Map<String, Integer> plan() {
+		return plan(getServiceTimes(), scaleups);
+	}
+
+	/**
+	 * @param serviceTimes
+	 *            the mean service time per document of each service
+	 * @param scaleups
+	 *            the current instance count of each service
+	 * @return the instance count of each service that minimizes the highest
+	 *         service time per instance without changing the total number of
+	 *         instances of services with a scaleup greater than 1
+	 */
+	public static Map<String, Integer> plan(Map<String, Double> serviceTimes, Map<String, Integer> scaleups) {
+		Map<String, Integer> topology = new LinkedHashMap<String, Integer>();
+		int budget = 0;
+		for (Entry<String, Integer> entry : scaleups.entrySet()) {
+			if (entry.getValue() > 1) {
+				budget += entry.getValue() - 1;
+			}
+			topology.put(entry.getKey(), 1);
+		}
+		for (int i = 0; i < budget; i++) {
+			String bottleneck = null;
+			double bottleneckTime = -1;
+			for (Entry<String, Integer> entry : topology.entrySet()) {
+				if (scaleups.get(entry.getKey()) > 1) {
+					double time = serviceTimes.getOrDefault(entry.getKey(), 0.0) / entry.getValue();
+					if (time > bottleneckTime) {
+						bottleneck = entry.getKey();
+						bottleneckTime = time;
+					}
+				}
+			}
+			topology.put(bottleneck, topology.get(bottleneck) + 1);
+		}
+		return topology;
+	}
+
+	/**
+	 * Logs the topology along with the service times it was chosen from
+	 *
+	 * @param topology
+	 * @param serviceTimes
+	 */
+	public static void logTopology(Map<String, Integer> topology, Map<String, Double> serviceTimes) {
+		StringBuilder sb = new StringBuilder();
+		for (Entry<String, Integer> entry : topology.entrySet()) {
+			sb.append(String.format("[%s: %.1f ms/doc x%d] ", entry.getKey(),
+					serviceTimes.getOrDefault(entry.getKey(), 0.0), entry.getValue()));
+		}
+		logger.info("Adaptive scaleup topology: " + sb.toString().trim() + " -- pin for later runs with scaleupTopology="
+				+ formatTopology(topology));
+	}
+
+	public static String formatTopology(Map<String, Integer> topology) {
+		StringBuilder sb = new StringBuilder();
+		for (Entry<String, Integer> entry : topology.entrySet()) {
+			sb.append((sb.length() > 0) ? "," : "").append(entry.getKey()).append("=").append(entry.getValue());
+		}
+		return sb.toString();
+	}
+
+	public static Map<String, Integer> parseTopology(String topology) {
+		Map<String, Integer> scaleups = new LinkedHashMap<String, Integer>();
+		for (String service : topology.split(",")) {
+			String[] toks = service.trim().split("=");
+			if (toks.length != 2) {
+				throw new IllegalArgumentException("Invalid scaleup topology: " + topology
+						+ ". Expected format: serviceName=count,serviceName=count,...");
+			}
+			scaleups.put(toks[0].trim(), Integer.parseInt(toks[1].trim()));
+		}
+		return scaleups;
+	}
+
+}
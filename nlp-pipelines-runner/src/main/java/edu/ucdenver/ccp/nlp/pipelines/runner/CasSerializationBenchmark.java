@@ -0,0 +1,179 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.CasIOUtils;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ServiceEngine;
+import lombok.Data;
+
+/**
+ * Measures the cost of the hops between the services of a pipeline, i.e. of
+ * serializing a CAS as it is sent to each {@link ServiceEngine} and
+ * deserializing it on arrival, for each CAS serialization format that UIMA AS
+ * can use. Documents are read and processed in the current JVM; the CAS
+ * arriving at each service is the CAS as output by the previous service. The
+ * last service is not run so that the benchmark does not write pipeline
+ * output.
+ */
+public class CasSerializationBenchmark {
+
+	/**
+	 * {@link SerialFormat#XMI} corresponds to
+	 * {@link org.apache.uima.resourceSpecifier.factory.SerializationStrategy#xmi}.
+	 * {@link SerialFormat#BINARY} and {@link SerialFormat#COMPRESSED_FILTERED}
+	 * are the forms used by
+	 * {@link org.apache.uima.resourceSpecifier.factory.SerializationStrategy#binary},
+	 * the latter between services that support it.
+	 */
+	public static final List<SerialFormat> FORMATS = Arrays.asList(SerialFormat.XMI, SerialFormat.BINARY,
+			SerialFormat.COMPRESSED_FILTERED);
+
+	@Data
+	public static class HopCost {
+		private long documentCount = 0;
+		private long byteCount = 0;
+		private long serializeNanos = 0;
+		private long deserializeNanos = 0;
+
+		public double getMsPerDocument() {
+			return (serializeNanos + deserializeNanos) / 1000000.0 / Math.max(1, documentCount);
+		}
+
+		@Override
+		public String toString() {
+			long count = Math.max(1, documentCount);
+			return String.format("%10.1f KB %9.2f ms %9.2f ms %9.2f ms", byteCount / 1024.0 / count,
+					serializeNanos / 1000000.0 / count, deserializeNanos / 1000000.0 / count, getMsPerDocument());
+		}
+	}
+
+	/**
+	 * Runs the benchmark using the collection reader and service engines of
+	 * the specified pipeline
+	 *
+	 * @param pipeline
+	 * @param documentCount
+	 *            the maximum number of documents to process
+	 * @return see {@link #benchmark(CollectionReader, List, int)}
+	 * @throws Exception
+	 */
+	public static Map<String, Map<SerialFormat, HopCost>> benchmark(PipelineBase pipeline, int documentCount)
+			throws Exception {
+		CollectionReader reader = CollectionReaderFactory
+				.createReader(pipeline.getCollectionReaderDescription(pipeline.getPipelineParams()));
+		try {
+			return benchmark(reader, pipeline.createServiceEngines(), documentCount);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @param reader
+	 * @param engines
+	 *            the pipeline components in processing order
+	 * @param documentCount
+	 *            the maximum number of documents to process
+	 * @return a mapping from hop, named by the service receiving the CAS, to
+	 *         the cost of the hop in each of the {@link #FORMATS}
+	 * @throws Exception
+	 */
+	public static Map<String, Map<SerialFormat, HopCost>> benchmark(CollectionReader reader,
+			List<ServiceEngine> engines, int documentCount) throws Exception {
+		List<MetaDataObject> componentDescriptions = new ArrayList<MetaDataObject>();
+		componentDescriptions.add(reader.getProcessingResourceMetaData());
+		for (ServiceEngine se : engines) {
+			componentDescriptions.add(se.getAeDescription());
+		}
+		CAS cas = CasCreationUtils.createCas(componentDescriptions);
+		CAS receivedCas = CasCreationUtils.createCas(componentDescriptions, cas.getTypeSystem(), null);
+		reader.typeSystemInit(cas.getTypeSystem());
+
+		Map<String, Map<SerialFormat, HopCost>> costs = new LinkedHashMap<String, Map<SerialFormat, HopCost>>();
+		List<AnalysisEngine> aes = new ArrayList<AnalysisEngine>();
+		try {
+			for (ServiceEngine se : engines) {
+				Map<SerialFormat, HopCost> hopCosts = new LinkedHashMap<SerialFormat, HopCost>();
+				for (SerialFormat format : FORMATS) {
+					hopCosts.put(format, new HopCost());
+				}
+				costs.put("-> " + se.getComponentName(), hopCosts);
+				/* the last service is not run as only the hops to it are measured */
+				if (aes.size() < engines.size() - 1) {
+					aes.add(UIMAFramework.produceAnalysisEngine(se.getAeDescription()));
+				}
+			}
+
+			int count = 0;
+			while (count++ < documentCount && reader.hasNext()) {
+				cas.reset();
+				reader.getNext(cas);
+				int index = 0;
+				for (Map<SerialFormat, HopCost> hopCosts : costs.values()) {
+					for (SerialFormat format : FORMATS) {
+						measureHop(cas, receivedCas, format, hopCosts.get(format));
+					}
+					if (index < aes.size()) {
+						aes.get(index++).process(cas);
+					}
+				}
+			}
+		} finally {
+			for (AnalysisEngine ae : aes) {
+				ae.destroy();
+			}
+		}
+		return costs;
+	}
+
+	private static void measureHop(CAS cas, CAS receivedCas, SerialFormat format, HopCost cost) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		long start = System.nanoTime();
+		CasIOUtils.save(cas, baos, format);
+		long serialized = System.nanoTime();
+		byte[] message = baos.toByteArray();
+		receivedCas.reset();
+		long deserializeStart = System.nanoTime();
+		CasIOUtils.load(new ByteArrayInputStream(message), receivedCas);
+		long end = System.nanoTime();
+		cost.setDocumentCount(cost.getDocumentCount() + 1);
+		cost.setByteCount(cost.getByteCount() + message.length);
+		cost.setSerializeNanos(cost.getSerializeNanos() + serialized - start);
+		cost.setDeserializeNanos(cost.getDeserializeNanos() + end - deserializeStart);
+	}
+
+	/**
+	 * Prints the costs returned by {@link #benchmark(CollectionReader, List, int)}
+	 * as a table
+	 *
+	 * @param costs
+	 */
+	public static void print(Map<String, Map<SerialFormat, HopCost>> costs) {
+		System.out.println("-----------------  CAS Serialization Benchmark (per document)  -----------------");
+		System.out.println(String.format("%-28s%-22s%13s%12s%12s%12s", "hop", "format", "size", "serialize",
+				"deserialize", "total"));
+		for (Map.Entry<String, Map<SerialFormat, HopCost>> entry : costs.entrySet()) {
+			for (Map.Entry<SerialFormat, HopCost> formatEntry : entry.getValue().entrySet()) {
+				System.out.println(String.format("%-28s%-22s%s", entry.getKey(), formatEntry.getKey().name(),
+						formatEntry.getValue()));
+			}
+		}
+	}
+
+}
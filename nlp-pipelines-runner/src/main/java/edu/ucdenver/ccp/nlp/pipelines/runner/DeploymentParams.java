@@ -1,5 +1,7 @@
 package edu.ucdenver.ccp.nlp.pipelines.runner;
 
+import org.apache.uima.resourceSpecifier.factory.SerializationStrategy;
+
 import lombok.Data;
 
 @Data
@@ -14,4 +16,24 @@ public class DeploymentParams {
 	private final String endpoint;
 	
 	private final String brokerUrl;
+
+	/**
+	 * How CASes are serialized when sent to, and returned from, this service.
+	 * Binary serialization is considerably cheaper than XMI but requires the
+	 * service to share the type system of the pipeline, which holds for
+	 * services deployed by {@link PipelineBase}. XMI can be useful when
+	 * debugging as the messages are human readable.
+	 */
+	private SerializationStrategy serializationStrategy = SerializationStrategy.binary;
+
+	/**
+	 * @param scaleup
+	 * @return a copy of these deployment params with the specified scaleup
+	 */
+	public DeploymentParams withScaleup(int scaleup) {
+		DeploymentParams params = new DeploymentParams(serviceName, serviceDescription, scaleup, errorThresholdCount,
+				endpoint, brokerUrl);
+		params.setSerializationStrategy(serializationStrategy);
+		return params;
+	}
 }
@@ -0,0 +1,185 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.ucdenver.ccp.nlp.core.document.GenericDocument;
+
+/**
+ * Reads documents ahead of the collection reader using a pool of I/O threads.
+ * Up to queueSize files are read (and decompressed) concurrently or held in
+ * memory waiting to be consumed; documents are returned in file order.
+ * <p>
+ * The queue-depth metrics indicate where the bottleneck lies: if documents are
+ * usually waiting in the queue when the next one is requested then the
+ * downstream analysis is the bottleneck; if the reader frequently has to wait
+ * for the next document (a stall) then I/O is the bottleneck.
+ */
+public class DocumentPrefetcher implements Iterator<GenericDocument>, AutoCloseable {
+
+	/**
+	 * Loads a single document; called concurrently by the I/O threads
+	 */
+	public interface DocumentLoader {
+		public GenericDocument load(File file) throws IOException;
+	}
+
+	private final Iterator<File> fileIter;
+	private final DocumentLoader loader;
+	private final int queueSize;
+	private final ExecutorService executor;
+	private final Deque<Future<GenericDocument>> queue;
+
+	private long documentCount = 0;
+	/* the sum of the number of loaded documents waiting in the queue */
+	private long readyDepthTotal = 0;
+	private long stallCount = 0;
+	private long stallNanos = 0;
+	private final AtomicLong loadNanos = new AtomicLong();
+
+	/**
+	 * @param fileIter
+	 *            the files to load, only accessed by the consuming thread
+	 * @param loader
+	 * @param threadCount
+	 *            the number of I/O threads
+	 * @param queueSize
+	 *            the maximum number of documents loaded ahead of the consumer
+	 */
+	public DocumentPrefetcher(Iterator<File> fileIter, DocumentLoader loader, int threadCount, int queueSize) {
+		if (threadCount < 1 || queueSize < 1) {
+			throw new IllegalArgumentException("Prefetch thread count and queue size must be > 0. Values provided: "
+					+ threadCount + ", " + queueSize);
+		}
+		this.fileIter = fileIter;
+		this.loader = loader;
+		this.queueSize = queueSize;
+		this.queue = new ArrayDeque<Future<GenericDocument>>(queueSize);
+		this.executor = Executors.newFixedThreadPool(threadCount, r -> {
+			Thread t = new Thread(r, "document-prefetch");
+			t.setDaemon(true);
+			return t;
+		});
+		fillQueue();
+	}
+
+	private void fillQueue() {
+		while (queue.size() < queueSize && fileIter.hasNext()) {
+			File file = fileIter.next();
+			queue.add(executor.submit(() -> {
+				long start = System.nanoTime();
+				try {
+					return loader.load(file);
+				} finally {
+					loadNanos.addAndGet(System.nanoTime() - start);
+				}
+			}));
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * @return the next document, waiting for it to be loaded if necessary
+	 * @throws UncheckedIOException
+	 *             if the document could not be loaded
+	 */
+	@Override
+	public GenericDocument next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		for (Future<GenericDocument> f : queue) {
+			if (f.isDone()) {
+				readyDepthTotal++;
+			}
+		}
+		documentCount++;
+		Future<GenericDocument> head = queue.poll();
+		if (!head.isDone()) {
+			stallCount++;
+		}
+		long start = System.nanoTime();
+		try {
+			return head.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a prefetched document.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw new UncheckedIOException((IOException) e.getCause());
+			}
+			throw new IllegalStateException("Unable to load prefetched document.", e.getCause());
+		} finally {
+			stallNanos += System.nanoTime() - start;
+			fillQueue();
+		}
+	}
+
+	/**
+	 * @return the average number of loaded documents waiting in the queue when
+	 *         the next document was requested
+	 */
+	public double getAverageQueueDepth() {
+		return (documentCount == 0) ? 0 : (double) readyDepthTotal / documentCount;
+	}
+
+	/**
+	 * @return the number of times the next document was requested before it
+	 *         had been loaded
+	 */
+	public long getStallCount() {
+		return stallCount;
+	}
+
+	/**
+	 * @return the total time spent waiting for documents to be loaded
+	 */
+	public long getStallTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(stallNanos);
+	}
+
+	/**
+	 * @return the average time taken by an I/O thread to load a document
+	 */
+	public double getAverageLoadTimeMillis() {
+		return (documentCount == 0) ? 0 : loadNanos.get() / 1000000.0 / documentCount;
+	}
+
+	/**
+	 * @return a one-line summary of the prefetch metrics
+	 */
+	public String getMetricsSummary() {
+		return String.format(
+				"prefetch queue: avg depth %.1f of %d, stalls %d of %d documents (%d ms waiting), avg load %.2f ms",
+				getAverageQueueDepth(), queueSize, stallCount, documentCount, getStallTimeMillis(),
+				getAverageLoadTimeMillis());
+	}
+
+	/**
+	 * Cancels any outstanding loads
+	 */
+	@Override
+	public void close() {
+		for (Future<GenericDocument> f : queue) {
+			f.cancel(true);
+		}
+		queue.clear();
+		executor.shutdownNow();
+	}
+
+}
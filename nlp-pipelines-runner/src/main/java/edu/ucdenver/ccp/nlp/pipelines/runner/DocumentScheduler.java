@@ -0,0 +1,109 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Orders documents by size so that the largest documents do not end up being
+ * processed last, leaving most pipeline instances idle at the end of a run
+ * while a few finish the largest documents.
+ */
+public class DocumentScheduler {
+
+	public enum DocumentOrder {
+		/**
+		 * the order in which documents are retrieved from the catalog
+		 */
+		CATALOG,
+		/**
+		 * descending size, i.e. longest-processing-time first
+		 */
+		LARGEST_FIRST,
+		/**
+		 * descending size alternating with ascending size, i.e. largest,
+		 * smallest, 2nd largest, 2nd smallest, ...
+		 */
+		INTERLEAVED
+	}
+
+	/**
+	 * @param sizes
+	 *            document sizes; -1 indicates an unknown size, which is
+	 *            ordered as if it were smaller than any known size
+	 * @param order
+	 * @return the indexes of the sizes in processing order
+	 */
+	public static int[] getProcessingOrder(long[] sizes, DocumentOrder order) {
+		Integer[] bySizeDescending = new Integer[sizes.length];
+		for (int i = 0; i < sizes.length; i++) {
+			bySizeDescending[i] = i;
+		}
+		int[] processingOrder = new int[sizes.length];
+		switch (order) {
+		case CATALOG:
+			for (int i = 0; i < sizes.length; i++) {
+				processingOrder[i] = i;
+			}
+			return processingOrder;
+		case LARGEST_FIRST:
+			/* the sort is stable so ties retain catalog order */
+			Arrays.sort(bySizeDescending, (i, j) -> Long.compare(sizes[j], sizes[i]));
+			for (int i = 0; i < sizes.length; i++) {
+				processingOrder[i] = bySizeDescending[i];
+			}
+			return processingOrder;
+		case INTERLEAVED:
+			Arrays.sort(bySizeDescending, (i, j) -> Long.compare(sizes[j], sizes[i]));
+			int largest = 0;
+			int smallest = sizes.length - 1;
+			for (int i = 0; i < sizes.length; i++) {
+				processingOrder[i] = (i % 2 == 0) ? bySizeDescending[largest++] : bySizeDescending[smallest--];
+			}
+			return processingOrder;
+		default:
+			throw new IllegalArgumentException("Unhandled document order: " + order.name() + ". Code changes required.");
+		}
+	}
+
+	/**
+	 * Simulates processing the documents in the specified order using the
+	 * specified number of pipeline instances, each of which takes the next
+	 * document as soon as it becomes free. Processing time is assumed to be
+	 * proportional to document size.
+	 *
+	 * @param sizes
+	 * @param processingOrder
+	 * @param instanceCount
+	 * @return the time (in units of size) at which the last instance finishes
+	 */
+	public static long getMakespan(long[] sizes, int[] processingOrder, int instanceCount) {
+		PriorityQueue<Long> instanceFinishTimes = new PriorityQueue<Long>(instanceCount);
+		for (int i = 0; i < instanceCount; i++) {
+			instanceFinishTimes.add(0L);
+		}
+		long makespan = 0;
+		for (int index : processingOrder) {
+			long finishTime = instanceFinishTimes.poll() + Math.max(0, sizes[index]);
+			instanceFinishTimes.add(finishTime);
+			makespan = Math.max(makespan, finishTime);
+		}
+		return makespan;
+	}
+
+	/**
+	 * @param sizes
+	 * @param instanceCount
+	 * @return a lower bound on the makespan of any order: the larger of the
+	 *         largest document and a perfectly even split of the total size
+	 */
+	public static long getMakespanLowerBound(long[] sizes, int instanceCount) {
+		long total = 0;
+		long max = 0;
+		for (long size : sizes) {
+			total += Math.max(0, size);
+			max = Math.max(max, size);
+		}
+		return Math.max(max, (total + instanceCount - 1) / instanceCount);
+	}
+
+}
@@ -0,0 +1,431 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.MetaDataObject;
+import org.apache.uima.util.CasCreationUtils;
+
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ServiceEngine;
+import edu.ucdenver.ccp.nlp.pipelines.runner.metrics.PipelineMetrics;
+
+/**
+ * Runs the {@link ServiceEngine}s of a pipeline within the current JVM, i.e.
+ * without a JMS broker and without serializing CASes between components. Each
+ * engine is a stage consisting of scaleup replicas of its analysis engine,
+ * each replica processing CASes on its own thread. CASes move through the
+ * stages, in the order of the engine list, by reference and are drawn from a
+ * bounded pool so that the collection reader cannot run arbitrarily far ahead
+ * of the slowest stage.
+ * <p>
+ * As when the pipeline is run as UIMA AS services, an exception thrown while
+ * processing a CAS terminates the run.
+ * <p>
+ * If adaptive scaleup is enabled, the replicas are rebalanced among the stages
+ * once the warm-up documents have completed the pipeline, see
+ * {@link AdaptiveScaleup}. Replicas are added to a stage by creating new
+ * analysis engines and removed by letting surplus replicas finish.
+ * <p>
+ * The processing and queue time of each stage, and the time each document
+ * spends in the pipeline, are recorded in {@link PipelineMetrics}.
+ */
+public class InProcessPipelineExecutor implements AutoCloseable {
+
+	private static final Logger logger = Logger.getLogger(InProcessPipelineExecutor.class);
+
+	private final CollectionReader reader;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private final BlockingQueue<CAS> casPool;
+	private final Consumer<CAS> completionListener;
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final CompletableFuture<Void> collectionComplete = new CompletableFuture<Void>();
+	private ExecutorService workers = null;
+	private int adaptiveScaleupWarmupCount = 0;
+	/* set by the worker thread that completes the warm-up document */
+	private volatile CompletableFuture<Void> rebalanced = null;
+
+	/**
+	 * @param reader
+	 * @param engines
+	 *            the pipeline components in processing order
+	 * @param casPoolSize
+	 *            the maximum number of CASes in the pipeline at a time
+	 * @param completionListener
+	 *            called, from a worker thread, with each CAS that completes
+	 *            the pipeline; may be null
+	 * @throws ResourceInitializationException
+	 */
+	public InProcessPipelineExecutor(CollectionReader reader, List<ServiceEngine> engines, int casPoolSize,
+			Consumer<CAS> completionListener) throws ResourceInitializationException {
+		if (engines.isEmpty()) {
+			throw new IllegalArgumentException("The pipeline must have at least one analysis engine.");
+		}
+		this.reader = reader;
+		this.completionListener = completionListener;
+		for (ServiceEngine se : engines) {
+			stages.add(new Stage(se));
+		}
+		initializeReplicas();
+
+		List<MetaDataObject> componentDescriptions = new ArrayList<MetaDataObject>();
+		componentDescriptions.add(reader.getProcessingResourceMetaData());
+		for (ServiceEngine se : engines) {
+			componentDescriptions.add(se.getAeDescription());
+		}
+		casPool = new ArrayBlockingQueue<CAS>(casPoolSize);
+		CAS cas = CasCreationUtils.createCas(componentDescriptions);
+		casPool.add(cas);
+		for (int i = 1; i < casPoolSize; i++) {
+			casPool.add(CasCreationUtils.createCas(componentDescriptions, cas.getTypeSystem(), null));
+		}
+		reader.typeSystemInit(cas.getTypeSystem());
+	}
+
+	/**
+	 * A pipeline component: the replicas of an analysis engine and the queue
+	 * of CASes waiting to be processed by them
+	 */
+	private class Stage {
+		private final ServiceEngine engine;
+		private final List<AnalysisEngine> replicas = new CopyOnWriteArrayList<AnalysisEngine>();
+		private final BlockingQueue<QueuedCas> queue = new LinkedBlockingQueue<QueuedCas>();
+		/* the replicas that have neither reached the end of the collection nor been removed */
+		private final AtomicInteger activeReplicaCount;
+		/* the number of replicas the stage is being rebalanced to */
+		private final AtomicInteger targetReplicaCount;
+		/* set once no more CASes will be added to the queue */
+		private volatile boolean upstreamFinished = false;
+		private final AtomicLong processTimeNanos = new AtomicLong();
+		private final AtomicLong processedCount = new AtomicLong();
+
+		public Stage(ServiceEngine engine) {
+			this.engine = engine;
+			this.activeReplicaCount = new AtomicInteger(getScaleup());
+			this.targetReplicaCount = new AtomicInteger(getScaleup());
+		}
+
+		public int getScaleup() {
+			return Math.max(1, engine.getDeployParams().getScaleup());
+		}
+
+		public String getName() {
+			return engine.getDeployParams().getServiceName();
+		}
+
+		public double getServiceTimeMillis() {
+			return processTimeNanos.get() / 1000000.0 / Math.max(1, processedCount.get());
+		}
+	}
+
+	/**
+	 * A CAS in a stage queue, along with the times it entered the pipeline and
+	 * the queue
+	 */
+	private static class QueuedCas {
+		private final CAS cas;
+		private final long pipelineStartNanos;
+		private long queuedNanos;
+
+		public QueuedCas(CAS cas, long pipelineStartNanos) {
+			this.cas = cas;
+			this.pipelineStartNanos = pipelineStartNanos;
+			this.queuedNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Creates the replicas of all stages concurrently as some analysis
+	 * engines, e.g. ConceptMapper, are slow to initialize
+	 */
+	private void initializeReplicas() throws ResourceInitializationException {
+		int replicaCount = 0;
+		for (Stage stage : stages) {
+			replicaCount += stage.getScaleup();
+		}
+		ExecutorService initializer = Executors
+				.newFixedThreadPool(Math.min(replicaCount, Runtime.getRuntime().availableProcessors()));
+		try {
+			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+			for (Stage stage : stages) {
+				logger.info("Initializing " + stage.getName() + " scaleup = " + stage.getScaleup());
+				for (int i = 0; i < stage.getScaleup(); i++) {
+					futures.add(CompletableFuture.runAsync(() -> {
+						try {
+							stage.replicas.add(UIMAFramework.produceAnalysisEngine(stage.engine.getAeDescription()));
+						} catch (ResourceInitializationException e) {
+							throw new CompletionException(e);
+						}
+					}, initializer));
+				}
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+		} catch (CompletionException e) {
+			destroyReplicas();
+			if (e.getCause() instanceof ResourceInitializationException) {
+				throw (ResourceInitializationException) e.getCause();
+			}
+			throw e;
+		} finally {
+			initializer.shutdown();
+		}
+	}
+
+	/**
+	 * @param adaptiveScaleupWarmupCount
+	 *            if > 0, the replicas are rebalanced among the stages once this
+	 *            many documents have completed the pipeline
+	 */
+	public void setAdaptiveScaleupWarmupCount(int adaptiveScaleupWarmupCount) {
+		this.adaptiveScaleupWarmupCount = adaptiveScaleupWarmupCount;
+	}
+
+	/**
+	 * Processes the collection, blocking until all documents have completed
+	 * the pipeline, then calls collectionProcessComplete() on every replica
+	 *
+	 * @return the number of documents that completed the pipeline
+	 * @throws Exception
+	 *             the first exception thrown by the collection reader or while
+	 *             processing a CAS
+	 */
+	public long process() throws Exception {
+		long startTime = System.currentTimeMillis();
+		AtomicInteger threadIndex = new AtomicInteger();
+		/* not a fixed size pool as replicas can be added by rebalancing */
+		workers = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "pipeline-worker-" + threadIndex.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		for (Stage stage : stages) {
+			for (AnalysisEngine replica : stage.replicas) {
+				workers.execute(() -> runReplica(stage, replica));
+			}
+		}
+
+		try {
+			while (failure.get() == null && reader.hasNext()) {
+				CAS cas = casPool.poll(100, TimeUnit.MILLISECONDS);
+				if (cas != null) {
+					long start = System.nanoTime();
+					cas.reset();
+					reader.getNext(cas);
+					stages.get(0).queue.put(new QueuedCas(cas, start));
+				}
+			}
+		} catch (Exception e) {
+			failure.compareAndSet(null, e);
+		}
+		endOfCollection(stages.get(0));
+		while (!collectionComplete.isDone() && failure.get() == null) {
+			try {
+				collectionComplete.get(100, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				/* check for failure and wait again */
+			}
+		}
+		if (rebalanced != null && failure.get() == null) {
+			rebalanced.join();
+		}
+		Throwable t = failure.get();
+		if (t != null) {
+			throw (t instanceof Exception) ? (Exception) t : new RuntimeException(t);
+		}
+		for (Stage stage : stages) {
+			for (AnalysisEngine replica : stage.replicas) {
+				replica.collectionProcessComplete();
+			}
+		}
+		logger.info("Completed " + completedCount.get() + " documents in "
+				+ (System.currentTimeMillis() - startTime) / 1000 + "s. " + getMetricsSummary());
+		return completedCount.get();
+	}
+
+	private Stage getNextStage(Stage stage) {
+		int index = stages.indexOf(stage);
+		return (index < stages.size() - 1) ? stages.get(index + 1) : null;
+	}
+
+	private void runReplica(Stage stage, AnalysisEngine replica) {
+		Stage nextStage = getNextStage(stage);
+		try {
+			while (failure.get() == null) {
+				/* a surplus replica finishes if the stage has been rebalanced to fewer replicas */
+				int activeReplicaCount = stage.activeReplicaCount.get();
+				if (activeReplicaCount > stage.targetReplicaCount.get()
+						&& stage.activeReplicaCount.compareAndSet(activeReplicaCount, activeReplicaCount - 1)) {
+					return;
+				}
+				/* upstreamFinished is read first as it is set after the last CAS is queued */
+				boolean upstreamFinished = stage.upstreamFinished;
+				QueuedCas queued = stage.queue.poll(100, TimeUnit.MILLISECONDS);
+				if (queued == null) {
+					if (upstreamFinished) {
+						break;
+					}
+					continue;
+				}
+				long start = System.nanoTime();
+				replica.process(queued.cas);
+				long end = System.nanoTime();
+				stage.processTimeNanos.addAndGet(end - start);
+				stage.processedCount.incrementAndGet();
+				PipelineMetrics.INSTANCE.recordQueueTime(stage.getName(), start - queued.queuedNanos);
+				PipelineMetrics.INSTANCE.recordLatency(stage.getName(), end - start);
+				if (nextStage == null) {
+					complete(queued);
+				} else {
+					queued.queuedNanos = end;
+					nextStage.queue.put(queued);
+				}
+			}
+		} catch (Throwable t) {
+			logger.error("Error while processing CAS in " + stage.getName(), t);
+			failure.compareAndSet(null, t);
+			return;
+		}
+		if (stage.activeReplicaCount.decrementAndGet() == 0) {
+			endOfCollection(nextStage);
+		}
+	}
+
+	/**
+	 * Signals that no more CASes will be added to the specified stage
+	 *
+	 * @param stage
+	 *            the next stage, or null if the last stage has finished
+	 */
+	private void endOfCollection(Stage stage) {
+		if (stage == null) {
+			collectionComplete.complete(null);
+		} else {
+			stage.upstreamFinished = true;
+		}
+	}
+
+	private void complete(QueuedCas queued) {
+		CAS cas = queued.cas;
+		PipelineMetrics.INSTANCE.recordLatency(PipelineMetrics.PIPELINE, System.nanoTime() - queued.pipelineStartNanos);
+		if (completedCount.incrementAndGet() == adaptiveScaleupWarmupCount) {
+			rebalanced = CompletableFuture.runAsync(this::rebalance, workers);
+		}
+		if (completionListener != null) {
+			completionListener.accept(cas);
+		}
+		casPool.add(cas);
+	}
+
+	/**
+	 * Redistributes the replicas among the stages based on the service time of
+	 * each stage measured so far. Nothing is changed if no stage has a backlog
+	 * of CASes as the collection reader then limits throughput.
+	 */
+	private void rebalance() {
+		Map<String, Double> serviceTimes = new LinkedHashMap<String, Double>();
+		Map<String, Integer> scaleups = new LinkedHashMap<String, Integer>();
+		boolean backlog = false;
+		for (Stage stage : stages) {
+			serviceTimes.put(stage.getName(), stage.getServiceTimeMillis());
+			scaleups.put(stage.getName(), stage.targetReplicaCount.get());
+			backlog |= stage.queue.size() > stage.targetReplicaCount.get();
+		}
+		if (!backlog) {
+			logger.info("No stage has a backlog of CASes; the replicas are not rebalanced. " + getMetricsSummary());
+			return;
+		}
+		Map<String, Integer> topology = AdaptiveScaleup.plan(serviceTimes, scaleups);
+		AdaptiveScaleup.logTopology(topology, serviceTimes);
+		try {
+			for (Stage stage : stages) {
+				int target = topology.get(stage.getName());
+				for (int count = stage.targetReplicaCount.getAndSet(target); count < target; count++) {
+					addReplica(stage);
+				}
+			}
+		} catch (Exception e) {
+			logger.error("Error while adding a replica to rebalance the pipeline", e);
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private void addReplica(Stage stage) throws ResourceInitializationException {
+		AnalysisEngine replica = UIMAFramework.produceAnalysisEngine(stage.engine.getAeDescription());
+		/* a replica is only added while the stage is still running */
+		if (stage.activeReplicaCount.getAndUpdate(count -> (count > 0) ? count + 1 : count) > 0) {
+			stage.replicas.add(replica);
+			workers.execute(() -> runReplica(stage, replica));
+		} else {
+			replica.destroy();
+		}
+	}
+
+	/**
+	 * @return the number of documents that have completed the pipeline
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * @return the mean time per document spent in each stage and the number
+	 *         of CASes waiting for each stage
+	 */
+	public String getMetricsSummary() {
+		StringBuilder sb = new StringBuilder();
+		for (Stage stage : stages) {
+			sb.append(String.format("[%s x%d: %.1fms/doc queued=%d] ", stage.getName(),
+					stage.targetReplicaCount.get(), stage.getServiceTimeMillis(), stage.queue.size()));
+		}
+		return sb.toString().trim();
+	}
+
+	private void destroyReplicas() {
+		for (Stage stage : stages) {
+			for (AnalysisEngine replica : stage.replicas) {
+				replica.destroy();
+			}
+			stage.replicas.clear();
+		}
+	}
+
+	/**
+	 * Stops the worker threads and destroys the analysis engine replicas
+	 */
+	@Override
+	public void close() {
+		failure.compareAndSet(null, new IllegalStateException("Pipeline executor closed."));
+		if (workers != null) {
+			workers.shutdown();
+			try {
+				workers.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		destroyReplicas();
+	}
+
+}
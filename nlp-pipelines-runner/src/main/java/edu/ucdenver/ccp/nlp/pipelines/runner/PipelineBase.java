@@ -8,8 +8,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
+import org.apache.uima.aae.client.UimaASProcessStatus;
 import org.apache.uima.aae.client.UimaAsBaseCallbackListener;
 import org.apache.uima.aae.client.UimaAsynchronousEngine;
 import org.apache.uima.aae.jms_adapter.JmsAnalysisEngineServiceAdapter;
@@ -17,6 +23,7 @@ import org.apache.uima.adapter.jms.client.BaseUIMAAsynchronousEngine_impl;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
 import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.collection.EntityProcessStatus;
 import org.apache.uima.examples.flow.AdvancedFixedFlowController;
@@ -29,10 +36,10 @@ import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.impl.CustomResourceSpecifier_impl;
 import org.apache.uima.resource.impl.Parameter_impl;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.resourceSpecifier.factory.ColocatedDelegateConfiguration;
 import org.apache.uima.resourceSpecifier.factory.DelegateConfiguration;
 import org.apache.uima.resourceSpecifier.factory.DeploymentDescriptorFactory;
 import org.apache.uima.resourceSpecifier.factory.ErrorHandlingSettings;
-import org.apache.uima.resourceSpecifier.factory.RemoteDelegateConfiguration;
 import org.apache.uima.resourceSpecifier.factory.SerializationStrategy;
 import org.apache.uima.resourceSpecifier.factory.ServiceContext;
 import org.apache.uima.resourceSpecifier.factory.UimaASAggregateDeploymentDescriptor;
@@ -46,8 +53,12 @@ import edu.ucdenver.ccp.common.file.CharacterEncoding;
 import edu.ucdenver.ccp.common.file.FileUtil;
 import edu.ucdenver.ccp.common.file.FileWriterUtil;
 import edu.ucdenver.ccp.common.io.ClassPathUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil.CatalogType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCheckpoint;
+import edu.ucdenver.ccp.nlp.pipelines.runner.metrics.PipelineMetrics;
 import edu.ucdenver.ccp.nlp.uima.shims.document.impl.CcpDocumentMetadataHandler;
 import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
+import edu.ucdenver.ccp.uima.shims.document.DocumentMetadataHandler;
 import lombok.Data;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -61,6 +72,24 @@ public abstract class PipelineBase {
 		PRIMITIVE, AGGREGATE
 	}
 
+	public enum ExecutionMode {
+		/**
+		 * each service engine is deployed as a UIMA AS service; requires
+		 * UIMA_HOME and a JMS broker
+		 */
+		UIMA_AS,
+		/**
+		 * the service engines are run on a thread pool in the current JVM,
+		 * see {@link InProcessPipelineExecutor}
+		 */
+		IN_PROCESS,
+		/**
+		 * as {@link #UIMA_AS} but all service engines are marked as
+		 * co-located, see {@link ServiceEngine#isColocated()}
+		 */
+		UIMA_AS_COLOCATED
+	}
+
 	// protected static final String BROKER_URL = "tcp://localhost:61616";
 
 	/**
@@ -89,6 +118,12 @@ public abstract class PipelineBase {
 
 	private ArrayList<String> deployedServiceIds;
 
+	/**
+	 * used instead of the UIMA AS engine in {@link ExecutionMode#IN_PROCESS}
+	 * mode
+	 */
+	private InProcessPipelineExecutor inProcessExecutor;
+
 	private static long pipelineRunStartTime;
 
 	@Setter
@@ -100,6 +135,12 @@ public abstract class PipelineBase {
 	private boolean pipelineConfigured;
 	private boolean pipelineDeployed;
 
+	/**
+	 * records the documents that complete the pipeline so that an interrupted
+	 * run can be resumed; null if checkpointing is disabled
+	 */
+	private RunCheckpoint checkpoint = null;
+
 	/**
 	 * Creates an asynchronous analysis engine.
 	 * 
@@ -116,30 +157,114 @@ public abstract class PipelineBase {
 			throws ResourceInitializationException, FileNotFoundException, IOException, SAXException {
 
 		this.serviceEngines = createServiceEngines();
+		if (pipelineParams.getScaleupTopology() != null) {
+			this.serviceEngines = applyScaleupTopology(serviceEngines,
+					AdaptiveScaleup.parseTopology(pipelineParams.getScaleupTopology()));
+		}
+		if (pipelineParams.getExecutionMode() == ExecutionMode.IN_PROCESS) {
+			/* no descriptor files are needed as nothing is deployed */
+			pipelineConfigured = true;
+			return;
+		}
 		/*
 		 * create deployment descriptor files for all pipeline component
 		 * analysis engines
 		 */
 		pipelineComponentDeployDescriptorFiles = new ArrayList<File>();
 		logger.info("Creating descriptor XML for pipeline component analysis engines...");
-		List<RemoteDelegateConfiguration> delegateConfigurations = new ArrayList<RemoteDelegateConfiguration>();
+		List<DelegateConfiguration> delegateConfigurations = new ArrayList<DelegateConfiguration>();
+		boolean allColocated = true;
+		int colocatedScaleup = 1;
 		for (ServiceEngine se : serviceEngines) {
+			if (pipelineParams.getExecutionMode() == ExecutionMode.UIMA_AS_COLOCATED) {
+				se.setColocated(true);
+			}
 			logger.info("Configuring " + se.getAeDescription().getAnnotatorImplementationName() + " scaleup = "
-					+ se.getDeployParams().getScaleup());
+					+ se.getDeployParams().getScaleup() + (se.isColocated() ? " (co-located)" : ""));
 			ErrorHandlingSettings errorSettings = new ProcessErrorHandlingSettingsImpl();
-			delegateConfigurations.add(DeploymentDescriptorFactory.createRemoteDelegateConfiguration(
-					se.getAeDescription().getAnnotatorImplementationName(), se.getDeployParams().getBrokerUrl(),
-					se.getDeployParams().getEndpoint(), SerializationStrategy.xmi, errorSettings));
-			File deploymentDescriptorFile = createDeploymentDescriptorFiles(se, null);
-			pipelineComponentDeployDescriptorFiles.add(deploymentDescriptorFile);
+			if (se.isColocated()) {
+				/*
+				 * the aggregate imports the analysis engine descriptor directly
+				 * so no service is deployed for this engine
+				 */
+				se.setAeDescriptorFile(serializeDescriptionToFile(se.getAeDescription(), se.getDeployParams()));
+				ColocatedDelegateConfiguration delegateConfiguration = (ColocatedDelegateConfiguration) DeploymentDescriptorFactory
+						.createPrimitiveDelegateConfiguration(se.getAeDescription().getAnnotatorImplementationName(),
+								errorSettings);
+				delegateConfiguration.setNumberOfInstances(se.getDeployParams().getScaleup());
+				delegateConfigurations.add(delegateConfiguration);
+				colocatedScaleup = Math.max(colocatedScaleup, se.getDeployParams().getScaleup());
+			} else {
+				allColocated = false;
+				delegateConfigurations.add(DeploymentDescriptorFactory.createRemoteDelegateConfiguration(
+						se.getAeDescription().getAnnotatorImplementationName(), se.getDeployParams().getBrokerUrl(),
+						se.getDeployParams().getEndpoint(), se.getDeployParams().getSerializationStrategy(),
+						errorSettings));
+				File deploymentDescriptorFile = createDeploymentDescriptorFiles(se, null);
+				pipelineComponentDeployDescriptorFiles.add(deploymentDescriptorFile);
+			}
 		}
 
 		logger.info("Configuring AGGREGATE pipeline description...");
+		DeploymentParams pipelineDeployParams = getPipelineDeploymentParams();
+		if (allColocated) {
+			/*
+			 * a synchronous aggregate: each instance runs the whole pipeline on
+			 * a CAS, so CASes are not queued between components
+			 */
+			pipelineDeployParams = pipelineDeployParams
+					.withScaleup(Math.max(pipelineDeployParams.getScaleup(), colocatedScaleup));
+			delegateConfigurations = null;
+		}
 		pipelineDeploymentDescriptorFile = createDeploymentDescriptorFile(getPipelineDescription(),
-				getPipelineDeploymentParams(), DescriptorType.AGGREGATE, delegateConfigurations);
+				pipelineDeployParams, DescriptorType.AGGREGATE, delegateConfigurations);
 		pipelineConfigured = true;
 	}
 
+	/**
+	 * @param serviceEngines
+	 * @param topology
+	 *            service name to scaleup
+	 * @return the service engines with the scaleups of the services named in
+	 *         the topology replaced
+	 */
+	static List<ServiceEngine> applyScaleupTopology(List<ServiceEngine> serviceEngines,
+			Map<String, Integer> topology) {
+		List<ServiceEngine> engines = new ArrayList<ServiceEngine>();
+		for (ServiceEngine se : serviceEngines) {
+			Integer scaleup = topology.get(se.getDeployParams().getServiceName());
+			if (scaleup == null) {
+				engines.add(se);
+			} else {
+				ServiceEngine engine = new ServiceEngine(se.getAeDescription(),
+						se.getDeployParams().withScaleup(scaleup), se.getComponentName(), se.getDescriptorType());
+				engine.setColocated(se.isColocated());
+				engines.add(engine);
+			}
+		}
+		for (String serviceName : topology.keySet()) {
+			if (!serviceEngines.stream().anyMatch(se -> se.getDeployParams().getServiceName().equals(serviceName))) {
+				logger.warn("Scaleup topology names a service that is not part of the pipeline: " + serviceName);
+			}
+		}
+		return engines;
+	}
+
+	/**
+	 * @return the journal file for a write-behind {@link RunCatalogAE}. It is
+	 *         kept in the config directory, which persists across runs, so that
+	 *         catalog updates queued but not committed when a run stopped are
+	 *         replayed by the next run of the pipeline, including updates for
+	 *         documents that the checkpoint already records as complete. The
+	 *         config directory is created if it does not exist, as no
+	 *         descriptors are written to it in
+	 *         {@link ExecutionMode#IN_PROCESS} mode.
+	 */
+	protected File getCatalogJournalFile() {
+		FileUtil.mkdir(configDir);
+		return new File(configDir, pipelineParams.getPipelineKey() + ".catalog.journal");
+	}
+
 	protected abstract DeploymentParams getPipelineDeploymentParams();
 
 	protected abstract List<ServiceEngine> createServiceEngines() throws ResourceInitializationException;
@@ -147,16 +272,52 @@ public abstract class PipelineBase {
 	protected abstract TypeSystemDescription getPipelineTypeSystem();
 
 	/**
-	 * @return the path to the aggregate descriptor file (MUST BE IN CLASSPATH)
+	 * @return the path to the aggregate descriptor file (MUST BE IN CLASSPATH),
+	 *         or null if the aggregate descriptor should be generated from the
+	 *         service engines, e.g. when the number of service engines varies
+	 *         with the pipeline configuration
 	 */
 	protected abstract String getAggregateDescriptorPath();
 
 	protected CollectionReaderDescription getCollectionReaderDescription(PipelineParams params)
 			throws ResourceInitializationException {
-		return RunCatalogCollectionReader_neo4j.createDescription(TypeSystemUtil.getCcpTypeSystem(),
-				params.getCatalogDirectory(), params.getEncoding(), params.getPipelineKey(),
-				params.getDocumentCollectionName(), params.getDocFileVersion(), "en", false, params.getNumToProcess(),
-				params.getNumToSkip(), CcpDocumentMetadataHandler.class, params.getViewName());
+		CollectionReaderDescription crDesc;
+		if (params.getCatalogServerPort() > 0) {
+			crDesc = RunCatalogCollectionReader_remote.createDescription(TypeSystemUtil.getCcpTypeSystem(),
+					params.getCatalogServerPort(), params.getEncoding(), params.getPipelineKey(),
+					params.getDocumentCollectionName(), params.getDocFileVersion(), "en", false,
+					params.getNumToProcess(), params.getNumToSkip(), CcpDocumentMetadataHandler.class,
+					params.getViewName());
+		} else if (params.getCatalogType() == CatalogType.APPEND_LOG) {
+			crDesc = RunCatalogCollectionReader_appendlog.createDescription(TypeSystemUtil.getCcpTypeSystem(),
+					params.getCatalogDirectory(), params.getEncoding(), params.getPipelineKey(),
+					params.getDocumentCollectionName(), params.getDocFileVersion(), "en", false,
+					params.getNumToProcess(), params.getNumToSkip(), CcpDocumentMetadataHandler.class,
+					params.getViewName());
+		} else {
+			crDesc = RunCatalogCollectionReader_neo4j.createDescription(TypeSystemUtil.getCcpTypeSystem(),
+					params.getCatalogDirectory(), params.getEncoding(), params.getPipelineKey(),
+					params.getDocumentCollectionName(), params.getDocFileVersion(), "en", false,
+					params.getNumToProcess(), params.getNumToSkip(), CcpDocumentMetadataHandler.class,
+					params.getViewName());
+		}
+		crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+				RunCatalogCollectionReader.PARAM_PREFETCH_THREAD_COUNT, params.getPrefetchThreadCount());
+		crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+				RunCatalogCollectionReader.PARAM_PREFETCH_QUEUE_SIZE, params.getPrefetchQueueSize());
+		crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+				RunCatalogCollectionReader.PARAM_SHARD_ID, params.getShardId());
+		crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+				RunCatalogCollectionReader.PARAM_SHARD_COUNT, params.getShardCount());
+		crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+				RunCatalogCollectionReader.PARAM_DOCUMENT_ORDER, params.getDocumentOrder().name());
+		crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+				RunCatalogCollectionReader.PARAM_STORAGE_TYPE, params.getStorageType().name());
+		if (params.getCheckpointFile() != null) {
+			crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+					RunCatalogCollectionReader.PARAM_CHECKPOINT_FILE, params.getCheckpointFile().getAbsolutePath());
+		}
+		return crDesc;
 	}
 
 	/**
@@ -180,13 +341,24 @@ public abstract class PipelineBase {
 	protected AnalysisEngineDescription getPipelineDescription() throws ResourceInitializationException {
 		try {
 			List<String> componentNames = new ArrayList<String>();
-			String pipelineDescStr = ClassPathUtil.getContentsFromClasspathResource(getClass(),
-					getAggregateDescriptorPath(), CharacterEncoding.UTF_8);
-			int index = 1;
 			for (ServiceEngine se : getServiceEngines()) {
 				componentNames.add(se.getAeDescription().getAnnotatorImplementationName());
-				pipelineDescStr = pipelineDescStr.replace(ENGINE_PLACEHOLDER_PREFIX + index++,
-						se.getRemoteAeDescriptorFile().getAbsolutePath());
+			}
+			String pipelineDescStr = (getAggregateDescriptorPath() == null)
+					? createAggregateDescriptorTemplate(componentNames)
+					: ClassPathUtil.getContentsFromClasspathResource(getClass(), getAggregateDescriptorPath(),
+							CharacterEncoding.UTF_8);
+			int index = 1;
+			for (ServiceEngine se : getServiceEngines()) {
+				File delegateDescriptorFile = se.isColocated() ? se.getAeDescriptorFile()
+						: se.getRemoteAeDescriptorFile();
+				/*
+				 * the placeholder is replaced with its quotes so that e.g.
+				 * ENGINE_DESCRIPTOR_PATH_1 does not match the start of
+				 * ENGINE_DESCRIPTOR_PATH_10
+				 */
+				pipelineDescStr = pipelineDescStr.replace("\"" + ENGINE_PLACEHOLDER_PREFIX + index++ + "\"",
+						"\"" + delegateDescriptorFile.getAbsolutePath() + "\"");
 			}
 			/* create the flow controller descriptor file */
 			FlowControllerDescription flowControllerDescription = getFlowControllerDescription(
@@ -212,6 +384,41 @@ public abstract class PipelineBase {
 		}
 	}
 
+	/**
+	 * @param delegateKeys
+	 *            the annotator implementation names of the service engines, in
+	 *            order
+	 * @return an aggregate descriptor in the form of those in
+	 *         /pipeline_descriptors, containing a delegate for each key with
+	 *         the engine and flow controller placeholders to be replaced
+	 */
+	static String createAggregateDescriptorTemplate(List<String> delegateKeys) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<analysisEngineDescription xmlns=\"http://uima.apache.org/resourceSpecifier\">\n");
+		sb.append("\t<frameworkImplementation>org.apache.uima.java</frameworkImplementation>\n");
+		sb.append("\t<primitive>false</primitive>\n");
+		sb.append("\t<delegateAnalysisEngineSpecifiers>\n");
+		int index = 1;
+		for (String key : delegateKeys) {
+			sb.append("\t\t<delegateAnalysisEngine key=\"" + key + "\">\n");
+			sb.append("\t\t\t<import location=\"" + ENGINE_PLACEHOLDER_PREFIX + index++ + "\" />\n");
+			sb.append("\t\t</delegateAnalysisEngine>\n");
+		}
+		sb.append("\t</delegateAnalysisEngineSpecifiers>\n");
+		sb.append("\t<flowController key=\"AdvancedFixedFlowController\">\n");
+		sb.append("\t\t<import location=\"" + FLOW_CONTROLLER_PLACEHOLDER + "\" />\n");
+		sb.append("\t</flowController>\n");
+		sb.append("\t<analysisEngineMetaData>\n");
+		sb.append("\t\t<operationalProperties>\n");
+		sb.append("\t\t\t<multipleDeploymentAllowed>false</multipleDeploymentAllowed>\n");
+		sb.append("\t\t</operationalProperties>\n");
+		sb.append("\t</analysisEngineMetaData>\n");
+		sb.append("\t<resourceManagerConfiguration />\n");
+		sb.append("</analysisEngineDescription>\n");
+		return sb.toString();
+	}
+
 	/**
 	 * 
 	 * @param flow
@@ -238,9 +445,29 @@ public abstract class PipelineBase {
 			configurePipeline();
 		}
 
+		if (pipelineParams.getCheckpointFile() != null) {
+			checkpoint = new RunCheckpoint(pipelineParams.getCheckpointFile(),
+					pipelineParams.getCheckpointSyncInterval());
+		}
+		PipelineMetrics.INSTANCE.registerMBeans();
+		if (pipelineParams.getMetricsSnapshotFile() != null) {
+			PipelineMetrics.INSTANCE.startSnapshots(pipelineParams.getMetricsSnapshotFile(),
+					pipelineParams.getMetricsSnapshotIntervalSeconds());
+		}
+		if (pipelineParams.getExecutionMode() == ExecutionMode.IN_PROCESS) {
+			deployInProcess();
+			return;
+		}
+
 		deployedServiceIds = new ArrayList<String>();
 		uimaAsEngine = new BaseUIMAAsynchronousEngine_impl();
-		uimaAsEngine.addStatusCallbackListener(new DefaultCallbackListener(uimaAsEngine));
+		DefaultCallbackListener callbackListener = new DefaultCallbackListener(uimaAsEngine, checkpoint);
+		callbackListener.setServiceComponentKeys(AdaptiveScaleup.getComponentKeys(serviceEngines));
+		if (pipelineParams.getAdaptiveScaleupWarmupCount() > 0) {
+			callbackListener.setAdaptiveScaleup(
+					new AdaptiveScaleup(serviceEngines, pipelineParams.getAdaptiveScaleupWarmupCount()));
+		}
+		uimaAsEngine.addStatusCallbackListener(callbackListener);
 
 		CollectionReaderDescription crDesc = getCollectionReaderDescription(pipelineParams);
 		uimaAsEngine.setCollectionReader(CollectionReaderFactory.createReader(crDesc));
@@ -262,7 +489,9 @@ public abstract class PipelineBase {
 		logger.info("Initialize pipeline as UIMA AS service...");
 		deployCtx.put(UimaAsynchronousEngine.ServerUri, getPipelineDeploymentParams().getBrokerUrl());
 		deployCtx.put(UimaAsynchronousEngine.ENDPOINT, getPipelineDeploymentParams().getEndpoint());
-		deployCtx.put(UimaAsynchronousEngine.CasPoolSize, getPipelineParams().getCasPoolSize()*4);
+		deployCtx.put(UimaAsynchronousEngine.CasPoolSize, getClientCasPoolSize());
+		deployCtx.put(UimaAsynchronousEngine.SERIALIZATION_STRATEGY,
+				getPipelineDeploymentParams().getSerializationStrategy().name());
 		deployCtx.put(UimaAsynchronousEngine.UimaEeDebug, debugFlag);
 		uimaAsEngine.initialize(deployCtx);
 		pipelineDeployed = true;
@@ -271,6 +500,42 @@ public abstract class PipelineBase {
 
 	}
 
+	/**
+	 * @return the number of CASes the client can have in the pipeline at a
+	 *         time: enough to keep every service instance busy with a CAS
+	 *         pool's worth of CASes queued in addition
+	 */
+	private int getClientCasPoolSize() {
+		int instanceCount = 0;
+		for (ServiceEngine se : serviceEngines) {
+			instanceCount += se.getDeployParams().getScaleup();
+		}
+		return instanceCount + pipelineParams.getCasPoolSize();
+	}
+
+	/**
+	 * Initializes the service engine replicas and the collection reader in
+	 * the current JVM
+	 */
+	private void deployInProcess() throws Exception {
+		logger.info("Initializing pipeline components in process...");
+		CollectionReaderDescription crDesc = getCollectionReaderDescription(pipelineParams);
+		DocumentMetadataHandler documentMetadataHandler = new CcpDocumentMetadataHandler();
+		AtomicLong completedCount = new AtomicLong();
+		inProcessExecutor = new InProcessPipelineExecutor(CollectionReaderFactory.createReader(crDesc),
+				serviceEngines, pipelineParams.getCasPoolSize(), cas -> {
+					markComplete(checkpoint, documentMetadataHandler, cas);
+					long count = completedCount.incrementAndGet();
+					if (count % 1000 == 0) {
+						logger.info("Documents processed: " + count + " " + inProcessExecutor.getMetricsSummary());
+					}
+				});
+		if (pipelineParams.getAdaptiveScaleupWarmupCount() > 0) {
+			inProcessExecutor.setAdaptiveScaleupWarmupCount(pipelineParams.getAdaptiveScaleupWarmupCount());
+		}
+		pipelineDeployed = true;
+	}
+
 	public void runPipeline() {
 		try {
 			if (!pipelineDeployed) {
@@ -280,6 +545,18 @@ public abstract class PipelineBase {
 
 			pipelineRunStartTime = System.nanoTime() / 1000000;
 
+			if (inProcessExecutor != null) {
+				long count = inProcessExecutor.process();
+				System.out.println("Completed " + count + " documents");
+				System.out.println("Time Elapsed : " + (System.nanoTime() / 1000000 - pipelineRunStartTime) + " ms ");
+				inProcessExecutor.close();
+				inProcessExecutor = null;
+				closeCheckpoint(checkpoint);
+				finishMetrics();
+				logger.info("System.exit(0)...");
+				System.exit(0);
+			}
+
 			uimaAsEngine.process();
 
 			logger.info("Calling collectionProcessingComplete()...");
@@ -295,14 +572,27 @@ public abstract class PipelineBase {
 			logger.info("Stopping UIMA AS Engine...");
 			uimaAsEngine.stop();
 			uimaAsEngine = null;
+			closeCheckpoint(checkpoint);
+			finishMetrics();
 		} catch (Exception e) {
 			e.printStackTrace();
+			/* halt() skips shutdown hooks so the checkpoint is synced first */
+			closeCheckpoint(checkpoint);
+			finishMetrics();
 			Runtime.getRuntime().halt(-1);
 		}
 		logger.info("System.exit(0)...");
 		System.exit(0);
 	}
 
+	/**
+	 * Writes the final metrics snapshot and logs the metrics summary
+	 */
+	private void finishMetrics() {
+		PipelineMetrics.INSTANCE.stopSnapshots(pipelineParams.getMetricsSnapshotFile());
+		logger.info("Pipeline metrics:\n" + PipelineMetrics.INSTANCE.getSummary());
+	}
+
 	/**
 	 * @param se
 	 * @param delegateConfigurations
@@ -314,7 +604,7 @@ public abstract class PipelineBase {
 	 * @throws SAXException
 	 */
 	private File createDeploymentDescriptorFiles(ServiceEngine se,
-			List<RemoteDelegateConfiguration> delegateConfigurations)
+			List<DelegateConfiguration> delegateConfigurations)
 			throws ResourceInitializationException, FileNotFoundException, IOException, SAXException {
 		File aeDescriptorFile = serializeDescriptionToFile(se.getAeDescription(), se.getDeployParams());
 		se.setAeDescriptorFile(aeDescriptorFile);
@@ -337,7 +627,9 @@ public abstract class PipelineBase {
 
 		Parameter[] parameters = new Parameter[] { new Parameter_impl("brokerURL", params.getBrokerUrl()),
 				new Parameter_impl("endpoint", params.getEndpoint()), new Parameter_impl("timeout", "5000"),
-				new Parameter_impl("getmetatimeout", "5000"), new Parameter_impl("cpcTimeout", "5000") };
+				new Parameter_impl("getmetatimeout", "5000"), new Parameter_impl("cpcTimeout", "5000"),
+				new Parameter_impl("binary_serialization",
+						Boolean.toString(params.getSerializationStrategy() == SerializationStrategy.binary)) };
 		resourceSpecifier.setParameters(parameters);
 
 		File outputFile = getEngineRemoteDescriptorFile(params, configDir);
@@ -361,7 +653,7 @@ public abstract class PipelineBase {
 	 * @throws SAXException
 	 */
 	private File createDeploymentDescriptorFile(AnalysisEngineDescription aeDescription, DeploymentParams params,
-			DescriptorType descriptorType, List<RemoteDelegateConfiguration> delegateConfigurations)
+			DescriptorType descriptorType, List<DelegateConfiguration> delegateConfigurations)
 			throws ResourceInitializationException, FileNotFoundException, IOException, SAXException {
 		File aeDescriptorFile = serializeDescriptionToFile(aeDescription, params);
 		ServiceContext context = createServiceContext(aeDescriptorFile, params);
@@ -384,14 +676,49 @@ public abstract class PipelineBase {
 		return serializeDescriptionToFile(dd.toXML(), params);
 	}
 
+	/**
+	 * @param context
+	 * @param params
+	 * @param delegateConfigs
+	 *            if null, a synchronous aggregate is described, scaled out to
+	 *            the scaleup of the specified params
+	 */
 	private File createAggregateDeploymentDescriptor(ServiceContext context, DeploymentParams params,
-			List<RemoteDelegateConfiguration> delegateConfigs)
+			List<DelegateConfiguration> delegateConfigs)
 			throws ResourceInitializationException, FileNotFoundException, IOException {
+		if (delegateConfigs == null) {
+			context.setAsync(false);
+			context.setScaleup(params.getScaleup());
+			context.setCasPoolSize(Math.max(context.getCasPoolSize(), params.getScaleup()));
+			UimaASAggregateDeploymentDescriptor dd = DeploymentDescriptorFactory
+					.createAggregateDeploymentDescriptor(context);
+			dd.setAsync(false);
+			dd.setCasPoolSize(context.getCasPoolSize());
+			return serializeDescriptionToFile(dd.toXML(), params);
+		}
 		UimaASAggregateDeploymentDescriptor dd = DeploymentDescriptorFactory.createAggregateDeploymentDescriptor(
 				context, delegateConfigs.toArray(new DelegateConfiguration[delegateConfigs.size()]));
 		dd.setAsync(true);
 		dd.setCasPoolSize(context.getCasPoolSize());
-		return serializeDescriptionToFile(dd.toXML(), params);
+		return serializeDescriptionToFile(addColocatedDelegateScaleouts(dd.toXML(), delegateConfigs), params);
+	}
+
+	/**
+	 * The deployment descriptor factory does not output the scaleout of
+	 * co-located primitive delegates, so it is added to the delegate elements
+	 * of the deployment descriptor XML
+	 */
+	static String addColocatedDelegateScaleouts(String ddXml, List<DelegateConfiguration> delegateConfigs) {
+		for (DelegateConfiguration delegateConfig : delegateConfigs) {
+			if (delegateConfig instanceof ColocatedDelegateConfiguration) {
+				int instanceCount = ((ColocatedDelegateConfiguration) delegateConfig).getNumberOfInstances();
+				ddXml = ddXml.replaceFirst(
+						"<analysisEngine key=\"" + Pattern.quote(delegateConfig.getKey()) + "\"([^>]*)/>",
+						"<analysisEngine key=\"" + Matcher.quoteReplacement(delegateConfig.getKey())
+								+ "\"$1><scaleout numberOfInstances=\"" + instanceCount + "\"/></analysisEngine>");
+			}
+		}
+		return ddXml;
 	}
 
 	/**
@@ -483,15 +810,89 @@ public abstract class PipelineBase {
 		private final DeploymentParams deployParams;
 		private final String componentName;
 		private final DescriptorType descriptorType;
+		/**
+		 * If true, the engine runs within the pipeline aggregate service
+		 * rather than being deployed as a separate service with its own
+		 * queue. If all engines are co-located the aggregate is synchronous
+		 * and scaled out as a whole; otherwise the co-located engines are
+		 * scaled out individually within the asynchronous aggregate. The
+		 * endpoint and broker URL of a co-located engine are not used.
+		 */
+		private boolean colocated = false;
+	}
+
+	private static void closeCheckpoint(RunCheckpoint checkpoint) {
+		if (checkpoint != null) {
+			try {
+				checkpoint.close();
+			} catch (IOException e) {
+				logger.error("Unable to close run checkpoint.", e);
+			}
+		}
+	}
+
+	/**
+	 * Records the document in the CAS as complete in the checkpoint, if
+	 * checkpointing is enabled and the CAS was processed without error. A
+	 * failed document is left out of the checkpoint so that it is processed
+	 * again when the run is resumed.
+	 */
+	static void markComplete(RunCheckpoint checkpoint, DocumentMetadataHandler documentMetadataHandler, CAS aCas,
+			EntityProcessStatus aStatus) {
+		if (aStatus != null && aStatus.isException()) {
+			return;
+		}
+		markComplete(checkpoint, documentMetadataHandler, aCas);
+	}
+
+	/**
+	 * Records the document in the CAS as complete in the checkpoint, if
+	 * checkpointing is enabled
+	 */
+	private static void markComplete(RunCheckpoint checkpoint, DocumentMetadataHandler documentMetadataHandler,
+			CAS aCas) {
+		if (checkpoint != null) {
+			/* the collection reader assigns the document id */
+			try {
+				checkpoint.markComplete(documentMetadataHandler.extractDocumentId(aCas.getJCas()));
+			} catch (CASException | IOException e) {
+				logger.error("Unable to checkpoint completed document.", e);
+			}
+		}
 	}
 
 	@RequiredArgsConstructor
 	public static class DefaultCallbackListener extends UimaAsBaseCallbackListener {
 
 		private final UimaAsynchronousEngine engine;
+		/**
+		 * may be null
+		 */
+		private final RunCheckpoint checkpoint;
+		private final DocumentMetadataHandler documentMetadataHandler = new CcpDocumentMetadataHandler();
+		/**
+		 * if not null, measures the service times of the first documents and
+		 * logs the topology chosen from them
+		 */
+		@Setter
+		private AdaptiveScaleup adaptiveScaleup = null;
+		/**
+		 * used to attribute the analysis times reported by UIMA AS to
+		 * services, see {@link AdaptiveScaleup#getComponentKeys(List)}
+		 */
+		@Setter
+		private Map<String, String> serviceComponentKeys = new HashMap<String, String>();
+		/* CAS reference id to the time the CAS was sent to the pipeline service */
+		private final Map<String, Long> sendTimes = new ConcurrentHashMap<String, Long>();
 
 		private int entityCount = 0;
 
+		@Override
+		public void onBeforeMessageSend(UimaASProcessStatus status) {
+			super.onBeforeMessageSend(status);
+			sendTimes.put(status.getCasReferenceId(), System.nanoTime());
+		}
+
 		@Override
 		public void initializationComplete(EntityProcessStatus aStatus) {
 			super.initializationComplete(aStatus);
@@ -515,6 +916,7 @@ public abstract class PipelineBase {
 			} catch (Exception e) {
 
 			}
+			closeCheckpoint(checkpoint);
 			System.exit(0);
 		}
 
@@ -533,12 +935,46 @@ public abstract class PipelineBase {
 					stop();
 				}
 			}
+			markComplete(checkpoint, documentMetadataHandler, aCas, aStatus);
+			if (aStatus instanceof UimaASProcessStatus) {
+				UimaASProcessStatus status = (UimaASProcessStatus) aStatus;
+				Map<String, Long> serviceTimes = AdaptiveScaleup.getServiceAnalysisTimes(serviceComponentKeys,
+						status.getPerformanceMetricsList());
+				recordMetrics(status.getCasReferenceId(), serviceTimes);
+				if (adaptiveScaleup != null && adaptiveScaleup.recordServiceTimes(serviceTimes)) {
+					AdaptiveScaleup.logTopology(adaptiveScaleup.plan(), adaptiveScaleup.getServiceTimes());
+				}
+			}
 			if (entityCount++ % 50 == 0) {
 				logger.info("Documents processed: " + (entityCount - 1));
 			}
 
 		}
 
+		/**
+		 * Records the analysis time of each service and the time the CAS spent
+		 * in the pipeline. The time not spent in analysis, i.e. queued and in
+		 * transport between services, is recorded as the queue time of the
+		 * pipeline as UIMA AS does not report it per service.
+		 *
+		 * @param casReferenceId
+		 * @param serviceTimes
+		 *            in milliseconds
+		 */
+		private void recordMetrics(String casReferenceId, Map<String, Long> serviceTimes) {
+			long analysisNanos = 0;
+			for (Entry<String, Long> entry : serviceTimes.entrySet()) {
+				PipelineMetrics.INSTANCE.recordLatency(entry.getKey(), entry.getValue() * 1000000);
+				analysisNanos += entry.getValue() * 1000000;
+			}
+			Long sendTime = sendTimes.remove(casReferenceId);
+			if (sendTime != null) {
+				long latency = System.nanoTime() - sendTime;
+				PipelineMetrics.INSTANCE.recordLatency(PipelineMetrics.PIPELINE, latency);
+				PipelineMetrics.INSTANCE.recordQueueTime(PipelineMetrics.PIPELINE, Math.max(0, latency - analysisNanos));
+			}
+		}
+
 		@Override
 		public void collectionProcessComplete(EntityProcessStatus aStatus) {
 			super.collectionProcessComplete(aStatus);
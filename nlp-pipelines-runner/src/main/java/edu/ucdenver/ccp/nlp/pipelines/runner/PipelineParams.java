@@ -4,6 +4,11 @@ import java.io.File;
 
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil.CatalogType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentScheduler.DocumentOrder;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ExecutionMode;
+import edu.ucdenver.ccp.nlp.pipelines.runner.metrics.PipelineMetrics;
 import lombok.Data;
 
 @Data
@@ -22,6 +27,80 @@ public class PipelineParams {
 	private final int numToSkip;
 	private final String brokerUrl;
 	private final int casPoolSize;
+	/**
+	 * if > 0, the pipeline accesses the run catalog via the run catalog server
+	 * listening on this port of the local machine instead of opening the
+	 * catalog directory
+	 */
+	private int catalogServerPort = -1;
+	/**
+	 * the type of run catalog stored in the catalog directory
+	 */
+	private CatalogType catalogType = CatalogType.NEO4J;
+	/**
+	 * if > 0, the collection reader reads and decompresses documents ahead of
+	 * time using this many I/O threads
+	 */
+	private int prefetchThreadCount = 0;
+	/**
+	 * the maximum number of documents read ahead of time when prefetching
+	 */
+	private int prefetchQueueSize = 64;
+	/**
+	 * the 0-based id of the shard of outstanding documents processed by this
+	 * pipeline
+	 */
+	private int shardId = 0;
+	/**
+	 * the number of shards the outstanding documents are divided into; each
+	 * shard is processed by a separate pipeline deployment
+	 */
+	private int shardCount = 1;
+	/**
+	 * the order in which the collection reader hands out documents
+	 */
+	private DocumentOrder documentOrder = DocumentOrder.CATALOG;
+	/**
+	 * if not null, the id of each document that completes the pipeline is
+	 * recorded in this run checkpoint file, and documents already recorded in
+	 * it are not processed when the run is restarted
+	 */
+	private File checkpointFile = null;
+	/**
+	 * the number of completed documents between forcing the checkpoint file to
+	 * disk
+	 */
+	private int checkpointSyncInterval = 1000;
+	/**
+	 * how the document library is stored; used by the collection reader and
+	 * by the annotation (de)serializers
+	 */
+	private StorageType storageType = StorageType.FILE_SYSTEM;
+	/**
+	 * whether the pipeline is deployed as UIMA AS services or run on a thread
+	 * pool in the current JVM
+	 */
+	private ExecutionMode executionMode = ExecutionMode.UIMA_AS;
+	/**
+	 * if not null, overrides the scaleup of each named service engine; formatted
+	 * as logged by {@link AdaptiveScaleup}:
+	 * <code>serviceName=count,serviceName=count,...</code>
+	 */
+	private String scaleupTopology = null;
+	/**
+	 * if > 0, the instance counts of the service engines are chosen by
+	 * {@link AdaptiveScaleup} once this many documents have completed the
+	 * pipeline. In {@link ExecutionMode#IN_PROCESS} mode the engines are
+	 * rebalanced during the run; when deployed as UIMA AS services the chosen
+	 * topology is logged so that it can be pinned for later runs.
+	 */
+	private int adaptiveScaleupWarmupCount = 0;
+	/**
+	 * if not null, the pipeline metrics are periodically written to this file
+	 * as JSON, see {@link PipelineMetrics#startSnapshots(File, int)}
+	 */
+	private File metricsSnapshotFile = null;
+	private int metricsSnapshotIntervalSeconds = 60;
 	
 	
 }
@@ -1,7 +1,10 @@
 package edu.ucdenver.ccp.nlp.pipelines.runner;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
@@ -22,11 +25,15 @@ import edu.ucdenver.ccp.nlp.pipelines.log.AnnotationOutputLog;
 import edu.ucdenver.ccp.nlp.pipelines.log.ProcessingErrorLog;
 import edu.ucdenver.ccp.nlp.pipelines.log.SerializedFileLog;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationOutput;
-import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.CatalogUpdate;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
-import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil.CatalogType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.WriteBehindCatalogWriter;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.RemoteRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runner.metrics.PipelineMetrics;
 import edu.ucdenver.ccp.nlp.uima.shims.ShimDefaults;
 import edu.ucdenver.ccp.uima.shims.document.DocumentMetadataHandler;
 
@@ -38,9 +45,19 @@ import edu.ucdenver.ccp.uima.shims.document.DocumentMetadataHandler;
 public class RunCatalogAE extends JCasAnnotator_ImplBase {
 
 	public static final String PARAM_CATALOG_DIRECTORY = "catalogDirectory";
-	@ConfigurationParameter(mandatory = true, description = "The base directory for the RunCatalog.")
+	@ConfigurationParameter(mandatory = false, description = "The base directory for the RunCatalog. Required unless "
+			+ "a catalog server port is specified.")
 	private File catalogDirectory;
 
+	public static final String PARAM_CATALOG_SERVER_PORT = "catalogServerPort";
+	@ConfigurationParameter(mandatory = false, description = "If > 0, the RunCatalog is accessed via the run catalog "
+			+ "server listening on this port of the local machine.", defaultValue = "-1")
+	private int catalogServerPort;
+
+	public static final String PARAM_CATALOG_TYPE = "catalogType";
+	@ConfigurationParameter(mandatory = false, description = "The type of RunCatalog stored in the catalog directory.", defaultValue = "NEO4J")
+	private CatalogType catalogType;
+
 	public static final String PARAM_DOCUMENT_METADATA_HANDLER_CLASS = "documentMetadataHandlerClassName";
 	@ConfigurationParameter(mandatory = false, description = "name of the DocumentMetadataHandler implementation to use", defaultValue = ShimDefaults.CCP_DOCUMENT_METADATA_HANDLER_CLASS_NAME)
 	private String documentMetadataHandlerClassName;
@@ -50,13 +67,39 @@ public class RunCatalogAE extends JCasAnnotator_ImplBase {
 	@ConfigurationParameter(mandatory = true, description = "pipeline key (useful when logging errors)")
 	private String pipelineKey;
 
+	public static final String PARAM_WRITE_BEHIND = "writeBehind";
+	@ConfigurationParameter(mandatory = false, description = "If true, catalog updates are queued and committed "
+			+ "in batches by a background thread.", defaultValue = "false")
+	private boolean writeBehind;
+
+	public static final String PARAM_WRITE_BEHIND_QUEUE_CAPACITY = "writeBehindQueueCapacity";
+	@ConfigurationParameter(mandatory = false, description = "The maximum number of catalog updates waiting to "
+			+ "be committed when in write-behind mode.", defaultValue = "10000")
+	private int writeBehindQueueCapacity;
+
+	public static final String PARAM_WRITE_BEHIND_BATCH_SIZE = "writeBehindBatchSize";
+	@ConfigurationParameter(mandatory = false, description = "The maximum number of catalog updates committed "
+			+ "per transaction when in write-behind mode.", defaultValue = "1000")
+	private int writeBehindBatchSize;
+
+	public static final String PARAM_WRITE_BEHIND_JOURNAL_FILE = "writeBehindJournalFile";
+	@ConfigurationParameter(mandatory = false, description = "If set, catalog updates are journaled before being "
+			+ "queued when in write-behind mode. Each AE instance writes its own journal, named after this file "
+			+ "with a unique suffix. Uncommitted updates are replayed on restart.")
+	private File writeBehindJournalFile;
+
 	private RunCatalog catalog = null;
+	private WriteBehindCatalogWriter writer = null;
 	private Logger logger;
 
 	@Override
 	public void initialize(UimaContext aContext) throws ResourceInitializationException {
 		logger = aContext.getLogger();
 		super.initialize(aContext);
+		if (catalogServerPort <= 0 && catalogDirectory == null) {
+			throw new ResourceInitializationException(new IllegalArgumentException(
+					"Either a catalog directory or a catalog server port must be specified."));
+		}
 		documentMetaDataHandler = (DocumentMetadataHandler) ConstructorUtil
 				.invokeConstructor(documentMetadataHandlerClassName);
 	}
@@ -71,12 +114,23 @@ public class RunCatalogAE extends JCasAnnotator_ImplBase {
 		 * attempting to open a connection to the catalog.
 		 */
 		if (catalog == null) {
-			catalog = new Neo4jRunCatalog(catalogDirectory);
+			try {
+				if (catalogServerPort > 0) {
+					catalog = new RemoteRunCatalog(catalogServerPort);
+				} else {
+					catalog = RunCatalogUtil.openRunCatalog(catalogType, catalogDirectory);
+				}
+				if (writeBehind) {
+					writer = new WriteBehindCatalogWriter(catalog, writeBehindQueueCapacity, writeBehindBatchSize,
+							writeBehindJournalFile);
+				}
+			} catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
+			}
 		}
 
-		// try (RunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
 		String documentId = documentMetaDataHandler.extractDocumentId(jCas);
-		Document document = catalog.getDocumentById(ExternalIdentifierType.PMC, documentId);
+		List<CatalogUpdate> updates = new ArrayList<CatalogUpdate>();
 
 		/*
 		 * If an error has been reported, then log the error and do nothing
@@ -89,8 +143,13 @@ public class RunCatalogAE extends JCasAnnotator_ImplBase {
 					SerializedFileLog sfLog = aoIter.next();
 					logger.log(Level.FINE, "Adding serialized file to catalog. file=" + sfLog.getSerializedFile()
 							+ " fileversion: " + sfLog.getFileVersion());
-					catalog.addFileVersionToDocument(document, new File(sfLog.getSerializedFile()),
-							FileVersion.valueOf(sfLog.getFileVersion()));
+					File serializedFile = new File(sfLog.getSerializedFile());
+					/*
+					 * the size is cataloged so that readers can schedule
+					 * documents by size without a stat per file
+					 */
+					updates.add(CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC, documentId, serializedFile,
+							FileVersion.valueOf(sfLog.getFileVersion()), RunCatalogUtil.getFileSize(serializedFile)));
 				}
 			}
 
@@ -101,47 +160,117 @@ public class RunCatalogAE extends JCasAnnotator_ImplBase {
 					AnnotationOutput ao = new AnnotationOutput(new File(aoLog.getLocalAnnotationFile()),
 							aoLog.getRunKey(), RunCatalog.DATE_FORMATTER.parseDateTime(aoLog.getRunDate()),
 							aoLog.getAnnotationCount());
-					catalog.addAnnotationOutput(document, ao);
+					updates.add(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, documentId, ao));
 				}
 			}
 		} else {
 			logger.log(Level.WARNING, "logging error to catalog for document: " + documentId);
 			ProcessingErrorLog errorLog = JCasUtil.select(jCas, ProcessingErrorLog.class).iterator().next();
-			catalog.logError(pipelineKey, ExternalIdentifierType.PMC, documentId, errorLog.getComponentAtFault(),
-					errorLog.getErrorMessage(), errorLog.getStackTrace());
+			updates.add(CatalogUpdate.logError(pipelineKey, ExternalIdentifierType.PMC, documentId,
+					errorLog.getComponentAtFault(), errorLog.getErrorMessage(), errorLog.getStackTrace()));
+		}
+
+		if (updates.isEmpty()) {
+			return;
+		}
+		/* the time spent blocked on the catalog, or on the write-behind queue */
+		long start = System.nanoTime();
+		if (writer != null) {
+			try {
+				for (CatalogUpdate update : updates) {
+					writer.submit(update);
+				}
+			} catch (IOException | IllegalStateException e) {
+				throw new AnalysisEngineProcessException(e);
+			}
+		} else {
+			catalog.applyUpdates(updates);
+		}
+		PipelineMetrics.INSTANCE.recordLatency(PipelineMetrics.CATALOG, System.nanoTime() - start);
+	}
+
+	/**
+	 * Commits any queued updates and closes the catalog
+	 */
+	private void closeCatalog() {
+		try {
+			if (writer != null) {
+				writer.close();
+			}
+		} finally {
+			writer = null;
+			if (catalog != null) {
+				catalog.close();
+				catalog = null;
+			}
 		}
 	}
 
 	@Override
 	public void collectionProcessComplete() throws AnalysisEngineProcessException {
-		if (catalog != null) {
-			catalog.close();
+		try {
+			closeCatalog();
+		} catch (IllegalStateException e) {
+			throw new AnalysisEngineProcessException(e);
 		}
 		super.collectionProcessComplete();
 	}
 
 	@Override
 	public void destroy() {
-		if (catalog != null) {
-			catalog.close();
-		}
+		closeCatalog();
 		super.destroy();
 	}
 
 	@Override
 	public void reconfigure() throws ResourceConfigurationException, ResourceInitializationException {
-		if (catalog != null) {
-			catalog.close();
-		}
+		closeCatalog();
 		super.reconfigure();
 	}
 
+	/**
+	 * @param tsd
+	 * @param catalogDirectory
+	 *            may be null if a catalog server port is set on the returned
+	 *            description
+	 * @param documentMetadataHandlerClass
+	 * @param pipelineKey
+	 * @return a description of a RunCatalogAE
+	 * @throws ResourceInitializationException
+	 */
 	public static AnalysisEngineDescription getDescription(TypeSystemDescription tsd, File catalogDirectory,
 			Class<? extends DocumentMetadataHandler> documentMetadataHandlerClass, String pipelineKey)
 			throws ResourceInitializationException {
-		return AnalysisEngineFactory.createEngineDescription(RunCatalogAE.class, tsd, PARAM_CATALOG_DIRECTORY,
-				catalogDirectory.getAbsolutePath(), PARAM_DOCUMENT_METADATA_HANDLER_CLASS, documentMetadataHandlerClass,
-				PARAM_PIPELINE_KEY, pipelineKey);
+		AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(RunCatalogAE.class,
+				tsd, PARAM_DOCUMENT_METADATA_HANDLER_CLASS, documentMetadataHandlerClass, PARAM_PIPELINE_KEY,
+				pipelineKey);
+		if (catalogDirectory != null) {
+			description.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(PARAM_CATALOG_DIRECTORY, catalogDirectory.getAbsolutePath());
+		}
+		return description;
+	}
+
+	/**
+	 * @param tsd
+	 * @param params
+	 * @param documentMetadataHandlerClass
+	 * @return a description of a RunCatalogAE that accesses the catalog server
+	 *         if a catalog server port has been specified in the pipeline
+	 *         parameters, otherwise the catalog of the specified type in the
+	 *         catalog directory
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription getDescription(TypeSystemDescription tsd, PipelineParams params,
+			Class<? extends DocumentMetadataHandler> documentMetadataHandlerClass)
+			throws ResourceInitializationException {
+		AnalysisEngineDescription description = getDescription(tsd, params.getCatalogDirectory(),
+				documentMetadataHandlerClass, params.getPipelineKey());
+		description.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.setParameterValue(PARAM_CATALOG_SERVER_PORT, params.getCatalogServerPort());
+		description.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.setParameterValue(PARAM_CATALOG_TYPE, params.getCatalogType().name());
+		return description;
 	}
 
 }
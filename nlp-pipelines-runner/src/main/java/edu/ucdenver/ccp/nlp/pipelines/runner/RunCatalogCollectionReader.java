@@ -1,14 +1,24 @@
 package edu.ucdenver.ccp.nlp.pipelines.runner;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
@@ -19,13 +29,20 @@ import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
-import edu.ucdenver.ccp.common.file.FileUtil;
 import edu.ucdenver.ccp.common.io.StreamUtil;
 import edu.ucdenver.ccp.nlp.core.document.GenericDocument;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCheckpoint;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Shard;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentScheduler.DocumentOrder;
+import edu.ucdenver.ccp.nlp.pipelines.runner.metrics.PipelineMetrics;
 import edu.ucdenver.ccp.nlp.uima.collections.BaseTextCollectionReader;
 
 public abstract class RunCatalogCollectionReader extends BaseTextCollectionReader {
@@ -35,6 +52,12 @@ public abstract class RunCatalogCollectionReader extends BaseTextCollectionReade
 			+ "which documents need to be processed.")
 	protected String pipelineRunKey;
 
+	public static final String PARAM_COMPONENT_RUN_KEYS = "componentRunKeys";
+	@ConfigurationParameter(mandatory = false, description = "If set, documents that are outstanding for any of "
+			+ "these run keys are processed instead of those outstanding for the pipeline run key, e.g. when each "
+			+ "component of the pipeline records its own run key.")
+	protected String[] componentRunKeys;
+
 	public static final String PARAM_DOCUMENT_COLLECTION_NAME = "documentCollectionShortName";
 	@ConfigurationParameter(mandatory = true, description = "The name of the document collection to process.")
 	protected String documentCollectionShortName;
@@ -43,8 +66,61 @@ public abstract class RunCatalogCollectionReader extends BaseTextCollectionReade
 	@ConfigurationParameter(mandatory = true, description = "The version of the document to use, e.g. SOURCE, LOCAL_TEXT.")
 	protected FileVersion documentFileVersion;
 
+	public static final String PARAM_PREFETCH_THREAD_COUNT = "prefetchThreadCount";
+	@ConfigurationParameter(mandatory = false, description = "If > 0, documents are read and decompressed ahead "
+			+ "of time by this many I/O threads. Otherwise each document is read when it is requested.", defaultValue = "0")
+	protected int prefetchThreadCount;
+
+	public static final String PARAM_PREFETCH_QUEUE_SIZE = "prefetchQueueSize";
+	@ConfigurationParameter(mandatory = false, description = "The maximum number of documents read ahead of time "
+			+ "when prefetching is enabled.", defaultValue = "64")
+	protected int prefetchQueueSize;
+
+	public static final String PARAM_SHARD_ID = "shardId";
+	@ConfigurationParameter(mandatory = false, description = "The 0-based id of the shard of outstanding documents "
+			+ "processed by this reader. Used with the shard count to split a run across multiple processes.", defaultValue = "0")
+	protected int shardId;
+
+	public static final String PARAM_SHARD_COUNT = "shardCount";
+	@ConfigurationParameter(mandatory = false, description = "The number of disjoint shards the outstanding documents "
+			+ "are divided into. Each document is assigned to a shard by a hash of its PMCID.", defaultValue = "1")
+	protected int shardCount;
+
+	public static final String PARAM_DOCUMENT_ORDER = "documentOrder";
+	@ConfigurationParameter(mandatory = false, description = "The order in which documents are processed: CATALOG, "
+			+ "LARGEST_FIRST or INTERLEAVED. Ordering by size uses the file sizes recorded in the catalog.", defaultValue = "CATALOG")
+	protected DocumentOrder documentOrder;
+
+	public static final String PARAM_CHECKPOINT_FILE = "checkpointFile";
+	@ConfigurationParameter(mandatory = false, description = "If set, documents recorded as complete in this run "
+			+ "checkpoint file are not processed, e.g. when resuming a run that did not finish.")
+	protected File checkpointFile;
+
+	public static final String PARAM_STORAGE_TYPE = "storageType";
+	@ConfigurationParameter(mandatory = false, description = "How the document library is stored: FILE_SYSTEM or "
+			+ "SHARD_ARCHIVE.", defaultValue = "FILE_SYSTEM")
+	protected StorageType storageType;
+
+	/**
+	 * The number of documents to retrieve from the catalog at a time
+	 */
+	private static final int CATALOG_PAGE_SIZE = 10000;
+
 	private Iterator<File> fileToProcessIter = null;
+	private DocumentPrefetcher prefetcher = null;
+	private DocumentStorage storage;
+
+	/*
+	 * the catalog and cursor are held open only while streaming documents from
+	 * a catalog that is shared with the RunCatalogAE
+	 */
+	private RunCatalog catalog = null;
+	private DocumentCursor docCursor = null;
+	private File spoolFile = null;
+	private DataInputStream spoolStream = null;
 
+	private Set<String> checkpointedDocumentIds = Collections.emptySet();
+	private int checkpointedCount = 0;
 	private int fileToProcessCount = -1;
 	private int filesProcessed = 0;
 	private long startTime = -1;
@@ -53,46 +129,390 @@ public abstract class RunCatalogCollectionReader extends BaseTextCollectionReade
 	@Override
 	protected void initializeImplementation(UimaContext context) throws ResourceInitializationException {
 		logger = context.getLogger();
-		try (RunCatalog catalog = initRunCatalog(context)) {
-			Set<String> runkeys = new HashSet<String>(
-					catalog.getDocumentCollectionRunKeys(documentCollectionShortName));
-			if (!runkeys.contains(pipelineRunKey)) {
-				catalog.addRunKeyToDocumentCollection(documentCollectionShortName, pipelineRunKey);
-			}
-			Map<RunStatus, Set<Document>> runMap = catalog.getRunsMap(documentCollectionShortName).get(pipelineRunKey);
-			if (runMap.containsKey(RunStatus.OUTSTANDING)) {
-				Set<Document> docsToProcess = runMap.get(RunStatus.OUTSTANDING);
-				List<File> filesToProcess = new ArrayList<File>();
-				for (Document d : docsToProcess) {
-					switch (documentFileVersion) {
-					case SOURCE:
-						filesToProcess.add(d.getLocalSourceFile());
-						break;
-					case LOCAL_TEXT:
-						/*
-						 * TODO: revert this change when the RunCatalog is
-						 * complete. The following line is commented out until
-						 * the RunCatalog is revised to be more efficient.
-						 * Currently the run catalog stores only the source
-						 * file, so we manually generate a reference to the
-						 * plain text file, check that it exists, then add it to
-						 * the filesToProcess list.
-						 */
-						// filesToProcess.add(d.getLocalTextFile());
-						File localTextFile = new File(d.getLocalSourceFile().getAbsolutePath() + ".txt.gz");
-						if (localTextFile.exists()) {
-							filesToProcess.add(localTextFile);
-						}
-						break;
-					default:
-						throw new IllegalArgumentException(
-								"Unhandled document-file-version: " + documentFileVersion.name());
+		storage = storageType.getStorage();
+		Shard shard = new Shard(shardId, shardCount);
+		RunCatalog runCatalog = initRunCatalog(context);
+		List<String> runKeys = getRunKeys();
+		try {
+			/* registering a run-key is idempotent */
+			for (String runKey : runKeys) {
+				runCatalog.addRunKeyToDocumentCollection(documentCollectionShortName, runKey);
+			}
+			Map<String, Map<RunStatus, Integer>> statusCounts = null;
+			if (!shard.isAll()) {
+				statusCounts = new HashMap<String, Map<RunStatus, Integer>>();
+				for (String runKey : runKeys) {
+					Map<RunStatus, Integer> shardStatusCounts = runCatalog
+							.getShardRunStatusCounts(documentCollectionShortName, runKey, shardCount).get(shardId);
+					statusCounts.put(runKey, shardStatusCounts);
+					logger.log(Level.INFO, "Processing " + shard + " for run key " + runKey + ": "
+							+ RunCatalogUtil.toSummary(shardStatusCounts));
+				}
+			}
+			if (checkpointFile != null) {
+				try {
+					checkpointedDocumentIds = RunCheckpoint.load(checkpointFile);
+				} catch (IOException e) {
+					throw new ResourceInitializationException(e);
+				}
+			}
+			DocumentCursor cursor = (runKeys.size() == 1)
+					? runCatalog.getDocuments(documentCollectionShortName, runKeys.get(0), RunStatus.OUTSTANDING, shard,
+							CATALOG_PAGE_SIZE)
+					: runCatalog.getDocumentsOutstandingForAny(documentCollectionShortName, runKeys, shard,
+							CATALOG_PAGE_SIZE);
+			if (documentOrder != DocumentOrder.CATALOG) {
+				/* ordering by size requires every outstanding document */
+				try (DocumentCursor c = cursor) {
+					materializeFilesToProcess(c);
+				}
+			} else if (isCatalogShared()) {
+				/*
+				 * The cursor is consumed as documents are requested, so the
+				 * catalog is held open until this reader is closed. The count
+				 * of outstanding documents is an upper bound as it includes
+				 * checkpointed documents, documents with no text file and,
+				 * for several run keys, documents counted for more than one.
+				 */
+				if (statusCounts == null) {
+					statusCounts = runCatalog.getRunStatusCounts(documentCollectionShortName);
+				}
+				catalog = runCatalog;
+				docCursor = cursor;
+				fileToProcessCount = 0;
+				for (String runKey : runKeys) {
+					fileToProcessCount += statusCounts.get(runKey).getOrDefault(RunStatus.OUTSTANDING, 0);
+				}
+				fileToProcessIter = new CursorFileIterator(cursor);
+			} else {
+				/*
+				 * The catalog must be closed before processing begins so that
+				 * the RunCatalogAE can open it. The files to process are
+				 * spooled to a temporary file rather than held in memory.
+				 */
+				try (DocumentCursor c = cursor) {
+					spoolFilesToProcess(c);
+				} catch (IOException e) {
+					throw new ResourceInitializationException(e);
+				}
+			}
+		} finally {
+			if (catalog == null) {
+				runCatalog.close();
+			}
+		}
+		if (checkpointedCount > 0) {
+			logCheckpointedCount();
+		}
+	}
+
+	/**
+	 * @return the run keys whose outstanding documents are processed
+	 */
+	private List<String> getRunKeys() {
+		if (componentRunKeys == null || componentRunKeys.length == 0) {
+			return Collections.singletonList(pipelineRunKey);
+		}
+		return Arrays.asList(componentRunKeys);
+	}
+
+	/**
+	 * @return true if the catalog returned by {@link #initRunCatalog(UimaContext)}
+	 *         can be used by the RunCatalogAE while it is held open by this
+	 *         reader, in which case outstanding documents are streamed from the
+	 *         catalog as they are requested when in CATALOG order
+	 */
+	protected boolean isCatalogShared() {
+		return false;
+	}
+
+	/**
+	 * Retains a file reference per outstanding document so that the documents
+	 * can be ordered by size
+	 */
+	private void materializeFilesToProcess(DocumentCursor cursor) {
+		List<File> filesToProcess = new ArrayList<File>();
+		BitSet unverifiedFiles = new BitSet();
+		long[] fileSizes = new long[CATALOG_PAGE_SIZE];
+		while (cursor.hasNext()) {
+			Document d = cursor.next();
+			File file = toFileToProcess(d);
+			if (file != null) {
+				if (getFileToProcess(d) == null) {
+					unverifiedFiles.set(filesToProcess.size());
+				}
+				if (filesToProcess.size() == fileSizes.length) {
+					fileSizes = Arrays.copyOf(fileSizes, fileSizes.length * 2);
+				}
+				fileSizes[filesToProcess.size()] = RunCatalogUtil.getFileSizeEstimate(d, documentFileVersion);
+				filesToProcess.add(file);
+			}
+		}
+		if (!filesToProcess.isEmpty()) {
+			unverifiedFiles = orderBySize(filesToProcess, unverifiedFiles,
+					Arrays.copyOf(fileSizes, filesToProcess.size()));
+			fileToProcessCount = filesToProcess.size();
+			fileToProcessIter = new ListFileIterator(filesToProcess, unverifiedFiles);
+			logUnverifiedCount(unverifiedFiles.cardinality());
+		}
+	}
+
+	/**
+	 * Writes the file to process for each outstanding document to a temporary
+	 * file from which they are read as they are requested
+	 */
+	private void spoolFilesToProcess(DocumentCursor cursor) throws IOException {
+		spoolFile = File.createTempFile("outstanding-" + pipelineRunKey + "-", ".spool");
+		spoolFile.deleteOnExit();
+		int fileCount = 0;
+		int unverifiedCount = 0;
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(spoolFile)))) {
+			while (cursor.hasNext()) {
+				Document d = cursor.next();
+				File file = toFileToProcess(d);
+				if (file != null) {
+					boolean unverified = (getFileToProcess(d) == null);
+					out.writeBoolean(unverified);
+					out.writeUTF(file.getPath());
+					fileCount++;
+					if (unverified) {
+						unverifiedCount++;
 					}
 				}
-				fileToProcessCount = filesToProcess.size();
-				fileToProcessIter = filesToProcess.iterator();
 			}
 		}
+		if (fileCount > 0) {
+			fileToProcessCount = fileCount;
+			spoolStream = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+			fileToProcessIter = new SpooledFileIterator(spoolStream, fileCount);
+			logUnverifiedCount(unverifiedCount);
+		}
+	}
+
+	private void logUnverifiedCount(int unverifiedCount) {
+		if (unverifiedCount > 0) {
+			logger.log(Level.INFO, unverifiedCount + " of " + fileToProcessCount
+					+ " documents have no cataloged text file and will be checked for a text file when reached.");
+		}
+	}
+
+	private void logCheckpointedCount() {
+		logger.log(Level.INFO, "Resuming from checkpoint: " + checkpointedCount
+				+ " outstanding documents were completed by a previous run and will not be processed.");
+	}
+
+	/**
+	 * @param d
+	 * @return the file to process for the specified document, or null if it
+	 *         has no such file or it has been completed according to the
+	 *         checkpoint
+	 */
+	private File toFileToProcess(Document d) {
+		File file = getFileToProcess(d);
+		if (file == null && documentFileVersion == FileVersion.LOCAL_TEXT) {
+			/*
+			 * The text file of documents converted before text files were
+			 * cataloged is not recorded; its path is derived from the source
+			 * file and its existence is checked when it is reached rather than
+			 * up front.
+			 */
+			file = new File(d.getLocalSourceFile().getAbsolutePath() + ".txt.gz");
+		}
+		if (file != null && checkpointedDocumentIds.contains(file.getName())) {
+			/* the document id assigned by loadDocument() is the file name */
+			checkpointedCount++;
+			return null;
+		}
+		return file;
+	}
+
+	/**
+	 * @param d
+	 * @return the file for the specified document that corresponds to the
+	 *         configured document-file-version, or null if that file has not
+	 *         been cataloged
+	 */
+	private File getFileToProcess(Document d) {
+		switch (documentFileVersion) {
+		case SOURCE:
+			return d.getLocalSourceFile();
+		case LOCAL_TEXT:
+			return d.getLocalTextFile();
+		default:
+			throw new IllegalArgumentException("Unhandled document-file-version: " + documentFileVersion.name());
+		}
+	}
+
+	/**
+	 * Reorders the files to process (in place) according to the configured
+	 * document order
+	 * 
+	 * @return the unverified-file bits for the reordered files
+	 */
+	private BitSet orderBySize(List<File> filesToProcess, BitSet unverifiedFiles, long[] fileSizes) {
+		int[] processingOrder = DocumentScheduler.getProcessingOrder(fileSizes, documentOrder);
+		List<File> catalogOrder = new ArrayList<File>(filesToProcess);
+		BitSet reorderedUnverifiedFiles = new BitSet();
+		int unknownSizeCount = 0;
+		for (int i = 0; i < processingOrder.length; i++) {
+			filesToProcess.set(i, catalogOrder.get(processingOrder[i]));
+			if (unverifiedFiles.get(processingOrder[i])) {
+				reorderedUnverifiedFiles.set(i);
+			}
+			if (fileSizes[i] < 0) {
+				unknownSizeCount++;
+			}
+		}
+		logger.log(Level.INFO, "Ordered " + processingOrder.length + " documents " + documentOrder.name() + "."
+				+ ((unknownSizeCount > 0) ? " " + unknownSizeCount + " documents have no cataloged file size "
+						+ "and are processed last." : ""));
+		return reorderedUnverifiedFiles;
+	}
+
+	/**
+	 * Iterates over the files to process, skipping unverified files that do
+	 * not exist
+	 */
+	private abstract class FileToProcessIterator implements Iterator<File> {
+
+		private File nextFile = null;
+		private boolean exhausted = false;
+
+		/**
+		 * @return the next candidate file, or null if there are none
+		 */
+		protected abstract File nextCandidate() throws IOException;
+
+		/**
+		 * @return true if the existence of the last candidate file has not been
+		 *         verified
+		 */
+		protected abstract boolean isCandidateUnverified();
+
+		@Override
+		public boolean hasNext() {
+			while (nextFile == null && !exhausted) {
+				File file;
+				try {
+					file = nextCandidate();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if (file == null) {
+					exhausted = true;
+				} else if (!isCandidateUnverified() || storage.exists(file)) {
+					nextFile = file;
+				} else {
+					logger.log(Level.FINE, "Skipping document with no text file: " + file.getAbsolutePath());
+				}
+			}
+			return nextFile != null;
+		}
+
+		@Override
+		public File next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			File file = nextFile;
+			nextFile = null;
+			return file;
+		}
+	}
+
+	/**
+	 * Iterates over files held in memory
+	 */
+	private class ListFileIterator extends FileToProcessIterator {
+
+		private final List<File> files;
+		private final BitSet unverifiedFiles;
+		private int index = 0;
+
+		public ListFileIterator(List<File> files, BitSet unverifiedFiles) {
+			this.files = files;
+			this.unverifiedFiles = unverifiedFiles;
+		}
+
+		@Override
+		protected File nextCandidate() {
+			if (index == files.size()) {
+				return null;
+			}
+			File file = files.get(index);
+			/* release the reference as the list is not needed once iterated */
+			files.set(index++, null);
+			return file;
+		}
+
+		@Override
+		protected boolean isCandidateUnverified() {
+			return unverifiedFiles.get(index - 1);
+		}
+	}
+
+	/**
+	 * Iterates over the files written by
+	 * {@link RunCatalogCollectionReader#spoolFilesToProcess(DocumentCursor)}
+	 */
+	private class SpooledFileIterator extends FileToProcessIterator {
+
+		private final DataInputStream in;
+		private int remaining;
+		private boolean unverified;
+
+		public SpooledFileIterator(DataInputStream in, int fileCount) {
+			this.in = in;
+			this.remaining = fileCount;
+		}
+
+		@Override
+		protected File nextCandidate() throws IOException {
+			if (remaining == 0) {
+				return null;
+			}
+			remaining--;
+			unverified = in.readBoolean();
+			return new File(in.readUTF());
+		}
+
+		@Override
+		protected boolean isCandidateUnverified() {
+			return unverified;
+		}
+	}
+
+	/**
+	 * Iterates over the files of the outstanding documents as they are
+	 * retrieved from the catalog
+	 */
+	private class CursorFileIterator extends FileToProcessIterator {
+
+		private final DocumentCursor cursor;
+		private boolean unverified;
+
+		public CursorFileIterator(DocumentCursor cursor) {
+			this.cursor = cursor;
+		}
+
+		@Override
+		protected File nextCandidate() {
+			while (cursor.hasNext()) {
+				Document d = cursor.next();
+				File file = toFileToProcess(d);
+				if (file != null) {
+					unverified = (getFileToProcess(d) == null);
+					return file;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		protected boolean isCandidateUnverified() {
+			return unverified;
+		}
 	}
 
 	protected abstract RunCatalog initRunCatalog(UimaContext context);
@@ -114,8 +534,15 @@ public abstract class RunCatalogCollectionReader extends BaseTextCollectionReade
 
 	@Override
 	protected boolean hasNextDocument() throws IOException, CollectionException {
+		if (prefetcher != null) {
+			return prefetcher.hasNext();
+		}
 		if (fileToProcessIter != null) {
-			return fileToProcessIter.hasNext();
+			try {
+				return fileToProcessIter.hasNext();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
 		}
 		logger.log(Level.INFO, "There are no more documents to process for run key: " + pipelineRunKey);
 		return false;
@@ -123,28 +550,90 @@ public abstract class RunCatalogCollectionReader extends BaseTextCollectionReade
 
 	@Override
 	protected GenericDocument getNextDocument() throws CollectionException, IOException {
+		long start = System.nanoTime();
+		try {
+			return nextDocument();
+		} finally {
+			PipelineMetrics.INSTANCE.recordLatency(PipelineMetrics.READER, System.nanoTime() - start);
+		}
+	}
+
+	private GenericDocument nextDocument() throws IOException {
 		if (startTime < 0) {
 			startTime = System.currentTimeMillis();
 		}
+		if (prefetchThreadCount > 0 && prefetcher == null) {
+			/* created here, rather than during initialization, so that skipped files are not read */
+			prefetcher = new DocumentPrefetcher(fileToProcessIter, this::loadDocument, prefetchThreadCount,
+					prefetchQueueSize);
+		}
 		if (filesProcessed++ % 1000 == 0) {
 			logger.log(Level.INFO,
 					"Processing progress: " + (filesProcessed - 1) + " out of " + fileToProcessCount + " ("
 							+ (100 * ((float) (filesProcessed - 1)) / ((float) fileToProcessCount)) + "% in "
-							+ (System.currentTimeMillis() - startTime) / 1000 + "s)");
+							+ (System.currentTimeMillis() - startTime) / 1000 + "s)"
+							+ ((prefetcher == null) ? "" : " " + prefetcher.getMetricsSummary()));
+		}
+		if (prefetcher != null) {
+			try {
+				return prefetcher.next();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
 		}
-		File file = fileToProcessIter.next();
+		return loadDocument(fileToProcessIter.next());
+	}
+
+	/**
+	 * Reads the file into a document; called concurrently when prefetching
+	 * 
+	 * @param file
+	 * @return a document containing the text of the specified file
+	 * @throws IOException
+	 */
+	private GenericDocument loadDocument(File file) throws IOException {
 		String documentId = file.getName();
 		String text = null;
 		if (file.getName().endsWith(".gz")) {
-			try (InputStreamReader isr = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)))) {
+			try (InputStreamReader isr = new InputStreamReader(new GZIPInputStream(storage.openInputStream(file)))) {
 				text = StreamUtil.toString(isr);
 			}
 		} else {
-			text = FileUtil.copyToString(file, this.encoding);
+			try (InputStreamReader isr = new InputStreamReader(storage.openInputStream(file),
+					this.encoding.getCharacterSetName())) {
+				text = StreamUtil.toString(isr);
+			}
 		}
 		GenericDocument gd = new GenericDocument(documentId);
 		gd.setDocumentText(text);
 		gd.setSourceFile(file);
 		return gd;
 	}
+
+	@Override
+	public void close() throws IOException {
+		if (prefetcher != null) {
+			logger.log(Level.INFO, "Document prefetch summary: " + prefetcher.getMetricsSummary());
+			prefetcher.close();
+			prefetcher = null;
+		}
+		if (catalog != null) {
+			if (checkpointedCount > 0) {
+				logCheckpointedCount();
+			}
+			docCursor.close();
+			catalog.close();
+			docCursor = null;
+			catalog = null;
+		}
+		if (spoolFile != null) {
+			if (spoolStream != null) {
+				spoolStream.close();
+				spoolStream = null;
+			}
+			spoolFile.delete();
+			spoolFile = null;
+		}
+		super.close();
+	}
 }
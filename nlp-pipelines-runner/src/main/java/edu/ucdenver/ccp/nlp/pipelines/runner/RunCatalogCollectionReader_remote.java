@@ -0,0 +1,61 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.io.IOException;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.RemoteRunCatalog;
+import edu.ucdenver.ccp.uima.shims.document.DocumentMetadataHandler;
+
+/**
+ * Reads from a run catalog served by a
+ * {@link edu.ucdenver.ccp.nlp.pipelines.runlog.server.RunCatalogServer} on the
+ * local machine, allowing multiple pipelines to share a single catalog
+ */
+public class RunCatalogCollectionReader_remote extends RunCatalogCollectionReader {
+
+	public static final String PARAM_CATALOG_SERVER_PORT = "catalogServerPort";
+	@ConfigurationParameter(mandatory = true, description = "The port of the run catalog server running on the local machine.")
+	protected int catalogServerPort;
+
+	@Override
+	protected RunCatalog initRunCatalog(UimaContext context) {
+		try {
+			return new RemoteRunCatalog(catalogServerPort);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to connect to run catalog server on port: " + catalogServerPort,
+					e);
+		}
+	}
+
+	/**
+	 * The server serves the RunCatalogAE while this reader holds its
+	 * connection open
+	 */
+	@Override
+	protected boolean isCatalogShared() {
+		return true;
+	}
+
+	public static CollectionReaderDescription createDescription(TypeSystemDescription tsd, int catalogServerPort,
+			CharacterEncoding encoding, String pipelineRunKey, String documentCollectionName,
+			FileVersion docFileVersion, String language, boolean disableProgress, int num2process, int num2skip,
+			Class<? extends DocumentMetadataHandler> documentMetadataHandlerClass, String viewName)
+			throws ResourceInitializationException {
+		return CollectionReaderFactory.createReaderDescription(RunCatalogCollectionReader_remote.class, tsd,
+				PARAM_CATALOG_SERVER_PORT, catalogServerPort, PARAM_ENCODING, encoding.name(), PARAM_PIPELINE_RUN_KEY,
+				pipelineRunKey, PARAM_DOCUMENT_COLLECTION_NAME, documentCollectionName, PARAM_DOCUMENT_FILE_VERSION,
+				docFileVersion.name(), PARAM_DISABLE_PROGRESS, disableProgress, PARAM_LANGUAGE, language,
+				PARAM_NUM2PROCESS, num2process, PARAM_NUM2SKIP, num2skip, PARAM_VIEWNAME, viewName,
+				PARAM_DOCUMENT_METADATA_HANDLER_CLASS, documentMetadataHandlerClass.getName());
+	}
+
+}
@@ -0,0 +1,104 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import java.util.Iterator;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+
+/**
+ * Initializes a view with the document text and language of a source view,
+ * optionally copying the spans of annotations of one type in the source view
+ * as annotations of another type in the target view. This allows components
+ * that annotate, or serialize, everything in their view to run on the same
+ * CAS without seeing each other's annotations, e.g. several ConceptMapper
+ * dictionaries sharing the sentences detected once in the source view.
+ */
+public class ViewInitializerAE extends JCasAnnotator_ImplBase {
+
+	public static final String PARAM_SOURCE_VIEW_NAME = "sourceViewName";
+	@ConfigurationParameter(mandatory = false, description = "The view whose document text is copied.", defaultValue = CAS.NAME_DEFAULT_SOFA)
+	private String sourceViewName;
+
+	public static final String PARAM_TARGET_VIEW_NAME = "targetViewName";
+	@ConfigurationParameter(mandatory = true, description = "The view to initialize. It is created if it does not exist.")
+	private String targetViewName;
+
+	public static final String PARAM_SPAN_TYPE_NAME = "spanTypeName";
+	@ConfigurationParameter(mandatory = false, description = "If set, the spans of annotations of this type, "
+			+ "including its subtypes, in the source view are copied to the target view.")
+	private String spanTypeName;
+
+	public static final String PARAM_TARGET_SPAN_TYPE_NAME = "targetSpanTypeName";
+	@ConfigurationParameter(mandatory = false, description = "The type of the annotations created in the target view "
+			+ "for the copied spans. Defaults to the span type.")
+	private String targetSpanTypeName;
+
+	@Override
+	public void process(JCas jCas) throws AnalysisEngineProcessException {
+		try {
+			JCas sourceView = jCas.getView(sourceViewName);
+			JCas targetView;
+			try {
+				targetView = jCas.getView(targetViewName);
+			} catch (CASRuntimeException e) {
+				targetView = jCas.createView(targetViewName);
+			}
+			targetView.setDocumentText(sourceView.getDocumentText());
+			targetView.setDocumentLanguage(sourceView.getDocumentLanguage());
+
+			if (spanTypeName != null) {
+				Type spanType = getType(sourceView.getCas(), spanTypeName);
+				Type targetSpanType = getType(targetView.getCas(),
+						(targetSpanTypeName == null) ? spanTypeName : targetSpanTypeName);
+				CAS targetCas = targetView.getCas();
+				for (Iterator<AnnotationFS> annotIter = sourceView.getCas().getAnnotationIndex(spanType)
+						.iterator(); annotIter.hasNext();) {
+					AnnotationFS annot = annotIter.next();
+					targetCas.addFsToIndexes(
+							targetCas.createAnnotation(targetSpanType, annot.getBegin(), annot.getEnd()));
+				}
+			}
+		} catch (CASException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	private static Type getType(CAS cas, String typeName) throws AnalysisEngineProcessException {
+		Type type = cas.getTypeSystem().getType(typeName);
+		if (type == null) {
+			throw new AnalysisEngineProcessException(new IllegalArgumentException("Unknown type: " + typeName));
+		}
+		return type;
+	}
+
+	/**
+	 * @param tsd
+	 * @param sourceViewName
+	 * @param targetViewName
+	 * @param spanTypeName
+	 *            may be null, in which case only the document text is copied
+	 * @param targetSpanTypeName
+	 *            may be null, in which case the span type is used
+	 * @return a description of a ViewInitializerAE
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription getDescription(TypeSystemDescription tsd, String sourceViewName,
+			String targetViewName, String spanTypeName, String targetSpanTypeName)
+			throws ResourceInitializationException {
+		return AnalysisEngineFactory.createEngineDescription(ViewInitializerAE.class, tsd, PARAM_SOURCE_VIEW_NAME,
+				sourceViewName, PARAM_TARGET_VIEW_NAME, targetViewName, PARAM_SPAN_TYPE_NAME, spanTypeName,
+				PARAM_TARGET_SPAN_TYPE_NAME, targetSpanTypeName);
+	}
+
+}
@@ -0,0 +1,63 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperParams;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperParams.ConceptMapperOptimization;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.postprocess.PostProcessingComponentFactory.PostProcessingComponentType;
+import lombok.Data;
+
+/**
+ * A ConceptMapper dictionary to run in a pipeline along with its
+ * configuration
+ */
+@Data
+public class ConceptMapperDictionary {
+
+	private final ConceptMapperParams conceptMapperParams;
+	private final ConceptMapperOptimization optimization;
+	private final File dictionaryFile;
+	/**
+	 * may be null if the ConceptMapper output is not post-processed
+	 */
+	private final PostProcessingComponentType postProcessingComponentType;
+
+	/**
+	 * @return the infix of the annotation files, and the run key, of the
+	 *         output of this dictionary. It is also used as the name of the
+	 *         CAS view in which the dictionary is run when several
+	 *         dictionaries share a CAS.
+	 */
+	public String getOutputFileInfix() {
+		return PmcConceptMapperPipeline.createOutputFileInfix(conceptMapperParams, optimization,
+				postProcessingComponentType);
+	}
+
+	/**
+	 * @param dictionarySpecs
+	 *            comma-delimited list of [ConceptMapperParams]:[
+	 *            ConceptMapperOptimization], e.g. CHEBI:F_SCORE,PR:PRECISION
+	 * @param dictionaryDirectory
+	 * @param ppType
+	 *            may be null
+	 * @return the dictionaries specified
+	 */
+	public static List<ConceptMapperDictionary> parse(String dictionarySpecs, File dictionaryDirectory,
+			PostProcessingComponentType ppType) {
+		List<ConceptMapperDictionary> dictionaries = new ArrayList<ConceptMapperDictionary>();
+		for (String spec : dictionarySpecs.split(",")) {
+			String[] toks = spec.trim().split(":");
+			if (toks.length != 2) {
+				throw new IllegalArgumentException("Invalid dictionary specification: " + spec
+						+ ". Expected [ConceptMapperParams]:[ConceptMapperOptimization]");
+			}
+			ConceptMapperParams cmParams = ConceptMapperParams.valueOf(toks[0]);
+			dictionaries.add(new ConceptMapperDictionary(cmParams, ConceptMapperOptimization.valueOf(toks[1]),
+					UpdateConceptMapperDictionaryFiles.getDictionaryFile(dictionaryDirectory, cmParams), ppType));
+		}
+		return dictionaries;
+	}
+
+}
@@ -0,0 +1,52 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.impl;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperParams;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperParams.ConceptMapperOptimization;
+import edu.ucdenver.ccp.nlp.pipelines.runner.CasSerializationBenchmark;
+
+/**
+ * Runs the {@link CasSerializationBenchmark} over PMC documents using the
+ * components of the {@link PmcConceptMapperPipeline}, i.e. measures the
+ * per-document cost of the sentence detector -> ConceptMapper -> annotation
+ * serializer hops in each CAS serialization format. The documents are not
+ * marked as processed in the catalog and no annotation files are written.
+ */
+public class Main_PmcCasSerializationBenchmark {
+
+	/**
+	 * @param args
+	 *            args[0] = catalog directory <br>
+	 *            args[1] = config directory <br>
+	 *            args[2] = number of documents <br>
+	 *            args[3] = concept mapper param <br>
+	 *            args[4] = concept mapper optimization <br>
+	 *            args[5] = dictionary directory
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+		File catalogDirectory = new File(args[0]);
+		File configDirectory = new File(args[1]);
+		int documentCount = Integer.parseInt(args[2]);
+		ConceptMapperParams conceptMapperParams = ConceptMapperParams.valueOf(args[3]);
+		ConceptMapperOptimization cmOpt = ConceptMapperOptimization.valueOf(args[4]);
+		File dictionaryDirectory = new File(args[5]);
+		try {
+			PmcConceptMapperPipeline pipeline = new PmcConceptMapperPipeline(catalogDirectory, configDirectory,
+					documentCount, null, conceptMapperParams, cmOpt,
+					UpdateConceptMapperDictionaryFiles.getDictionaryFile(dictionaryDirectory, conceptMapperParams), 1,
+					null);
+			CasSerializationBenchmark.print(CasSerializationBenchmark.benchmark(pipeline, documentCount));
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+}
@@ -23,10 +23,10 @@ import edu.ucdenver.ccp.nlp.pipelines.runner.RunCatalogAE;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationDeserializerAE;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeAnnotator;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE.SentenceType;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.pmcoa.PmcOaDocumentRdfGenerator;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.pmcoa.PmcOaDocumentSectionUriFactory;
-import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.CcpSentenceCasInserter;
-import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.OpenNlpSentenceDetectorAE;
 import edu.ucdenver.ccp.nlp.uima.serialization.rdf.AnnotationRdfGenerator;
 import edu.ucdenver.ccp.nlp.uima.serialization.rdf.DocumentRdfGenerator;
 import edu.ucdenver.ccp.nlp.uima.serialization.rdf.RdfSerialization_AE;
@@ -88,10 +88,13 @@ public class PmcAnnotationRdfPipeline extends PipelineBase {
 
 		int casPoolSize = getPipelineParams().getCasPoolSize();
 		{
-			/* configure the sentence detector AE */
-			boolean treatLineBreaksAsSentenceBoundaries = true;
-			AnalysisEngineDescription sentenceDetecterDesc = OpenNlpSentenceDetectorAE.createAnalysisEngineDescription(
-					getPipelineTypeSystem(), CcpSentenceCasInserter.class, treatLineBreaksAsSentenceBoundaries);
+			/*
+			 * configure the sentence detector AE; sentences are loaded from
+			 * the sentence cache of the document if one exists
+			 */
+			AnalysisEngineDescription sentenceDetecterDesc = SentenceCacheAE.getDescription(getPipelineTypeSystem(),
+					CcpDocumentMetadataHandler.class, null, SentenceType.CCP,
+					PmcNxml2TxtPipeline.DOCTXTSERIALIZER_FILE_SUFFIX, getPipelineParams().getStorageType());
 
 			int sentdetect_scaleup = casPoolSize;
 			int sentdetect_errorThreshold = 0;
@@ -110,6 +113,9 @@ public class PmcAnnotationRdfPipeline extends PipelineBase {
 					.getDescription_LoadFromSourceFileDirectory(getPipelineTypeSystem(),
 							CcpDocumentMetadataHandler.class, View.DEFAULT.viewName(), View.DEFAULT.viewName(),
 							IncludeCoveredText.NO, IncludeAnnotator.YES, annotFileInfixes, null);
+			annotLoaderEngineDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(AnnotationDeserializerAE.PARAM_STORAGE_TYPE,
+							getPipelineParams().getStorageType().name());
 
 			int annotLoader_scaleup = casPoolSize;
 			int annotLoader_errorThreshold = 0;
@@ -155,8 +161,7 @@ public class PmcAnnotationRdfPipeline extends PipelineBase {
 		{
 			/* configure catalog AE */
 			AnalysisEngineDescription catalogAeDesc = RunCatalogAE.getDescription(getPipelineTypeSystem(),
-					getPipelineParams().getCatalogDirectory(), CcpDocumentMetadataHandler.class,
-					getPipelineParams().getPipelineKey());
+					getPipelineParams(), CcpDocumentMetadataHandler.class);
 
 			int catalogAe_scaleup = 1;
 			int catalogAe_errorThreshold = 0;
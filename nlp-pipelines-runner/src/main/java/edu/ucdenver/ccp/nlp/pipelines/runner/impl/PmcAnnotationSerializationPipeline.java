@@ -24,8 +24,8 @@ import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerA
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeAnnotator;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeSlots;
-import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.CcpSentenceCasInserter;
-import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.OpenNlpSentenceDetectorAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE.SentenceType;
 import edu.ucdenver.ccp.nlp.uima.shims.document.impl.CcpDocumentMetadataHandler;
 import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
 import edu.ucdenver.ccp.nlp.uima.util.View;
@@ -79,10 +79,13 @@ public class PmcAnnotationSerializationPipeline extends PipelineBase {
 
 		int casPoolSize = getPipelineParams().getCasPoolSize();
 		{
-			/* configure the sentence detector AE */
-			boolean treatLineBreaksAsSentenceBoundaries = true;
-			AnalysisEngineDescription sentenceDetecterDesc = OpenNlpSentenceDetectorAE.createAnalysisEngineDescription(
-					getPipelineTypeSystem(), CcpSentenceCasInserter.class, treatLineBreaksAsSentenceBoundaries);
+			/*
+			 * configure the sentence detector AE; sentences are loaded from
+			 * the sentence cache of the document if one exists
+			 */
+			AnalysisEngineDescription sentenceDetecterDesc = SentenceCacheAE.getDescription(getPipelineTypeSystem(),
+					CcpDocumentMetadataHandler.class, null, SentenceType.CCP,
+					PmcNxml2TxtPipeline.DOCTXTSERIALIZER_FILE_SUFFIX, getPipelineParams().getStorageType());
 
 			int sentdetect_scaleup = casPoolSize;
 			int sentdetect_errorThreshold = 0;
@@ -101,6 +104,9 @@ public class PmcAnnotationSerializationPipeline extends PipelineBase {
 					.getDescription_LoadFromSourceFileDirectory(getPipelineTypeSystem(),
 							CcpDocumentMetadataHandler.class, View.DEFAULT.viewName(), View.DEFAULT.viewName(),
 							IncludeCoveredText.NO, IncludeAnnotator.YES, annotFileInfixes, null);
+			annotLoaderEngineDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(AnnotationDeserializerAE.PARAM_STORAGE_TYPE,
+							getPipelineParams().getStorageType().name());
 
 			int annotLoader_scaleup = casPoolSize;
 			int annotLoader_errorThreshold = 0;
@@ -123,6 +129,9 @@ public class PmcAnnotationSerializationPipeline extends PipelineBase {
 					.getDescription_SaveToSourceFileDirectory(getPipelineTypeSystem(), CcpDocumentMetadataHandler.class,
 							sourceViewName, outputViewName, compressOutput, outputFileInfix, IncludeCoveredText.NO,
 							IncludeAnnotator.NO, IncludeSlots.NO, ".nxml.gz.txt.gz");
+			annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(AnnotationSerializerAE.PARAM_STORAGE_TYPE,
+							getPipelineParams().getStorageType().name());
 
 			int annotSerializer_scaleup = (casPoolSize > 1) ? casPoolSize / 2 : 1;
 			int annotSerializer_errorThreshold = 0;
@@ -138,8 +147,7 @@ public class PmcAnnotationSerializationPipeline extends PipelineBase {
 		{
 			/* configure catalog AE */
 			AnalysisEngineDescription catalogAeDesc = RunCatalogAE.getDescription(getPipelineTypeSystem(),
-					getPipelineParams().getCatalogDirectory(), CcpDocumentMetadataHandler.class,
-					getPipelineParams().getPipelineKey());
+					getPipelineParams(), CcpDocumentMetadataHandler.class);
 
 			int catalogAe_scaleup = 1;
 			int catalogAe_errorThreshold = 0;
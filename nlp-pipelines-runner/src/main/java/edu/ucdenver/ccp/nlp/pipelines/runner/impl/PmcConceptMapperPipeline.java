@@ -3,12 +3,16 @@ package edu.ucdenver.ccp.nlp.pipelines.runner.impl;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.factory.AggregateBuilder;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
 import org.apache.uima.resource.ResourceInitializationException;
@@ -23,20 +27,29 @@ import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.postprocess.PostProcessingCo
 import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.postprocess.PostProcessingComponentFactory.PostProcessingComponentType;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
 import edu.ucdenver.ccp.nlp.pipelines.runner.DeploymentParams;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineKey;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineParams;
+import edu.ucdenver.ccp.nlp.pipelines.runner.RunCatalogCollectionReader;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ViewInitializerAE;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeSlots;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerAE;
-import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.ExplicitSentenceCasInserter;
-import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.OpenNlpSentenceDetectorAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE.SentenceType;
 import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.Sentence;
 import edu.ucdenver.ccp.nlp.uima.shims.document.impl.CcpDocumentMetadataHandler;
 import edu.ucdenver.ccp.nlp.uima.util.View;
 import edu.ucdenver.ccp.uima.shims.document.DocumentMetadataHandler;
 
+/**
+ * Annotates the PMC documents using ConceptMapper. When several dictionaries
+ * are configured they share a single sentence detection step: each
+ * dictionary runs in its own CAS view, initialized with the detected
+ * sentences, and its annotations are serialized to their own file.
+ */
 public class PmcConceptMapperPipeline extends PipelineBase {
 
 	public static final Class<? extends DocumentMetadataHandler> ANNOTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS = CcpDocumentMetadataHandler.class;
@@ -46,34 +59,85 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 	private static final Logger logger = Logger.getLogger(PmcConceptMapperPipeline.class);
 	private static final String AGGREGATE_DESCRIPTOR_PATH_ON_CLASSPATH = "/pipeline_descriptors/pmc_conceptmapper_aggregate.xml";
 	private static final String PIPELINE_DESCRIPTION = "Annotates the PMC corpus using the UIMA sandbox ConceptMapper tool.";
-	private final ConceptMapperParams conceptMapperParams;
-	private final File dictionaryFile;
-	private final ConceptMapperOptimization cmOpt;
-	private PostProcessingComponentType postProcessingComponentType;
+	private final List<ConceptMapperDictionary> dictionaries;
 
 	public PmcConceptMapperPipeline(File catalogDirectory, File configDir, int numToProcess, String brokerUrl,
 			ConceptMapperParams conceptMapperParams, ConceptMapperOptimization cmOpt, File dictionaryFile,
 			int casPoolSize, PostProcessingComponentType postProcessingComponentType) throws Exception {
+		this(catalogDirectory, configDir, numToProcess, brokerUrl, casPoolSize, Arrays.asList(
+				new ConceptMapperDictionary(conceptMapperParams, cmOpt, dictionaryFile, postProcessingComponentType)));
+	}
+
+	public PmcConceptMapperPipeline(File catalogDirectory, File configDir, int numToProcess, String brokerUrl,
+			int casPoolSize, List<ConceptMapperDictionary> dictionaries) throws Exception {
 		super(new PipelineParams(new PMC_OA_DocumentCollection().getShortname(), FileVersion.LOCAL_TEXT,
-				CharacterEncoding.UTF_8, View.DEFAULT.viewName(),
-				PipelineKey.CONCEPTMAPPER.name() + "_" + conceptMapperParams.name(), PIPELINE_DESCRIPTION,
-				catalogDirectory, numToProcess, 0, brokerUrl, casPoolSize), configDir);
-		this.conceptMapperParams = conceptMapperParams;
-		this.cmOpt = cmOpt;
-		this.dictionaryFile = dictionaryFile;
-		this.postProcessingComponentType = postProcessingComponentType;
+				CharacterEncoding.UTF_8, View.DEFAULT.viewName(), createPipelineKey(dictionaries),
+				PIPELINE_DESCRIPTION, catalogDirectory, numToProcess, 0, brokerUrl, casPoolSize), configDir);
+		this.dictionaries = dictionaries;
+	}
+
+	/**
+	 * @param dictionaries
+	 * @return CONCEPTMAPPER_[params] for a single dictionary, or
+	 *         CONCEPTMAPPER_[params1]_[params2]... for several
+	 */
+	static String createPipelineKey(List<ConceptMapperDictionary> dictionaries) {
+		StringBuilder key = new StringBuilder(PipelineKey.CONCEPTMAPPER.name());
+		for (ConceptMapperDictionary dictionary : dictionaries) {
+			key.append("_" + dictionary.getConceptMapperParams().name());
+		}
+		return key.toString();
 	}
 
 	/**
-	 * @return the path to the aggregate descriptor on the classpath
+	 * @param dictionaries
+	 * @return the run keys recorded by the annotation output of each
+	 *         dictionary, i.e. their output file infixes
+	 */
+	static List<String> getComponentRunKeys(List<ConceptMapperDictionary> dictionaries) {
+		List<String> runKeys = new ArrayList<String>();
+		for (ConceptMapperDictionary dictionary : dictionaries) {
+			runKeys.add(dictionary.getOutputFileInfix());
+		}
+		return runKeys;
+	}
+
+	/**
+	 * With several dictionaries the annotation output of each dictionary is
+	 * recorded under its own run key, so a document is processed if it is
+	 * outstanding for any of the dictionaries rather than for the pipeline key
+	 */
+	@Override
+	protected CollectionReaderDescription getCollectionReaderDescription(PipelineParams params)
+			throws ResourceInitializationException {
+		CollectionReaderDescription crDesc = super.getCollectionReaderDescription(params);
+		if (dictionaries.size() > 1) {
+			List<String> runKeys = getComponentRunKeys(dictionaries);
+			crDesc.getCollectionReaderMetaData().getConfigurationParameterSettings().setParameterValue(
+					RunCatalogCollectionReader.PARAM_COMPONENT_RUN_KEYS, runKeys.toArray(new String[runKeys.size()]));
+		}
+		return crDesc;
+	}
+
+	/**
+	 * @return the path to the aggregate descriptor on the classpath, or null
+	 *         if there are several dictionaries in which case the number of
+	 *         service engines varies and the descriptor is generated
 	 */
 	@Override
 	protected String getAggregateDescriptorPath() {
-		return AGGREGATE_DESCRIPTOR_PATH_ON_CLASSPATH;
+		return (dictionaries.size() == 1) ? AGGREGATE_DESCRIPTOR_PATH_ON_CLASSPATH : null;
 	}
 
 	@Override
 	public TypeSystemDescription getPipelineTypeSystem() {
+		return getConceptMapperTypeSystem();
+	}
+
+	/**
+	 * @return the CCP type system along with the types used by ConceptMapper
+	 */
+	public static TypeSystemDescription getConceptMapperTypeSystem() {
 		return TypeSystemDescriptionFactory.createTypeSystemDescription("edu.ucdenver.ccp.nlp.core.uima.TypeSystem",
 				"edu.ucdenver.ccp.nlp.wrapper.conceptmapper.TypeSystem",
 				"edu.ucdenver.ccp.nlp.uima.annotators.TypeSystem", "analysis_engine.primitive.DictTerm",
@@ -97,10 +161,13 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 
 		int casPoolSize = getPipelineParams().getCasPoolSize();
 		{
-			/* configure the sentence detector AE */
-			boolean treatLineBreaksAsSentenceBoundaries = true;
-			AnalysisEngineDescription sentenceDetecterDesc = OpenNlpSentenceDetectorAE.createAnalysisEngineDescription(
-					getPipelineTypeSystem(), ExplicitSentenceCasInserter.class, treatLineBreaksAsSentenceBoundaries);
+			/*
+			 * configure the sentence detector AE; sentences are loaded from
+			 * the sentence cache of the document if one exists
+			 */
+			AnalysisEngineDescription sentenceDetecterDesc = SentenceCacheAE.getDescription(getPipelineTypeSystem(),
+					CcpDocumentMetadataHandler.class, null, SentenceType.EXPLICIT,
+					PmcNxml2TxtPipeline.DOCTXTSERIALIZER_FILE_SUFFIX, getPipelineParams().getStorageType());
 
 			int sentdetect_scaleup = casPoolSize;
 			int sentdetect_errorThreshold = 0;
@@ -113,30 +180,31 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 					"sentDetectAE", DescriptorType.PRIMITIVE);
 			engines.add(xml2txtEngine);
 		}
-		{
-			/* create the ConceptMapper AE */
-			ConceptMapperPipelineCmdOpts cmdOptions;
-			try {
-				cmdOptions = getConceptMapperCmdOpts(dictionaryFile);
-			} catch (IOException e) {
-				throw new ResourceInitializationException(e);
-			}
+		if (dictionaries.size() > 1) {
 			/*
-			 * the next command returns three AE descriptions 1) ConceptMapper,
-			 * 2) CCP type system conversion AE 3) token removal
+			 * each dictionary annotates, and is serialized from, its own view
+			 * initialized with the sentences detected in the default view
 			 */
-			List<AnalysisEngineDescription> cmAeDescriptions;
-			try {
-				AnalysisEngineDescription ppDesc = PostProcessingComponentFactory.getPostProcessingComponentDescriptor(
-						postProcessingComponentType, dictionaryFile, conceptMapperParams.dictionaryNamespace());
-				cmAeDescriptions = ConceptMapperPipelineFactory.getPipelineAeDescriptions(getPipelineTypeSystem(),
-						cmdOptions, conceptMapperParams.optimizedParamIndex(cmOpt), ppDesc);
-			} catch (UIMAException | IOException e) {
-				throw new ResourceInitializationException(e);
+			for (ConceptMapperDictionary dictionary : dictionaries) {
+				AnalysisEngineDescription dictionaryAeDesc = getDictionaryAeDescription(getPipelineTypeSystem(),
+						dictionary, View.DEFAULT.viewName(), Sentence.class.getName(),
+						getPipelineParams().getStorageType());
+				String infix = dictionary.getOutputFileInfix();
+				DeploymentParams dictionaryDeployParams = new DeploymentParams("ConceptMapper_" + infix,
+						"Runs ConceptMapper over sentences in the CAS and serializes the annotations to file.",
+						casPoolSize, 0, "conceptMapper_" + infix + "Q", getPipelineParams().getBrokerUrl());
+				engines.add(new ServiceEngine(dictionaryAeDesc, dictionaryDeployParams, "conceptMapperAAE_" + infix,
+						DescriptorType.PRIMITIVE));
 			}
-
-			AnalysisEngineDescription conceptMapperAeDesc = AnalysisEngineFactory.createEngineDescription(
-					cmAeDescriptions.toArray(new AnalysisEngineDescription[cmAeDescriptions.size()]));
+			return engines;
+		}
+		/* a single dictionary annotates, and is serialized from, the default view */
+		ConceptMapperDictionary dictionary = dictionaries.get(0);
+		{
+			/* create the ConceptMapper AE */
+			AnalysisEngineDescription conceptMapperAeDesc = getConceptMapperAeDescription(getPipelineTypeSystem(),
+					dictionary.getConceptMapperParams(), dictionary.getOptimization(), dictionary.getDictionaryFile(),
+					dictionary.getPostProcessingComponentType());
 
 			conceptMapperAeDesc.setAnnotatorImplementationName("conceptmapper");
 			int conceptMapper_scaleup = casPoolSize;
@@ -155,11 +223,14 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 			String sourceViewName = ANNOTSERIALIZER_SOURCE_VIEW_NAME;
 			String outputViewName = View.DEFAULT.viewName();
 			boolean compressOutput = ANNOTSERIALIZER_COMPRESS_OUTPUT_FLAG;
-			String outputFileInfix = createOutputFileInfix(conceptMapperParams, cmOpt, postProcessingComponentType);
+			String outputFileInfix = dictionary.getOutputFileInfix();
 			AnalysisEngineDescription annotSerializerDesc = AnnotationSerializerAE
 					.getDescription_SaveToSourceFileDirectory(getPipelineTypeSystem(),
 							ANNOTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS, sourceViewName, outputViewName,
 							compressOutput, outputFileInfix, IncludeCoveredText.NO, IncludeSlots.NO);
+			annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(AnnotationSerializerAE.PARAM_STORAGE_TYPE,
+							getPipelineParams().getStorageType().name());
 
 			int annotSerializer_scaleup = casPoolSize;
 			int annotSerializer_errorThreshold = 0;
@@ -198,9 +269,97 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 
 	}
 
+	/**
+	 * @param tsd
+	 * @param conceptMapperParams
+	 * @param cmOpt
+	 * @param dictionaryFile
+	 * @param ppType
+	 * @return an aggregate of the ConceptMapper AE, the CCP type system
+	 *         conversion AE, token removal and the post-processing component
+	 *         (if any). ConceptMapper annotates within the {@link Sentence}
+	 *         annotations of the view it processes.
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription getConceptMapperAeDescription(TypeSystemDescription tsd,
+			ConceptMapperParams conceptMapperParams, ConceptMapperOptimization cmOpt, File dictionaryFile,
+			PostProcessingComponentType ppType) throws ResourceInitializationException {
+		ConceptMapperPipelineCmdOpts cmdOptions;
+		try {
+			cmdOptions = getConceptMapperCmdOpts(dictionaryFile);
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+		/*
+		 * the next command returns three AE descriptions 1) ConceptMapper, 2)
+		 * CCP type system conversion AE 3) token removal
+		 */
+		List<AnalysisEngineDescription> cmAeDescriptions;
+		try {
+			AnalysisEngineDescription ppDesc = PostProcessingComponentFactory.getPostProcessingComponentDescriptor(
+					ppType, dictionaryFile, conceptMapperParams.dictionaryNamespace());
+			cmAeDescriptions = ConceptMapperPipelineFactory.getPipelineAeDescriptions(tsd, cmdOptions,
+					conceptMapperParams.optimizedParamIndex(cmOpt), ppDesc);
+		} catch (UIMAException | IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+
+		return AnalysisEngineFactory.createEngineDescription(
+				cmAeDescriptions.toArray(new AnalysisEngineDescription[cmAeDescriptions.size()]));
+	}
+
+	/**
+	 * @param tsd
+	 * @param dictionary
+	 * @param sentenceViewName
+	 *            the view containing the sentences to annotate
+	 * @param sentenceTypeName
+	 *            the type of the sentence annotations in the sentence view
+	 * @param storageType
+	 * @return an aggregate that initializes a view named by the dictionary's
+	 *         output file infix with the document text and sentences of the
+	 *         sentence view, runs the dictionary's ConceptMapper aggregate in
+	 *         that view and serializes the view's annotations to the
+	 *         dictionary's output file. This allows several dictionaries to
+	 *         annotate the same CAS without their output being mixed.
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription getDictionaryAeDescription(TypeSystemDescription tsd,
+			ConceptMapperDictionary dictionary, String sentenceViewName, String sentenceTypeName,
+			StorageType storageType) throws ResourceInitializationException {
+		String infix = dictionary.getOutputFileInfix();
+		AggregateBuilder builder = new AggregateBuilder();
+		builder.add(ViewInitializerAE.getDescription(tsd, sentenceViewName, infix, sentenceTypeName,
+				Sentence.class.getName()));
+		builder.add(getConceptMapperAeDescription(tsd, dictionary.getConceptMapperParams(),
+				dictionary.getOptimization(), dictionary.getDictionaryFile(),
+				dictionary.getPostProcessingComponentType()), CAS.NAME_DEFAULT_SOFA, infix);
+		AnalysisEngineDescription annotSerializerDesc = AnnotationSerializerAE.getDescription_SaveToSourceFileDirectory(
+				tsd, ANNOTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS, ANNOTSERIALIZER_SOURCE_VIEW_NAME,
+				View.DEFAULT.viewName(), ANNOTSERIALIZER_COMPRESS_OUTPUT_FLAG, infix, IncludeCoveredText.NO,
+				IncludeSlots.NO);
+		annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.setParameterValue(AnnotationSerializerAE.PARAM_STORAGE_TYPE, storageType.name());
+		annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.setParameterValue(AnnotationSerializerAE.PARAM_ANNOTATION_VIEW_NAMES, new String[] { infix });
+		builder.add(annotSerializerDesc);
+		AnalysisEngineDescription dictionaryAeDesc = builder.createAggregateDescription();
+		dictionaryAeDesc.setAnnotatorImplementationName("conceptmapper_" + infix);
+		return dictionaryAeDesc;
+	}
+
+	/**
+	 * @param conceptMapperParams
+	 * @param cmOpt
+	 * @param ppType
+	 *            may be null if the ConceptMapper output is not post-processed
+	 * @return the infix of the annotation files, and the run key, of the
+	 *         ConceptMapper output
+	 */
 	public static String createOutputFileInfix(ConceptMapperParams conceptMapperParams,
 			ConceptMapperOptimization cmOpt, PostProcessingComponentType ppType) {
-		return PipelineKey.CONCEPTMAPPER.name() + "_" + conceptMapperParams.name() + "_" + cmOpt.name() + "_" + ppType.name();
+		return PipelineKey.CONCEPTMAPPER.name() + "_" + conceptMapperParams.name() + "_" + cmOpt.name()
+				+ ((ppType == null) ? "" : "_" + ppType.name());
 	}
 
 	private static ConceptMapperPipelineCmdOpts getConceptMapperCmdOpts(File dictionaryFile) throws IOException {
@@ -218,8 +377,25 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 	 *            args[2] = broker URL<br>
 	 *            args[3] = num to process<br>
 	 *            args[4] = cas pool size<br>
-	 *            args[5] = concept mapper param <br>
-	 *            args[6] = dictionary directory
+	 *            args[5] = concept mapper param, or a comma-delimited list of
+	 *            [ConceptMapperParams]:[ConceptMapperOptimization] pairs, e.g.
+	 *            CHEBI:F_SCORE,PR:PRECISION, to run several dictionaries after
+	 *            a single sentence detection step <br>
+	 *            args[6] = concept mapper optimization (not used if args[5] is
+	 *            a list of pairs) <br>
+	 *            args[7] = dictionary directory <br>
+	 *            args[8] = (optional) run checkpoint file. If the run is
+	 *            restarted with the same checkpoint file, documents completed
+	 *            by the previous run are not processed again. Use "-" for no
+	 *            checkpoint file.<br>
+	 *            args[9] = (optional) execution mode: UIMA_AS (default),
+	 *            UIMA_AS_COLOCATED or IN_PROCESS. UIMA_AS_COLOCATED deploys
+	 *            the components within the pipeline service rather than as
+	 *            separate services. IN_PROCESS runs the pipeline in this JVM
+	 *            without a broker, in which case the broker URL is not used.<br>
+	 *            args[10] = (optional) metrics snapshot file. Per-component
+	 *            latencies and throughput are written to this file as JSON
+	 *            every minute during the run.
 	 */
 	public static void main(String[] args) {
 		BasicConfigurator.configure();
@@ -229,20 +405,34 @@ public class PmcConceptMapperPipeline extends PipelineBase {
 		String brokerUrl = args[2];
 		int numToProcess = Integer.parseInt(args[3]); // <0 = process all
 		int casPoolSize = Integer.parseInt(args[4]);
-		ConceptMapperParams conceptMapperParams = ConceptMapperParams.valueOf(args[5]);
-		ConceptMapperOptimization cmOpt = ConceptMapperOptimization.valueOf(args[6]);
 		File dictionaryDirectory = new File(args[7]);
-		logger.info("Starting PMC ConceptMapper Pipeline...\nCatalog directory=" + catalogDirectory.getAbsolutePath()
-				+ "\nConfig directory=" + configDirectory.getAbsolutePath() + "\nNum-to-process=" + numToProcess
-				+ "\nBroker URL: " + brokerUrl + "\nConceptMapperParam: " + conceptMapperParams.name()
-				+ "\nConceptMapperOptimization: " + cmOpt.name());
 		// add types if you want post-processing of conceptmapper annotations
 		PostProcessingComponentType postProcessingComponentType = null;
+		List<ConceptMapperDictionary> dictionaries;
+		if (args[5].contains(":")) {
+			dictionaries = ConceptMapperDictionary.parse(args[5], dictionaryDirectory, postProcessingComponentType);
+		} else {
+			ConceptMapperParams conceptMapperParams = ConceptMapperParams.valueOf(args[5]);
+			dictionaries = Arrays.asList(new ConceptMapperDictionary(conceptMapperParams,
+					ConceptMapperOptimization.valueOf(args[6]),
+					UpdateConceptMapperDictionaryFiles.getDictionaryFile(dictionaryDirectory, conceptMapperParams),
+					postProcessingComponentType));
+		}
+		logger.info("Starting PMC ConceptMapper Pipeline...\nCatalog directory=" + catalogDirectory.getAbsolutePath()
+				+ "\nConfig directory=" + configDirectory.getAbsolutePath() + "\nNum-to-process=" + numToProcess
+				+ "\nBroker URL: " + brokerUrl + "\nDictionaries: " + dictionaries);
 		try {
 			PmcConceptMapperPipeline pipeline = new PmcConceptMapperPipeline(catalogDirectory, configDirectory,
-					numToProcess, brokerUrl, conceptMapperParams, cmOpt,
-					UpdateConceptMapperDictionaryFiles.getDictionaryFile(dictionaryDirectory, conceptMapperParams),
-					casPoolSize, postProcessingComponentType);
+					numToProcess, brokerUrl, casPoolSize, dictionaries);
+			if (args.length > 8 && !args[8].equals("-")) {
+				pipeline.getPipelineParams().setCheckpointFile(new File(args[8]));
+			}
+			if (args.length > 9) {
+				pipeline.getPipelineParams().setExecutionMode(ExecutionMode.valueOf(args[9]));
+			}
+			if (args.length > 10) {
+				pipeline.getPipelineParams().setMetricsSnapshotFile(new File(args[10]));
+			}
 
 			pipeline.configurePipeline();
 
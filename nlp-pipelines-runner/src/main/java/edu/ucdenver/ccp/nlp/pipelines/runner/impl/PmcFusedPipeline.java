@@ -0,0 +1,321 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.factory.AggregateBuilder;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+
+import edu.ucdenver.ccp.common.file.CharacterEncoding;
+import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
+import edu.ucdenver.ccp.nlp.doc2txt.pmc.PmcDocumentConverterAE;
+import edu.ucdenver.ccp.nlp.doc2txt.pmc.PmcMetadataImportAE;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DeploymentParams;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineKey;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineParams;
+import edu.ucdenver.ccp.nlp.pipelines.runner.RunCatalogAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.ViewInitializerAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeAnnotator;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeSlots;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE.SentenceType;
+import edu.ucdenver.ccp.nlp.uima.serialization.txt.DocumentMetaDataSerializerAE;
+import edu.ucdenver.ccp.nlp.uima.serialization.txt.DocumentTextSerializerAE;
+import edu.ucdenver.ccp.nlp.uima.shims.document.impl.CcpDocumentMetadataHandler;
+import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
+import edu.ucdenver.ccp.nlp.uima.util.View;
+
+/**
+ * Runs the {@link PmcNxml2TxtPipeline}, {@link PmcConceptMapperPipeline} (for
+ * any number of dictionaries) and {@link PmcAnnotationSerializationPipeline}
+ * stages in a single pass over the PMC nxml files, so that each document is
+ * read, decompressed and sentence-segmented once. The files written, and the
+ * run keys recorded in the catalog (sections, one per dictionary, and
+ * ANNOT_SERIALIZATION), are the same as those of the separate pipelines, so
+ * fused and unfused runs can be mixed.
+ * <p>
+ * Annotations that the separate pipelines keep apart by serializing them in
+ * separate runs are kept apart here by CAS view: sentences are detected once
+ * in the {@link #SENTENCE_VIEW_NAME} view and each dictionary runs in its own
+ * view (named by its output file infix) initialized with those sentences.
+ */
+public class PmcFusedPipeline extends PipelineBase {
+
+	public static final String SENTENCE_VIEW_NAME = "sentences";
+
+	private static final Logger logger = Logger.getLogger(PmcFusedPipeline.class);
+	private static final String PIPELINE_DESCRIPTION = "Converts the PMC nxml documents to plain text, annotates "
+			+ "them using ConceptMapper and serializes the annotations to file in a single pass.";
+	private final List<ConceptMapperDictionary> dictionaries;
+
+	public PmcFusedPipeline(File catalogDirectory, File configDir, int numToProcess, String brokerUrl,
+			int casPoolSize, List<ConceptMapperDictionary> dictionaries) throws Exception {
+		/*
+		 * the nxml files, i.e. FileVersion.SOURCE, are read. Documents are
+		 * selected by the key of the final stage so that documents that have
+		 * been through a fused run, or all of the separate pipelines, are not
+		 * processed again.
+		 */
+		super(new PipelineParams(new PMC_OA_DocumentCollection().getShortname(), FileVersion.SOURCE,
+				CharacterEncoding.UTF_8, View.XML.viewName(), PipelineKey.ANNOT_SERIALIZATION.name(),
+				PIPELINE_DESCRIPTION, catalogDirectory, numToProcess, 0, brokerUrl, casPoolSize), configDir);
+		this.dictionaries = dictionaries;
+	}
+
+	/**
+	 * @return null, as the number of service engines depends on the number of
+	 *         dictionaries the aggregate descriptor is generated
+	 */
+	@Override
+	protected String getAggregateDescriptorPath() {
+		return null;
+	}
+
+	@Override
+	protected TypeSystemDescription getPipelineTypeSystem() {
+		try {
+			return CasCreationUtils.mergeTypeSystems(Arrays.asList(TypeSystemUtil.getCcpTypeSystem(),
+					PmcConceptMapperPipeline.getConceptMapperTypeSystem()));
+		} catch (ResourceInitializationException e) {
+			throw new IllegalStateException("Unable to merge the CCP and ConceptMapper type systems.", e);
+		}
+	}
+
+	@Override
+	protected DeploymentParams getPipelineDeploymentParams() {
+		String serviceName = "PMC_FUSED";
+		String endpoint = "pmc_fused_pipelineQ";
+		int scaleup = 1;
+		int errorThresholdCount = 1;
+
+		return new DeploymentParams(serviceName, PIPELINE_DESCRIPTION, scaleup, errorThresholdCount, endpoint,
+				getPipelineParams().getBrokerUrl());
+	}
+
+	@Override
+	protected List<ServiceEngine> createServiceEngines() throws ResourceInitializationException {
+		List<ServiceEngine> engines = new ArrayList<ServiceEngine>();
+		int casPoolSize = getPipelineParams().getCasPoolSize();
+		TypeSystemDescription tsd = getPipelineTypeSystem();
+		{
+			/* configure the XML2TXT AE */
+			AnalysisEngineDescription xml2txtAeDesc = PmcDocumentConverterAE.getDescription(tsd,
+					CharacterEncoding.UTF_8, View.XML.viewName());
+
+			DeploymentParams xml2txtDeployParams = new DeploymentParams("NXML2TXT", "Converts PMC NXML to plain text.",
+					casPoolSize, 0, "nxml2txtQ", getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(xml2txtAeDesc, xml2txtDeployParams, "xml2txtAE", DescriptorType.PRIMITIVE));
+		}
+		{
+			/* configure the metadata import AE */
+			AnalysisEngineDescription pmcMetadataImportAeDesc = PmcMetadataImportAE.getDescription(tsd,
+					CharacterEncoding.UTF_8, View.XML.viewName());
+
+			DeploymentParams metaImportDeployParams = new DeploymentParams("PMCMETAIMPORT",
+					"Imports PMC metadata from XML to CAS.", casPoolSize, 0, "pmcMetadataImportQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(pmcMetadataImportAeDesc, metaImportDeployParams, "pmcMetaImportAE",
+					DescriptorType.PRIMITIVE));
+		}
+		{
+			/* configure the plain text file output AE */
+			AnalysisEngineDescription txtSerializerAeDesc = DocumentTextSerializerAE
+					.getDescription_SaveToSourceFileDirectory(tsd,
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS,
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_SOURCE_VIEW_NAME, View.DEFAULT.viewName(),
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_COMPRESS_OUTPUT_FLAG,
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_OUTPUT_FILE_SUFFIX);
+
+			DeploymentParams txtSerializerDeployParams = new DeploymentParams("TXTSerializer",
+					"Serializes the document text to a file.", casPoolSize, 0, "txtSerializerQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(txtSerializerAeDesc, txtSerializerDeployParams, "docTxtSerializerAE",
+					DescriptorType.PRIMITIVE));
+		}
+		{
+			/*
+			 * serialize the section annotations. This precedes sentence
+			 * detection so only the sections are in the default view.
+			 */
+			AnalysisEngineDescription sectionSerializerDesc = AnnotationSerializerAE
+					.getDescription_SaveToSourceFileDirectory(tsd,
+							PmcNxml2TxtPipeline.ANNOTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS,
+							PmcNxml2TxtPipeline.ANNOTSERIALIZER_SOURCE_VIEW_NAME, View.DEFAULT.viewName(),
+							PmcNxml2TxtPipeline.ANNOTSERIALIZER_COMPRESS_OUTPUT_FLAG,
+							PmcNxml2TxtPipeline.ANNOTSERIALIZER_OUTPUT_FILE_INFIX, IncludeCoveredText.NO,
+							IncludeSlots.NO);
+			sectionSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings().setParameterValue(
+					AnnotationSerializerAE.PARAM_STORAGE_TYPE, getPipelineParams().getStorageType().name());
+			sectionSerializerDesc.setAnnotatorImplementationName("sectionSerializer");
+
+			DeploymentParams sectionSerializerDeployParams = new DeploymentParams("SectionSerializer",
+					"Serializes the section annotations to file.", casPoolSize, 0, "sectionSerializerQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(sectionSerializerDesc, sectionSerializerDeployParams,
+					"sectionSerializerAE", DescriptorType.PRIMITIVE));
+		}
+		{
+			/* configure the document metadata file output AE */
+			AnalysisEngineDescription docMetaDataSerializerAeDesc = DocumentMetaDataSerializerAE
+					.getDescription_SaveToSourceFileDirectory(tsd,
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS,
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_SOURCE_VIEW_NAME, View.DEFAULT.viewName(),
+							PmcNxml2TxtPipeline.DOCTXTSERIALIZER_COMPRESS_OUTPUT_FLAG);
+
+			DeploymentParams metadataSerializerDeployParams = new DeploymentParams("METADATASerializer",
+					"Serializes the document metadata to a file.", casPoolSize, 0, "metadataSerializerQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(docMetaDataSerializerAeDesc, metadataSerializerDeployParams,
+					"docMetadataSerializerAE", DescriptorType.PRIMITIVE));
+		}
+		{
+			/*
+			 * detect sentences once, in their own view, from where they are
+			 * copied to the view of each dictionary. Sentences are loaded from
+			 * the sentence cache of the document if one exists.
+			 */
+			AggregateBuilder builder = new AggregateBuilder();
+			builder.add(ViewInitializerAE.getDescription(tsd, View.DEFAULT.viewName(), SENTENCE_VIEW_NAME, null,
+					null));
+			builder.add(SentenceCacheAE.getDescription(tsd, CcpDocumentMetadataHandler.class, SENTENCE_VIEW_NAME,
+					SentenceType.CCP, null, getPipelineParams().getStorageType()));
+			AnalysisEngineDescription sentdetectAeDesc = builder.createAggregateDescription();
+			sentdetectAeDesc.setAnnotatorImplementationName("sentdetect");
+
+			DeploymentParams sentdetectDeployParams = new DeploymentParams("sentdetect",
+					"Adds sentence annotations to the CAS.", casPoolSize, 0, "sentdetectQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(sentdetectAeDesc, sentdetectDeployParams, "sentDetectAE",
+					DescriptorType.PRIMITIVE));
+		}
+		List<String> annotationViewNames = new ArrayList<String>(
+				Arrays.asList(View.DEFAULT.viewName(), SENTENCE_VIEW_NAME));
+		for (ConceptMapperDictionary dictionary : dictionaries) {
+			/*
+			 * run the dictionary in its own view, where ConceptMapper sees the
+			 * detected sentences as Sentence annotations, and serialize its
+			 * output under its own infix
+			 */
+			String infix = dictionary.getOutputFileInfix();
+			AnalysisEngineDescription conceptMapperAeDesc = PmcConceptMapperPipeline.getDictionaryAeDescription(tsd,
+					dictionary, SENTENCE_VIEW_NAME, CCPTextAnnotation.class.getName(),
+					getPipelineParams().getStorageType());
+
+			DeploymentParams conceptMapperDeployParams = new DeploymentParams("ConceptMapper_" + infix,
+					"Runs ConceptMapper over sentences in the CAS and serializes the annotations to file.",
+					casPoolSize, 0, "conceptMapper_" + infix + "Q", getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(conceptMapperAeDesc, conceptMapperDeployParams,
+					"conceptMapperAAE_" + infix, DescriptorType.PRIMITIVE));
+			annotationViewNames.add(infix);
+		}
+		{
+			/*
+			 * serialize the sections, sentences and all concept mapper
+			 * annotations together, as the PmcAnnotationSerializationPipeline
+			 * does after loading them from their separate files
+			 */
+			AnalysisEngineDescription annotSerializerDesc = AnnotationSerializerAE
+					.getDescription_SaveToSourceFileDirectory(tsd, CcpDocumentMetadataHandler.class,
+							View.DEFAULT.viewName(), View.DEFAULT.viewName(), true,
+							getPipelineParams().getPipelineKey(), IncludeCoveredText.NO, IncludeAnnotator.NO,
+							IncludeSlots.NO, ".nxml.gz.txt.gz");
+			annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings().setParameterValue(
+					AnnotationSerializerAE.PARAM_STORAGE_TYPE, getPipelineParams().getStorageType().name());
+			annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings().setParameterValue(
+					AnnotationSerializerAE.PARAM_ANNOTATION_VIEW_NAMES,
+					annotationViewNames.toArray(new String[annotationViewNames.size()]));
+
+			int annotSerializer_scaleup = (casPoolSize > 1) ? casPoolSize / 2 : 1;
+			DeploymentParams annotSerializerDeployParams = new DeploymentParams("AnnotSerializer",
+					"Serializes the annotations to file.", annotSerializer_scaleup, 0, "annotSerializerQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(annotSerializerDesc, annotSerializerDeployParams, "annotSerializerAE",
+					DescriptorType.PRIMITIVE));
+		}
+		{
+			/*
+			 * configure catalog AE. It catalogs the plain text file and the
+			 * annotation files of every stage, completing each stage's run
+			 * key for the document. Queued updates are journaled so that
+			 * they are not lost for documents that have been checkpointed.
+			 */
+			AnalysisEngineDescription catalogAeDesc = RunCatalogAE.getDescription(tsd, getPipelineParams(),
+					CcpDocumentMetadataHandler.class);
+			catalogAeDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(RunCatalogAE.PARAM_WRITE_BEHIND, true);
+			catalogAeDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings().setParameterValue(
+					RunCatalogAE.PARAM_WRITE_BEHIND_JOURNAL_FILE, getCatalogJournalFile().getAbsolutePath());
+
+			DeploymentParams catalogAeDeployParams = new DeploymentParams("RunCatalog",
+					"Catalogs new annotation-output and document files.", 1, 0, "catalogAeQ",
+					getPipelineParams().getBrokerUrl());
+			engines.add(new ServiceEngine(catalogAeDesc, catalogAeDeployParams, "runCatalogAE",
+					DescriptorType.PRIMITIVE));
+		}
+		return engines;
+	}
+
+	/**
+	 * @param args
+	 *            args[0] = catalog directory <br>
+	 *            args[1] = config directory (a work directory where UIMA
+	 *            descriptor files will be written) <br>
+	 *            args[2] = broker URL<br>
+	 *            args[3] = num to process<br>
+	 *            args[4] = cas pool size<br>
+	 *            args[5] = dictionary directory <br>
+	 *            args[6] = comma-delimited list of dictionaries, each
+	 *            [ConceptMapperParams]:[ConceptMapperOptimization], e.g.
+	 *            CHEBI:F_SCORE,PR:PRECISION <br>
+	 *            args[7] = (optional) execution mode: UIMA_AS (default),
+	 *            UIMA_AS_COLOCATED or IN_PROCESS
+	 */
+	public static void main(String[] args) {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setAdditivity(false);
+		File catalogDirectory = new File(args[0]);
+		File configDirectory = new File(args[1]);
+		String brokerUrl = args[2];
+		int numToProcess = Integer.parseInt(args[3]); // <0 = process all
+		int casPoolSize = Integer.parseInt(args[4]);
+		File dictionaryDirectory = new File(args[5]);
+		List<ConceptMapperDictionary> dictionaries = ConceptMapperDictionary.parse(args[6], dictionaryDirectory,
+				null);
+		logger.info("Starting PMC Fused Pipeline...\nCatalog directory=" + catalogDirectory.getAbsolutePath()
+				+ "\nConfig directory=" + configDirectory.getAbsolutePath() + "\nNum-to-process=" + numToProcess
+				+ "\nBroker URL: " + brokerUrl + "\nDictionaries: " + args[6]);
+		try {
+			PmcFusedPipeline pipeline = new PmcFusedPipeline(catalogDirectory, configDirectory, numToProcess,
+					brokerUrl, casPoolSize, dictionaries);
+			if (args.length > 7) {
+				pipeline.getPipelineParams().setExecutionMode(ExecutionMode.valueOf(args[7]));
+			}
+
+			pipeline.configurePipeline();
+
+			/* turn on debugging mode */
+			pipeline.setDebugFlag(true);
+
+			logger.info("Deploying pipeline components...");
+			pipeline.deployPipeline();
+			logger.info("Running pipeline...");
+			pipeline.runPipeline();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+}
@@ -18,6 +18,7 @@ import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentC
 import edu.ucdenver.ccp.nlp.pipelines.runner.DeploymentParams;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase;
 import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineParams;
+import edu.ucdenver.ccp.nlp.pipelines.runner.RunCatalogAE;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeSlots;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerAE;
@@ -34,6 +35,11 @@ public class PmcNxml2TxtPipeline extends PipelineBase {
 	public static final String DOCTXTSERIALIZER_SOURCE_VIEW_NAME = View.XML.viewName();
 	public static final boolean DOCTXTSERIALIZER_COMPRESS_OUTPUT_FLAG = true;
 	public static final String DOCTXTSERIALIZER_OUTPUT_FILE_SUFFIX = ".txt";
+	/**
+	 * the suffix the document text serializer appends to the source file name
+	 */
+	public static final String DOCTXTSERIALIZER_FILE_SUFFIX = DOCTXTSERIALIZER_OUTPUT_FILE_SUFFIX
+			+ (DOCTXTSERIALIZER_COMPRESS_OUTPUT_FLAG ? ".gz" : "");
 
 	public static final Class<? extends DocumentMetadataHandler> ANNOTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS = CcpDocumentMetadataHandler.class;
 	public static final String ANNOTSERIALIZER_SOURCE_VIEW_NAME = View.DEFAULT.viewName();
@@ -41,7 +47,6 @@ public class PmcNxml2TxtPipeline extends PipelineBase {
 	public static final String ANNOTSERIALIZER_OUTPUT_FILE_INFIX = "sections";
 
 	private static final Logger logger = Logger.getLogger(PmcNxml2TxtPipeline.class);
-	private static final String AGGREGATE_DESCRIPTOR_PATH_ON_CLASSPATH = "/pipeline_descriptors/pmc_nxml2txt_aggregate.xml";
 
 	public PmcNxml2TxtPipeline(File catalogDirectory, File configDir, int numToProcess, String brokerUrl,
 			int casPoolSize) throws Exception {
@@ -57,11 +62,12 @@ public class PmcNxml2TxtPipeline extends PipelineBase {
 	}
 
 	/**
-	 * @return the path to the aggregate descriptor on the classpath
+	 * @return null, so that the aggregate descriptor is generated with a
+	 *         delegate for each of the service engines
 	 */
 	@Override
 	protected String getAggregateDescriptorPath() {
-		return AGGREGATE_DESCRIPTOR_PATH_ON_CLASSPATH;
+		return null;
 	}
 
 	@Override
@@ -146,6 +152,9 @@ public class PmcNxml2TxtPipeline extends PipelineBase {
 					.getDescription_SaveToSourceFileDirectory(getPipelineTypeSystem(),
 							ANNOTSERIALIZER_DOCUMENT_METADATAHANDLER_CLASS, sourceViewName, outputViewName,
 							compressOutput, outputFileInfix, IncludeCoveredText.NO, IncludeSlots.NO);
+			annotSerializerDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(AnnotationSerializerAE.PARAM_STORAGE_TYPE,
+							getPipelineParams().getStorageType().name());
 
 			int annotSerializer_scaleup = casPoolSize;
 			int annotSerializer_errorThreshold = 0;
@@ -178,28 +187,32 @@ public class PmcNxml2TxtPipeline extends PipelineBase {
 			engines.add(txtSerializerEngine);
 		}
 		
-		// {
-		// /* configure catalog AE */
-		// AnalysisEngineDescription catalogAeDesc =
-		// RunCatalogAE.getDescription(getPipelineTypeSystem(),
-		// getPipelineParams().getCatalogDirectory(),
-		// CcpDocumentMetadataHandler.class,
-		// getPipelineParams().getPipelineKey());
-		//
-		// int catalogAe_scaleup = 1;
-		// int catalogAe_errorThreshold = 0;
-		// String catalogAe_endpoint = "catalogAeQ";
-		//
-		// DeploymentParams catalogAeDeployParams = new
-		// DeploymentParams("RunCatalog",
-		// "Catalogs new annotation-output and document files.",
-		// catalogAe_scaleup, catalogAe_errorThreshold,
-		// catalogAe_endpoint, getPipelineParams().getBrokerUrl());
-		// ServiceEngine catalogAeEngine = new ServiceEngine(catalogAeDesc,
-		// catalogAeDeployParams, "runCatalogAE",
-		// DescriptorType.PRIMITIVE);
-		// engines.add(catalogAeEngine);
-		// }
+		{
+			/*
+			 * configure catalog AE. Cataloging the plain text file of each
+			 * document allows downstream pipelines to retrieve it from the
+			 * catalog. Updates are committed in batches by a background thread
+			 * and journaled so that they are not lost for documents that have
+			 * been checkpointed.
+			 */
+			AnalysisEngineDescription catalogAeDesc = RunCatalogAE.getDescription(getPipelineTypeSystem(),
+					getPipelineParams(), CcpDocumentMetadataHandler.class);
+			catalogAeDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+					.setParameterValue(RunCatalogAE.PARAM_WRITE_BEHIND, true);
+			catalogAeDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings().setParameterValue(
+					RunCatalogAE.PARAM_WRITE_BEHIND_JOURNAL_FILE, getCatalogJournalFile().getAbsolutePath());
+
+			int catalogAe_scaleup = 1;
+			int catalogAe_errorThreshold = 0;
+			String catalogAe_endpoint = "catalogAeQ";
+
+			DeploymentParams catalogAeDeployParams = new DeploymentParams("RunCatalog",
+					"Catalogs new annotation-output and document files.", catalogAe_scaleup, catalogAe_errorThreshold,
+					catalogAe_endpoint, getPipelineParams().getBrokerUrl());
+			ServiceEngine catalogAeEngine = new ServiceEngine(catalogAeDesc, catalogAeDeployParams, "runCatalogAE",
+					DescriptorType.PRIMITIVE);
+			engines.add(catalogAeEngine);
+		}
 		return engines;
 
 	}
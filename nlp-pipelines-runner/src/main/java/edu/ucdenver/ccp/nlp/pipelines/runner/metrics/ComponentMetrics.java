@@ -0,0 +1,73 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.metrics;
+
+import lombok.Getter;
+
+/**
+ * The latencies of a pipeline component, e.g. a service engine, the
+ * collection reader or the run catalog, and the time documents spent queued
+ * waiting for the component, where that is known
+ */
+public class ComponentMetrics implements ComponentMetricsMBean {
+
+	@Getter
+	private final String name;
+	@Getter
+	private final LatencyHistogram latency = new LatencyHistogram();
+	@Getter
+	private final LatencyHistogram queueTime = new LatencyHistogram();
+	private final long startNanos = System.nanoTime();
+
+	public ComponentMetrics(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	/**
+	 * @return the number of latencies recorded per second since the component
+	 *         was first recorded
+	 */
+	@Override
+	public double getDocumentsPerSecond() {
+		return latency.getCount() / Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+	}
+
+	@Override
+	public double getMeanMillis() {
+		return latency.getMeanMillis();
+	}
+
+	@Override
+	public double getP50Millis() {
+		return latency.getPercentileMillis(50);
+	}
+
+	@Override
+	public double getP95Millis() {
+		return latency.getPercentileMillis(95);
+	}
+
+	@Override
+	public double getP99Millis() {
+		return latency.getPercentileMillis(99);
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return latency.getMaxMillis();
+	}
+
+	@Override
+	public double getMeanQueueMillis() {
+		return queueTime.getMeanMillis();
+	}
+
+	@Override
+	public double getP95QueueMillis() {
+		return queueTime.getPercentileMillis(95);
+	}
+
+}
@@ -0,0 +1,26 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.metrics;
+
+/**
+ * JMX view of the {@link ComponentMetrics} of a pipeline component
+ */
+public interface ComponentMetricsMBean {
+
+	public long getCount();
+
+	public double getDocumentsPerSecond();
+
+	public double getMeanMillis();
+
+	public double getP50Millis();
+
+	public double getP95Millis();
+
+	public double getP99Millis();
+
+	public double getMaxMillis();
+
+	public double getMeanQueueMillis();
+
+	public double getP95QueueMillis();
+
+}
@@ -0,0 +1,76 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies. Bucket boundaries grow exponentially
+ * from 1 microsecond, with {@link #BUCKETS_PER_DOUBLING} buckets per doubling,
+ * so percentiles are reported to within ~19% regardless of magnitude while
+ * the histogram stays a fixed, small size.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	/* 1 microsecond to ~19 hours */
+	private static final int DOUBLINGS = 36;
+	private static final long[] UPPER_BOUNDS_NANOS = new long[BUCKETS_PER_DOUBLING * DOUBLINGS];
+
+	static {
+		for (int i = 0; i < UPPER_BOUNDS_NANOS.length; i++) {
+			UPPER_BOUNDS_NANOS[i] = Math.round(1000 * Math.pow(2, (i + 1) / (double) BUCKETS_PER_DOUBLING));
+		}
+	}
+
+	/* the last bucket counts latencies beyond the largest upper bound */
+	private final AtomicLongArray counts = new AtomicLongArray(UPPER_BOUNDS_NANOS.length + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		int index = Arrays.binarySearch(UPPER_BOUNDS_NANOS, nanos);
+		counts.incrementAndGet((index >= 0) ? index : -index - 1);
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMeanMillis() {
+		long n = count.sum();
+		return (n == 0) ? 0 : totalNanos.sum() / 1000000.0 / n;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * @param percentile
+	 *            0-100
+	 * @return the upper bound of the bucket containing the specified
+	 *         percentile, capped by the maximum latency recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+		long cumulative = 0;
+		for (int i = 0; i < UPPER_BOUNDS_NANOS.length; i++) {
+			cumulative += counts.get(i);
+			if (cumulative >= rank) {
+				return Math.min(UPPER_BOUNDS_NANOS[i], maxNanos.get()) / 1000000.0;
+			}
+		}
+		return getMaxMillis();
+	}
+
+}
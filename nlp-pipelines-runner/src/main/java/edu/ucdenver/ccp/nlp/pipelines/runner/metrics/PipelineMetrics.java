@@ -0,0 +1,270 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Collects latency histograms, throughput and queue times for the components
+ * of a pipeline run: each service engine (keyed by service name), the
+ * collection reader ({@link #READER}), the run catalog ({@link #CATALOG}) and
+ * the pipeline as a whole ({@link #PIPELINE}). The metrics are exposed as
+ * MBeans on the platform MBean server and can be periodically written as a
+ * JSON snapshot file so that they can be inspected during a run.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+	private static final Logger logger = Logger.getLogger(PipelineMetrics.class);
+
+	public static final String READER = "reader";
+	public static final String CATALOG = "catalog";
+	public static final String PIPELINE = "pipeline";
+
+	public static final String JMX_DOMAIN = "edu.ucdenver.ccp.nlp.pipelines";
+
+	/**
+	 * Components record to a single process-wide instance as they are
+	 * instantiated by UIMA and cannot be handed a reference directly
+	 */
+	public static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+	private final Map<String, ComponentMetrics> components = new ConcurrentHashMap<String, ComponentMetrics>();
+	private ScheduledExecutorService snapshotExecutor = null;
+	/* the component counts at the previous snapshot, used to compute interval rates */
+	private final Map<String, Long> previousCounts = new ConcurrentHashMap<String, Long>();
+	private long previousSnapshotNanos = System.nanoTime();
+
+	PipelineMetrics() {
+	}
+
+	public ComponentMetrics getComponent(String name) {
+		return components.computeIfAbsent(name, ComponentMetrics::new);
+	}
+
+	public void recordLatency(String component, long nanos) {
+		getComponent(component).getLatency().record(nanos);
+	}
+
+	public void recordQueueTime(String component, long nanos) {
+		getComponent(component).getQueueTime().record(nanos);
+	}
+
+	/**
+	 * Discards all metrics recorded so far
+	 */
+	public synchronized void reset() {
+		components.clear();
+		previousCounts.clear();
+		previousSnapshotNanos = System.nanoTime();
+	}
+
+	@Override
+	public long getDocumentsCompleted() {
+		return getComponent(PIPELINE).getCount();
+	}
+
+	@Override
+	public double getDocumentsPerSecond() {
+		return getComponent(PIPELINE).getDocumentsPerSecond();
+	}
+
+	@Override
+	public String getSnapshot() {
+		return toJson(null);
+	}
+
+	/**
+	 * Registers this instance, and an MBean per component recorded so far,
+	 * with the platform MBean server. Components first recorded afterwards are
+	 * registered with the next snapshot.
+	 */
+	public void registerMBeans() {
+		register(objectName(null), this);
+		for (ComponentMetrics component : components.values()) {
+			register(objectName(component.getName()), component);
+		}
+	}
+
+	public void unregisterMBeans() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (ObjectName name : server.queryNames(new ObjectName(JMX_DOMAIN + ":type=PipelineMetrics,*"), null)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			logger.warn("Unable to unregister pipeline metrics MBeans.", e);
+		}
+	}
+
+	private static void register(ObjectName name, Object mbean) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (!server.isRegistered(name)) {
+				server.registerMBean(mbean, name);
+			}
+		} catch (JMException e) {
+			logger.warn("Unable to register pipeline metrics MBean: " + name, e);
+		}
+	}
+
+	private static ObjectName objectName(String component) {
+		try {
+			return new ObjectName(JMX_DOMAIN + ":type=PipelineMetrics"
+					+ ((component == null) ? "" : ",component=" + ObjectName.quote(component)));
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Invalid component name: " + component, e);
+		}
+	}
+
+	/**
+	 * Starts periodically writing the metrics as JSON to the snapshot file.
+	 * The file is replaced atomically so that readers never see a partial
+	 * snapshot. Each snapshot is also appended as a single line to
+	 * [snapshot file].history so that throughput can be tracked over the run.
+	 *
+	 * @param snapshotFile
+	 * @param intervalSeconds
+	 */
+	public synchronized void startSnapshots(File snapshotFile, int intervalSeconds) {
+		stopSnapshots();
+		snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "pipeline-metrics-snapshot");
+			t.setDaemon(true);
+			return t;
+		});
+		snapshotExecutor.scheduleAtFixedRate(() -> writeSnapshot(snapshotFile), intervalSeconds, intervalSeconds,
+				TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops writing snapshots, writing a final snapshot if snapshots had been
+	 * started
+	 *
+	 * @param snapshotFile
+	 */
+	public synchronized void stopSnapshots(File snapshotFile) {
+		if (snapshotExecutor != null) {
+			stopSnapshots();
+			writeSnapshot(snapshotFile);
+		}
+	}
+
+	private synchronized void stopSnapshots() {
+		if (snapshotExecutor != null) {
+			/* not awaited as a snapshot in progress is waiting for this lock */
+			snapshotExecutor.shutdownNow();
+			snapshotExecutor = null;
+		}
+	}
+
+	/**
+	 * @param snapshotFile
+	 */
+	public synchronized void writeSnapshot(File snapshotFile) {
+		registerMBeans();
+		long now = System.nanoTime();
+		double intervalSeconds = Math.max(1e-3, (now - previousSnapshotNanos) / 1e9);
+		Map<String, Double> intervalRates = new TreeMap<String, Double>();
+		for (ComponentMetrics component : components.values()) {
+			long count = component.getCount();
+			Long previous = previousCounts.put(component.getName(), count);
+			intervalRates.put(component.getName(), (count - ((previous == null) ? 0 : previous)) / intervalSeconds);
+		}
+		previousSnapshotNanos = now;
+
+		String json = toJson(intervalRates);
+		try {
+			File parent = snapshotFile.getAbsoluteFile().getParentFile();
+			File tmpFile = File.createTempFile(snapshotFile.getName(), ".tmp", parent);
+			Files.write(tmpFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+			Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			Files.write(new File(snapshotFile.getPath() + ".history").toPath(),
+					(json + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			logger.warn("Unable to write pipeline metrics snapshot: " + snapshotFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * @param intervalRates
+	 *            documents per second for each component since the previous
+	 *            snapshot, may be null
+	 * @return the metrics of each component as a single line of JSON
+	 */
+	public String toJson(Map<String, Double> intervalRates) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"timestamp\":").append(System.currentTimeMillis()).append(",\"components\":{");
+		boolean first = true;
+		for (ComponentMetrics component : new TreeMap<String, ComponentMetrics>(components).values()) {
+			sb.append(first ? "" : ",").append(quote(component.getName())).append(":{");
+			sb.append("\"count\":").append(component.getCount());
+			field(sb, "docsPerSecond", component.getDocumentsPerSecond());
+			if (intervalRates != null && intervalRates.containsKey(component.getName())) {
+				field(sb, "intervalDocsPerSecond", intervalRates.get(component.getName()));
+			}
+			histogram(sb, "latencyMillis", component.getLatency());
+			if (component.getQueueTime().getCount() > 0) {
+				histogram(sb, "queueMillis", component.getQueueTime());
+			}
+			sb.append("}");
+			first = false;
+		}
+		return sb.append("}}").toString();
+	}
+
+	private static void histogram(StringBuilder sb, String name, LatencyHistogram histogram) {
+		sb.append(",").append(quote(name)).append(":{\"count\":").append(histogram.getCount());
+		field(sb, "mean", histogram.getMeanMillis());
+		field(sb, "p50", histogram.getPercentileMillis(50));
+		field(sb, "p95", histogram.getPercentileMillis(95));
+		field(sb, "p99", histogram.getPercentileMillis(99));
+		field(sb, "max", histogram.getMaxMillis());
+		sb.append("}");
+	}
+
+	private static void field(StringBuilder sb, String name, double value) {
+		sb.append(",").append(quote(name)).append(":").append(String.format(Locale.US, "%.3f", value));
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * @return a human-readable table of the metrics of each component
+	 */
+	@Override
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder(String.format(Locale.US, "%-30s %10s %10s %10s %10s %10s %10s %10s%n",
+				"component", "count", "docs/s", "mean(ms)", "p50(ms)", "p95(ms)", "p99(ms)", "queue(ms)"));
+		for (Entry<String, ComponentMetrics> entry : new TreeMap<String, ComponentMetrics>(components).entrySet()) {
+			ComponentMetrics c = entry.getValue();
+			sb.append(String.format(Locale.US, "%-30s %10d %10.2f %10.2f %10.2f %10.2f %10.2f %10s%n", entry.getKey(),
+					c.getCount(), c.getDocumentsPerSecond(), c.getMeanMillis(), c.getP50Millis(), c.getP95Millis(),
+					c.getP99Millis(), (c.getQueueTime().getCount() > 0)
+							? String.format(Locale.US, "%.2f", c.getMeanQueueMillis()) : "-"));
+		}
+		return sb.toString();
+	}
+
+}
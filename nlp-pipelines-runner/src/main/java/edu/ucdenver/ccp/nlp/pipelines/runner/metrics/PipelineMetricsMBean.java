@@ -0,0 +1,22 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.metrics;
+
+/**
+ * JMX view of the {@link PipelineMetrics}
+ */
+public interface PipelineMetricsMBean {
+
+	/**
+	 * @return the number of documents that have completed the pipeline
+	 */
+	public long getDocumentsCompleted();
+
+	public double getDocumentsPerSecond();
+
+	/**
+	 * @return the current snapshot of all components as JSON
+	 */
+	public String getSnapshot();
+
+	public String getSummary();
+
+}
@@ -1,11 +1,10 @@
 package edu.ucdenver.ccp.nlp.pipelines.runner.serialization;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 
@@ -24,12 +23,13 @@ import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
 import edu.ucdenver.ccp.common.file.CharacterEncoding;
-import edu.ucdenver.ccp.common.file.FileUtil;
 import edu.ucdenver.ccp.common.file.reader.Line;
 import edu.ucdenver.ccp.common.file.reader.StreamLineIterator;
 import edu.ucdenver.ccp.common.reflection.ConstructorUtil;
 import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
 import edu.ucdenver.ccp.nlp.pipelines.log.ProcessingErrorLog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeAnnotator;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
 import edu.ucdenver.ccp.nlp.uima.shims.ShimDefaults;
@@ -73,6 +73,12 @@ public class AnnotationDeserializerAE extends JCasAnnotator_ImplBase {
 	private String documentMetadataHandlerClassName;
 	private DocumentMetadataHandler documentMetaDataHandler;
 
+	public static final String PARAM_STORAGE_TYPE = "storageType";
+	@ConfigurationParameter(mandatory = false, description = "How the annotation files to load are stored: "
+			+ "FILE_SYSTEM or SHARD_ARCHIVE.", defaultValue = "FILE_SYSTEM")
+	private StorageType storageType;
+	private DocumentStorage storage;
+
 	private Logger logger;
 
 	@Override
@@ -81,6 +87,7 @@ public class AnnotationDeserializerAE extends JCasAnnotator_ImplBase {
 		documentMetaDataHandler = (DocumentMetadataHandler) ConstructorUtil
 				.invokeConstructor(documentMetadataHandlerClassName);
 		logger = aContext.getLogger();
+		storage = storageType.getStorage();
 
 		if (inputFilenameInfixes != null && inputFilenameSuffixes != null) {
 			String message = "Both the input_filename_infixes and input_filename_suffixes parameters have been "
@@ -136,10 +143,8 @@ public class AnnotationDeserializerAE extends JCasAnnotator_ImplBase {
 			}
 		} else if (inputFilenameSuffixes != null) {
 			File inputFileDirectory = getLoadDirectory(jCas);
-			for (Iterator<File> fileIterator = FileUtil.getFileIterator(inputFileDirectory, false,
-					inputFilenameSuffixes); fileIterator.hasNext();) {
-				File file = fileIterator.next();
-				if (file.getName().startsWith(documentId)) {
+			for (File file : storage.listFiles(inputFileDirectory)) {
+				if (file.getName().startsWith(documentId) && hasInputFilenameSuffix(file)) {
 					filesToLoad.add(file);
 				}
 			}
@@ -147,6 +152,15 @@ public class AnnotationDeserializerAE extends JCasAnnotator_ImplBase {
 		return filesToLoad;
 	}
 
+	private boolean hasInputFilenameSuffix(File file) {
+		for (String suffix : inputFilenameSuffixes) {
+			if (file.getName().endsWith(suffix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Serializes the document text to file and populates the
 	 * source-document-path metadata field with the location of the serialized
@@ -162,10 +176,9 @@ public class AnnotationDeserializerAE extends JCasAnnotator_ImplBase {
 		StreamLineIterator lineIter = null;
 		List<TextAnnotation> textAnnotations = new ArrayList<TextAnnotation>();
 		try {
-			for (lineIter = (inputFile.getName().endsWith(".gz"))
-					? new StreamLineIterator(new GZIPInputStream(new FileInputStream(inputFile)),
-							CharacterEncoding.UTF_8, null)
-					: new StreamLineIterator(inputFile, CharacterEncoding.UTF_8, null); lineIter.hasNext();) {
+			InputStream is = storage.openInputStream(inputFile);
+			for (lineIter = new StreamLineIterator((inputFile.getName().endsWith(".gz")) ? new GZIPInputStream(is) : is,
+					CharacterEncoding.UTF_8, null); lineIter.hasNext();) {
 				Line line = lineIter.next();
 				TextAnnotation annot = AnnotationSerializerImpl.fromString(line.getText());
 				textAnnotations.add(annot);
@@ -218,10 +231,10 @@ public class AnnotationDeserializerAE extends JCasAnnotator_ImplBase {
 					"Unable to determine output directory for document text serialization.", null);
 		}
 
-		if (!inputFile.exists()) {
+		if (!storage.exists(inputFile)) {
 			/* check for the compressed version */
 			inputFile = new File(inputFile.getAbsolutePath() + ".gz");
-			if (!inputFile.exists()) {
+			if (!storage.exists(inputFile)) {
 				throw new IllegalStateException("Cannot find input file to load: " + inputFile.getAbsolutePath());
 			}
 		}
@@ -34,6 +34,8 @@ import edu.ucdenver.ccp.nlp.core.annotation.TextAnnotation;
 import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
 import edu.ucdenver.ccp.nlp.pipelines.log.AnnotationOutputLog;
 import edu.ucdenver.ccp.nlp.pipelines.log.ProcessingErrorLog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeAnnotator;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeCoveredText;
 import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.AnnotationSerializerImpl.IncludeSlots;
@@ -64,6 +66,18 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 	@ConfigurationParameter(mandatory = false, description = "")
 	private String outputViewName;
 
+	/**
+	 * If set, the annotations of these views are serialized to a single file,
+	 * rather than those of the source view. The document metadata, and the
+	 * log of the serialized file, remain in the source view. This allows
+	 * components that have annotated separate views of the same CAS, e.g.
+	 * different ConceptMapper dictionaries, to have separate output files.
+	 */
+	public static final String PARAM_ANNOTATION_VIEW_NAMES = "annotationViewNames";
+	@ConfigurationParameter(mandatory = false, description = "The views whose annotations are serialized. "
+			+ "Defaults to the source view.")
+	private String[] annotationViewNames;
+
 	/**
 	 * If true, the output file will be compressed using gzip
 	 */
@@ -104,6 +118,12 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 	private BufferedWriter writer;
 	private boolean localWriter = false;
 
+	public static final String PARAM_STORAGE_TYPE = "storageType";
+	@ConfigurationParameter(mandatory = false, description = "How the per-document output files are stored: "
+			+ "FILE_SYSTEM or SHARD_ARCHIVE. Not used when the outputFile parameter is set.", defaultValue = "FILE_SYSTEM")
+	private StorageType storageType;
+	private DocumentStorage storage;
+
 	public static final String PARAM_DOCUMENT_METADATA_HANDLER_CLASS = "documentMetadataHandlerClassName";
 	private static final String ANNOT_FILE_SUFFIX = ".annot";
 	@ConfigurationParameter(mandatory = false, description = "name of the DocumentMetadataHandler implementation to use", defaultValue = ShimDefaults.CCP_DOCUMENT_METADATA_HANDLER_CLASS_NAME)
@@ -115,6 +135,7 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 		super.initialize(aContext);
 		documentMetaDataHandler = (DocumentMetadataHandler) ConstructorUtil
 				.invokeConstructor(documentMetadataHandlerClassName);
+		storage = storageType.getStorage();
 
 		if (outputFile != null) {
 			try {
@@ -150,12 +171,20 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 			// try {
 
 			JCas view = null;
+			List<JCas> annotationViews = new ArrayList<JCas>();
 			try {
 				view = View_Util.getView(jCas, sourceViewName);
+				if (annotationViewNames == null) {
+					annotationViews.add(view);
+				} else {
+					for (String annotationViewName : annotationViewNames) {
+						annotationViews.add(View_Util.getView(jCas, annotationViewName));
+					}
+				}
 			} catch (CASException e) {
 				throw new AnalysisEngineProcessException(e);
 			}
-			serializeAnnotations(view);
+			serializeAnnotations(view, annotationViews);
 
 			// } catch (Exception e) {
 			// ProcessingErrorLog errorLog = new ProcessingErrorLog(jCas);
@@ -173,9 +202,13 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 	public static DateTimeFormatter DATE_FORMATTER = ISODateTimeFormat.dateTime();
 	protected Logger logger;
 
-	private void logSerializedFile(JCas jCas, File outputFile) {
+	private void logSerializedFile(JCas jCas, List<JCas> annotationViews, File outputFile) {
 		AnnotationOutputLog aoLog = new AnnotationOutputLog(jCas);
-		aoLog.setAnnotationCount(jCas.getAnnotationIndex().size());
+		int annotationCount = 0;
+		for (JCas annotationView : annotationViews) {
+			annotationCount += annotationView.getAnnotationIndex().size();
+		}
+		aoLog.setAnnotationCount(annotationCount);
 		aoLog.setLocalAnnotationFile(outputFile.getAbsolutePath());
 		aoLog.setRunDate(DATE_FORMATTER.print(new DateTime()));
 		aoLog.setRunKey(outputFilenameInfix);
@@ -188,11 +221,11 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 	 * file
 	 * 
 	 * @param jCas
-	 * @param documentText
-	 * @param outputFile
+	 * @param annotationViews
+	 *            the views whose annotations are serialized
 	 * @throws AnalysisEngineProcessException
 	 */
-	private void serializeAnnotations(JCas jCas) throws AnalysisEngineProcessException {
+	private void serializeAnnotations(JCas jCas, List<JCas> annotationViews) throws AnalysisEngineProcessException {
 		AnnotationSerializer annotSerializer = getAnnotationSerializer(jCas);
 		try {
 			localWriter = false;
@@ -200,25 +233,27 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 					outputDirectory, sourceViewName);
 			if (writer == null) {
 				localWriter = true;
-				writer = (compressOutput)
-						? new BufferedWriter(
-								new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFile)), CharacterEncoding.UTF_8.getCharacterSetName()))
-						: FileWriterUtil.initBufferedWriter(outputFile);
+				writer = new BufferedWriter(new OutputStreamWriter(
+						(compressOutput) ? new GZIPOutputStream(storage.openOutputStream(outputFile))
+								: storage.openOutputStream(outputFile),
+						CharacterEncoding.UTF_8.getCharacterSetName()));
 			}
 
 			List<WrappedCCPTextAnnotation> secondPassAnnotations = new ArrayList<WrappedCCPTextAnnotation>();
-			for (Iterator<CCPTextAnnotation> annotIter = JCasUtil.iterator(jCas, CCPTextAnnotation.class); annotIter
-					.hasNext();) {
-				CCPTextAnnotation annot = annotIter.next();
-				WrappedCCPTextAnnotation ta = new WrappedCCPTextAnnotation(annot);
-
-				if (isFirstPassAnnotation(ta)) {
-					List<String> storageStrings = annotSerializer.toString(ta, jCas.getDocumentText());
-					for (String storageString : storageStrings) {
-						writer.write(storageString + "\n");
+			for (JCas annotationView : annotationViews) {
+				for (Iterator<CCPTextAnnotation> annotIter = JCasUtil.iterator(annotationView,
+						CCPTextAnnotation.class); annotIter.hasNext();) {
+					CCPTextAnnotation annot = annotIter.next();
+					WrappedCCPTextAnnotation ta = new WrappedCCPTextAnnotation(annot);
+
+					if (isFirstPassAnnotation(ta)) {
+						List<String> storageStrings = annotSerializer.toString(ta, jCas.getDocumentText());
+						for (String storageString : storageStrings) {
+							writer.write(storageString + "\n");
+						}
+					} else {
+						secondPassAnnotations.add(ta);
 					}
-				} else {
-					secondPassAnnotations.add(ta);
 				}
 			}
 
@@ -233,7 +268,7 @@ public class AnnotationSerializerAE extends JCasAnnotator_ImplBase {
 			if (localWriter) {
 				writer.close();
 				writer = null;
-				logSerializedFile(jCas, outputFile);
+				logSerializedFile(jCas, annotationViews, outputFile);
 			}
 		} catch (IOException e) {
 			throw new AnalysisEngineProcessException(e);
@@ -0,0 +1,387 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.serialization;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AggregateBuilder;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+import org.apache.uima.util.TypeSystemUtil;
+import org.joda.time.DateTime;
+
+import edu.ucdenver.ccp.common.reflection.ConstructorUtil;
+import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
+import edu.ucdenver.ccp.nlp.pipelines.log.AnnotationOutputLog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.CcpSentenceCasInserter;
+import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.ExplicitSentenceCasInserter;
+import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.OpenNlpSentenceDetectorAE;
+import edu.ucdenver.ccp.nlp.uima.annotators.sentence_detection.Sentence;
+import edu.ucdenver.ccp.nlp.uima.shims.ShimDefaults;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Annotation_Util;
+import edu.ucdenver.ccp.uima.shims.document.DocumentMetadataHandler;
+
+/**
+ * Adds sentence annotations to the CAS, loading them from a sentence cache
+ * file stored alongside the source document when a valid one exists, and
+ * otherwise detecting them with the {@link OpenNlpSentenceDetectorAE} and
+ * writing the cache file so that subsequent pipelines processing the same
+ * version of the document do not need to detect them again.
+ * <p>
+ * The cache file stores only the sentence spans along with the length and a
+ * checksum of the document text they were detected in. A cache file is valid
+ * if both match the current document text, so a cache written by one
+ * pipeline can be used by another regardless of the sentence annotation type
+ * it requires, and a cache of a previous version of the document is ignored.
+ */
+public class SentenceCacheAE extends JCasAnnotator_ImplBase {
+
+	/**
+	 * The type of the sentence annotations that are added to the CAS
+	 */
+	public enum SentenceType {
+		/**
+		 * {@link CCPTextAnnotation}s of type "sentence"
+		 */
+		CCP(CcpSentenceCasInserter.class),
+		/**
+		 * {@link Sentence} annotations
+		 */
+		EXPLICIT(ExplicitSentenceCasInserter.class);
+
+		private final Class<?> casInserterClass;
+
+		private SentenceType(Class<?> casInserterClass) {
+			this.casInserterClass = casInserterClass;
+		}
+
+		/**
+		 * @return the class used by the {@link OpenNlpSentenceDetectorAE} to
+		 *         add sentences of this type to the CAS
+		 */
+		public Class<?> casInserterClass() {
+			return casInserterClass;
+		}
+	}
+
+	/**
+	 * The run key, and file infix, of the sentence cache
+	 */
+	public static final String CACHE_FILE_INFIX = "sentences";
+	private static final String CACHE_FILE_SUFFIX = ".spans.gz";
+	private static final String CCP_SENTENCE_TYPE = "sentence";
+	private static final String HEADER_PREFIX = "#" + CACHE_FILE_INFIX;
+
+	/**
+	 * The view to which the sentences are added. Defaults to the view passed
+	 * to this annotator. The document metadata, used to locate the cache file,
+	 * is always taken from the view passed to this annotator.
+	 */
+	public static final String PARAM_SENTENCE_VIEW_NAME = "sentenceViewName";
+	@ConfigurationParameter(mandatory = false, description = "The view to which the sentences are added.")
+	private String sentenceViewName;
+
+	public static final String PARAM_SENTENCE_TYPE = "sentenceType";
+	@ConfigurationParameter(mandatory = false, description = "The type of the sentence annotations: CCP or EXPLICIT.", defaultValue = "CCP")
+	private SentenceType sentenceType;
+
+	public static final String PARAM_TREAT_LINE_BREAKS_AS_SENTENCE_BOUNDARIES = "treatLineBreaksAsSentenceBoundaries";
+	@ConfigurationParameter(mandatory = false, description = "Passed to the sentence detector when the cache is not valid.", defaultValue = "true")
+	private boolean treatLineBreaksAsSentenceBoundaries;
+
+	public static final String PARAM_REMOVE_DOC_ID_SUFFIX = "docIdSuffixToRemove";
+	@ConfigurationParameter(mandatory = false, description = "If set, this suffix is removed from the document id "
+			+ "when naming the cache file, e.g. .txt.gz, so that pipelines reading different file versions of a "
+			+ "document share its cache file.")
+	private String docIdSuffixToRemove;
+
+	public static final String PARAM_STORAGE_TYPE = "storageType";
+	@ConfigurationParameter(mandatory = false, description = "How the cache files are stored: "
+			+ "FILE_SYSTEM or SHARD_ARCHIVE.", defaultValue = "FILE_SYSTEM")
+	private StorageType storageType;
+	private DocumentStorage storage;
+
+	public static final String PARAM_DOCUMENT_METADATA_HANDLER_CLASS = "documentMetadataHandlerClassName";
+	@ConfigurationParameter(mandatory = false, description = "name of the DocumentMetadataHandler implementation to use", defaultValue = ShimDefaults.CCP_DOCUMENT_METADATA_HANDLER_CLASS_NAME)
+	private String documentMetadataHandlerClassName;
+	private DocumentMetadataHandler documentMetaDataHandler;
+
+	/* created when the first document without a valid cache is encountered */
+	private AnalysisEngine sentenceDetector = null;
+	private Logger logger;
+
+	@Override
+	public void initialize(UimaContext aContext) throws ResourceInitializationException {
+		super.initialize(aContext);
+		documentMetaDataHandler = (DocumentMetadataHandler) ConstructorUtil
+				.invokeConstructor(documentMetadataHandlerClassName);
+		storage = storageType.getStorage();
+		logger = aContext.getLogger();
+	}
+
+	@Override
+	public void process(JCas jCas) throws AnalysisEngineProcessException {
+		JCas sentenceView = getSentenceView(jCas);
+		String documentText = sentenceView.getDocumentText();
+		File cacheFile = getCacheFile(jCas);
+
+		List<int[]> spans = null;
+		if (cacheFile != null && storage.exists(cacheFile)) {
+			try (InputStream is = storage.openInputStream(cacheFile)) {
+				spans = readSentenceSpans(new GZIPInputStream(is), documentText);
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Unable to read sentence cache file: " + cacheFile.getAbsolutePath()
+						+ ". Sentences will be detected. -- " + e.getMessage());
+			}
+		}
+
+		if (spans != null) {
+			logger.log(Level.FINE, "Loaded " + spans.size() + " sentences from: " + cacheFile.getAbsolutePath());
+			for (int[] span : spans) {
+				addSentence(sentenceView, span[0], span[1]);
+			}
+		} else {
+			spans = detectSentences(jCas, sentenceView);
+			if (cacheFile != null) {
+				/* the sentences have been added, so a cache that cannot be written does not fail the document */
+				try (OutputStream os = new GZIPOutputStream(storage.openOutputStream(cacheFile))) {
+					writeSentenceSpans(os, documentText, spans);
+				} catch (IOException e) {
+					logger.log(Level.WARNING, "Unable to write sentence cache file: " + cacheFile.getAbsolutePath()
+							+ ". Sentences will be detected again by subsequent pipelines. -- " + e.getMessage());
+					return;
+				}
+				logCacheFile(jCas, cacheFile, spans.size());
+			}
+		}
+	}
+
+	private JCas getSentenceView(JCas jCas) throws AnalysisEngineProcessException {
+		if (sentenceViewName == null) {
+			return jCas;
+		}
+		try {
+			return jCas.getView(sentenceViewName);
+		} catch (CASException | CASRuntimeException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	/**
+	 * @param jCas
+	 * @return the cache file in the directory of the source document, or null
+	 *         if the source document path is not available
+	 */
+	private File getCacheFile(JCas jCas) {
+		File sourceDocumentFile = documentMetaDataHandler.extractSourceDocumentPath(jCas);
+		if (sourceDocumentFile == null) {
+			return null;
+		}
+		String documentId = documentMetaDataHandler.extractDocumentId(jCas);
+		if (docIdSuffixToRemove != null && documentId.endsWith(docIdSuffixToRemove)) {
+			documentId = documentId.substring(0, documentId.length() - docIdSuffixToRemove.length());
+		}
+		return new File(sourceDocumentFile.getParentFile(), getCacheFileName(documentId));
+	}
+
+	/**
+	 * @param documentId
+	 * @return the name of the sentence cache file for the document
+	 */
+	public static String getCacheFileName(String documentId) {
+		return documentId + "-" + CACHE_FILE_INFIX + CACHE_FILE_SUFFIX;
+	}
+
+	private void addSentence(JCas view, int begin, int end) {
+		if (sentenceType == SentenceType.CCP) {
+			UIMA_Annotation_Util.createCCPTextAnnotation(CCP_SENTENCE_TYPE, begin, end, view);
+		} else {
+			new Sentence(view, begin, end).addToIndexes();
+		}
+	}
+
+	/**
+	 * Runs the sentence detector over the sentence view
+	 *
+	 * @return the spans of the sentences detected
+	 */
+	private List<int[]> detectSentences(JCas jCas, JCas sentenceView) throws AnalysisEngineProcessException {
+		Class<? extends Annotation> annotationClass = (sentenceType == SentenceType.CCP) ? CCPTextAnnotation.class
+				: Sentence.class;
+		/*
+		 * the annotations already in the view are excluded, e.g. sections
+		 * when sentences are added to the default view
+		 */
+		Set<Annotation> existing = Collections.newSetFromMap(new IdentityHashMap<Annotation, Boolean>());
+		for (Annotation annot : sentenceView.getAnnotationIndex(annotationClass)) {
+			existing.add(annot);
+		}
+
+		getSentenceDetector(jCas).process(jCas);
+
+		List<int[]> spans = new ArrayList<int[]>();
+		for (Annotation annot : sentenceView.getAnnotationIndex(annotationClass)) {
+			if (!existing.contains(annot)) {
+				spans.add(new int[] { annot.getBegin(), annot.getEnd() });
+			}
+		}
+		return spans;
+	}
+
+	/**
+	 * @return the sentence detector, mapped to process the sentence view
+	 */
+	private AnalysisEngine getSentenceDetector(JCas jCas) throws AnalysisEngineProcessException {
+		if (sentenceDetector == null) {
+			try {
+				TypeSystemDescription tsd = TypeSystemUtil.typeSystem2TypeSystemDescription(jCas.getTypeSystem());
+				AggregateBuilder builder = new AggregateBuilder();
+				builder.add(OpenNlpSentenceDetectorAE.createAnalysisEngineDescription(tsd,
+						sentenceType.casInserterClass(), treatLineBreaksAsSentenceBoundaries), CAS.NAME_DEFAULT_SOFA,
+						getSentenceView(jCas).getViewName());
+				sentenceDetector = builder.createAggregate();
+			} catch (ResourceInitializationException e) {
+				throw new AnalysisEngineProcessException(e);
+			}
+		}
+		return sentenceDetector;
+	}
+
+	private void logCacheFile(JCas jCas, File cacheFile, int sentenceCount) {
+		AnnotationOutputLog aoLog = new AnnotationOutputLog(jCas);
+		aoLog.setAnnotationCount(sentenceCount);
+		aoLog.setLocalAnnotationFile(cacheFile.getAbsolutePath());
+		aoLog.setRunDate(AnnotationSerializerAE.DATE_FORMATTER.print(new DateTime()));
+		aoLog.setRunKey(CACHE_FILE_INFIX);
+		aoLog.addToIndexes();
+	}
+
+	@Override
+	public void destroy() {
+		if (sentenceDetector != null) {
+			sentenceDetector.destroy();
+		}
+		super.destroy();
+	}
+
+	/**
+	 * Writes the sentence spans preceded by a header containing the length and
+	 * checksum of the document text and the number of sentences
+	 *
+	 * @param os
+	 * @param documentText
+	 * @param spans
+	 * @throws IOException
+	 */
+	public static void writeSentenceSpans(OutputStream os, String documentText, List<int[]> spans)
+			throws IOException {
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+		writer.write(getHeader(documentText, spans.size()) + "\n");
+		for (int[] span : spans) {
+			writer.write(span[0] + "\t" + span[1] + "\n");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * @param is
+	 * @param documentText
+	 * @return the sentence spans, or null if the cache was written for a
+	 *         different document text, is incomplete or is malformed
+	 * @throws IOException
+	 */
+	public static List<int[]> readSentenceSpans(InputStream is, String documentText) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+		String header = reader.readLine();
+		if (header == null || !header.startsWith(HEADER_PREFIX + "\t")) {
+			return null;
+		}
+		try {
+			String[] toks = header.split("\\t");
+			if (toks.length != 4) {
+				return null;
+			}
+			int sentenceCount = Integer.parseInt(toks[3]);
+			if (sentenceCount < 0 || !header.equals(getHeader(documentText, sentenceCount))) {
+				return null;
+			}
+			List<int[]> spans = new ArrayList<int[]>(sentenceCount);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] span = line.split("\\t");
+				int begin = Integer.parseInt(span[0]);
+				int end = Integer.parseInt(span[1]);
+				if (begin < 0 || end < begin || end > documentText.length()) {
+					return null;
+				}
+				spans.add(new int[] { begin, end });
+			}
+			/* a file that was not completely written is not valid */
+			return (spans.size() == sentenceCount) ? spans : null;
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			/* e.g. a corrupted file, which is replaced once the sentences are detected */
+			return null;
+		}
+	}
+
+	private static String getHeader(String documentText, int sentenceCount) {
+		CRC32 crc = new CRC32();
+		crc.update(documentText.getBytes(StandardCharsets.UTF_8));
+		return HEADER_PREFIX + "\t" + documentText.length() + "\t" + Long.toHexString(crc.getValue()) + "\t"
+				+ sentenceCount;
+	}
+
+	/**
+	 * @param tsd
+	 * @param documentMetadataHandlerClass
+	 * @param sentenceViewName
+	 *            may be null, in which case the sentences are added to the view
+	 *            passed to the annotator
+	 * @param sentenceType
+	 * @param docIdSuffixToRemove
+	 *            may be null
+	 * @param storageType
+	 * @return a description of a SentenceCacheAE
+	 * @throws ResourceInitializationException
+	 */
+	public static AnalysisEngineDescription getDescription(TypeSystemDescription tsd,
+			Class<? extends DocumentMetadataHandler> documentMetadataHandlerClass, String sentenceViewName,
+			SentenceType sentenceType, String docIdSuffixToRemove, StorageType storageType)
+			throws ResourceInitializationException {
+		return AnalysisEngineFactory.createEngineDescription(SentenceCacheAE.class, tsd,
+				PARAM_DOCUMENT_METADATA_HANDLER_CLASS, documentMetadataHandlerClass, PARAM_SENTENCE_VIEW_NAME,
+				sentenceViewName, PARAM_SENTENCE_TYPE, sentenceType.name(), PARAM_REMOVE_DOC_ID_SUFFIX,
+				docIdSuffixToRemove, PARAM_STORAGE_TYPE, storageType.name());
+	}
+
+}
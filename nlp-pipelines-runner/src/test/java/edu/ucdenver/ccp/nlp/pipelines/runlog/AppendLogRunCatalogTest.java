@@ -0,0 +1,363 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.ShardArchiveStorage;
+import edu.ucdenver.ccp.nlp.pipelines.runner.impl.PmcNxml2TxtPipeline;
+
+public class AppendLogRunCatalogTest extends DefaultTestCase {
+
+	private static final DocumentCollection DC = new PMC_OA_DocumentCollection();
+
+	private static final Document D1 = new Document("1234567", "PMC1234567", new File("/local/source1.xml"),
+			FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+
+	private static final Document D2 = new Document("78787878", "PMC78787878", new File("/local/source2.xml"),
+			FileType.XML, "BMC Bio.", "BMC Bio. v6 77-88. 2017.");
+
+	private static final Document D3 = new Document("999999", "PMC999999", new File("/local/source3.xml"),
+			FileType.XML, "BMC Bio.", "BMC Bio. v7 99-100. 2017.");
+
+	private static final String RUN_KEY = "CM_CL_v0.5.4";
+
+	private static final AnnotationOutput AO1 = new AnnotationOutput(new File("/local/source1.CM_CL_v0.5.4.ann"),
+			RUN_KEY, new DateTime(), 127);
+
+	private static final AnnotationPipeline AP = new AnnotationPipeline("ConceptMapper + CL",
+			"ConceptMapper using the CL ontology as the input dictionary.", PmcNxml2TxtPipeline.class, "v0.5.4");
+
+	@Test
+	public void testCatalog() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			populate(catalog);
+			assertCatalog(catalog);
+		}
+		/* the catalog is restored by replaying the log */
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertCatalog(catalog);
+			catalog.compact();
+		}
+		/* the catalog is restored from the snapshot */
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertCatalog(catalog);
+		}
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		Document d4 = new Document("4444", "PMC4444", new File("/local/source4.xml"), FileType.XML, "BMC Bio.",
+				"BMC Bio. v8 1-2. 2017.");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			populate(catalog);
+			catalog.addDocument(d4, DC);
+			/* the run status is the most recent, not the status derived from the outputs */
+			catalog.applyUpdates(CollectionsUtil.createList(CatalogUpdate.addAnnotationOutput(
+					ExternalIdentifierType.PMC, d4.getPmcid(),
+					new AnnotationOutput(new File("/local/source4.ann"), RUN_KEY, new DateTime(), 1)),
+					CatalogUpdate.logError(RUN_KEY, ExternalIdentifierType.PMC, d4.getPmcid(), "component",
+							"message", "stacktrace")));
+			catalog.removeDocumentsFromCollection(DC.getShortname(), CollectionsUtil.createList(D3.getPmcid()));
+			catalog.compact();
+		}
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertEquals(3, catalog.getDocumentCount(DC));
+			assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.COMPLETE));
+			assertEquals(CollectionsUtil.createList(D2.getPmcid(), d4.getPmcid()),
+					getPmcids(catalog, RunStatus.ERROR));
+			assertTrue(getPmcids(catalog, RunStatus.OUTSTANDING).isEmpty());
+			assertEquals(CollectionsUtil.createSet(new File("/local/source4.ann")),
+					catalog.getAnnotationFilesForDocumentId(ExternalIdentifierType.PMC, d4.getPmcid(), RUN_KEY));
+			/* documents removed from every collection remain in the catalog */
+			assertEquals(D3, catalog.getDocumentById(ExternalIdentifierType.PMC, D3.getPmcid()));
+			assertEquals(CollectionsUtil.createSet(AP), catalog.getAnnotationPipelines());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testCorruptSnapshot() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			populate(catalog);
+			catalog.compact();
+		}
+		File snapshotFile = new File(catalogDirectory, "catalog.snapshot");
+		byte[] snapshot = Files.readAllBytes(snapshotFile.toPath());
+		snapshot[snapshot.length / 2] ^= 0xFF;
+		Files.write(snapshotFile.toPath(), snapshot);
+		new AppendLogRunCatalog(catalogDirectory).close();
+	}
+
+	@Test
+	public void testIncompleteWriteIsDiscarded() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			populate(catalog);
+		}
+		/* simulate a crash part way through appending a write */
+		try (FileOutputStream fos = new FileOutputStream(new File(catalogDirectory, "catalog.0.log"), true)) {
+			fos.write(new byte[] { 0, 0, 1, 0, 7, 7 });
+		}
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertCatalog(catalog);
+			/* writes appended after the discarded bytes are replayed */
+			catalog.addDocument(new Document("4444", "PMC4444", new File("/local/source4.xml"), FileType.XML,
+					"BMC Bio.", "BMC Bio. v8 1-2. 2017."), DC);
+		}
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertEquals(4, catalog.getDocumentCount(DC));
+		}
+	}
+
+	@Test
+	public void testTornFrameLengthIsDiscarded() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			populate(catalog);
+		}
+		/* a frame header whose length exceeds the rest of the log */
+		try (DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(new File(catalogDirectory, "catalog.0.log"), true))) {
+			out.writeInt(Integer.MAX_VALUE - 16);
+			out.writeLong(0);
+			out.write(new byte[] { 7, 7 });
+		}
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertCatalog(catalog);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSingleProcessLock() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			new AppendLogRunCatalog(catalogDirectory);
+		}
+	}
+
+	@Test
+	public void testRemoveRunKey() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File annotFile = folder.newFile("source1.CM_CL_v0.5.4.ann");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			catalog.addDocument(D1, DC);
+			catalog.addAnnotationOutput(D1, new AnnotationOutput(annotFile, RUN_KEY, new DateTime(), 3));
+			assertEquals(CollectionsUtil.createList(RUN_KEY), catalog.getDocumentCollectionRunKeys(DC.getShortname()));
+
+			catalog.removeRunKeyFromDocumentCollection(DC.getShortname(), RUN_KEY);
+			assertTrue(catalog.getDocumentCollectionRunKeys(DC.getShortname()).isEmpty());
+			assertTrue(catalog.getAnnotationFilesForDocumentId(ExternalIdentifierType.PMC, D1.getPmcid(), RUN_KEY)
+					.isEmpty());
+			assertTrue(!annotFile.exists());
+		}
+	}
+
+	@Test
+	public void testRemoveRunKeyDeletesArchivedAnnotationFiles() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File annotFile = new File(folder.newFolder("library"), "source1.CM_CL_v0.5.4.ann");
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16);
+				AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory, storage)) {
+			try (OutputStream os = storage.openOutputStream(annotFile)) {
+				os.write(new byte[] { 1, 2, 3 });
+			}
+			catalog.addDocument(D1, DC);
+			catalog.addAnnotationOutput(D1, new AnnotationOutput(annotFile, RUN_KEY, new DateTime(), 3));
+
+			catalog.removeRunKeyFromDocumentCollection(DC.getShortname(), RUN_KEY);
+			assertFalse(storage.exists(annotFile));
+			assertTrue(storage.listFiles(annotFile.getParentFile()).isEmpty());
+		}
+	}
+
+	@Test
+	public void testInterruptedRunKeyRemovalIsResumed() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File annotFile = folder.newFile("source1.CM_CL_v0.5.4.ann");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			catalog.addDocument(D1, DC);
+			catalog.addAnnotationOutput(D1, new AnnotationOutput(annotFile, RUN_KEY, new DateTime(), 3));
+		}
+		/* simulate a crash after the removal is logged but before the files are deleted */
+		appendRemoveRunKeyFrame(new File(catalogDirectory, "catalog.0.log"), DC.getShortname(), RUN_KEY);
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertTrue(catalog.getDocumentCollectionRunKeys(DC.getShortname()).isEmpty());
+			assertTrue(!annotFile.exists());
+		}
+		/* the completed removal is not repeated, so a new file at the same path is kept */
+		assertTrue(annotFile.createNewFile());
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			assertTrue(annotFile.exists());
+		}
+	}
+
+	/**
+	 * Appends a REMOVE_RUN_KEY frame to the log as written by
+	 * {@link AppendLogRunCatalog#removeRunKeyFromDocumentCollection(String, String)}
+	 */
+	private static void appendRemoveRunKeyFrame(File logFile, String docCollectionShortName, String runKey)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			/* the REMOVE_RUN_KEY record type */
+			out.writeByte(3);
+			CatalogUpdate.writeString(out, docCollectionShortName);
+			CatalogUpdate.writeString(out, runKey);
+		}
+		byte[] frame = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(frame);
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile, true))) {
+			out.writeInt(frame.length);
+			out.writeLong(crc.getValue());
+			out.write(frame);
+		}
+	}
+
+	@Test
+	public void testMigrateFromNeo4j() throws IOException {
+		File neo4jCatalogDirectory = folder.newFolder("neo4j");
+		File appendLogCatalogDirectory = folder.newFolder("appendlog");
+		try (Neo4jRunCatalog source = new Neo4jRunCatalog(neo4jCatalogDirectory)) {
+			populate(source);
+			try (AppendLogRunCatalog target = new AppendLogRunCatalog(appendLogCatalogDirectory)) {
+				assertTrue(Main_MigrateCatalog_neo4j2appendlog.migrate(source, target));
+				assertCatalog(target);
+			}
+		}
+	}
+
+	private static void populate(RunCatalog catalog) {
+		catalog.addAnnotationPipeline(AP);
+		catalog.addDocuments(CollectionsUtil.createList(D1, D2).iterator(), DC, 1);
+		catalog.addRunKeyToDocumentCollection(DC.getShortname(), RUN_KEY);
+		catalog.addDocument(D3, DC);
+		catalog.applyUpdates(CollectionsUtil.createList(
+				CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC, D1.getPmcid(),
+						new File("/local/source1.xml.txt.gz"), FileVersion.LOCAL_TEXT, 2048),
+				CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, D1.getPmcid(), AO1),
+				CatalogUpdate.logError(RUN_KEY, ExternalIdentifierType.PMC, D2.getPmcid(), "component", "message",
+						"stacktrace")));
+	}
+
+	private static void assertCatalog(RunCatalog catalog) {
+		assertEquals(CollectionsUtil.createSet(AP), catalog.getAnnotationPipelines());
+		assertEquals(3, catalog.getDocumentCount(DC));
+		assertEquals(CollectionsUtil.createList(RUN_KEY), catalog.getDocumentCollectionRunKeys(DC.getShortname()));
+		assertEquals(new File("/local/source1.xml.txt.gz"),
+				catalog.getDocumentById(ExternalIdentifierType.PMC, D1.getPmcid()).getLocalTextFile());
+		assertEquals(2048, catalog.getDocumentById(ExternalIdentifierType.PMC, D1.getPmcid()).getLocalTextFileSize());
+		assertEquals(-1, catalog.getDocumentById(ExternalIdentifierType.PMC, D2.getPmcid()).getLocalTextFileSize());
+		assertEquals(D2, catalog.getDocumentById(ExternalIdentifierType.PUBMED, D2.getPmid()));
+		assertNull(catalog.getDocumentById(ExternalIdentifierType.PMC, "PMC0"));
+		assertEquals(CollectionsUtil.createSet(AO1.getLocalAnnotationFile()),
+				catalog.getAnnotationFilesForDocumentId(ExternalIdentifierType.PMC, D1.getPmcid(), RUN_KEY));
+
+		assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.COMPLETE));
+		assertEquals(CollectionsUtil.createList(D2.getPmcid()), getPmcids(catalog, RunStatus.ERROR));
+		assertEquals(CollectionsUtil.createList(D3.getPmcid()), getPmcids(catalog, RunStatus.OUTSTANDING));
+
+		Map<RunStatus, Integer> counts = catalog.getRunStatusCounts(DC.getShortname()).get(RUN_KEY);
+		assertEquals(Integer.valueOf(1), counts.get(RunStatus.COMPLETE));
+		assertEquals(Integer.valueOf(1), counts.get(RunStatus.ERROR));
+		assertEquals(Integer.valueOf(1), counts.get(RunStatus.OUTSTANDING));
+	}
+
+	@Test
+	public void testFileSizeEncoding() throws IOException {
+		File file = new File("/local/source1.xml.txt.gz");
+		CatalogUpdate sized = CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC, D1.getPmcid(), file,
+				FileVersion.LOCAL_TEXT, 2048);
+		assertEquals(sized, roundTrip(sized));
+
+		/* updates written before file sizes were cataloged are read with an unknown size */
+		CatalogUpdate unsized = CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC, D1.getPmcid(), file,
+				FileVersion.LOCAL_TEXT);
+		assertEquals(-1, roundTrip(unsized).getFileSize());
+		assertEquals(FileVersion.LOCAL_TEXT, roundTrip(unsized).getFileVersion());
+	}
+
+	private static CatalogUpdate roundTrip(CatalogUpdate update) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			update.write(out);
+		}
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return CatalogUpdate.read(in);
+		}
+	}
+
+	@Test
+	public void testGetDocumentsByShard() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(catalogDirectory)) {
+			populate(catalog);
+			int shardCount = 2;
+			Map<Integer, Map<RunStatus, Integer>> shardCounts = catalog.getShardRunStatusCounts(DC.getShortname(),
+					RUN_KEY, shardCount);
+			List<String> pmcids = new ArrayList<String>();
+			for (int shardId = 0; shardId < shardCount; shardId++) {
+				Shard shard = new Shard(shardId, shardCount);
+				int total = 0;
+				for (RunStatus status : RunStatus.values()) {
+					List<String> shardPmcids = getPmcids(catalog, status, shard);
+					for (String pmcid : shardPmcids) {
+						assertTrue(shard.contains(pmcid));
+					}
+					assertEquals(shardCounts.get(shardId).get(status), Integer.valueOf(shardPmcids.size()));
+					pmcids.addAll(shardPmcids);
+					total += shardPmcids.size();
+				}
+				assertEquals(total, shardCounts.get(shardId).values().stream().mapToInt(Integer::intValue).sum());
+			}
+			Collections.sort(pmcids);
+			assertEquals(CollectionsUtil.createList(D1.getPmcid(), D2.getPmcid(), D3.getPmcid()), pmcids);
+		}
+	}
+
+	private static List<String> getPmcids(RunCatalog catalog, RunStatus status, Shard shard) {
+		List<String> pmcids = new ArrayList<String>();
+		try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), RUN_KEY, status, shard, 1)) {
+			docCursor.forEachRemaining(d -> pmcids.add(d.getPmcid()));
+		}
+		return pmcids;
+	}
+
+	private static List<String> getPmcids(RunCatalog catalog, RunStatus status) {
+		List<String> pmcids = new ArrayList<String>();
+		try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), RUN_KEY, status, 1)) {
+			docCursor.forEachRemaining(d -> pmcids.add(d.getPmcid()));
+		}
+		return pmcids;
+	}
+
+}
@@ -1,18 +1,36 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.joda.time.DateTime;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.helpers.collection.Iterators;
 
 import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.test.DefaultTestCase;
@@ -21,6 +39,7 @@ import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.ShardArchiveStorage;
 import edu.ucdenver.ccp.nlp.pipelines.runner.impl.PmcNxml2TxtPipeline;
 
 public class Neo4jRunCatalogTest extends DefaultTestCase {
@@ -94,6 +113,24 @@ public class Neo4jRunCatalogTest extends DefaultTestCase {
 		}
 	}
 
+	@Test
+	public void testAddDocuments() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			/* a batch size of 1 ensures multiple transactions are used */
+			int count = catalog.addDocuments(CollectionsUtil.createList(D1, D2).iterator(), DC, 1);
+			assertEquals(2, count);
+
+			assertEquals(D1, catalog.getDocumentById(ExternalIdentifierType.PUBMED, "1234567"));
+			assertEquals(D2, catalog.getDocumentById(ExternalIdentifierType.PMC, "PMC78787878"));
+			assertEquals(2, catalog.getDocumentCount(DC));
+
+			/* indexes already exist, so a second bulk load must not fail */
+			count = catalog.addDocuments(new ArrayList<Document>().iterator(), DC, 10);
+			assertEquals(0, count);
+		}
+	}
+
 	@Test
 	public void testAddFileVersionToDocument() throws IOException {
 		File catalogDirectory = folder.newFolder("catalog");
@@ -114,6 +151,26 @@ public class Neo4jRunCatalogTest extends DefaultTestCase {
 		}
 	}
 
+	@Test
+	public void testFileSizes() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			Document d = new Document("1234567", "PMC1234567", new File("/local/source1.xml"), FileType.XML,
+					"BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+			d.setLocalSourceFileSize(4096);
+			catalog.addDocument(d, DC);
+			assertEquals(-1, catalog.getDocumentById(ExternalIdentifierType.PMC, d.getPmcid()).getLocalTextFileSize());
+
+			File txtFile = folder.newFile("source1.xml.txt.gz");
+			Files.write(txtFile.toPath(), new byte[123]);
+			catalog.addFileVersionToDocument(d, txtFile, FileVersion.LOCAL_TEXT);
+
+			Document retrievedDoc = catalog.getDocumentById(ExternalIdentifierType.PMC, d.getPmcid());
+			assertEquals(4096, retrievedDoc.getLocalSourceFileSize());
+			assertEquals(123, retrievedDoc.getLocalTextFileSize());
+		}
+	}
+
 	@Test
 	public void testAddPipeline() throws IOException {
 		File catalogDirectory = folder.newFolder("catalog");
@@ -190,6 +247,391 @@ public class Neo4jRunCatalogTest extends DefaultTestCase {
 		}
 	}
 
+	@Test
+	public void testGetDocuments() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			catalog.addDocument(D1, DC);
+			catalog.addAnnotationOutput(D1, AO1);
+			catalog.addAnnotationOutput(D1, AO3);
+
+			catalog.addDocument(D2, DC);
+			catalog.addAnnotationOutput(D2, AO2);
+
+			/* a page size of 1 ensures multiple pages are retrieved */
+			assertEquals(CollectionsUtil.createSet(D1, D2),
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.COMPLETE, 1));
+			assertEquals(CollectionsUtil.createSet(D2),
+					getDocuments(catalog, "CM_HP_v0.5.4", RunStatus.OUTSTANDING, 1));
+			assertEquals(new HashSet<Document>(), getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING, 1));
+			assertEquals(CollectionsUtil.createList(new File("/local/source2.xml")),
+					catalog.getFilesToProcess(DC, "CM_HP_v0.5.4"));
+
+			try (DocumentCursor docCursor = catalog.getDocuments("unknown", "CM_CL_v0.5.4", RunStatus.COMPLETE,
+					10)) {
+				assertFalse(docCursor.hasNext());
+			}
+		}
+	}
+
+	@Test
+	public void testRunStatusIndex() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			catalog.addDocument(D1, DC);
+			catalog.addDocument(D2, DC);
+
+			/* registering a run-key is idempotent */
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			assertEquals(CollectionsUtil.createList("CM_CL_v0.5.4"),
+					catalog.getDocumentCollectionRunKeys(DC.getShortname()));
+			assertEquals(CollectionsUtil.createSet(D1, D2),
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING, 10));
+
+			catalog.addAnnotationOutput(D1, AO1);
+			catalog.logError("CM_CL_v0.5.4", ExternalIdentifierType.PMC, D2.getPmcid(), "component", "message", null);
+
+			/* a document added after the run-key was registered is outstanding */
+			Document d3 = new Document("3333333", "PMC3333333", new File("/local/source3.xml"), FileType.XML,
+					"BMC Bio.", "BMC Bio. v7 99-111. 2017.");
+			catalog.addDocument(d3, DC);
+
+			/* indexing is a no-op for run-keys that have already been indexed */
+			catalog.indexRunStatus();
+
+			assertEquals(CollectionsUtil.createSet(D1),
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.COMPLETE, 10));
+			assertEquals(CollectionsUtil.createSet(D2), getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.ERROR, 10));
+			assertEquals(CollectionsUtil.createSet(d3),
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING, 10));
+
+			Map<RunStatus, Integer> expectedCounts = new HashMap<RunStatus, Integer>();
+			expectedCounts.put(RunStatus.COMPLETE, 1);
+			expectedCounts.put(RunStatus.OUTSTANDING, 1);
+			expectedCounts.put(RunStatus.ERROR, 1);
+			assertEquals(expectedCounts, catalog.getRunStatusCounts(DC.getShortname()).get("CM_CL_v0.5.4"));
+			assertEquals(3, catalog.getDocumentCount(DC));
+
+			try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), "unregistered",
+					RunStatus.OUTSTANDING, 10)) {
+				assertFalse(docCursor.hasNext());
+			}
+		}
+	}
+
+	/**
+	 * Migrates a catalog created before the run status index, i.e. one with
+	 * registered run-keys and annotation outputs but no run nodes, using
+	 * concurrent callers
+	 */
+	@Test
+	public void testMigrateCatalog() throws Exception {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			catalog.addDocument(D1, DC);
+			catalog.addDocument(D2, DC);
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			catalog.addAnnotationOutput(D1, AO1);
+			catalog.logError("CM_CL_v0.5.4", ExternalIdentifierType.PMC, D2.getPmcid(), "component", "message", null);
+		}
+		/*
+		 * remove the run nodes and their status buckets to recreate the layout
+		 * of a catalog prior to the index
+		 */
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(catalogDirectory);
+		try (Transaction tx = graphDb.beginTx()) {
+			for (String label : CollectionsUtil.createList("RUN_STATUS_BUCKET", "RUN")) {
+				for (Node node : Iterators.asList(graphDb.findNodes(Label.label(label)))) {
+					for (Relationship r : node.getRelationships()) {
+						r.delete();
+					}
+					node.delete();
+				}
+			}
+			tx.success();
+		} finally {
+			graphDb.shutdown();
+		}
+
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int i = 0; i < 4; i++) {
+					futures.add(executor.submit(() -> catalog.indexRunStatus()));
+					futures.add(executor.submit(
+							() -> catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4")));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			assertEquals(CollectionsUtil.createSet(D1),
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.COMPLETE, 10));
+			assertEquals(CollectionsUtil.createSet(D2), getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.ERROR, 10));
+			assertEquals(0, getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING, 10).size());
+		}
+
+		/* exactly one run node, linked once to each document */
+		graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(catalogDirectory);
+		try (Transaction tx = graphDb.beginTx()) {
+			List<Node> runNodes = Iterators.asList(graphDb.findNodes(Label.label("RUN")));
+			assertEquals(1, runNodes.size());
+			assertEquals(1 + 256, Iterables.count(runNodes.get(0).getRelationships()));
+			assertStatusLinkedOnce(graphDb);
+			tx.success();
+		} finally {
+			graphDb.shutdown();
+		}
+	}
+
+	/**
+	 * Must be called within a transaction. Asserts that each document is
+	 * linked to a single status bucket node and never directly to the run
+	 * node.
+	 */
+	private static void assertStatusLinkedOnce(GraphDatabaseService graphDb) {
+		for (Node docNode : Iterators.asList(graphDb.findNodes(Label.label("DOCUMENT")))) {
+			List<Relationship> statusRelationships = Iterables.asList(docNode.getRelationships(Direction.INCOMING,
+					RelationshipType.withName("RUN_COMPLETE"), RelationshipType.withName("RUN_OUTSTANDING"),
+					RelationshipType.withName("RUN_ERROR")));
+			assertEquals(1, statusRelationships.size());
+			assertTrue(statusRelationships.get(0).getStartNode().hasLabel(Label.label("RUN_STATUS_BUCKET")));
+		}
+	}
+
+	/**
+	 * Concurrent writers update the run status of different documents for the
+	 * same run-key
+	 */
+	@Test
+	public void testConcurrentRunStatusUpdates() throws Exception {
+		File catalogDirectory = folder.newFolder("catalog");
+		int docCount = 200;
+		List<Document> docs = new ArrayList<Document>();
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			for (int i = 0; i < docCount; i++) {
+				Document d = new Document(Integer.toString(1000 + i), "PMC" + (1000 + i),
+						new File("/local/source" + i + ".xml"), FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+				catalog.addDocument(d, DC);
+				docs.add(d);
+			}
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int i = 0; i < docCount; i++) {
+					Document d = docs.get(i);
+					if (i % 10 == 0) {
+						futures.add(executor.submit(() -> catalog.logError("CM_CL_v0.5.4", ExternalIdentifierType.PMC,
+								d.getPmcid(), "component", "message", null)));
+					} else {
+						futures.add(executor.submit(() -> catalog.addAnnotationOutput(d,
+								new AnnotationOutput(new File("/local/" + d.getPmcid() + ".CM_CL_v0.5.4.ann"),
+										"CM_CL_v0.5.4", new DateTime(), 1))));
+					}
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			Map<RunStatus, Integer> expectedCounts = new HashMap<RunStatus, Integer>();
+			expectedCounts.put(RunStatus.COMPLETE, docCount - docCount / 10);
+			expectedCounts.put(RunStatus.OUTSTANDING, 0);
+			expectedCounts.put(RunStatus.ERROR, docCount / 10);
+			assertEquals(expectedCounts, catalog.getRunStatusCounts(DC.getShortname()).get("CM_CL_v0.5.4"));
+			assertEquals(docCount - docCount / 10,
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.COMPLETE, 10).size());
+			Map<Integer, Map<RunStatus, Integer>> shardCounts = catalog.getShardRunStatusCounts(DC.getShortname(),
+					"CM_CL_v0.5.4", 4);
+			int completeCount = 0;
+			for (Map<RunStatus, Integer> counts : shardCounts.values()) {
+				completeCount += counts.get(RunStatus.COMPLETE);
+			}
+			assertEquals(docCount - docCount / 10, completeCount);
+		}
+
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(catalogDirectory);
+		try (Transaction tx = graphDb.beginTx()) {
+			assertStatusLinkedOnce(graphDb);
+			tx.success();
+		} finally {
+			graphDb.shutdown();
+		}
+	}
+
+	/**
+	 * The run status of documents, and the membership of the collection, are
+	 * updated while the cursors are being iterated
+	 */
+	@Test
+	public void testUpdatesDuringIteration() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			List<Document> docs = new ArrayList<Document>();
+			for (int i = 0; i < 100; i++) {
+				Document d = new Document(Integer.toString(1000 + i), "PMC" + (1000 + i),
+						new File("/local/source" + i + ".xml"), FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+				catalog.addDocument(d, DC);
+				docs.add(d);
+			}
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+
+			/* each returned document, and one other document, is completed */
+			Set<Document> completed = new HashSet<Document>();
+			Set<Document> returned = new HashSet<Document>();
+			int docIndex = 0;
+			try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), "CM_CL_v0.5.4",
+					RunStatus.OUTSTANDING, 1)) {
+				while (docCursor.hasNext()) {
+					Document d = docCursor.next();
+					assertFalse("completed document returned: " + d.getPmcid(), completed.contains(d));
+					assertTrue("duplicate document returned: " + d.getPmcid(), returned.add(d));
+					for (Document toComplete : CollectionsUtil.createList(d, docs.get(docIndex++))) {
+						if (completed.add(toComplete)) {
+							catalog.addAnnotationOutput(toComplete,
+									new AnnotationOutput(new File("/local/" + toComplete.getPmcid() + ".ann"),
+											"CM_CL_v0.5.4", new DateTime(), 1));
+						}
+					}
+				}
+			}
+			assertFalse(returned.isEmpty());
+			assertEquals(new HashSet<Document>(docs), completed);
+			assertEquals(0, getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING, 10).size());
+
+			/* each returned document, and one other document, is removed from the collection */
+			Set<Document> removed = new HashSet<Document>();
+			returned.clear();
+			docIndex = 0;
+			try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), 1)) {
+				while (docCursor.hasNext()) {
+					Document d = docCursor.next();
+					assertFalse("removed document returned: " + d.getPmcid(), removed.contains(d));
+					assertTrue("duplicate document returned: " + d.getPmcid(), returned.add(d));
+					for (Document toRemove : CollectionsUtil.createList(d, docs.get(docIndex++))) {
+						if (removed.add(toRemove)) {
+							catalog.removeDocumentsFromCollection(DC.getShortname(),
+									CollectionsUtil.createList(toRemove.getPmcid()));
+						}
+					}
+				}
+			}
+			assertFalse(returned.isEmpty());
+			assertEquals(0, catalog.getDocumentCount(DC));
+		}
+	}
+
+	@Test
+	public void testGetDocumentsOutstandingForAny() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			Document d3 = new Document("3333333", "PMC3333333", new File("/local/source3.xml"), FileType.XML,
+					"BMC Bio.", "BMC Bio. v7 99-111. 2017.");
+			catalog.addDocument(D1, DC);
+			catalog.addDocument(D2, DC);
+			catalog.addDocument(d3, DC);
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_HP_v0.5.4");
+			/* D1 is complete for both run-keys, D2 for CM_CL only, d3 for neither */
+			catalog.addAnnotationOutput(D1, AO1);
+			catalog.addAnnotationOutput(D1, AO3);
+			catalog.addAnnotationOutput(D2, AO2);
+
+			for (List<String> runKeys : CollectionsUtil.createList(
+					CollectionsUtil.createList("CM_CL_v0.5.4", "CM_HP_v0.5.4"),
+					CollectionsUtil.createList("CM_HP_v0.5.4", "CM_CL_v0.5.4"))) {
+				List<Document> docs = new ArrayList<Document>();
+				try (DocumentCursor docCursor = catalog.getDocumentsOutstandingForAny(DC.getShortname(), runKeys,
+						Shard.ALL, 1)) {
+					docCursor.forEachRemaining(docs::add);
+				}
+				assertEquals(2, docs.size());
+				assertEquals(CollectionsUtil.createSet(D2, d3), new HashSet<Document>(docs));
+			}
+
+			Set<Document> union = new HashSet<Document>();
+			for (int shardId = 0; shardId < 2; shardId++) {
+				try (DocumentCursor docCursor = catalog.getDocumentsOutstandingForAny(DC.getShortname(),
+						CollectionsUtil.createList("CM_CL_v0.5.4", "CM_HP_v0.5.4"), new Shard(shardId, 2), 1)) {
+					while (docCursor.hasNext()) {
+						assertTrue(union.add(docCursor.next()));
+					}
+				}
+			}
+			assertEquals(CollectionsUtil.createSet(D2, d3), union);
+		}
+	}
+
+	@Test
+	public void testGetDocumentsByShard() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			catalog.addDocument(D1, DC);
+			Set<Document> outstandingDocs = new HashSet<Document>();
+			for (int i = 0; i < 50; i++) {
+				Document d = new Document(Integer.toString(1000 + i), "PMC" + (1000 + i),
+						new File("/local/source" + i + ".xml"), FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+				catalog.addDocument(d, DC);
+				outstandingDocs.add(d);
+			}
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			catalog.addAnnotationOutput(D1, AO1);
+
+			int shardCount = 3;
+			Map<Integer, Map<RunStatus, Integer>> shardCounts = catalog.getShardRunStatusCounts(DC.getShortname(),
+					"CM_CL_v0.5.4", shardCount);
+			assertEquals(shardCount, shardCounts.size());
+			/* the shards are disjoint and together contain every outstanding document */
+			Set<Document> union = new HashSet<Document>();
+			for (int shardId = 0; shardId < shardCount; shardId++) {
+				Set<Document> shardDocs = getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING,
+						new Shard(shardId, shardCount), 7);
+				assertFalse("shard " + shardId + " is empty", shardDocs.isEmpty());
+				for (Document d : shardDocs) {
+					assertTrue(union.add(d));
+					assertEquals(shardId, Shard.getShardId(d.getPmcid(), shardCount));
+				}
+				assertEquals(Integer.valueOf(shardDocs.size()),
+						shardCounts.get(shardId).get(RunStatus.OUTSTANDING));
+			}
+			assertEquals(outstandingDocs, union);
+			int completeShardId = Shard.getShardId(D1.getPmcid(), shardCount);
+			assertEquals(Integer.valueOf(1), shardCounts.get(completeShardId).get(RunStatus.COMPLETE));
+			assertEquals(CollectionsUtil.createSet(D1), getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.COMPLETE,
+					new Shard(completeShardId, shardCount), 7));
+		}
+	}
+
+	private static Set<Document> getDocuments(RunCatalog catalog, String runKey, RunStatus status, Shard shard,
+			int pageSize) {
+		Set<Document> docs = new HashSet<Document>();
+		try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), runKey, status, shard, pageSize)) {
+			while (docCursor.hasNext()) {
+				docs.add(docCursor.next());
+			}
+		}
+		return docs;
+	}
+
+	private static Set<Document> getDocuments(RunCatalog catalog, String runKey, RunStatus status, int pageSize) {
+		Set<Document> docs = new HashSet<Document>();
+		try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), runKey, status, pageSize)) {
+			while (docCursor.hasNext()) {
+				docs.add(docCursor.next());
+			}
+		}
+		return docs;
+	}
+
 	@Test
 	public void testRemoveRunKey() throws IOException {
 		File catalogDirectory = folder.newFolder("catalog");
@@ -222,6 +664,59 @@ public class Neo4jRunCatalogTest extends DefaultTestCase {
 		}
 	}
 
+	@Test
+	public void testRemoveRunKeyDeletesArchivedAnnotationFiles() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File annotFile = new File(folder.newFolder("library"), "source1.CM_CL_v0.5.4.ann");
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16);
+				Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory, storage)) {
+			try (OutputStream os = storage.openOutputStream(annotFile)) {
+				os.write(new byte[] { 1, 2, 3 });
+			}
+			catalog.addDocument(D1, DC);
+			catalog.addAnnotationOutput(D1, new AnnotationOutput(annotFile, "CM_CL_v0.5.4", new DateTime(), 1));
+
+			catalog.removeRunKeyFromDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			assertFalse(storage.exists(annotFile));
+			assertTrue(storage.listFiles(annotFile.getParentFile()).isEmpty());
+		}
+	}
+
+	@Test
+	public void testRemoveRunKeyDeletesAnnotationFiles() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File annotFile1 = folder.newFile("source1.CM_CL_v0.5.4.ann");
+		File annotFile2 = folder.newFile("source1.CM_HP_v0.5.4.ann");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory);) {
+			catalog.addDocument(D1, DC);
+			catalog.addDocument(D2, DC);
+			catalog.addAnnotationOutput(D1, new AnnotationOutput(annotFile1, "CM_CL_v0.5.4", new DateTime(), 1));
+			catalog.addAnnotationOutput(D1, new AnnotationOutput(annotFile2, "CM_HP_v0.5.4", new DateTime(), 1));
+			catalog.logError("CM_CL_v0.5.4", ExternalIdentifierType.PMC, D2.getPmcid(), "component", "message", null);
+
+			catalog.removeRunKeyFromDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			assertFalse(annotFile1.exists());
+			assertTrue(annotFile2.exists());
+			assertEquals(CollectionsUtil.createSet(annotFile2),
+					catalog.getAnnotationFilesForDocumentId(ExternalIdentifierType.PMC, D1.getPmcid(), null));
+			assertEquals(CollectionsUtil.createList("CM_HP_v0.5.4"),
+					catalog.getDocumentCollectionRunKeys(DC.getShortname()));
+			assertFalse(catalog.getRunStatusCounts(DC.getShortname()).containsKey("CM_CL_v0.5.4"));
+
+			/* removing an unregistered run-key is a no-op */
+			catalog.removeRunKeyFromDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+
+			/*
+			 * the run-key can be registered again once removed. Its outputs
+			 * are gone, but the error logged for D2 remains.
+			 */
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), "CM_CL_v0.5.4");
+			assertEquals(CollectionsUtil.createSet(D1),
+					getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.OUTSTANDING, 1));
+			assertEquals(CollectionsUtil.createSet(D2), getDocuments(catalog, "CM_CL_v0.5.4", RunStatus.ERROR, 1));
+		}
+	}
+
 	@Test
 	public void testDeleteEmptyDocCollection() throws IOException {
 		File catalogDirectory = folder.newFolder("catalog");
@@ -241,4 +736,14 @@ public class Neo4jRunCatalogTest extends DefaultTestCase {
 		}
 	}
 
+	@Test
+	public void testMissingDocCollection() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			catalog.addDocument(D1, DC);
+			assertTrue(catalog.getRunStatusCounts("UNKNOWN").isEmpty());
+			assertEquals(0, catalog.getDocumentCount(new DocumentCollection("UNKNOWN", "Unknown", "Not cataloged.")));
+		}
+	}
+
 }
@@ -0,0 +1,61 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+
+public class RunCheckpointTest extends DefaultTestCase {
+
+	@Test
+	public void testCheckpoint() throws IOException {
+		File checkpointFile = new File(folder.getRoot(), "run/CM_CL.checkpoint");
+		assertTrue(RunCheckpoint.load(checkpointFile).isEmpty());
+
+		try (RunCheckpoint checkpoint = new RunCheckpoint(checkpointFile, 2)) {
+			checkpoint.markComplete("PMC1.nxml.gz.txt.gz");
+			checkpoint.markComplete("PMC2.nxml.gz.txt.gz");
+			/* the first two ids have been synced */
+			assertEquals(CollectionsUtil.createSet("PMC1.nxml.gz.txt.gz", "PMC2.nxml.gz.txt.gz"),
+					RunCheckpoint.load(checkpointFile));
+			checkpoint.markComplete("PMC3.nxml.gz.txt.gz");
+		}
+		assertEquals(CollectionsUtil.createSet("PMC1.nxml.gz.txt.gz", "PMC2.nxml.gz.txt.gz", "PMC3.nxml.gz.txt.gz"),
+				RunCheckpoint.load(checkpointFile));
+
+		/* a resumed run appends to the checkpoint */
+		try (RunCheckpoint checkpoint = new RunCheckpoint(checkpointFile, 100)) {
+			checkpoint.markComplete("PMC4.nxml.gz.txt.gz");
+			assertEquals(1, checkpoint.getCompletedCount());
+		}
+		assertEquals(4, RunCheckpoint.load(checkpointFile).size());
+	}
+
+	@Test
+	public void testPartialEntryIsIgnored() throws IOException {
+		File checkpointFile = folder.newFile("CM_CL.checkpoint");
+		try (RunCheckpoint checkpoint = new RunCheckpoint(checkpointFile, 1)) {
+			checkpoint.markComplete("PMC1.nxml.gz.txt.gz");
+		}
+		/* simulate a crash part way through writing an id */
+		try (FileOutputStream fos = new FileOutputStream(checkpointFile, true)) {
+			fos.write("PMC2.nxm".getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(CollectionsUtil.createSet("PMC1.nxml.gz.txt.gz"), RunCheckpoint.load(checkpointFile));
+
+		/* the partial entry is not joined to the next id */
+		try (RunCheckpoint checkpoint = new RunCheckpoint(checkpointFile, 1)) {
+			checkpoint.markComplete("PMC2.nxml.gz.txt.gz");
+		}
+		assertTrue(RunCheckpoint.load(checkpointFile).contains("PMC2.nxml.gz.txt.gz"));
+	}
+
+}
@@ -0,0 +1,172 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.helpers.collection.Iterators;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+
+public class WriteBehindCatalogWriterTest extends DefaultTestCase {
+
+	private static final DocumentCollection DC = new PMC_OA_DocumentCollection();
+
+	private static final Document D1 = new Document("1234567", "PMC1234567", new File("/local/source1.xml"),
+			FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+
+	private static final Document D2 = new Document("78787878", "PMC78787878", new File("/local/source2.xml"),
+			FileType.XML, "BMC Bio.", "BMC Bio. v6 77-88. 2017.");
+
+	private static final String RUN_KEY = "CM_CL_v0.5.4";
+
+	private static final AnnotationOutput AO1 = new AnnotationOutput(new File("/local/source1.CM_CL_v0.5.4.ann"),
+			RUN_KEY, new DateTime(), 127);
+
+	@Test
+	public void testWriteBehind() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File journalFile = new File(folder.getRoot(), "catalog.journal");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			catalog.addDocument(D1, DC);
+			catalog.addDocument(D2, DC);
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), RUN_KEY);
+
+			/* a queue capacity of 1 ensures submit() blocks on the background writer */
+			try (WriteBehindCatalogWriter writer = new WriteBehindCatalogWriter(catalog, 1, 2, journalFile)) {
+				writer.submit(CatalogUpdate.addFileVersion(ExternalIdentifierType.PMC, D1.getPmcid(),
+						new File("/local/source1.xml.txt.gz"), FileVersion.LOCAL_TEXT));
+				writer.submit(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, D1.getPmcid(), AO1));
+				writer.submit(CatalogUpdate.logError(RUN_KEY, ExternalIdentifierType.PMC, D2.getPmcid(), "component",
+						"message", "stacktrace"));
+				/* updates for unknown documents are skipped */
+				writer.submit(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, "PMC0", AO1));
+			}
+			assertTrue(WriteBehindCatalogWriter.getJournalFiles(journalFile).isEmpty());
+
+			assertEquals(new File("/local/source1.xml.txt.gz"),
+					catalog.getDocumentById(ExternalIdentifierType.PMC, D1.getPmcid()).getLocalTextFile());
+			assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.COMPLETE));
+			assertEquals(CollectionsUtil.createList(D2.getPmcid()), getPmcids(catalog, RunStatus.ERROR));
+		}
+	}
+
+	@Test
+	public void testJournalReplay() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File journalFile = new File(folder.getRoot(), "catalog.journal");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory) {
+			@Override
+			public void applyUpdates(List<CatalogUpdate> updates) {
+				throw new IllegalStateException("simulated commit failure");
+			}
+		}) {
+			catalog.addDocument(D1, DC);
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), RUN_KEY);
+			WriteBehindCatalogWriter writer = new WriteBehindCatalogWriter(catalog, 10, 10, journalFile);
+			writer.submit(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, D1.getPmcid(), AO1));
+			try {
+				writer.close();
+				fail("The background writer should have failed.");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			assertEquals(1, WriteBehindCatalogWriter.getJournalFiles(journalFile).size());
+		}
+
+		/* the uncommitted update is replayed when the next writer is created */
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.OUTSTANDING));
+			new WriteBehindCatalogWriter(catalog, 10, 10, journalFile).close();
+			assertTrue(WriteBehindCatalogWriter.getJournalFiles(journalFile).isEmpty());
+			assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.COMPLETE));
+		}
+	}
+
+	@Test
+	public void testReplayOfCommittedUpdate() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File journalFile = new File(folder.getRoot(), "catalog.journal");
+		/* the updates are committed, but the commit marker is never journaled */
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory) {
+			@Override
+			public void applyUpdates(List<CatalogUpdate> updates) {
+				super.applyUpdates(updates);
+				throw new IllegalStateException("simulated crash after commit");
+			}
+		}) {
+			catalog.addDocument(D1, DC);
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), RUN_KEY);
+			WriteBehindCatalogWriter writer = new WriteBehindCatalogWriter(catalog, 10, 10, journalFile);
+			writer.submit(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, D1.getPmcid(), AO1));
+			try {
+				writer.close();
+				fail("The background writer should have failed.");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			new WriteBehindCatalogWriter(catalog, 10, 10, journalFile).close();
+			assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.COMPLETE));
+		}
+
+		/* replaying the update did not duplicate the annotation output */
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(catalogDirectory);
+		try (Transaction tx = graphDb.beginTx()) {
+			assertEquals(1, Iterators.count(graphDb.findNodes(Label.label("ANNOTATION_OUTPUT"))));
+			tx.success();
+		} finally {
+			graphDb.shutdown();
+		}
+	}
+
+	@Test
+	public void testJournalPerWriter() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog");
+		File journalFile = new File(folder.getRoot(), "catalog.journal");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			catalog.addDocument(D1, DC);
+			catalog.addDocument(D2, DC);
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), RUN_KEY);
+			try (WriteBehindCatalogWriter writer1 = new WriteBehindCatalogWriter(catalog, 10, 10, journalFile);
+					WriteBehindCatalogWriter writer2 = new WriteBehindCatalogWriter(catalog, 10, 10, journalFile)) {
+				/* the second writer leaves the journal of the running first writer alone */
+				assertEquals(2, WriteBehindCatalogWriter.getJournalFiles(journalFile).size());
+				writer1.submit(CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, D1.getPmcid(), AO1));
+				writer2.submit(CatalogUpdate.logError(RUN_KEY, ExternalIdentifierType.PMC, D2.getPmcid(),
+						"component", "message", "stacktrace"));
+			}
+			assertTrue(WriteBehindCatalogWriter.getJournalFiles(journalFile).isEmpty());
+			assertEquals(CollectionsUtil.createList(D1.getPmcid()), getPmcids(catalog, RunStatus.COMPLETE));
+			assertEquals(CollectionsUtil.createList(D2.getPmcid()), getPmcids(catalog, RunStatus.ERROR));
+		}
+	}
+
+	private static List<String> getPmcids(RunCatalog catalog, RunStatus status) {
+		List<String> pmcids = new ArrayList<String>();
+		try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), RUN_KEY, status, 10)) {
+			docCursor.forEachRemaining(d -> pmcids.add(d.getPmcid()));
+		}
+		return pmcids;
+	}
+
+}
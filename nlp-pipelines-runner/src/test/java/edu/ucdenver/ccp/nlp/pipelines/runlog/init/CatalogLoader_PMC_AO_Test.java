@@ -1,21 +1,44 @@
 package edu.ucdenver.ccp.nlp.pipelines.runlog.init;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
+import org.joda.time.DateTime;
 import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.helpers.collection.Iterators;
 
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
 import edu.ucdenver.ccp.common.file.FileUtil;
 import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationOutput;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AppendLogRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.init.CatalogLoader_PMC_OA.DeltaResult;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.init.CatalogLoader_PMC_OA.DocumentMetadata;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.ShardArchive;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.ShardArchiveStorage;
 
 public class CatalogLoader_PMC_AO_Test extends DefaultTestCase {
 
@@ -24,6 +47,12 @@ public class CatalogLoader_PMC_AO_Test extends DefaultTestCase {
 			+ "oa_package/b0/ac/PMC13901.tar.gz\tBreast Cancer Res. 2001 Nov 9; 3(1):61-65\tPMC13901\tPMID:11250747\tNO-CC CODE\n"
 			+ "oa_package/b0/ac/PMC13902.tar.gz\tBreast Cancer Res. 2001 Nov 9; 3(1):61-65\tPMC13902\t\tNO-CC CODE";
 
+	/* PMC13900 has been retired and PMC13903 is new */
+	private static String pmcOaFileListUpdatedSampleLines = "2017-02-17 15:07:51\n"
+			+ "oa_package/b0/ac/PMC13901.tar.gz\tBreast Cancer Res. 2001 Nov 9; 3(1):61-65\tPMC13901\tPMID:11250747\tNO-CC CODE\n"
+			+ "oa_package/b0/ac/PMC13902.tar.gz\tBreast Cancer Res. 2001 Nov 9; 3(1):61-65\tPMC13902\t\tNO-CC CODE\n"
+			+ "oa_package/c1/d2/PMC13903.tar.gz\tBreast Cancer Res. 2001 Nov 9; 3(1):66-70\tPMC13903\t\tNO-CC CODE";
+
 	@Test
 	public void testParsePmcOaFileListTxt() throws IOException {
 		InputStream sampleStream = IOUtils.toInputStream(pmcOaFileListSampleLines);
@@ -42,6 +71,27 @@ public class CatalogLoader_PMC_AO_Test extends DefaultTestCase {
 		assertEquals(dm2, map.get("PMC13901"));
 	}
 
+	@Test
+	public void testParsePmcOaFileListTxt_unsortedWithDuplicates() throws IOException {
+		String lines = "2017-01-17 15:07:51\r\n"
+				+ "oa_package/b0/ac/PMC13902.tar.gz\tRev M\u00e9d Chil. 2001; 3(1):61-65\tPMC13902\t\tCC BY\r\n"
+				+ "oa_package/08/e0/PMC13900.tar.gz\tBreast Cancer Res. 2001 Nov 2; 3(1):55-60\tPMC13900\tPMID:11250746\tCC BY\r\n"
+				+ "oa_package/08/e1/PMC13900.tar.gz\tBreast Cancer Res. 2001 Nov 3; 3(1):55-60\tPMC13900\tPMID:11250746\tNO-CC CODE\r\n";
+		PmcOaMetadataIndex index = CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(lines, "UTF-8"));
+
+		/* the last listing of a tarball wins */
+		assertEquals(2, index.size());
+		assertEquals(new DocumentMetadata("oa_package/08/e1/PMC13900.tar.gz",
+				"Breast Cancer Res. 2001 Nov 3; 3(1):55-60", "Breast Cancer Res.", "PMC13900", "11250746",
+				"NO-CC CODE"), index.get("PMC13900"));
+		assertEquals(new DocumentMetadata("oa_package/b0/ac/PMC13902.tar.gz", "Rev M\u00e9d Chil. 2001; 3(1):61-65",
+				"Rev M\u00e9d Chil.", "PMC13902", null, "CC BY"), index.get("PMC13902"));
+		assertTrue(index.containsKey("PMC13902"));
+		assertNull(index.get("PMC13901"));
+		assertNull(index.get("PMC139"));
+		assertEquals(CollectionsUtil.createList("PMC13900", "PMC13902"), new ArrayList<String>(index.keySet()));
+	}
+
 	@Test
 	public void testInitCatalog() throws IOException {
 		InputStream sampleStream = IOUtils.toInputStream(pmcOaFileListSampleLines);
@@ -71,4 +121,145 @@ public class CatalogLoader_PMC_AO_Test extends DefaultTestCase {
 
 	}
 
+	@Test
+	public void testInitCatalog_shardArchive() throws IOException {
+		File libraryBaseDir = folder.newFolder("library_base");
+		File pmcBulkBaseDir = folder.newFolder("pmc_bulk");
+		File doc1Nxml = createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13900.nxml.gz");
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13901.nxml.gz");
+
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(folder.newFolder("catalog_base"));
+				ShardArchiveStorage storage = new ShardArchiveStorage(16)) {
+			CatalogLoader_PMC_OA.initCatalog(pmcBulkBaseDir, libraryBaseDir, catalog,
+					CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(pmcOaFileListSampleLines)), 1, 2,
+					storage);
+			assertFalse(doc1Nxml.exists());
+
+			/* the cataloged path is the library path, which is resolved by the storage */
+			Document d = catalog.getDocumentById(ExternalIdentifierType.PMC, "PMC13900");
+			File expectedDoc1InLibrary = new File(libraryBaseDir, "oa_package/08/e0/PMC13900.nxml.gz");
+			assertEquals(expectedDoc1InLibrary, d.getLocalSourceFile());
+			assertFalse(expectedDoc1InLibrary.exists());
+			assertTrue(new File(expectedDoc1InLibrary.getParentFile(), ShardArchive.CONTAINER_FILE_NAME).exists());
+			assertTrue(storage.exists(expectedDoc1InLibrary));
+			assertEquals(storage.size(expectedDoc1InLibrary), d.getLocalSourceFileSize());
+		}
+	}
+
+	@Test
+	public void testApplyDelta_neo4j() throws IOException {
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(folder.newFolder("catalog_base"))) {
+			assertApplyDelta(catalog);
+		}
+	}
+
+	@Test
+	public void testApplyDelta_appendLog() throws IOException {
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(folder.newFolder("catalog_base"))) {
+			assertApplyDelta(catalog);
+		}
+	}
+
+	private void assertApplyDelta(RunCatalog catalog) throws IOException {
+		File libraryBaseDir = folder.newFolder("library_base");
+		File pmcBulkBaseDir = folder.newFolder("pmc_bulk");
+
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13900.nxml.gz");
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13901.nxml.gz");
+		CatalogLoader_PMC_OA.initCatalog(pmcBulkBaseDir, libraryBaseDir, catalog,
+				CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(pmcOaFileListSampleLines)), 1, 2);
+
+		/*
+		 * the refreshed bulk directory contains the new document and a file
+		 * for a document that is already in the catalog
+		 */
+		File doc1Nxml = createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13901.nxml.gz");
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13903.nxml.gz");
+		DeltaResult result = CatalogLoader_PMC_OA.applyDelta(pmcBulkBaseDir, libraryBaseDir, catalog,
+				CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(pmcOaFileListUpdatedSampleLines)),
+				1, 2);
+
+		/* PMC13902 is listed, but there is no file for it */
+		assertEquals(new DeltaResult(1, 1, 1), result);
+		assertTrue(new File(libraryBaseDir, "oa_package/c1/d2/PMC13903.nxml.gz").exists());
+		assertTrue(doc1Nxml.exists());
+
+		String shortname = new PMC_OA_DocumentCollection().getShortname();
+		Set<String> memberPmcids = new HashSet<String>();
+		try (DocumentCursor docCursor = catalog.getDocuments(shortname, 1)) {
+			docCursor.forEachRemaining(d -> memberPmcids.add(d.getPmcid()));
+		}
+		assertEquals(CollectionsUtil.createSet("PMC13901", "PMC13903"), memberPmcids);
+		assertEquals(Integer.valueOf(2),
+				catalog.getRunStatusCounts(shortname).get("sections").get(RunStatus.OUTSTANDING));
+		/* the retired document remains in the catalog */
+		assertEquals("PMC13900", catalog.getDocumentById(ExternalIdentifierType.PMC, "PMC13900").getPmcid());
+	}
+
+	@Test
+	public void testApplyDelta_relisted_neo4j() throws IOException {
+		File catalogDirectory = folder.newFolder("catalog_base");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			assertRelistedDocument(catalog);
+		}
+		/* the relisted document reuses its existing node */
+		GraphDatabaseService graphDb = new GraphDatabaseFactory().newEmbeddedDatabase(catalogDirectory);
+		try (Transaction tx = graphDb.beginTx()) {
+			assertEquals(2, Iterators.count(graphDb.findNodes(Label.label("DOCUMENT"))));
+			tx.success();
+		} finally {
+			graphDb.shutdown();
+		}
+	}
+
+	@Test
+	public void testApplyDelta_relisted_appendLog() throws IOException {
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(folder.newFolder("catalog_base"))) {
+			assertRelistedDocument(catalog);
+		}
+	}
+
+	/**
+	 * Retires PMC13900, after it has been processed, and then lists it again
+	 */
+	private void assertRelistedDocument(RunCatalog catalog) throws IOException {
+		File libraryBaseDir = folder.newFolder("library_base");
+		File pmcBulkBaseDir = folder.newFolder("pmc_bulk");
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13900.nxml.gz");
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13901.nxml.gz");
+		CatalogLoader_PMC_OA.initCatalog(pmcBulkBaseDir, libraryBaseDir, catalog,
+				CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(pmcOaFileListSampleLines)), 1, 2);
+		String shortname = new PMC_OA_DocumentCollection().getShortname();
+		catalog.addAnnotationOutput(catalog.getDocumentById(ExternalIdentifierType.PMC, "PMC13900"),
+				new AnnotationOutput(new File(libraryBaseDir, "PMC13900.sections"), "sections", new DateTime(), 1));
+
+		CatalogLoader_PMC_OA.applyDelta(pmcBulkBaseDir, libraryBaseDir, catalog,
+				CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(pmcOaFileListUpdatedSampleLines)),
+				1, 2);
+		assertEquals(1, catalog.getDocumentCount(new PMC_OA_DocumentCollection()));
+
+		createBulkFile(pmcBulkBaseDir, "A-B/Breast_Cancer_Res/PMC13900.nxml.gz");
+		DeltaResult result = CatalogLoader_PMC_OA.applyDelta(pmcBulkBaseDir, libraryBaseDir, catalog,
+				CatalogLoader_PMC_OA.parsePmcOaMetadata(IOUtils.toInputStream(pmcOaFileListSampleLines)), 1, 2);
+		assertEquals(1, result.getAddedCount());
+		assertEquals(2, catalog.getDocumentCount(new PMC_OA_DocumentCollection()));
+
+		Set<String> memberPmcids = new HashSet<String>();
+		try (DocumentCursor docCursor = catalog.getDocuments(shortname, 1)) {
+			docCursor.forEachRemaining(d -> memberPmcids.add(d.getPmcid()));
+		}
+		assertEquals(CollectionsUtil.createSet("PMC13900", "PMC13901"), memberPmcids);
+		/* the relisted document keeps the status of its earlier output */
+		Map<RunStatus, Integer> counts = catalog.getRunStatusCounts(shortname).get("sections");
+		assertEquals(Integer.valueOf(1), counts.get(RunStatus.COMPLETE));
+		assertEquals(Integer.valueOf(1), counts.get(RunStatus.OUTSTANDING));
+	}
+
+	private static File createBulkFile(File pmcBulkBaseDir, String path) throws IOException {
+		File file = new File(pmcBulkBaseDir, path);
+		FileUtil.mkdir(file.getParentFile());
+		assertTrue(file.createNewFile());
+		return file;
+	}
+
 }
@@ -0,0 +1,165 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationOutput;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.CatalogUpdate;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalog.RunStatus;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Shard;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Operation;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.Request;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.server.CatalogProtocol.RequestInputStream;
+
+public class RunCatalogServerTest extends DefaultTestCase {
+
+	private static final DocumentCollection DC = new PMC_OA_DocumentCollection();
+
+	private static final String RUN_KEY = "CM_CL_v0.5.4";
+
+	private static final int DOC_COUNT = 25;
+
+	@Test
+	public void testRemoteRunCatalog() throws Exception {
+		File catalogDirectory = folder.newFolder("catalog");
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(catalogDirectory)) {
+			try (RunCatalogServer server = new RunCatalogServer(catalog, 0, 100)) {
+				server.start();
+				List<Document> docs = new ArrayList<Document>();
+				for (int i = 0; i < DOC_COUNT; i++) {
+					docs.add(new Document(Integer.toString(i), "PMC" + i, new File("/local/source" + i + ".xml"),
+							FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017."));
+				}
+				assertEquals(DOC_COUNT, catalog.addDocuments(docs.iterator(), DC, 10));
+				try (RemoteRunCatalog client = new RemoteRunCatalog(server.getPort())) {
+					client.addRunKeyToDocumentCollection(DC.getShortname(), RUN_KEY);
+					assertEquals(DOC_COUNT, getPmcids(client, RunStatus.OUTSTANDING).size());
+				}
+
+				/* concurrent clients complete every other document and log errors for the rest */
+				ExecutorService executor = Executors.newFixedThreadPool(2);
+				List<Future<Void>> futures = new ArrayList<Future<Void>>();
+				for (int offset = 0; offset < 2; offset++) {
+					final int start = offset;
+					futures.add(executor.submit(() -> {
+						try (RemoteRunCatalog client = new RemoteRunCatalog(server.getPort())) {
+							for (int i = start; i < DOC_COUNT; i += 2) {
+								client.applyUpdates(CollectionsUtil.createList(createUpdate(i)));
+							}
+						}
+						return null;
+					}));
+				}
+				for (Future<Void> future : futures) {
+					future.get();
+				}
+				executor.shutdown();
+
+				try (RemoteRunCatalog client = new RemoteRunCatalog(server.getPort())) {
+					assertEquals(13, getPmcids(client, RunStatus.COMPLETE).size());
+					assertEquals(12, getPmcids(client, RunStatus.ERROR).size());
+					assertEquals(0, getPmcids(client, RunStatus.OUTSTANDING).size());
+					assertEquals(Integer.valueOf(13),
+							client.getRunStatusCounts(DC.getShortname()).get(RUN_KEY).get(RunStatus.COMPLETE));
+					assertEquals(Integer.valueOf(13), client.getShardRunStatusCounts(DC.getShortname(), RUN_KEY, 1)
+							.get(0).get(RunStatus.COMPLETE));
+
+					/* the documents with errors are outstanding for a new run-key, as are the rest */
+					client.addRunKeyToDocumentCollection(DC.getShortname(), "CM_HP_v0.5.4");
+					List<String> pmcids = new ArrayList<String>();
+					try (DocumentCursor docCursor = client.getDocumentsOutstandingForAny(DC.getShortname(),
+							CollectionsUtil.createList(RUN_KEY, "CM_HP_v0.5.4"), Shard.ALL, 4)) {
+						docCursor.forEachRemaining(d -> pmcids.add(d.getPmcid()));
+					}
+					assertEquals(DOC_COUNT, pmcids.size());
+					assertEquals(DOC_COUNT, new HashSet<String>(pmcids).size());
+				}
+			}
+			assertEquals(1, catalog.getAnnotationFilesForDocumentId(ExternalIdentifierType.PMC, "PMC0", RUN_KEY)
+					.size());
+			/* the server does not close the catalog */
+			assertEquals(12, getPmcids(catalog, RunStatus.ERROR).size());
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testUnsupportedOperation() throws Exception {
+		try (Neo4jRunCatalog catalog = new Neo4jRunCatalog(folder.newFolder("catalog"));
+				RunCatalogServer server = new RunCatalogServer(catalog, 0, 100)) {
+			server.start();
+			try (RemoteRunCatalog client = new RemoteRunCatalog(server.getPort())) {
+				client.removeRunKeyFromDocumentCollection(DC.getShortname(), RUN_KEY);
+			}
+		}
+	}
+
+	@Test
+	public void testRequestClassFilter() throws Exception {
+		assertNotNull(readRequest(new Request(Operation.APPLY_UPDATES,
+				new Object[] { CollectionsUtil.createList(createUpdate(0), createUpdate(1)) })));
+		try {
+			readRequest(new Request(Operation.GET_RUN_STATUS_COUNTS, new Object[] { new HashMap<String, String>() }));
+			fail("A request containing a class that is not permitted should be rejected.");
+		} catch (InvalidClassException e) {
+			// expected
+		}
+	}
+
+	private static Request readRequest(Request request) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+			out.writeObject(request);
+		}
+		try (RequestInputStream in = new RequestInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+			return (Request) in.readObject();
+		}
+	}
+
+	private static CatalogUpdate createUpdate(int i) {
+		if (i % 2 == 0) {
+			return CatalogUpdate.addAnnotationOutput(ExternalIdentifierType.PMC, "PMC" + i,
+					new AnnotationOutput(new File("/local/source" + i + ".ann"), RUN_KEY, new DateTime(), 10));
+		}
+		return CatalogUpdate.logError(RUN_KEY, ExternalIdentifierType.PMC, "PMC" + i, "component", "message",
+				"stacktrace");
+	}
+
+	private static List<String> getPmcids(RunCatalog catalog, RunStatus status) throws IOException {
+		List<String> pmcids = new ArrayList<String>();
+		/* a page size smaller than the document count exercises cursor paging */
+		try (DocumentCursor docCursor = catalog.getDocuments(DC.getShortname(), RUN_KEY, status, 4)) {
+			docCursor.forEachRemaining(d -> pmcids.add(d.getPmcid()));
+		}
+		return pmcids;
+	}
+
+}
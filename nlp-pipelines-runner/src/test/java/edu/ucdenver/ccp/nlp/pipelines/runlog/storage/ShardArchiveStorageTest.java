@@ -0,0 +1,194 @@
+package edu.ucdenver.ccp.nlp.pipelines.runlog.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+
+public class ShardArchiveStorageTest extends DefaultTestCase {
+
+	@Test
+	public void testReadWrite() throws IOException {
+		File directory = new File(folder.getRoot(), "pmc/ab/cd");
+		File nxmlFile = new File(directory, "PMC1.nxml.gz");
+		File annotFile = new File(directory, "PMC1.nxml.gz.txt.gz-sections.annot.gz");
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16)) {
+			assertFalse(storage.exists(nxmlFile));
+			write(storage, nxmlFile, "<article/>");
+			write(storage, annotFile, "T1\tsection 0 5");
+			assertEquals("<article/>", read(storage, nxmlFile));
+			assertEquals(10, storage.size(nxmlFile));
+			/* replacing a file appends a new entry that supersedes the previous one */
+			write(storage, nxmlFile, "<article>updated</article>");
+			assertEquals("<article>updated</article>", read(storage, nxmlFile));
+		}
+		/* only the container and index files exist on the file system */
+		assertEquals(CollectionsUtil.createSet(ShardArchive.CONTAINER_FILE_NAME, ShardArchive.INDEX_FILE_NAME),
+				new HashSet<String>(CollectionsUtil.createList(directory.list())));
+
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16)) {
+			assertEquals("<article>updated</article>", read(storage, nxmlFile));
+			assertEquals(CollectionsUtil.createList(nxmlFile, annotFile), storage.listFiles(directory));
+		}
+	}
+
+	@Test
+	public void testLooseFilesAndPacking() throws IOException {
+		File directory = folder.newFolder("pmc");
+		File looseFile = new File(directory, "PMC2.nxml.gz.txt.gz");
+		Files.write(looseFile.toPath(), "loose".getBytes(StandardCharsets.UTF_8));
+		File archivedFile = new File(directory, "PMC1.nxml.gz.txt.gz");
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16)) {
+			write(storage, archivedFile, "archived");
+			/* files not in the archive are read from the file system */
+			assertEquals("loose", read(storage, looseFile));
+			assertEquals(CollectionsUtil.createSet(archivedFile, looseFile),
+					new HashSet<File>(storage.listFiles(directory)));
+
+			assertEquals(1, storage.pack(directory));
+			assertFalse(looseFile.exists());
+			assertEquals("loose", read(storage, looseFile));
+			assertEquals(0, storage.pack(directory));
+		}
+	}
+
+	@Test
+	public void testConvertLibrary() throws IOException {
+		File library = folder.newFolder("library");
+		File file1 = new File(library, "pmc/ab/cd/PMC1.nxml.gz");
+		File file2 = new File(library, "pmc/ab/ef/PMC2.nxml.gz");
+		for (File file : CollectionsUtil.createList(file1, file2)) {
+			Files.createDirectories(file.getParentFile().toPath());
+			Files.write(file.toPath(), file.getName().getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(2, Main_ConvertLibrary_shardArchive.convert(library, 2));
+		assertFalse(file1.exists());
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16)) {
+			assertEquals("PMC1.nxml.gz", read(storage, file1));
+			assertEquals("PMC2.nxml.gz", read(storage, file2));
+		}
+	}
+
+	@Test
+	public void testArchiveEviction() throws IOException {
+		File file1 = new File(folder.getRoot(), "a/PMC1.nxml.gz");
+		File file2 = new File(folder.getRoot(), "b/PMC2.nxml.gz");
+		/* only one archive is held open at a time */
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(1)) {
+			write(storage, file1, "1");
+			write(storage, file2, "2");
+			write(storage, file1, "one");
+			assertEquals("one", read(storage, file1));
+			assertEquals("2", read(storage, file2));
+		}
+	}
+
+	@Test
+	public void testPartialIndexEntryIsIgnored() throws IOException {
+		File directory = folder.newFolder("pmc");
+		try (ShardArchive archive = new ShardArchive(directory)) {
+			archive.append("PMC1.nxml.gz", bytes("one"));
+		}
+		/* simulate a crash part way through writing an index entry */
+		try (OutputStream os = new FileOutputStream(new File(directory, ShardArchive.INDEX_FILE_NAME), true)) {
+			os.write(new byte[] { 0, 12, 'P', 'M' });
+		}
+		try (ShardArchive archive = new ShardArchive(directory)) {
+			assertEquals(CollectionsUtil.createList("PMC1.nxml.gz"), archive.getNames());
+			assertNull(archive.read("PMC2.nxml.gz"));
+			/* the partial entry is truncated rather than preceding the next entry */
+			archive.append("PMC2.nxml.gz", bytes("two"));
+		}
+		try (ShardArchive archive = new ShardArchive(directory)) {
+			assertArrayEquals(bytes("one"), archive.read("PMC1.nxml.gz"));
+			assertArrayEquals(bytes("two"), archive.read("PMC2.nxml.gz"));
+		}
+	}
+
+	@Test
+	public void testDelete() throws IOException {
+		File directory = folder.newFolder("pmc");
+		File packedFile = new File(directory, "PMC1.ann");
+		File looseFile = new File(directory, "PMC2.ann");
+		try (ShardArchiveStorage storage = new ShardArchiveStorage(16)) {
+			write(storage, packedFile, "one");
+			Files.write(looseFile.toPath(), bytes("two"));
+
+			assertTrue(storage.delete(packedFile));
+			assertTrue(storage.delete(looseFile));
+			assertFalse(storage.delete(packedFile));
+			assertFalse(storage.exists(packedFile));
+			assertFalse(looseFile.exists());
+			assertTrue(storage.listFiles(directory).isEmpty());
+		}
+		/* the tombstone is persisted in the index */
+		try (ShardArchive archive = new ShardArchive(directory)) {
+			assertTrue(archive.getNames().isEmpty());
+			archive.append("PMC1.ann", bytes("three"));
+		}
+		try (ShardArchive archive = new ShardArchive(directory)) {
+			assertArrayEquals(bytes("three"), archive.read("PMC1.ann"));
+		}
+	}
+
+	@Test
+	public void testInterleavedWriters() throws IOException {
+		File directory = folder.newFolder("pmc");
+		/* each archive instance stands in for a separate writing process */
+		try (ShardArchive archive1 = new ShardArchive(directory);
+				ShardArchive archive2 = new ShardArchive(directory)) {
+			archive1.append("PMC1.nxml.gz", bytes("one"));
+			archive2.append("PMC2.nxml.gz", bytes("two"));
+			archive1.append("PMC3.nxml.gz", bytes("three"));
+			archive2.delete("PMC1.nxml.gz");
+
+			/* names appended by the other writer are found */
+			assertArrayEquals(bytes("two"), archive1.read("PMC2.nxml.gz"));
+			assertArrayEquals(bytes("three"), archive2.read("PMC3.nxml.gz"));
+		}
+		try (ShardArchive archive = new ShardArchive(directory)) {
+			assertEquals(CollectionsUtil.createList("PMC2.nxml.gz", "PMC3.nxml.gz"), archive.getNames());
+			assertArrayEquals(bytes("two"), archive.read("PMC2.nxml.gz"));
+			assertArrayEquals(bytes("three"), archive.read("PMC3.nxml.gz"));
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void write(DocumentStorage storage, File file, String content) throws IOException {
+		try (OutputStream os = storage.openOutputStream(file)) {
+			os.write(bytes(content));
+		}
+	}
+
+	private static String read(DocumentStorage storage, File file) throws IOException {
+		try (InputStream is = storage.openInputStream(file)) {
+			byte[] content = new byte[(int) storage.size(file)];
+			int offset = 0;
+			int count;
+			while (offset < content.length && (count = is.read(content, offset, content.length - offset)) > 0) {
+				offset += count;
+			}
+			assertTrue(is.read() < 0);
+			return new String(content, StandardCharsets.UTF_8);
+		}
+	}
+
+}
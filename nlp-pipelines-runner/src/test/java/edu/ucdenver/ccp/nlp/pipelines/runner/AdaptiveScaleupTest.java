@@ -0,0 +1,53 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AdaptiveScaleupTest {
+
+	private static Map<String, Integer> topology(Object... serviceCounts) {
+		Map<String, Integer> topology = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < serviceCounts.length; i += 2) {
+			topology.put((String) serviceCounts[i], (Integer) serviceCounts[i + 1]);
+		}
+		return topology;
+	}
+
+	@Test
+	public void testPlan() {
+		Map<String, Double> serviceTimes = new LinkedHashMap<String, Double>();
+		serviceTimes.put("sentdetect", 10.0);
+		serviceTimes.put("ConceptMapper", 80.0);
+		serviceTimes.put("AnnotSerializer", 10.0);
+		serviceTimes.put("RunCatalog", 50.0);
+		/* 24 instances are redistributed; RunCatalog keeps its single instance */
+		assertEquals(topology("sentdetect", 3, "ConceptMapper", 18, "AnnotSerializer", 3, "RunCatalog", 1),
+				AdaptiveScaleup.plan(serviceTimes,
+						topology("sentdetect", 8, "ConceptMapper", 8, "AnnotSerializer", 8, "RunCatalog", 1)));
+	}
+
+	@Test
+	public void testPlan_unmeasuredService() {
+		Map<String, Double> serviceTimes = new LinkedHashMap<String, Double>();
+		serviceTimes.put("sentdetect", 10.0);
+		assertEquals(topology("sentdetect", 3, "ConceptMapper", 1),
+				AdaptiveScaleup.plan(serviceTimes, topology("sentdetect", 2, "ConceptMapper", 2)));
+	}
+
+	@Test
+	public void testFormatAndParseTopology() {
+		Map<String, Integer> topology = topology("sentdetect", 3, "ConceptMapper", 18);
+		assertEquals("sentdetect=3,ConceptMapper=18", AdaptiveScaleup.formatTopology(topology));
+		assertEquals(topology, AdaptiveScaleup.parseTopology("sentdetect=3, ConceptMapper=18"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseTopology_invalid() {
+		AdaptiveScaleup.parseTopology("sentdetect:3");
+	}
+
+}
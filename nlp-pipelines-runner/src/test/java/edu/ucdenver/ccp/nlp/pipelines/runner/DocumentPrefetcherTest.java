@@ -0,0 +1,71 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.core.document.GenericDocument;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentPrefetcher.DocumentLoader;
+
+public class DocumentPrefetcherTest extends DefaultTestCase {
+
+	/* loads the file after a random delay so that loads complete out of order */
+	private static final DocumentLoader LOADER = file -> {
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		GenericDocument gd = new GenericDocument(file.getName());
+		gd.setDocumentText(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		return gd;
+	};
+
+	private List<File> createFiles(int count) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < count; i++) {
+			File file = folder.newFile("doc" + i + ".txt");
+			Files.write(file.toPath(), ("text " + i).getBytes(StandardCharsets.UTF_8));
+			files.add(file);
+		}
+		return files;
+	}
+
+	@Test
+	public void testDocumentsAreReturnedInFileOrder() throws IOException {
+		List<File> files = createFiles(50);
+		try (DocumentPrefetcher prefetcher = new DocumentPrefetcher(files.iterator(), LOADER, 4, 8)) {
+			for (int i = 0; i < files.size(); i++) {
+				GenericDocument gd = prefetcher.next();
+				assertEquals("doc" + i + ".txt", gd.getDocumentID());
+				assertEquals("text " + i, gd.getDocumentText());
+			}
+			assertFalse(prefetcher.hasNext());
+			assertTrue(prefetcher.getStallCount() <= files.size());
+			assertTrue(prefetcher.getAverageQueueDepth() >= 0 && prefetcher.getAverageQueueDepth() <= 8);
+		}
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void testLoadFailureIsRethrown() throws IOException {
+		List<File> files = createFiles(2);
+		files.add(1, new File(folder.getRoot(), "missing.txt"));
+		try (DocumentPrefetcher prefetcher = new DocumentPrefetcher(files.iterator(), LOADER, 2, 2)) {
+			assertEquals("doc0.txt", prefetcher.next().getDocumentID());
+			prefetcher.next();
+		}
+	}
+
+}
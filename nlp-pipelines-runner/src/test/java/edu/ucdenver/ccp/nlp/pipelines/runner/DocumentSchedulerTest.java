@@ -0,0 +1,102 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AppendLogRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileVersion;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCatalogUtil;
+import edu.ucdenver.ccp.nlp.pipelines.runner.DocumentScheduler.DocumentOrder;
+
+public class DocumentSchedulerTest extends DefaultTestCase {
+
+	private static final long[] SIZES = { 5, -1, 100, 20, 1, 20 };
+
+	@Test
+	public void testGetProcessingOrder() {
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 },
+				DocumentScheduler.getProcessingOrder(SIZES, DocumentOrder.CATALOG));
+		/* ties retain catalog order; unknown sizes are last */
+		assertArrayEquals(new int[] { 2, 3, 5, 0, 4, 1 },
+				DocumentScheduler.getProcessingOrder(SIZES, DocumentOrder.LARGEST_FIRST));
+		assertArrayEquals(new int[] { 2, 1, 3, 4, 5, 0 },
+				DocumentScheduler.getProcessingOrder(SIZES, DocumentOrder.INTERLEAVED));
+	}
+
+	@Test
+	public void testGetMakespan() {
+		long[] sizes = { 1, 1, 1, 1, 4 };
+		/* the large document processed last leaves one instance idle */
+		assertEquals(6, DocumentScheduler.getMakespan(sizes,
+				DocumentScheduler.getProcessingOrder(sizes, DocumentOrder.CATALOG), 2));
+		assertEquals(4, DocumentScheduler.getMakespan(sizes,
+				DocumentScheduler.getProcessingOrder(sizes, DocumentOrder.LARGEST_FIRST), 2));
+		assertEquals(4, DocumentScheduler.getMakespanLowerBound(sizes, 2));
+	}
+
+	@Test
+	public void testLargestFirstOnSkewedSizes() {
+		/* log-normally distributed sizes, similar to the spread of PMC article sizes */
+		Random random = new Random(12345);
+		long[] sizes = new long[20000];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = (long) Math.exp(10 + 1.2 * random.nextGaussian());
+		}
+		int instanceCount = 32;
+		long lowerBound = DocumentScheduler.getMakespanLowerBound(sizes, instanceCount);
+		long catalogMakespan = DocumentScheduler.getMakespan(sizes,
+				DocumentScheduler.getProcessingOrder(sizes, DocumentOrder.CATALOG), instanceCount);
+		long largestFirstMakespan = DocumentScheduler.getMakespan(sizes,
+				DocumentScheduler.getProcessingOrder(sizes, DocumentOrder.LARGEST_FIRST), instanceCount);
+		assertTrue(largestFirstMakespan <= catalogMakespan);
+		/* LPT is within 4/3 of optimal */
+		assertTrue(largestFirstMakespan * 3 <= lowerBound * 4);
+	}
+
+	@Test
+	public void testLargestFirstOnCatalogedSizes() throws IOException {
+		DocumentCollection dc = new PMC_OA_DocumentCollection();
+		Random random = new Random(12345);
+		List<Document> documents = new ArrayList<Document>();
+		for (int i = 0; i < 5000; i++) {
+			Document d = new Document(Integer.toString(i), "PMC" + i, new File("/local/PMC" + i + ".xml"),
+					FileType.XML, "BMC Bio.", "BMC Bio. v5 55-66. 2017.");
+			d.setLocalSourceFileSize((long) Math.exp(10 + 1.2 * random.nextGaussian()));
+			documents.add(d);
+		}
+		int instanceCount = 32;
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(folder.newFolder("catalog"))) {
+			catalog.addDocumentCollection(dc);
+			catalog.addRunKeyToDocumentCollection(dc.getShortname(), "sections");
+			catalog.addDocuments(documents.iterator(), dc, 1000);
+
+			long[] sizes = RunCatalogUtil.getOutstandingFileSizes(catalog, dc.getShortname(), "sections",
+					FileVersion.SOURCE);
+			assertEquals(documents.size(), sizes.length);
+			long lowerBound = DocumentScheduler.getMakespanLowerBound(sizes, instanceCount);
+			long catalogMakespan = DocumentScheduler.getMakespan(sizes,
+					DocumentScheduler.getProcessingOrder(sizes, DocumentOrder.CATALOG), instanceCount);
+			long largestFirstMakespan = DocumentScheduler.getMakespan(sizes,
+					DocumentScheduler.getProcessingOrder(sizes, DocumentOrder.LARGEST_FIRST), instanceCount);
+			assertTrue(largestFirstMakespan < catalogMakespan);
+			assertTrue(largestFirstMakespan * 3 <= lowerBound * 4);
+			RunCatalogUtil.getDocumentOrderReport(catalog, dc.getShortname(), "sections", FileVersion.SOURCE,
+					instanceCount);
+		}
+	}
+
+}
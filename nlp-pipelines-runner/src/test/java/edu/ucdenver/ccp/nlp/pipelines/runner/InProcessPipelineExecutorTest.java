@@ -0,0 +1,180 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.component.JCasCollectionReader_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.DescriptorType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ServiceEngine;
+
+public class InProcessPipelineExecutorTest extends DefaultTestCase {
+
+	/* document text to the stages that processed it, in order */
+	private static final Map<String, List<String>> STAGES_BY_DOCUMENT = new ConcurrentHashMap<String, List<String>>();
+	/* stage to the threads that processed documents in that stage */
+	private static final Map<String, Set<String>> THREADS_BY_STAGE = new ConcurrentHashMap<String, Set<String>>();
+
+	public static class NumberedDocumentReader extends JCasCollectionReader_ImplBase {
+		public static final String PARAM_DOCUMENT_COUNT = "documentCount";
+		@ConfigurationParameter
+		private int documentCount;
+
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() throws IOException, CollectionException {
+			return index < documentCount;
+		}
+
+		@Override
+		public void getNext(JCas jCas) throws IOException, CollectionException {
+			jCas.setDocumentText("document " + index++);
+		}
+
+		@Override
+		public Progress[] getProgress() {
+			return new Progress[0];
+		}
+	}
+
+	public static class StageRecorderAE extends JCasAnnotator_ImplBase {
+		public static final String PARAM_STAGE_NAME = "stageName";
+		@ConfigurationParameter
+		private String stageName;
+
+		public static final String PARAM_SLEEP_MILLIS = "sleepMillis";
+		@ConfigurationParameter(mandatory = false, defaultValue = "1")
+		private int sleepMillis;
+
+		@Override
+		public void process(JCas jCas) throws AnalysisEngineProcessException {
+			if (jCas.getDocumentText().equals("document 13") && stageName.equals("fail")) {
+				throw new AnalysisEngineProcessException(new IllegalStateException("failed on document 13"));
+			}
+			STAGES_BY_DOCUMENT.computeIfAbsent(jCas.getDocumentText(), k -> Collections.synchronizedList(
+					new ArrayList<String>())).add(stageName);
+			THREADS_BY_STAGE.computeIfAbsent(stageName, k -> ConcurrentHashMap.newKeySet())
+					.add(Thread.currentThread().getName());
+			try {
+				/* give the other replicas a chance to take a document */
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Before
+	public void clear() {
+		STAGES_BY_DOCUMENT.clear();
+		THREADS_BY_STAGE.clear();
+	}
+
+	private static ServiceEngine createServiceEngine(String stageName, int scaleup)
+			throws ResourceInitializationException {
+		return createServiceEngine(stageName, scaleup, 1);
+	}
+
+	private static ServiceEngine createServiceEngine(String stageName, int scaleup, int sleepMillis)
+			throws ResourceInitializationException {
+		return new ServiceEngine(
+				AnalysisEngineFactory.createEngineDescription(StageRecorderAE.class,
+						StageRecorderAE.PARAM_STAGE_NAME, stageName, StageRecorderAE.PARAM_SLEEP_MILLIS, sleepMillis),
+				new DeploymentParams(stageName, "", scaleup, 0, stageName + "Q", null), stageName,
+				DescriptorType.PRIMITIVE);
+	}
+
+	private static InProcessPipelineExecutor createExecutor(int documentCount, List<ServiceEngine> engines,
+			int casPoolSize, List<String> completedDocuments) throws ResourceInitializationException {
+		return new InProcessPipelineExecutor(
+				CollectionReaderFactory.createReader(NumberedDocumentReader.class,
+						NumberedDocumentReader.PARAM_DOCUMENT_COUNT, documentCount),
+				engines, casPoolSize, cas -> completedDocuments.add(cas.getDocumentText()));
+	}
+
+	@Test
+	public void testProcess() throws Exception {
+		List<ServiceEngine> engines = new ArrayList<ServiceEngine>();
+		engines.add(createServiceEngine("sentences", 1));
+		engines.add(createServiceEngine("concepts", 4));
+		engines.add(createServiceEngine("serializer", 2));
+		List<String> completedDocuments = Collections.synchronizedList(new ArrayList<String>());
+		try (InProcessPipelineExecutor executor = createExecutor(200, engines, 8, completedDocuments)) {
+			assertEquals(200, executor.process());
+		}
+
+		assertEquals(200, completedDocuments.size());
+		assertEquals(200, STAGES_BY_DOCUMENT.size());
+		for (List<String> stages : STAGES_BY_DOCUMENT.values()) {
+			assertEquals(Arrays.asList("sentences", "concepts", "serializer"), stages);
+		}
+		/* each replica runs on its own thread */
+		assertEquals(1, THREADS_BY_STAGE.get("sentences").size());
+		assertTrue(THREADS_BY_STAGE.get("concepts").size() > 1);
+		assertTrue(THREADS_BY_STAGE.get("concepts").size() <= 4);
+		assertTrue(THREADS_BY_STAGE.get("serializer").size() <= 2);
+	}
+
+	@Test
+	public void testAdaptiveScaleup() throws Exception {
+		List<ServiceEngine> engines = new ArrayList<ServiceEngine>();
+		engines.add(createServiceEngine("fast", 3, 0));
+		engines.add(createServiceEngine("slow", 3, 20));
+		List<String> completedDocuments = Collections.synchronizedList(new ArrayList<String>());
+		try (InProcessPipelineExecutor executor = createExecutor(200, engines, 16, completedDocuments)) {
+			executor.setAdaptiveScaleupWarmupCount(20);
+			assertEquals(200, executor.process());
+			/*
+			 * replicas of the fast stage have moved to the slow stage; how many
+			 * depends on the service times measured during the warm-up
+			 */
+			assertTrue(executor.getMetricsSummary(),
+					executor.getMetricsSummary().matches("\\[fast x(1|2): .*\\] \\[slow x(5|4): .*\\]"));
+		}
+		assertEquals(200, completedDocuments.size());
+		assertEquals(200, STAGES_BY_DOCUMENT.size());
+		for (List<String> stages : STAGES_BY_DOCUMENT.values()) {
+			assertEquals(Arrays.asList("fast", "slow"), stages);
+		}
+		assertTrue(THREADS_BY_STAGE.get("slow").size() > 3);
+	}
+
+	@Test
+	public void testProcessingErrorTerminatesRun() throws Exception {
+		List<ServiceEngine> engines = new ArrayList<ServiceEngine>();
+		engines.add(createServiceEngine("sentences", 2));
+		engines.add(createServiceEngine("fail", 2));
+		List<String> completedDocuments = Collections.synchronizedList(new ArrayList<String>());
+		try (InProcessPipelineExecutor executor = createExecutor(1000, engines, 4, completedDocuments)) {
+			executor.process();
+			fail("The processing error should have terminated the run.");
+		} catch (AnalysisEngineProcessException e) {
+			assertEquals("failed on document 13", e.getCause().getMessage());
+		}
+		assertTrue(completedDocuments.size() < 1000);
+	}
+
+}
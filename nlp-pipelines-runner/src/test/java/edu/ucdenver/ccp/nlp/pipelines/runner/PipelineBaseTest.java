@@ -0,0 +1,117 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.collection.impl.EntityProcessStatusImpl;
+import org.apache.uima.fit.component.NoOpAnnotator;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.Import;
+import org.apache.uima.resourceSpecifier.factory.ColocatedDelegateConfiguration;
+import org.apache.uima.resourceSpecifier.factory.DelegateConfiguration;
+import org.apache.uima.resourceSpecifier.factory.DeploymentDescriptorFactory;
+import org.apache.uima.resourceSpecifier.factory.SerializationStrategy;
+import org.apache.uima.resourceSpecifier.factory.impl.ProcessErrorHandlingSettingsImpl;
+import org.apache.uima.resourceSpecifier.factory.impl.ServiceContextImpl;
+import org.apache.uima.util.XMLInputSource;
+import org.apache.uima.util.impl.ProcessTrace_impl;
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.collections.CollectionsUtil;
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.RunCheckpoint;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.DescriptorType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ServiceEngine;
+import edu.ucdenver.ccp.nlp.uima.shims.document.impl.CcpDocumentMetadataHandler;
+import edu.ucdenver.ccp.nlp.uima.util.TypeSystemUtil;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+public class PipelineBaseTest extends DefaultTestCase {
+
+	@Test
+	public void testApplyScaleupTopology() throws Exception {
+		List<ServiceEngine> engines = new ArrayList<ServiceEngine>();
+		for (String serviceName : CollectionsUtil.createList("sentdetect", "ConceptMapper")) {
+			ServiceEngine se = new ServiceEngine(AnalysisEngineFactory.createEngineDescription(NoOpAnnotator.class),
+					new DeploymentParams(serviceName, "", 8, 0, serviceName + "Q", null), serviceName + "AE",
+					DescriptorType.PRIMITIVE);
+			se.setColocated(true);
+			engines.add(se);
+		}
+		engines = PipelineBase.applyScaleupTopology(engines, AdaptiveScaleup.parseTopology("ConceptMapper=14"));
+		assertEquals(8, engines.get(0).getDeployParams().getScaleup());
+		assertEquals(14, engines.get(1).getDeployParams().getScaleup());
+		assertEquals("ConceptMapperQ", engines.get(1).getDeployParams().getEndpoint());
+		assertTrue(engines.get(1).isColocated());
+	}
+
+	@Test
+	public void testCreateAggregateDescriptorTemplate() throws Exception {
+		List<String> keys = new ArrayList<String>();
+		for (int i = 1; i <= 11; i++) {
+			keys.add("engine" + i);
+		}
+		String template = PipelineBase.createAggregateDescriptorTemplate(keys);
+		AnalysisEngineDescription desc = UIMAFramework.getXMLParser().parseAnalysisEngineDescription(
+				new XMLInputSource(new ByteArrayInputStream(template.getBytes(StandardCharsets.UTF_8)), null));
+		assertEquals(keys, new ArrayList<String>(desc.getDelegateAnalysisEngineSpecifiersWithImports().keySet()));
+		assertEquals("AdvancedFixedFlowController", desc.getFlowControllerDeclaration().getKey());
+		assertEquals("ENGINE_DESCRIPTOR_PATH_11",
+				((Import) desc.getDelegateAnalysisEngineSpecifiersWithImports().get("engine11")).getLocation());
+	}
+
+	@Test
+	public void testAddColocatedDelegateScaleouts() throws Exception {
+		List<DelegateConfiguration> delegateConfigs = new ArrayList<DelegateConfiguration>();
+		ColocatedDelegateConfiguration sentdetectConfig = (ColocatedDelegateConfiguration) DeploymentDescriptorFactory
+				.createPrimitiveDelegateConfiguration("sentdetect", new ProcessErrorHandlingSettingsImpl());
+		sentdetectConfig.setNumberOfInstances(4);
+		delegateConfigs.add(sentdetectConfig);
+		delegateConfigs.add(DeploymentDescriptorFactory.createRemoteDelegateConfiguration("conceptmapper",
+				"tcp://localhost:61616", "conceptMapperQ", SerializationStrategy.binary,
+				new ProcessErrorHandlingSettingsImpl()));
+		String ddXml = DeploymentDescriptorFactory.createAggregateDeploymentDescriptor(
+				new ServiceContextImpl("pipeline", "", "aggregate.xml", "pipelineQ", "tcp://localhost:61616"),
+				delegateConfigs.toArray(new DelegateConfiguration[delegateConfigs.size()])).toXML();
+
+		String updatedXml = PipelineBase.addColocatedDelegateScaleouts(ddXml, delegateConfigs);
+		assertTrue(updatedXml.matches(
+				"(?s).*<analysisEngine key=\"sentdetect\"[^>]*><scaleout numberOfInstances=\"4\"/></analysisEngine>.*"));
+		/* only the co-located delegate is changed */
+		assertEquals(ddXml.replaceAll("<analysisEngine key=\"sentdetect\"[^>]*/>", ""),
+				updatedXml.replaceAll("<analysisEngine key=\"sentdetect\".*?</analysisEngine>", ""));
+	}
+
+	@Test
+	public void testFailedCasIsNotCheckpointed() throws Exception {
+		JCas jCas = JCasFactory.createJCas(TypeSystemUtil.getCcpTypeSystem());
+		UIMA_Util.setDocumentID(jCas, "PMC1234567");
+		EntityProcessStatusImpl failedStatus = new EntityProcessStatusImpl(new ProcessTrace_impl());
+		failedStatus.addEventStatus("Process", "Failed", new AnalysisEngineProcessException());
+		File checkpointFile = new File(folder.getRoot(), "run.checkpoint");
+		try (RunCheckpoint checkpoint = new RunCheckpoint(checkpointFile, 1)) {
+			PipelineBase.markComplete(checkpoint, new CcpDocumentMetadataHandler(), jCas.getCas(), failedStatus);
+			assertEquals(0, checkpoint.getCompletedCount());
+		}
+		assertEquals(0, RunCheckpoint.load(checkpointFile).size());
+
+		try (RunCheckpoint checkpoint = new RunCheckpoint(checkpointFile, 1)) {
+			PipelineBase.markComplete(checkpoint, new CcpDocumentMetadataHandler(), jCas.getCas(),
+					new EntityProcessStatusImpl(new ProcessTrace_impl()));
+			assertEquals(1, checkpoint.getCompletedCount());
+		}
+		assertEquals(CollectionsUtil.createSet("PMC1234567"), RunCheckpoint.load(checkpointFile));
+	}
+
+}
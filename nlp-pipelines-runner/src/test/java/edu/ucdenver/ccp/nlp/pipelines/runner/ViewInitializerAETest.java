@@ -0,0 +1,81 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Test;
+
+public class ViewInitializerAETest {
+
+	private static final String DOCUMENT_TEXT = "First sentence. Second sentence.";
+
+	private static TypeSystemDescription createTypeSystem() {
+		TypeSystemDescription tsd = UIMAFramework.getResourceSpecifierFactory().createTypeSystemDescription();
+		tsd.addType("test.Span", "", CAS.TYPE_NAME_ANNOTATION);
+		tsd.addType("test.SubSpan", "", "test.Span");
+		tsd.addType("test.Sentence", "", CAS.TYPE_NAME_ANNOTATION);
+		return tsd;
+	}
+
+	@Test
+	public void testCopySpans() throws Exception {
+		TypeSystemDescription tsd = createTypeSystem();
+		JCas jCas = JCasFactory.createJCas(tsd);
+		jCas.setDocumentText(DOCUMENT_TEXT);
+		jCas.setDocumentLanguage("en");
+		CAS cas = jCas.getCas();
+		cas.addFsToIndexes(cas.createAnnotation(cas.getTypeSystem().getType("test.Span"), 0, 15));
+		cas.addFsToIndexes(cas.createAnnotation(cas.getTypeSystem().getType("test.SubSpan"), 16, 32));
+
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(ViewInitializerAE.getDescription(tsd,
+				CAS.NAME_DEFAULT_SOFA, "target", "test.Span", "test.Sentence"));
+		engine.process(jCas);
+		engine.destroy();
+
+		JCas targetView = jCas.getView("target");
+		assertEquals(DOCUMENT_TEXT, targetView.getDocumentText());
+		assertEquals("en", targetView.getDocumentLanguage());
+		Type sentenceType = targetView.getTypeSystem().getType("test.Sentence");
+		List<String> sentences = new ArrayList<String>();
+		for (AnnotationFS annot : targetView.getCas().getAnnotationIndex(sentenceType)) {
+			sentences.add(annot.getCoveredText());
+		}
+		assertEquals(2, sentences.size());
+		assertEquals("First sentence.", sentences.get(0));
+		assertEquals("Second sentence.", sentences.get(1));
+		/* the source spans are not copied as such */
+		assertEquals(0, targetView.getCas()
+				.getAnnotationIndex(targetView.getTypeSystem().getType("test.Span")).size());
+	}
+
+	@Test
+	public void testTextOnly() throws Exception {
+		TypeSystemDescription tsd = createTypeSystem();
+		JCas jCas = JCasFactory.createJCas(tsd);
+		jCas.setDocumentText(DOCUMENT_TEXT);
+		CAS cas = jCas.getCas();
+		cas.addFsToIndexes(cas.createAnnotation(cas.getTypeSystem().getType("test.Span"), 0, 15));
+
+		AnalysisEngine engine = AnalysisEngineFactory
+				.createEngine(ViewInitializerAE.getDescription(tsd, CAS.NAME_DEFAULT_SOFA, "target", null, null));
+		engine.process(jCas);
+		engine.destroy();
+
+		JCas targetView = jCas.getView("target");
+		assertEquals(DOCUMENT_TEXT, targetView.getDocumentText());
+		/* only the document annotation */
+		assertEquals(1, targetView.getAnnotationIndex().size());
+	}
+
+}
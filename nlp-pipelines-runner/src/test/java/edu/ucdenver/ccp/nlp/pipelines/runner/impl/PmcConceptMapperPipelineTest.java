@@ -0,0 +1,102 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperParams;
+import edu.ucdenver.ccp.nlp.pipelines.conceptmapper.ConceptMapperParams.ConceptMapperOptimization;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AnnotationOutput;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.AppendLogRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Document.FileType;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCursor;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.Shard;
+
+public class PmcConceptMapperPipelineTest extends DefaultTestCase {
+
+	private static final DocumentCollection DC = new PMC_OA_DocumentCollection();
+
+	@Test
+	public void testCreatePipelineKey() {
+		ConceptMapperDictionary chebi = new ConceptMapperDictionary(ConceptMapperParams.CHEBI,
+				ConceptMapperOptimization.F_SCORE, new File("chebi.dict"), null);
+		ConceptMapperDictionary pr = new ConceptMapperDictionary(ConceptMapperParams.PR,
+				ConceptMapperOptimization.PRECISION, new File("pr.dict"), null);
+
+		/* the key of a single dictionary is unchanged */
+		assertEquals("CONCEPTMAPPER_CHEBI", PmcConceptMapperPipeline.createPipelineKey(Arrays.asList(chebi)));
+		assertEquals("CONCEPTMAPPER_CHEBI_PR", PmcConceptMapperPipeline.createPipelineKey(Arrays.asList(chebi, pr)));
+
+		/* each dictionary keeps its own output file infix and run key */
+		assertEquals("CONCEPTMAPPER_CHEBI_F_SCORE", chebi.getOutputFileInfix());
+		assertEquals("CONCEPTMAPPER_PR_PRECISION", pr.getOutputFileInfix());
+	}
+
+	@Test
+	public void testDocumentsOutstandingForAnyDictionary() throws IOException {
+		ConceptMapperDictionary chebi = new ConceptMapperDictionary(ConceptMapperParams.CHEBI,
+				ConceptMapperOptimization.F_SCORE, new File("chebi.dict"), null);
+		ConceptMapperDictionary pr = new ConceptMapperDictionary(ConceptMapperParams.PR,
+				ConceptMapperOptimization.PRECISION, new File("pr.dict"), null);
+		List<String> runKeys = PmcConceptMapperPipeline.getComponentRunKeys(Arrays.asList(chebi, pr));
+		assertEquals(Arrays.asList("CONCEPTMAPPER_CHEBI_F_SCORE", "CONCEPTMAPPER_PR_PRECISION"), runKeys);
+
+		Document d1 = new Document("1", "PMC1", new File("/local/source1.xml"), FileType.XML, "BMC Bio.",
+				"BMC Bio. v5 55-66. 2017.");
+		Document d2 = new Document("2", "PMC2", new File("/local/source2.xml"), FileType.XML, "BMC Bio.",
+				"BMC Bio. v6 77-88. 2017.");
+		Document d3 = new Document("3", "PMC3", new File("/local/source3.xml"), FileType.XML, "BMC Bio.",
+				"BMC Bio. v7 99-100. 2017.");
+		try (AppendLogRunCatalog catalog = new AppendLogRunCatalog(folder.newFolder("catalog"))) {
+			for (Document d : Arrays.asList(d1, d2, d3)) {
+				catalog.addDocument(d, DC);
+			}
+			for (String runKey : runKeys) {
+				catalog.addRunKeyToDocumentCollection(DC.getShortname(), runKey);
+			}
+			/* d1 is complete for both dictionaries, d2 for chebi only, d3 for neither */
+			catalog.addAnnotationOutput(d1, new AnnotationOutput(new File("/local/source1." + runKeys.get(0)),
+					runKeys.get(0), new DateTime(), 10));
+			catalog.addAnnotationOutput(d1, new AnnotationOutput(new File("/local/source1." + runKeys.get(1)),
+					runKeys.get(1), new DateTime(), 10));
+			catalog.addAnnotationOutput(d2, new AnnotationOutput(new File("/local/source2." + runKeys.get(0)),
+					runKeys.get(0), new DateTime(), 10));
+
+			/* the combined pipeline key is never recorded, so every document is outstanding for it */
+			String pipelineKey = PmcConceptMapperPipeline.createPipelineKey(Arrays.asList(chebi, pr));
+			catalog.addRunKeyToDocumentCollection(DC.getShortname(), pipelineKey);
+			assertEquals(Arrays.asList("PMC1", "PMC2", "PMC3"), getSortedPmcids(
+					catalog.getDocumentsOutstandingForAny(DC.getShortname(), Arrays.asList(pipelineKey), Shard.ALL, 1)));
+			/* each document outstanding for either dictionary is selected once */
+			assertEquals(Arrays.asList("PMC2", "PMC3"), getSortedPmcids(
+					catalog.getDocumentsOutstandingForAny(DC.getShortname(), runKeys, Shard.ALL, 1)));
+			assertEquals(Arrays.asList("PMC2", "PMC3"), getSortedPmcids(catalog.getDocumentsOutstandingForAny(
+					DC.getShortname(), Arrays.asList(runKeys.get(1), runKeys.get(0)), Shard.ALL, 1)));
+		}
+	}
+
+	private static List<String> getSortedPmcids(DocumentCursor cursor) {
+		List<String> pmcids = new ArrayList<String>();
+		try {
+			while (cursor.hasNext()) {
+				pmcids.add(cursor.next().getPmcid());
+			}
+		} finally {
+			cursor.close();
+		}
+		pmcids.sort(null);
+		return pmcids;
+	}
+
+}
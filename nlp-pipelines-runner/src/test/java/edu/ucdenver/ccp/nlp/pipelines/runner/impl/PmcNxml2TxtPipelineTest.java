@@ -6,13 +6,20 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
 import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.examples.flow.AdvancedFixedFlowController;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.flow.FlowControllerDescription;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.XMLInputSource;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -25,6 +32,9 @@ import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.DocumentCollection.PMC_OA_DocumentCollection;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.ExternalIdentifier.ExternalIdentifierType;
 import edu.ucdenver.ccp.nlp.pipelines.runlog.Neo4jRunCatalog;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ExecutionMode;
+import edu.ucdenver.ccp.nlp.pipelines.runner.PipelineBase.ServiceEngine;
+import edu.ucdenver.ccp.nlp.pipelines.runner.RunCatalogAE;
 import edu.ucdenver.ccp.nlp.uima.test.DefaultUIMATestCase;
 import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
 import edu.ucdenver.ccp.nlp.uima.util.View;
@@ -44,6 +54,45 @@ public class PmcNxml2TxtPipelineTest extends DefaultUIMATestCase {
 
 	private static final DocumentCollection DC = new PMC_OA_DocumentCollection();
 
+	/**
+	 * The aggregate must have a delegate, in flow order, for each of the
+	 * pipeline's service engines, including the {@link RunCatalogAE}
+	 */
+	@Test
+	public void testAggregateDeployment() throws Exception {
+		File configDir = folder.newFolder("conf");
+		File catalogDirectory = folder.newFolder("catalog");
+
+		PmcNxml2TxtPipeline pipeline = new PmcNxml2TxtPipeline(catalogDirectory, configDir, 1,
+				"tcp://localhost:61616", 1);
+		/* co-located engines are imported by the aggregate, so no services need to be deployed */
+		pipeline.getPipelineParams().setExecutionMode(ExecutionMode.UIMA_AS_COLOCATED);
+		pipeline.configurePipeline();
+
+		List<String> engineNames = new ArrayList<String>();
+		for (ServiceEngine se : pipeline.getServiceEngines()) {
+			engineNames.add(se.getAeDescription().getAnnotatorImplementationName());
+		}
+		assertEquals(6, engineNames.size());
+		assertEquals(RunCatalogAE.class.getName(), engineNames.get(5));
+
+		File aggregateAeDescriptorFile = new File(configDir, "PMC_NXML2TXT/PMC_NXML2TXT_engine.xml");
+		AnalysisEngineDescription aggregateDesc = UIMAFramework.getXMLParser()
+				.parseAnalysisEngineDescription(new XMLInputSource(aggregateAeDescriptorFile));
+		assertEquals(engineNames,
+				new ArrayList<String>(aggregateDesc.getDelegateAnalysisEngineSpecifiersWithImports().keySet()));
+
+		aggregateDesc.resolveImports(UIMAFramework.newDefaultResourceManager());
+		FlowControllerDescription flowControllerDesc = (FlowControllerDescription) aggregateDesc
+				.getFlowControllerDeclaration().getSpecifier();
+		String[] flow = (String[]) flowControllerDesc.getMetaData().getConfigurationParameterSettings()
+				.getParameterValue(AdvancedFixedFlowController.PARAM_FLOW);
+		assertEquals(engineNames, Arrays.asList(flow));
+
+		AnalysisEngine engine = AnalysisEngineFactory.createEngineFromPath(aggregateAeDescriptorFile.getAbsolutePath());
+		engine.destroy();
+	}
+
 	@Ignore("The aggregate descriptor created by the pmcnxml2txt pipeline only works if the component AE's have been deployed, so this test no longer works.")
 	@Test
 	public void testAggregateOnSampleDocument() throws Exception {
@@ -0,0 +1,77 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import edu.ucdenver.ccp.common.test.DefaultTestCase;
+
+public class PipelineMetricsTest extends DefaultTestCase {
+
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentileMillis(50), 0);
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000000l);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMeanMillis(), 1e-9);
+		assertEquals(100, histogram.getMaxMillis(), 1e-9);
+		/* percentiles are bucket upper bounds, i.e. within ~19% above the true value */
+		assertTrue(histogram.getPercentileMillis(50) >= 50 && histogram.getPercentileMillis(50) < 50 * 1.19);
+		assertTrue(histogram.getPercentileMillis(95) >= 95 && histogram.getPercentileMillis(95) <= 100);
+		assertEquals(100, histogram.getPercentileMillis(100), 1e-9);
+	}
+
+	@Test
+	public void testSnapshotFile() throws Exception {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.recordLatency(PipelineMetrics.READER, 2000000);
+		metrics.recordLatency("ConceptMapper", 30000000);
+		metrics.recordQueueTime("ConceptMapper", 5000000);
+
+		File snapshotFile = new File(folder.getRoot(), "metrics.json");
+		metrics.writeSnapshot(snapshotFile);
+		metrics.recordLatency("ConceptMapper", 10000000);
+		metrics.writeSnapshot(snapshotFile);
+
+		String snapshot = new String(Files.readAllBytes(snapshotFile.toPath()), StandardCharsets.UTF_8);
+		assertTrue(snapshot, snapshot.matches("\\{\"timestamp\":\\d+,\"components\":\\{\"ConceptMapper\":\\{\"count\":2,"
+				+ ".*\"queueMillis\":\\{\"count\":1,\"mean\":5\\.000,.*\\},\"reader\":\\{\"count\":1,.*\\}\\}\\}"));
+		List<String> history = Files.readAllLines(new File(folder.getRoot(), "metrics.json.history").toPath(),
+				StandardCharsets.UTF_8);
+		assertEquals(2, history.size());
+		assertEquals(snapshot, history.get(1));
+		/* only the temporary file is renamed into place */
+		assertEquals(2, folder.getRoot().list().length);
+		metrics.unregisterMBeans();
+	}
+
+	@Test
+	public void testMBeans() throws Exception {
+		PipelineMetrics metrics = new PipelineMetrics();
+		metrics.recordLatency(PipelineMetrics.PIPELINE, 4000000);
+		metrics.registerMBeans();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1l, server.getAttribute(
+					new ObjectName(PipelineMetrics.JMX_DOMAIN + ":type=PipelineMetrics"), "DocumentsCompleted"));
+			assertEquals(4.0, (Double) server.getAttribute(new ObjectName(
+					PipelineMetrics.JMX_DOMAIN + ":type=PipelineMetrics,component=\"pipeline\""), "MaxMillis"), 1e-9);
+		} finally {
+			metrics.unregisterMBeans();
+		}
+	}
+
+}
@@ -15,6 +15,7 @@ import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
 import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.junit.Test;
 
@@ -82,6 +83,39 @@ public class AnnotationSerializerAeTest extends DefaultUIMATestCase {
 		assertEquals(expectedLine, lines.get(0));
 	}
 
+	@Test
+	public void testSerializeAnnotationViews()
+			throws ResourceInitializationException, AnalysisEngineProcessException, IOException, CASException {
+		Annotator annotator = new Annotator(null, "annotator name", "");
+		CCPTextAnnotation annot = UIMA_Annotation_Util.createCCPTextAnnotation("token", 0, 4, jcas);
+		UIMA_Annotation_Util.setAnnotator(annot, annotator, jcas);
+		annot.addToIndexes();
+
+		/* only the annotations of the dictionary view should be serialized */
+		JCas dictionaryView = jcas.createView("dictionary");
+		dictionaryView.setDocumentText(DOCUMENT_TEXT);
+		CCPTextAnnotation conceptAnnot = UIMA_Annotation_Util.createCCPTextAnnotation("CHEBI:1", 13, 21,
+				dictionaryView);
+		UIMA_Annotation_Util.setAnnotator(conceptAnnot, annotator, dictionaryView);
+		conceptAnnot.addToIndexes();
+
+		File outputDirectory = folder.newFolder("output");
+		AnalysisEngineDescription aeDesc = AnnotationSerializerAE.getDescription(tsd, CcpDocumentMetadataHandler.class,
+				outputDirectory, View.DEFAULT.viewName(), View.DEFAULT.viewName(), false, "concepts",
+				IncludeCoveredText.YES, IncludeSlots.NO);
+		aeDesc.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.setParameterValue(AnnotationSerializerAE.PARAM_ANNOTATION_VIEW_NAMES, new String[] { "dictionary" });
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(aeDesc);
+		engine.process(jcas);
+		engine.destroy();
+
+		File expectedOutputFile = new File(outputDirectory, "12345-concepts.annot");
+		String expectedLine = "{\"documentId\":\"12345\",\"annotatorName\":\"annotator name\",\"type\":\"CHEBI:1\",\"spans\":[[13,21]],\"coveredText\":\"document\"}";
+		List<String> lines = FileReaderUtil.loadLinesFromFile(expectedOutputFile, CharacterEncoding.UTF_8, null);
+		assertEquals(1, lines.size());
+		assertEquals(expectedLine, lines.get(0));
+	}
+
 	@Test
 	public void testDeserializeAnnotations()
 			throws IOException, ResourceInitializationException, AnalysisEngineProcessException {
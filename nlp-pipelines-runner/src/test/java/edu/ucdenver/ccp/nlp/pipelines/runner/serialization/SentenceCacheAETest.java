@@ -0,0 +1,199 @@
+package edu.ucdenver.ccp.nlp.pipelines.runner.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+
+import edu.ucdenver.ccp.nlp.core.uima.annotation.CCPTextAnnotation;
+import edu.ucdenver.ccp.nlp.pipelines.runlog.storage.DocumentStorage.StorageType;
+import edu.ucdenver.ccp.nlp.pipelines.runner.serialization.SentenceCacheAE.SentenceType;
+import edu.ucdenver.ccp.nlp.uima.shims.document.impl.CcpDocumentMetadataHandler;
+import edu.ucdenver.ccp.nlp.uima.test.DefaultUIMATestCase;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Annotation_Util;
+import edu.ucdenver.ccp.nlp.uima.util.UIMA_Util;
+
+public class SentenceCacheAETest extends DefaultUIMATestCase {
+
+	private static final String DOCUMENT_TEXT = "First sentence. Second sentence.";
+	private static final String DOCUMENT_ID = "12345";
+
+	private File sourceFolder;
+
+	@Override
+	protected void initJCas() throws UIMAException, IOException {
+		sourceFolder = folder.newFolder("source");
+		UIMA_Util.setDocumentID(jcas, DOCUMENT_ID);
+		UIMA_Util.setSourceDocumentPath(jcas, new File(sourceFolder, DOCUMENT_ID + ".xml"));
+		jcas.setDocumentText(DOCUMENT_TEXT);
+	}
+
+	private static byte[] writeSpans(String documentText, List<int[]> spans) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SentenceCacheAE.writeSentenceSpans(baos, documentText, spans);
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void testReadWriteSentenceSpans() throws Exception {
+		byte[] cache = writeSpans(DOCUMENT_TEXT, Arrays.asList(new int[] { 0, 15 }, new int[] { 16, 32 }));
+
+		List<int[]> spans = SentenceCacheAE.readSentenceSpans(new ByteArrayInputStream(cache), DOCUMENT_TEXT);
+		assertEquals(2, spans.size());
+		assertArrayEquals(new int[] { 0, 15 }, spans.get(0));
+		assertArrayEquals(new int[] { 16, 32 }, spans.get(1));
+	}
+
+	@Test
+	public void testNoSentences() throws Exception {
+		byte[] cache = writeSpans(DOCUMENT_TEXT, Arrays.<int[]> asList());
+		assertEquals(0, SentenceCacheAE.readSentenceSpans(new ByteArrayInputStream(cache), DOCUMENT_TEXT).size());
+	}
+
+	@Test
+	public void testCacheOfDifferentText() throws Exception {
+		byte[] cache = writeSpans(DOCUMENT_TEXT, Arrays.asList(new int[] { 0, 15 }, new int[] { 16, 32 }));
+
+		/* same length, different text */
+		assertNull(SentenceCacheAE.readSentenceSpans(new ByteArrayInputStream(cache),
+				"First sentence! Second sentence."));
+		assertNull(SentenceCacheAE.readSentenceSpans(new ByteArrayInputStream(cache), DOCUMENT_TEXT + " Third."));
+	}
+
+	@Test
+	public void testIncompleteCache() throws Exception {
+		byte[] cache = writeSpans(DOCUMENT_TEXT, Arrays.asList(new int[] { 0, 15 }, new int[] { 16, 32 }));
+		/* drop the last span, as if the file was not completely written */
+		String truncated = new String(cache, "UTF-8").replace("16\t32\n", "");
+
+		assertNull(SentenceCacheAE.readSentenceSpans(new ByteArrayInputStream(truncated.getBytes("UTF-8")),
+				DOCUMENT_TEXT));
+		assertNull(SentenceCacheAE.readSentenceSpans(new ByteArrayInputStream(new byte[0]), DOCUMENT_TEXT));
+	}
+
+	@Test
+	public void testMalformedCache() throws Exception {
+		byte[] cache = writeSpans(DOCUMENT_TEXT, Arrays.asList(new int[] { 0, 15 }, new int[] { 16, 32 }));
+		String content = new String(cache, "UTF-8");
+		String header = content.substring(0, content.indexOf('\n'));
+		String countPrefix = header.substring(0, header.lastIndexOf('\t') + 1);
+
+		for (String malformed : Arrays.asList(countPrefix + "two\n0\t15\n16\t32\n",
+				countPrefix + "-1\n", content.replace("16\t32", "16"), content.replace("16\t32", "16\tend"))) {
+			assertNull(malformed, SentenceCacheAE.readSentenceSpans(
+					new ByteArrayInputStream(malformed.getBytes("UTF-8")), DOCUMENT_TEXT));
+		}
+	}
+
+	@Test
+	public void testCacheMiss() throws Exception {
+		process(null);
+
+		/* the detected sentences are written to the cache file */
+		List<String> sentenceSpans = getSentenceSpans(jcas);
+		assertFalse(sentenceSpans.isEmpty());
+		File cacheFile = new File(sourceFolder, SentenceCacheAE.getCacheFileName(DOCUMENT_ID));
+		assertTrue(cacheFile.exists());
+		assertEquals(sentenceSpans, readCacheFile(cacheFile));
+	}
+
+	@Test
+	public void testCacheWriteFailure() throws Exception {
+		/* a directory in place of the cache file cannot be written */
+		File cacheFile = new File(sourceFolder, SentenceCacheAE.getCacheFileName(DOCUMENT_ID));
+		assertTrue(cacheFile.mkdir());
+		process(null);
+
+		/* the document does not fail and keeps its detected sentences */
+		assertFalse(getSentenceSpans(jcas).isEmpty());
+		assertTrue(cacheFile.isDirectory());
+	}
+
+	@Test
+	public void testCacheHit() throws Exception {
+		/* the sentence detector would not treat the document text as a single sentence */
+		File cacheFile = new File(sourceFolder, SentenceCacheAE.getCacheFileName(DOCUMENT_ID));
+		try (OutputStream os = new GZIPOutputStream(new FileOutputStream(cacheFile))) {
+			SentenceCacheAE.writeSentenceSpans(os, DOCUMENT_TEXT, Arrays.asList(new int[] { 0, 32 }));
+		}
+		process(null);
+
+		assertEquals(Arrays.asList("0-32"), getSentenceSpans(jcas));
+	}
+
+	@Test
+	public void testDocIdSuffixToRemove() throws Exception {
+		UIMA_Util.setDocumentID(jcas, DOCUMENT_ID + ".txt.gz");
+		process(".txt.gz");
+
+		assertTrue(new File(sourceFolder, SentenceCacheAE.getCacheFileName(DOCUMENT_ID)).exists());
+		assertFalse(new File(sourceFolder, SentenceCacheAE.getCacheFileName(DOCUMENT_ID + ".txt.gz")).exists());
+	}
+
+	@Test
+	public void testExistingAnnotationsAreNotCached() throws Exception {
+		/* e.g. a section already in the view */
+		UIMA_Annotation_Util.createCCPTextAnnotation("section", 0, 32, jcas);
+		process(null);
+
+		List<String> cachedSpans = readCacheFile(
+				new File(sourceFolder, SentenceCacheAE.getCacheFileName(DOCUMENT_ID)));
+		assertEquals(getSentenceSpans(jcas), cachedSpans);
+		assertFalse(cachedSpans.contains("0-32"));
+	}
+
+	private void process(String docIdSuffixToRemove) throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createEngine(SentenceCacheAE.getDescription(tsd,
+				CcpDocumentMetadataHandler.class, null, SentenceType.CCP, docIdSuffixToRemove,
+				StorageType.FILE_SYSTEM));
+		engine.process(jcas);
+		engine.destroy();
+	}
+
+	/**
+	 * @return the spans of the CCP sentence annotations, formatted as
+	 *         begin-end
+	 */
+	private static List<String> getSentenceSpans(JCas jCas) {
+		List<String> spans = new ArrayList<String>();
+		for (CCPTextAnnotation annot : JCasUtil.select(jCas, CCPTextAnnotation.class)) {
+			if (annot.getClassMention().getMentionName().equals("sentence")) {
+				spans.add(annot.getBegin() + "-" + annot.getEnd());
+			}
+		}
+		return spans;
+	}
+
+	private static List<String> readCacheFile(File cacheFile) throws IOException {
+		List<String> spans = new ArrayList<String>();
+		try (InputStream is = new GZIPInputStream(new FileInputStream(cacheFile))) {
+			for (int[] span : SentenceCacheAE.readSentenceSpans(is, DOCUMENT_TEXT)) {
+				spans.add(span[0] + "-" + span[1]);
+			}
+		}
+		return spans;
+	}
+
+}